@@ -0,0 +1,42 @@
+// One-off server side jobs on the production data, run with credentials
+// that may write every user document, never from the app.
+// Run the search field backfill with:
+//   GOOGLE_APPLICATION_CREDENTIALS=service-account.json ./gradlew :admin:run
+plugins {
+    id("java")
+    id("application")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// The sources are UTF-8 like the app's
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// The search fields must be the ones the app writes and queries, so the
+// classes that build them are compiled from the app sources
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/chatapp/admin/**",
+                "com/example/chatapp/models/User.java",
+                "com/example/chatapp/utilities/Constants.java",
+                "com/example/chatapp/utilities/UserTrie.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.firebase.admin)
+}
+
+application {
+    mainClass.set("com.example.chatapp.admin.BackfillSearchFields")
+}
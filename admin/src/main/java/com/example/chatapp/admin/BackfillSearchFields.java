@@ -0,0 +1,83 @@
+package com.example.chatapp.admin;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.UserTrie;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.cloud.FirestoreClient;
+
+import java.util.List;
+
+/**
+ * This is the one-off backfill of the directory search fields, for the
+ * user documents made before search existed. It reads the collection
+ * once by document ID and writes only the documents missing the fields.
+ * The change time is left alone, the fields are not part of a cached
+ * directory, so no device syncs the users again
+ */
+public class BackfillSearchFields {
+    // This is the number of user documents read and written at a time
+    private static final int PAGE_SIZE = 400;
+
+    /**
+     * This will run the backfill with the application default credentials
+     * @param args these are not used
+     */
+    public static void main(String[] args) throws Exception {
+        FirebaseApp.initializeApp(FirebaseOptions.builder()
+                .setCredentials(GoogleCredentials.getApplicationDefault())
+                .build());
+        Firestore database = FirestoreClient.getFirestore();
+        int read = 0;
+        int written = 0;
+        QueryDocumentSnapshot last = null;
+        while (true) {
+            Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                    .orderBy(FieldPath.documentId())
+                    .limit(PAGE_SIZE);
+            if (last != null) {
+                query = query.startAfter(last);
+            }
+            List<QueryDocumentSnapshot> documents = query.get().get().getDocuments();
+            WriteBatch batch = database.batch();
+            int missing = 0;
+            for (QueryDocumentSnapshot document : documents) {
+                if (document.get(Constants.KEY_SEARCH_PREFIXES) == null) {
+                    batch.update(document.getReference(), UserTrie.getSearchFields(getUser(document)));
+                    missing++;
+                }
+            }
+            if (missing > 0) {
+                batch.commit().get();
+            }
+            read += documents.size();
+            written += missing;
+            System.out.println("Read " + read + " users, wrote " + written);
+            if (documents.size() < PAGE_SIZE) {
+                break;
+            }
+            last = documents.get(documents.size() - 1);
+        }
+    }
+
+    /**
+     * This will read the fields the search fields are built from
+     * @param document this is the user document
+     * @return the user
+     */
+    private static User getUser(QueryDocumentSnapshot document) {
+        User user = new User();
+        user.userid = document.getId();
+        user.firstName = document.getString(Constants.KEY_FIRSTNAME);
+        user.lastName = document.getString(Constants.KEY_LASTNAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        return user;
+    }
+}
@@ -44,6 +44,8 @@ dependencies {
     implementation(libs.roundedimageview)
     implementation(libs.firebase.messaging)
     implementation(libs.firebase.firestore)
+    implementation(libs.work.runtime)
+    implementation(libs.asynclayoutinflater)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
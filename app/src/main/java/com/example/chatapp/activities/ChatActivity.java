@@ -1,43 +1,96 @@
 package com.example.chatapp.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
 import com.example.chatapp.adapters.ChatAdapter;
+import com.example.chatapp.database.MessageCache;
+import com.example.chatapp.database.MessageOutbox;
 import com.example.chatapp.databinding.ActivityChatBinding;
+import com.example.chatapp.firebase.AttachmentUploadWorker;
+import com.example.chatapp.firebase.ChatNotifier;
 import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationState;
 import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.Change;
+import com.example.chatapp.repositories.ChangeListener;
+import com.example.chatapp.repositories.ChatRepository;
+import com.example.chatapp.repositories.LifecycleRegistration;
+import com.example.chatapp.repositories.PresenceRepository;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.AttachmentLoader;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ImageIngestor;
+import com.example.chatapp.utilities.MessagePager;
+import com.example.chatapp.utilities.MessageStore;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.example.chatapp.utilities.PreferenceSnapshot;
+import com.example.chatapp.utilities.PresenceManager;
+import com.example.chatapp.utilities.ReceiptTracker;
+import com.example.chatapp.utilities.Throttler;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
 
 /**
  * This is the Chat Activity class for managing the chat views
  */
-public class ChatActivity extends AppCompatActivity {
+public class ChatActivity extends AppCompatActivity implements MessagePager.PageSource {
+    // These are the paging constants
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_MESSAGES = 300;
+    private static final int PREFETCH_DISTANCE = 10;
+    // The typing state is written at most this often however fast the user types
+    private static final long TYPING_INTERVAL_MILLIS = 3_000;
+    // Typing stops after this long without a keystroke
+    private static final long TYPING_IDLE_MILLIS = 4_000;
+    // The status is checked this often so old states expire on screen
+    private static final long STATUS_REFRESH_MILLIS = 5_000;
+    // The first frame waits at most this long for the cached messages
+    private static final long FIRST_FRAME_WAIT_MILLIS = 200;
     // These are the private variables
     private ActivityChatBinding binding;
     private User receiverUser;
-    private List<ChatMessage> chatMessages;
+    private MessageStore chatMessages;
+    private MessagePager messagePager;
     private ChatAdapter chatAdapter;
     private PreferenceManager preferenceManager;
-    private FirebaseFirestore database;
+    private ChatRepository chatRepository;
+    private MessageCache messageCache;
+    private MessageOutbox messageOutbox;
+    private String conversationID;
+    private boolean firstPageLoaded, firstFrameReady;
+    // These are the presence variables
+    private final Handler presenceHandler = new Handler(Looper.getMainLooper());
+    private PresenceRepository presenceRepository;
+    private Throttler<Boolean> typingThrottler;
+    private boolean typing;
+    private ConversationState conversationState = new ConversationState();
+    private Long receiverLastSeen;
+    private ReceiptTracker receiptTracker;
+    // This is the message a search opened the chat at, if any
+    private ChatMessage jumpAnchor;
 
     /**
      * This is the override for the onCreate method
@@ -67,103 +120,521 @@ public class ChatActivity extends AppCompatActivity {
         // Wire up the preference manager
         preferenceManager = new PreferenceManager(getApplicationContext());
         // Initialize the chat messages
-        chatMessages = new ArrayList<>();
+        chatMessages = new MessageStore();
         chatAdapter = new ChatAdapter(chatMessages,
-                getBitmapFromEncodedString(receiverUser.image),
-                preferenceManager.getString(Constants.KEY_USERID));
-        // Set the recycler view adaptor
-        binding.chatRecyclerView.setAdapter(chatAdapter);
-        database = FirebaseFirestore.getInstance();
+                receiverUser,
+                preferenceManager.getSession().userID);
+        // Keep only a bounded window of the chat in memory
+        messagePager = new MessagePager(chatMessages, this, PAGE_SIZE, MAX_MESSAGES);
+        // Set the recycler view adaptor, its rows start inflating in the background
+        chatAdapter.attach(binding.chatRecyclerView);
+        // Load more pages as the user scrolls near either end
+        binding.chatRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                messagePager.onScrolled(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition(), PREFETCH_DISTANCE);
+                // Scrolling down reads more of the chat
+                markRead();
+            }
+        });
+        // Wire up the repository for this conversation
+        chatRepository = Repositories.getChatRepository();
+        messageCache = new MessageCache(getApplicationContext());
+        messageOutbox = MessageOutbox.getInstance(getApplicationContext());
+        conversationID = ChatRepository.getConversationID(
+                preferenceManager.getSession().userID, receiverUser.userid);
+        // Keystrokes are coalesced into one typing write per interval
+        presenceRepository = Repositories.getPresenceRepository();
+        String userID = preferenceManager.getSession().userID;
+        typingThrottler = new Throttler<>(TYPING_INTERVAL_MILLIS, SystemClock::uptimeMillis,
+                presenceHandler::postDelayed,
+                value -> presenceRepository.setTyping(conversationID, userID, value, null));
+        // Receipts are two watermarks, written once scrolling settles
+        receiptTracker = new ReceiptTracker(SystemClock::uptimeMillis, presenceHandler::postDelayed,
+                (deliveredUpTo, readUpTo) -> presenceRepository.writeReceipts(conversationID, userID,
+                        deliveredUpTo, readUpTo, null));
+    }
+
+    /**
+     * This is the override for the onStart method, the presence of the
+     * other user is listened to while the Activity is visible
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        PresenceManager.getInstance().start(preferenceManager.getSession().userID);
+        LifecycleRegistration.removeOn(this, Lifecycle.Event.ON_STOP,
+                presenceRepository.listenConversationState(conversationID,
+                (state, exception) -> {
+                    if (exception == null && state != null) {
+                        conversationState = state;
+                        updateStatus();
+                        // Watermarks written by another device of this user are not written again
+                        String userID = preferenceManager.getSession().userID;
+                        receiptTracker.seed(state.getDeliveredUpTo(userID), state.getReadUpTo(userID));
+                        chatAdapter.setPeerWatermarks(state.getDeliveredUpTo(receiverUser.userid),
+                                state.getReadUpTo(receiverUser.userid));
+                    }
+                }));
+        LifecycleRegistration.removeOn(this, Lifecycle.Event.ON_STOP,
+                presenceRepository.listenLastSeen(receiverUser.userid,
+                (lastSeen, exception) -> {
+                    if (exception == null) {
+                        receiverLastSeen = lastSeen;
+                        updateStatus();
+                    }
+                }));
+        presenceHandler.postDelayed(statusRefresh, STATUS_REFRESH_MILLIS);
+    }
+
+    /**
+     * This is the override for the onStop method
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        PresenceManager.getInstance().stop();
+        presenceHandler.removeCallbacks(statusRefresh);
+    }
+
+    /**
+     * This is the override for the onResume method, the open chat
+     * is not notified about
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        ChatNotifier.getInstance(getApplicationContext()).setActiveConversation(conversationID);
+    }
+
+    /**
+     * This is the override for the onPause method, the messages that
+     * arrived while the chat was open have been read
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        ChatNotifier.getInstance(getApplicationContext()).setActiveConversation(null);
+        // The other user should not see a typing state for a chat that is not open
+        stopTyping();
+        // Write the receipts now instead of after the chat closed
+        receiptTracker.flush();
+        chatRepository.markConversationRead(
+                preferenceManager.getString(Constants.KEY_USERID), conversationID, null);
+    }
+
+    /**
+     * This will fill in both users' recent conversation entries
+     * and mark the signed in user's entry read
+     */
+    private void openConversation() {
+        // The signed in user, as the other user will see them
+        PreferenceSnapshot.Session session = preferenceManager.getSession();
+        User user = new User();
+        user.userid = session.userID;
+        user.firstName = session.firstName;
+        user.lastName = session.lastName;
+        user.imageRef = session.imageRef;
+        chatRepository.openConversation(user, receiverUser, null);
     }
 
     /**
      * This is the send Message method that will send a new message
      */
     private void sendMessage() {
-        // New object for the Firestore database
-        HashMap<String, Object> message = new HashMap<>();
-        // Put the information into the hash
-        message.put(Constants.KEY_SENDER_ID,preferenceManager.getString(Constants.KEY_USERID));
-        message.put(Constants.KEY_RECEIVER_ID,receiverUser.userid);
-        message.put(Constants.KEY_MESSAGE,binding.inputMessage.getText().toString());
-        message.put(Constants.KEY_TIMESTAMP,new Date());
-        // Add the new has to the database
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message);
+        ChatMessage chatMessage = newMessage(messageOutbox.newMessageID());
+        chatMessage.message = binding.inputMessage.getText().toString();
+        send(chatMessage);
         // Clear the input message set
         binding.inputMessage.setText(null);
     }
 
+    /**
+     * This will send a prepared photo. The message goes out straight away
+     * with the placeholder and size of the photo, and the photo itself
+     * uploads in the background, resuming if it is interrupted
+     * @param messageID this is the ID of the message, also the ID of the blob
+     * @param attachment this is the prepared photo
+     */
+    private void sendAttachment(String messageID, ImageIngestor.Attachment attachment) {
+        ChatMessage chatMessage = newMessage(messageID);
+        chatMessage.message = "";
+        chatMessage.attachmentRef = messageID;
+        chatMessage.attachmentBlurHash = attachment.blurHash;
+        chatMessage.attachmentWidth = attachment.width;
+        chatMessage.attachmentHeight = attachment.height;
+        AttachmentUploadWorker.enqueue(getApplicationContext(), messageID, attachment.file);
+        send(chatMessage);
+    }
+
+    /**
+     * This will build a message from the signed in user to the receiver
+     * @param messageID this is the ID of the message, made on the device
+     * @return the pending chat message
+     */
+    private ChatMessage newMessage(String messageID) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageID = messageID;
+        chatMessage.senderID = ChatMessage.internID(preferenceManager.getString(Constants.KEY_USERID));
+        chatMessage.receiverID = ChatMessage.internID(receiverUser.userid);
+        chatMessage.timestamp = System.currentTimeMillis();
+        chatMessage.pending = true;
+        return chatMessage;
+    }
+
+    /**
+     * This will show a message as pending and hand it to the outbox
+     * @param chatMessage this is the message to send
+     */
+    private void send(ChatMessage chatMessage) {
+        // Show it as pending right away, the listener marks it sent
+        if (messagePager.acceptsLive(chatMessage)) {
+            chatMessages.add(chatMessage);
+            binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size()-1);
+        }
+        // Store it and send it with the next batch
+        messageOutbox.enqueue(conversationID, chatMessage);
+    }
+
+    /**
+     * This will take the result of an activity that picks an image and
+     * prepare it as an attachment in the background
+     */
+    private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                // If the Intent response was ok
+                if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                    Uri imageUri = result.getData().getData();
+                    // The file is named after the message so the upload and the row can find it
+                    String messageID = messageOutbox.newMessageID();
+                    ImageIngestor.getInstance(getApplicationContext()).prepareAttachment(imageUri,
+                            AttachmentLoader.getLocalFile(getApplicationContext(), messageID),
+                            (attachment, exception) -> {
+                                // Exception if decode fails
+                                if (exception != null) {
+                                    Toast.makeText(getApplicationContext(), "Could not read that image",
+                                            Toast.LENGTH_LONG).show();
+                                    return;
+                                }
+                                sendAttachment(messageID, attachment);
+                            });
+                }
+            }
+    );
+
     /**
      * This is the listenMessage function to show messages
      */
     private void listenMessage() {
-        // These are the messages that the logged in user has sent
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,preferenceManager.getString(Constants.KEY_USERID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,receiverUser.userid)
-                .addSnapshotListener(eventListener);
-        // These are the messages that are sent to the logged in user
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,receiverUser.userid)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,preferenceManager.getString(Constants.KEY_USERID))
-                .addSnapshotListener(eventListener);
+        // Keep the recent conversation entries up to date
+        openConversation();
+        // Stamp the conversation ID onto older messages once per conversation
+        String migratedKey = Constants.KEY_MIGRATED_CONVERSATION + conversationID;
+        if (!preferenceManager.getBoolean(migratedKey)) {
+            chatRepository.migrateConversation(preferenceManager.getString(Constants.KEY_USERID),
+                    receiverUser.userid, (result, exception) -> {
+                        if (exception == null) {
+                            preferenceManager.putBoolean(migratedKey, true);
+                        }
+                    });
+        }
+        // Hold the first frame until the cached tail is in the list
+        holdFirstFrame();
+        // Render the cached tail while the network catches up
+        messageCache.loadLatest(conversationID, PAGE_SIZE, cached -> {
+            firstFrameReady = true;
+            // Skip it if the server already answered
+            if (firstPageLoaded || cached.isEmpty()) {
+                return;
+            }
+            messagePager.onFirstPage(cached);
+            binding.chatRecyclerView.scrollToPosition(chatMessages.size()-1);
+            binding.chatRecyclerView.setVisibility(View.VISIBLE);
+            binding.progressBar.setVisibility(View.GONE);
+        });
+        // Load the newest page, then listen from the start of it
+        chatRepository.loadLatestMessages(conversationID, PAGE_SIZE, (page, exception) -> {
+            firstPageLoaded = true;
+            firstFrameReady = true;
+            if (exception == null) {
+                // Drop cached messages the server no longer has
+                reconcileCachedMessages(page);
+                // Add the first page to the window and write it back
+                messagePager.onFirstPage(page);
+                messageCache.put(conversationID, page);
+            }
+            else {
+                messagePager.onFirstPage(new ArrayList<>());
+            }
+            // Show the messages that were not sent before the chat was closed
+            messageOutbox.loadPending(conversationID, pending -> {
+                for (ChatMessage chatMessage : pending) {
+                    // Skip messages outside the window like live ones, paging will reach them
+                    if (!chatMessages.contains(chatMessage.messageID)
+                            && messagePager.acceptsLive(chatMessage)) {
+                        chatMessages.add(chatMessage);
+                    }
+                }
+            });
+            messageOutbox.flush();
+            if (chatMessages.size() > 0) {
+                binding.chatRecyclerView.scrollToPosition(chatMessages.size()-1);
+            }
+            markDelivered();
+            // These are the messages in both directions of the conversation
+            long since = chatMessages.size() > 0 ? chatMessages.get(0).timestamp : 0;
+            LifecycleRegistration.removeOn(this, Lifecycle.Event.ON_DESTROY,
+                    chatRepository.listenMessages(conversationID, since, changeListener));
+            // Move the window to the message a search opened the chat at
+            if (jumpAnchor != null) {
+                ChatMessage anchor = jumpAnchor;
+                jumpAnchor = null;
+                messagePager.jumpTo(anchor, () -> {
+                    int position = chatMessages.positionOf(anchor.messageID);
+                    if (position >= 0) {
+                        binding.chatRecyclerView.scrollToPosition(position);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * This will skip drawing until the cached messages are in the list,
+     * so the first frame shows the chat instead of the progress bar. The
+     * cache is read off the main thread, and a slow read only holds the
+     * frame for FIRST_FRAME_WAIT_MILLIS
+     */
+    private void holdFirstFrame() {
+        View content = binding.getRoot();
+        long deadline = SystemClock.uptimeMillis() + FIRST_FRAME_WAIT_MILLIS;
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // A skipped frame is tried again on the next one
+                if (!firstFrameReady && SystemClock.uptimeMillis() < deadline) {
+                    return false;
+                }
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                return true;
+            }
+        });
     }
 
     /**
-     * This is the EventListener for the database changes
+     * This will remove messages that were rendered from the cache but
+     * are missing from the newest page the server returned
+     * @param page this is the newest page from the server
      */
-    private final EventListener<QuerySnapshot> eventListener = ((value, error) -> {
+    private void reconcileCachedMessages(List<ChatMessage> page) {
+        if (chatMessages.size() == 0) {
+            return;
+        }
+        // These are the messages the server has
+        Set<String> serverIDs = new HashSet<>();
+        for (ChatMessage chatMessage : page) {
+            serverIDs.add(chatMessage.messageID);
+        }
+        // A full page only covers the messages from its oldest one onwards
+        ChatMessage oldest = page.size() >= PAGE_SIZE ? page.get(0) : null;
+        List<String> staleIDs = new ArrayList<>();
+        for (ChatMessage chatMessage : chatMessages.getMessages()) {
+            boolean covered = oldest == null || chatMessage.timestamp >= oldest.timestamp;
+            if (covered && !chatMessage.pending && !serverIDs.contains(chatMessage.messageID)) {
+                staleIDs.add(chatMessage.messageID);
+            }
+        }
+        for (String messageID : staleIDs) {
+            chatMessages.remove(messageID);
+        }
+        messageCache.remove(staleIDs);
+    }
+
+    /**
+     * This is the override for the loadOlder method
+     * @param oldest the oldest message in the window
+     * @param limit the most messages to load
+     * @param callback the callback for the loaded page
+     */
+    @Override
+    public void loadOlder(ChatMessage oldest, int limit, MessagePager.PageCallback callback) {
+        chatRepository.loadMessagesBefore(conversationID, oldest, limit, (page, exception) ->
+                callback.onPageLoaded(exception == null ? page : new ArrayList<>()));
+    }
+
+    /**
+     * This is the override for the loadNewer method
+     * @param newest the newest message in the window
+     * @param limit the most messages to load
+     * @param callback the callback for the loaded page
+     */
+    @Override
+    public void loadNewer(ChatMessage newest, int limit, MessagePager.PageCallback callback) {
+        chatRepository.loadMessagesAfter(conversationID, newest, limit, (page, exception) ->
+                callback.onPageLoaded(exception == null ? page : new ArrayList<>()));
+    }
+
+    /**
+     * This is the ChangeListener for the database changes
+     */
+    private final ChangeListener<ChatMessage> changeListener = ((changes, exception) -> {
         // Exit if there is an error
-        if (error != null) {
+        if (exception != null) {
             return;
         }
-        // Otherwise if the value is not null
-        else if (value != null) {
+        // Otherwise if there are changes
+        else if (changes != null) {
             // Set the count of the current List size
             int count = chatMessages.size();
+            // Track if a message was added to the end of the chat
+            boolean appended = false;
+            // These are the changes to write back to the cache
+            List<ChatMessage> changed = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
             // Iterate through the changed documents
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
+            for (Change<ChatMessage> change : changes) {
+                ChatMessage chatMessage = change.item;
                 // If the change type was ADDED
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    // Empty chat message
-                    ChatMessage chatMessage = new ChatMessage();
-                    // Add the information to the instance
-                    chatMessage.senderID = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverID = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime =
-                            getReadableDateTime(documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    // Add the instance to the List
-                    chatMessages.add(chatMessage);
+                if (change.type == Change.Type.ADDED) {
+                    if (!chatMessage.pending) {
+                        changed.add(chatMessage);
+                    }
+                    // Skip messages outside the window, paging will reach them
+                    if (!messagePager.acceptsLive(chatMessage)) {
+                        continue;
+                    }
+                    // Add the instance to the store in order
+                    int position = chatMessages.add(chatMessage);
+                    appended |= position == chatMessages.size() - 1;
+                }
+                // If the change type was MODIFIED
+                else if (change.type == Change.Type.MODIFIED) {
+                    // Update the instance in place, this is also how a pending message becomes sent
+                    if (!chatMessage.pending) {
+                        changed.add(chatMessage);
+                    }
+                    chatMessages.update(chatMessage);
+                }
+                // If the change type was REMOVED
+                else if (change.type == Change.Type.REMOVED) {
+                    // Remove the instance from the store
+                    removed.add(chatMessage.messageID);
+                    chatMessages.remove(chatMessage.messageID);
                 }
             }
-            // Sort the list with a custom compareTo
-            Collections.sort(chatMessages, (first, second) -> first.dateObject.compareTo(second.dateObject));
-            // If the messages are empty
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged();
-            }
-            // Otherwise notify of the changes and scroll to end
-            else {
-                chatAdapter.notifyItemRangeChanged(chatMessages.size(), chatMessages.size());
+            // Write the changes through to the cache
+            messageCache.put(conversationID, changed);
+            messageCache.remove(removed);
+            // If the messages were not empty and a new one arrived, scroll to end
+            if (count != 0 && appended) {
                 binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size()-1);
             }
             // Ensure the recycle view is visible
             binding.chatRecyclerView.setVisibility(View.VISIBLE);
+            markDelivered();
+            // Rows that arrive in view are read without a scroll
+            binding.chatRecyclerView.post(this::markRead);
         }
         // Remove the progress bar
         binding.progressBar.setVisibility(View.GONE);
     });
 
     /**
-     * This will get the Bitmap from an encoded string
-     * @param encodedImage this is the BASE64 string encoded image
-     * @return a Bitmap object to represent the image
+     * This will raise the delivered watermark to the newest message that reached the chat
+     */
+    private void markDelivered() {
+        for (int position = chatMessages.size() - 1; position >= 0; position--) {
+            // Pending messages carry the device clock, not the server clock
+            if (!chatMessages.get(position).pending) {
+                receiptTracker.onDelivered(chatMessages.get(position).timestamp);
+                return;
+            }
+        }
+    }
+
+    /**
+     * This will raise the read watermark to the newest message on screen,
+     * but only while the chat is in front of the user
      */
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes,0, bytes.length);
+    private void markRead() {
+        if (!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+        int lastVisible = layoutManager != null ? layoutManager.findLastVisibleItemPosition() : -1;
+        for (int position = Math.min(lastVisible, chatMessages.size() - 1); position >= 0; position--) {
+            // Pending messages carry the device clock, not the server clock
+            if (!chatMessages.get(position).pending) {
+                receiptTracker.onRead(chatMessages.get(position).timestamp);
+                return;
+            }
+        }
+    }
+
+    /**
+     * This will be called when the message input changes
+     * @param hasText this is true if there is text in the input
+     */
+    private void onTyped(boolean hasText) {
+        if (!hasText) {
+            stopTyping();
+            return;
+        }
+        typing = true;
+        typingThrottler.offer(true);
+        presenceHandler.removeCallbacks(stopTypingTask);
+        presenceHandler.postDelayed(stopTypingTask, TYPING_IDLE_MILLIS);
+    }
+
+    /**
+     * This will write that the user stopped typing straight away,
+     * instead of leaving it to the other user's timeout
+     */
+    private void stopTyping() {
+        presenceHandler.removeCallbacks(stopTypingTask);
+        if (!typing) {
+            return;
+        }
+        typing = false;
+        typingThrottler.offer(false);
+        typingThrottler.flush();
+    }
+
+    /**
+     * This stops typing once the user pauses
+     */
+    private final Runnable stopTypingTask = this::stopTyping;
+
+    /**
+     * This checks the status again so old states expire
+     */
+    private final Runnable statusRefresh = new Runnable() {
+        @Override
+        public void run() {
+            updateStatus();
+            presenceHandler.postDelayed(this, STATUS_REFRESH_MILLIS);
+        }
+    };
+
+    /**
+     * This will show whether the other user is typing or online
+     */
+    private void updateStatus() {
+        long now = System.currentTimeMillis();
+        if (conversationState.isTyping(receiverUser.userid, now)) {
+            binding.textStatus.setText(R.string.typing);
+            binding.textStatus.setVisibility(View.VISIBLE);
+        }
+        else if (PresenceRepository.isOnline(receiverLastSeen, now)) {
+            binding.textStatus.setText(R.string.online);
+            binding.textStatus.setVisibility(View.VISIBLE);
+        }
+        else {
+            binding.textStatus.setVisibility(View.GONE);
+        }
     }
 
     /**
@@ -174,7 +645,16 @@ public class ChatActivity extends AppCompatActivity {
         receiverUser = (User) getIntent().getSerializableExtra(Constants.KEY_USER);
         // Set the user name in the view
         binding.textName.setText(receiverUser.firstName + " " + receiverUser.lastName);
-
+        // A search result opens the chat at its message
+        String messageID = getIntent().getStringExtra(Constants.KEY_MESSAGE_ID);
+        if (messageID != null) {
+            jumpAnchor = new ChatMessage();
+            jumpAnchor.messageID = messageID;
+            jumpAnchor.senderID = ChatMessage.internID(getIntent().getStringExtra(Constants.KEY_SENDER_ID));
+            jumpAnchor.receiverID = ChatMessage.internID(getIntent().getStringExtra(Constants.KEY_RECEIVER_ID));
+            jumpAnchor.message = getIntent().getStringExtra(Constants.KEY_MESSAGE);
+            jumpAnchor.timestamp = getIntent().getLongExtra(Constants.KEY_TIMESTAMP, 0);
+        }
     }
 
     /**
@@ -185,16 +665,26 @@ public class ChatActivity extends AppCompatActivity {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
         // Sets the click listener for the send button
         binding.layoutSend.setOnClickListener(v -> sendMessage());
-    }
+        // Sets the click listener for the attach button
+        binding.imageAttach.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            pickImage.launch(intent);
+        });
+        // Tell the other user while this user is typing, sending clears the input and stops it
+        binding.inputMessage.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
 
-    /**
-     * This is the method that creates a consistent String format
-     * for date and time timestamps
-     * @param date this is the date object to derive a string from
-     * @return a string representation of the date and time
-     */
-    private String getReadableDateTime(Date date) {
-        return new SimpleDateFormat("MMM dd, yyyy - hh:mm a",
-                Locale.getDefault()).format(date);
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable text) {
+                onTyped(text.length() > 0);
+            }
+        });
     }
-}
\ No newline at end of file
+}
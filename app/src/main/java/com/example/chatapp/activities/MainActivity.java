@@ -1,17 +1,37 @@
 package com.example.chatapp.activities;
 
+import android.Manifest;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
-import android.util.Base64;
+import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
 
+import com.example.chatapp.adapters.ConversationAdapter;
+import com.example.chatapp.database.MessageCache;
+import com.example.chatapp.database.UserCache;
 import com.example.chatapp.databinding.ActivityMainBinding;
+import com.example.chatapp.firebase.ChatNotifier;
+import com.example.chatapp.listeners.ConversationListener;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.repositories.Change;
+import com.example.chatapp.repositories.ChangeListener;
+import com.example.chatapp.repositories.ImageRepository;
+import com.example.chatapp.repositories.LifecycleRegistration;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.AvatarCache;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.DeferredInitializer;
 import com.example.chatapp.utilities.PreferenceManager;
+import com.example.chatapp.utilities.PresenceManager;
+import com.example.chatapp.utilities.PreferenceSnapshot;
+import com.example.chatapp.utilities.StartupTracer;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
@@ -22,10 +42,15 @@ import java.util.HashMap;
 /**
  * This is the Main Activity view that implements PosterListener
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ConversationListener {
+    // This is the most recent conversations shown
+    private static final int MAX_CONVERSATIONS = 50;
+    // This is the request code for the notification permission
+    private static final int REQUEST_NOTIFICATIONS = 1;
     // Private variables
     private ActivityMainBinding binding;
     private PreferenceManager preferenceManager;
+    private ConversationAdapter conversationAdapter;
 
     /**
      * This is an override of the onCreate method
@@ -35,14 +60,29 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        StartupTracer.beginSection("MainActivity.inflate");
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
+        StartupTracer.endSection();
+        StartupTracer.beginSection("MainActivity.preferences");
         preferenceManager = new PreferenceManager((getApplicationContext()));
+        StartupTracer.endSection();
 
+        // Only what the first frame shows runs now
+        StartupTracer.beginSection("MainActivity.loadUserDetails");
         loadUserDetails();
+        StartupTracer.endSection();
         setListeners();
-        getToken();
+        StartupTracer.beginSection("MainActivity.initConversations");
+        initConversations();
+        StartupTracer.endSection();
 
+        // Everything else waits for the first frame
+        DeferredInitializer deferredInitializer = new DeferredInitializer(binding.getRoot());
+        deferredInitializer.add("MainActivity.getToken", this::getToken);
+        deferredInitializer.add("MainActivity.migrateUserImage", this::migrateUserImage);
+        deferredInitializer.add("MainActivity.requestNotificationPermission",
+                this::requestNotificationPermission);
     }
 
     /**
@@ -51,6 +91,10 @@ public class MainActivity extends AppCompatActivity {
     private void setListeners() {
         // Set the listener for the logout image
         binding.imageSignout.setOnClickListener(v -> signOut());
+        // Set the listener for the message search image
+        binding.imageSearch.setOnClickListener(v -> {
+            startActivity(new Intent(getApplicationContext(), SearchActivity.class));
+        });
         // Set the listener for the New Chat FAB
         binding.fabNewChat.setOnClickListener(v -> {
             startActivity(new Intent(getApplicationContext(), UserActivity.class));
@@ -62,14 +106,134 @@ public class MainActivity extends AppCompatActivity {
      */
     private void loadUserDetails() {
         // Set the username
-        binding.textName.setText(preferenceManager
-                .getString(Constants.KEY_FIRSTNAME + " " + Constants.KEY_LASTNAME));
-        // Load the user image profile
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE),Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes,0,bytes.length);
-        // Bind the image to the view
-        binding.imageProfile.setImageBitmap(bitmap);
+        PreferenceSnapshot.Session session = preferenceManager.getSession();
+        binding.textName.setText(session.getName());
+        // Load the user image profile off the main thread and bind it to the view
+        // Accounts made before the header variant show their avatar
+        String imageRef = session.imageHeaderRef != null ? session.imageHeaderRef : session.imageRef;
+        String encodedImage = session.image;
+        if (imageRef != null) {
+            AvatarCache.getInstance(getApplicationContext()).loadReference(imageRef, binding.imageProfile);
+        }
+        else {
+            AvatarCache.getInstance(getApplicationContext()).load(encodedImage, binding.imageProfile);
+        }
+    }
+
+    /**
+     * This is the override for the onStart method, the recent
+     * conversations are listened to while the Activity is visible
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // The first snapshot reports every conversation again
+        conversationAdapter.clear();
+        LifecycleRegistration.removeOn(this, Lifecycle.Event.ON_STOP, Repositories.getChatRepository()
+                .listenConversations(preferenceManager.getSession().userID,
+                        MAX_CONVERSATIONS, conversationListener));
+        // Keep the user online while the app is visible
+        PresenceManager.getInstance().start(preferenceManager.getSession().userID);
+    }
+
+    /**
+     * This is the override for the onStop method
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        PresenceManager.getInstance().stop();
+    }
+
+    /**
+     * This will set up the recent conversations list
+     */
+    private void initConversations() {
+        conversationAdapter = new ConversationAdapter(this);
+        binding.conversationsRecyclerView.setAdapter(conversationAdapter);
+    }
+
+    /**
+     * This is the ChangeListener for the recent conversations
+     */
+    private final ChangeListener<Conversation> conversationListener = ((changes, exception) -> {
+        binding.progressBar.setVisibility(View.GONE);
+        // Exit if there is an error
+        if (exception != null || changes == null) {
+            return;
+        }
+        // Apply each change at the positions the database reports
+        boolean changedTop = false;
+        for (Change<Conversation> change : changes) {
+            // A conversation read here or on another device needs no notification
+            if (change.type != Change.Type.REMOVED && change.item.unreadCount == 0) {
+                ChatNotifier.getInstance(getApplicationContext())
+                        .onConversationRead(change.item.conversationID, change.item.lastTimestamp);
+            }
+            if (change.type == Change.Type.ADDED) {
+                conversationAdapter.addConversation(change.newIndex, change.item);
+            }
+            else if (change.type == Change.Type.MODIFIED) {
+                conversationAdapter.updateConversation(change.oldIndex, change.newIndex, change.item);
+            }
+            else if (change.type == Change.Type.REMOVED) {
+                conversationAdapter.removeConversation(change.oldIndex);
+            }
+            changedTop |= change.newIndex == 0;
+        }
+        // Newest conversation first, keep the top in view when it changes
+        if (changedTop) {
+            binding.conversationsRecyclerView.scrollToPosition(0);
+        }
+        boolean empty = conversationAdapter.getItemCount() == 0;
+        binding.conversationsRecyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        binding.textEmptyMessage.setVisibility(empty ? View.VISIBLE : View.GONE);
+        // The recent conversations are the content of the screen
+        StartupTracer.reportFullyDrawn(this);
+    });
 
+    /**
+     * This is the override for the onConversationClicked method
+     * @param conversation the conversation that was clicked
+     */
+    @Override
+    public void onConversationClicked(Conversation conversation) {
+        // Open the chat with the other user
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_USER, conversation.getPartner());
+        startActivity(intent);
+    }
+
+    /**
+     * This will move the inline image of the signed in user into the
+     * image collection once, leaving only a reference in the user document
+     */
+    private void migrateUserImage() {
+        String encodedImage = preferenceManager.getString(Constants.KEY_IMAGE);
+        if (preferenceManager.getString(Constants.KEY_IMAGE_REF) != null || encodedImage == null) {
+            return;
+        }
+        new ImageRepository(FirebaseFirestore.getInstance())
+                .migrateUserImage(preferenceManager.getString(Constants.KEY_USERID), encodedImage)
+                .addOnSuccessListener(imageRef -> {
+                    // Keep the reference and drop the inline copy
+                    preferenceManager.edit(batch -> batch
+                            .putString(Constants.KEY_IMAGE_REF, imageRef)
+                            .remove(Constants.KEY_IMAGE));
+                });
+    }
+
+    /**
+     * This will ask for the permission to post message notifications,
+     * which is needed from Android 13
+     */
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_NOTIFICATIONS);
+        }
     }
 
     /**
@@ -84,7 +248,12 @@ public class MainActivity extends AppCompatActivity {
      * This will get the FCM token for the user from the database
      */
     private void getToken() {
-        FirebaseMessaging.getInstance().getToken().addOnSuccessListener(this::updateToken);
+        FirebaseMessaging.getInstance().getToken().addOnSuccessListener(token -> {
+            // Skip the write when the database already has this token
+            if (!token.equals(preferenceManager.getString(Constants.KEY_FCM_TOKEN))) {
+                updateToken(token);
+            }
+        });
     }
 
     /**
@@ -98,9 +267,14 @@ public class MainActivity extends AppCompatActivity {
         DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
                 .document((preferenceManager.getString(Constants.KEY_USERID)));
         // Update the document with the new token
-        documentReference.update(Constants.KEY_FCM_TOKEN,token)
+        documentReference.update(Constants.KEY_FCM_TOKEN, token,
+                        Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp())
                 // Toast handles based on result
-                .addOnSuccessListener(result -> showToast("Token Updated Successfully"))
+                .addOnSuccessListener(result -> {
+                    // Remember the token that was pushed
+                    preferenceManager.putString(Constants.KEY_FCM_TOKEN, token);
+                    showToast("Token Updated Successfully");
+                })
                 .addOnFailureListener(exception -> showToast("Token Update Failed"));
     }
 
@@ -120,12 +294,17 @@ public class MainActivity extends AppCompatActivity {
         HashMap<String,Object> updates = new HashMap<>();
         // Put the token into the hashmap
         updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
+        updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
         // Update the document
         documentReference.update(updates)
                 // Result handlers
                 .addOnSuccessListener(result -> {
                     // Clear the preference manager
                     preferenceManager.clear();
+                    // Clear what the device kept of this user, the message
+                    // cache clears the search index with it
+                    new MessageCache(getApplicationContext()).clear();
+                    new UserCache(getApplicationContext()).clear();
                     // Redirect to the SignIn Activity
                     startActivity(new Intent(getApplicationContext(), SignInActivity.class));
                     // Finish and close out the resources for this view
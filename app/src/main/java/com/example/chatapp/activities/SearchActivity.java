@@ -0,0 +1,181 @@
+package com.example.chatapp.activities;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.chatapp.R;
+import com.example.chatapp.adapters.SearchResultAdapter;
+import com.example.chatapp.database.SearchIndex;
+import com.example.chatapp.databinding.ActivitySearchBinding;
+import com.example.chatapp.listeners.SearchResultListener;
+import com.example.chatapp.models.SearchResult;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This is the Search activity view for finding messages. The search runs
+ * against the index on the device, so it works offline and never reads
+ * the messages from the server. Only the newest matches are ranked, and
+ * the user is told when older ones were left out. The other user of
+ * each result is loaded once, and choosing a result opens the chat at it
+ */
+public class SearchActivity extends AppCompatActivity implements SearchResultListener {
+    // These are the search constants
+    private static final int MAX_RESULTS = 50;
+    private static final long SEARCH_DELAY_MILLIS = 150;
+    // These are the private variables
+    private ActivitySearchBinding binding;
+    private PreferenceManager preferenceManager;
+    private SearchIndex searchIndex;
+    private SearchResultAdapter searchResultAdapter;
+    private final Set<String> partnerIDs = new HashSet<>();
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private List<SearchResult> results = new ArrayList<>();
+    private boolean limited;
+    private String query = "";
+
+    /**
+     * This is the override for the onCreate method
+     * @param savedInstanceState this is the bundle of saved configuration
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Attach the binding
+        binding = ActivitySearchBinding.inflate(getLayoutInflater());
+        preferenceManager = new PreferenceManager(getApplicationContext());
+        searchIndex = SearchIndex.getInstance(getApplicationContext());
+        // Set the content view
+        setContentView(binding.getRoot());
+        searchResultAdapter = new SearchResultAdapter(this, preferenceManager.getSession().userID);
+        binding.resultsRecyclerView.setAdapter(searchResultAdapter);
+        setListeners();
+    }
+
+    /**
+     * Sets the listeners in this view
+     */
+    private void setListeners() {
+        binding.imageBack.setOnClickListener(v -> onBackPressed());
+        // Search as the user types, once typing pauses
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable text) {
+                query = text.toString();
+                searchHandler.removeCallbacks(searchTask);
+                searchHandler.postDelayed(searchTask, SEARCH_DELAY_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * This searches the index for the current query
+     */
+    private final Runnable searchTask = () -> {
+        if (query.trim().isEmpty()) {
+            results = new ArrayList<>();
+            limited = false;
+            binding.progressBar.setVisibility(View.GONE);
+            showResults();
+            return;
+        }
+        binding.progressBar.setVisibility(View.VISIBLE);
+        searchIndex.search(query, preferenceManager.getSession().userID, MAX_RESULTS,
+                (searched, found, foundLimited) -> {
+                    // A newer query is on its way
+                    if (!searched.equals(query)) {
+                        return;
+                    }
+                    binding.progressBar.setVisibility(View.GONE);
+                    results = found;
+                    limited = foundLimited;
+                    showResults();
+                });
+    };
+
+    /**
+     * This shows the results and loads the users they were with
+     */
+    private void showResults() {
+        searchResultAdapter.setResults(results);
+        loadPartners();
+        boolean empty = searchResultAdapter.getItemCount() == 0;
+        binding.resultsRecyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        if (limited && !empty) {
+            binding.textSearchLimit.setText(getString(R.string.search_limited, SearchIndex.MAX_CANDIDATES));
+            binding.textSearchLimit.setVisibility(View.VISIBLE);
+        }
+        else {
+            binding.textSearchLimit.setVisibility(View.GONE);
+        }
+        if (empty && !query.trim().isEmpty() && binding.progressBar.getVisibility() != View.VISIBLE) {
+            binding.textEmptyMessage.setText(R.string.no_messages_found);
+            binding.textEmptyMessage.setVisibility(View.VISIBLE);
+        }
+        else {
+            binding.textEmptyMessage.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * This will load the other user of every result, each user only once
+     */
+    private void loadPartners() {
+        String userID = preferenceManager.getSession().userID;
+        for (SearchResult searchResult : results) {
+            String partnerID = searchResult.getPartnerID(userID);
+            if (partnerID == null || !partnerIDs.add(partnerID)) {
+                continue;
+            }
+            Repositories.getUserRepository().loadUser(partnerID, (partner, exception) -> {
+                if (partner != null) {
+                    searchResultAdapter.setPartner(partner);
+                }
+                else {
+                    // Try again with the next results
+                    partnerIDs.remove(partnerID);
+                }
+            });
+        }
+    }
+
+    /**
+     * This is the override for the onSearchResultClicked method
+     * @param searchResult the result that was clicked
+     * @param partner the other user of the result
+     */
+    @Override
+    public void onSearchResultClicked(SearchResult searchResult, User partner) {
+        // Open the chat with the other user at the message
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_USER, partner);
+        intent.putExtra(Constants.KEY_MESSAGE_ID, searchResult.messageID);
+        intent.putExtra(Constants.KEY_SENDER_ID, searchResult.senderID);
+        intent.putExtra(Constants.KEY_RECEIVER_ID, searchResult.receiverID);
+        intent.putExtra(Constants.KEY_MESSAGE, searchResult.message);
+        intent.putExtra(Constants.KEY_TIMESTAMP, searchResult.timestamp);
+        startActivity(intent);
+    }
+}
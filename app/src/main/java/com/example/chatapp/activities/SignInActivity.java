@@ -9,12 +9,9 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chatapp.databinding.ActivitySignInBinding;
+import com.example.chatapp.repositories.Repositories;
 import com.example.chatapp.utilities.Constants;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
-
-import java.util.HashMap;
 
 /**
  * This is the Sign In Activity view
@@ -66,26 +63,20 @@ public class SignInActivity extends AppCompatActivity {
     private void SignIn() {
         // Check loading
         loadingData(true);
-        // Initialize the database object
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        // Get from firebase database
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                // ensure password matches
-                .whereEqualTo(Constants.KEY_PASSWORD,binding.inputPassword.getText().toString())
-                // ensure email matches
-                .whereEqualTo(Constants.KEY_EMAIL,binding.inputEmail.getText().toString())
-                .get()
-                // If all matches
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null && task.getResult().getDocuments().size() > 0) {
-                        // Get the database document data
-                        DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-                        // Update the preferences
-                        preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN,true);
-                        preferenceManager.putString(Constants.KEY_USERID,documentSnapshot.getId());
-                        preferenceManager.putString(Constants.KEY_FIRSTNAME,documentSnapshot.getString(Constants.KEY_FIRSTNAME));
-                        preferenceManager.putString(Constants.KEY_LASTNAME,documentSnapshot.getString(Constants.KEY_LASTNAME));
-                        preferenceManager.putString(Constants.KEY_IMAGE,documentSnapshot.getString(Constants.KEY_IMAGE));
+        // One keyed read, the password is checked against its salted hash
+        Repositories.getUserRepository().signIn(binding.inputEmail.getText().toString(),
+                binding.inputPassword.getText().toString(), (user, exception) -> {
+                    if (exception == null) {
+                        // Store the session with a single write
+                        preferenceManager.edit(batch -> batch
+                                .putBoolean(Constants.KEY_IS_SIGNED_IN,true)
+                                .putString(Constants.KEY_USERID,user.userid)
+                                .putString(Constants.KEY_FIRSTNAME,user.firstName)
+                                .putString(Constants.KEY_LASTNAME,user.lastName)
+                                .putString(Constants.KEY_IMAGE_REF,user.imageRef)
+                                .putString(Constants.KEY_IMAGE_HEADER_REF,user.imageHeaderRef)
+                                // Signing in moves an older inline image to a reference
+                                .remove(Constants.KEY_IMAGE));
                         // Notify that login was valid
                         showToast("Login Successful");
                         // Change to the Main Activity view
@@ -3,12 +3,9 @@ package com.example.chatapp.activities;
 import com.example.chatapp.utilities.Constants;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Patterns;
 import android.view.View;
 import android.widget.Toast;
@@ -18,13 +15,17 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chatapp.databinding.ActivitySignUpBinding;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.AccountException;
+import com.example.chatapp.repositories.ImageRepository;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.ImageIngestor;
+import com.example.chatapp.utilities.ImagePlan;
 import com.example.chatapp.utilities.PreferenceManager;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.util.EnumMap;
 
 /**
  * This is the Sign Up Activity view
@@ -32,7 +33,8 @@ import java.util.HashMap;
 public class SignUpActivity extends AppCompatActivity {
     // Instance Variables
     private ActivitySignUpBinding binding;
-    private String encodedImage;
+    private EnumMap<ImagePlan.Variant, String> encodedImages;
+    private ImageIngestor.Job ingestJob;
     private PreferenceManager preferenceManager;
 
     /**
@@ -51,6 +53,18 @@ public class SignUpActivity extends AppCompatActivity {
         setListeners();
     }
 
+    /**
+     * This is the override for the onDestroy method, a photo still
+     * being read is not needed anymore
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (ingestJob != null) {
+            ingestJob.cancel();
+        }
+    }
+
     /**
      * This will set the listener for the various buttons
      * in the view
@@ -89,83 +103,80 @@ public class SignUpActivity extends AppCompatActivity {
     private void signUp() {
         // Check loading
         loadingData(true);
-        // Initialize the database object and user Hash
+        // Build the new user
+        User user = new User();
+        user.firstName = binding.inputFirstName.getText().toString();
+        user.lastName = binding.inputLastName.getText().toString();
+        user.email = binding.inputEmail.getText().toString();
+        // Write the image variants first, identical images share a document
         FirebaseFirestore database = FirebaseFirestore.getInstance();
-        HashMap<String, String> user = new HashMap<>();
-        // Create the user according to database contract hash
-        user.put(Constants.KEY_FIRSTNAME,binding.inputFirstName.getText().toString());
-        user.put(Constants.KEY_LASTNAME,binding.inputLastName.getText().toString());
-        user.put(Constants.KEY_EMAIL,binding.inputEmail.getText().toString());
-        user.put(Constants.KEY_PASSWORD,binding.inputPassword.getText().toString());
-        user.put(Constants.KEY_IMAGE,encodedImage);
-        // Post to firebase database
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .add(user)
-                // Success adding user
-                .addOnSuccessListener(documentReference -> {
-                    loadingData(false);
-                    // Save the user information to Preference Manager
-                    preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN,true);
-                    preferenceManager.putString(Constants.KEY_FIRSTNAME,binding.inputFirstName.getText().toString());
-                    preferenceManager.putString(Constants.KEY_LASTNAME,binding.inputLastName.getText().toString());
-                    preferenceManager.putString(Constants.KEY_IMAGE,encodedImage);
-                    preferenceManager.putString(Constants.KEY_USERID, documentReference.getId());
-                    // Change activity to MainActivity
-                    Intent intent = new Intent(getApplicationContext(),MainActivity.class);
-                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    startActivity(intent);
-                })
-                // Failure to add user
+        WriteBatch imageBatch = database.batch();
+        ImageRepository imageRepository = new ImageRepository(database);
+        user.imageRef = imageRepository.putImage(imageBatch, encodedImages.get(ImagePlan.Variant.AVATAR));
+        user.imageThumbnailRef = imageRepository.putImage(imageBatch, encodedImages.get(ImagePlan.Variant.THUMBNAIL));
+        user.imageHeaderRef = imageRepository.putImage(imageBatch, encodedImages.get(ImagePlan.Variant.HEADER));
+        imageBatch.commit()
+                .addOnSuccessListener(result -> Repositories.getUserRepository().signUp(user,
+                        binding.inputPassword.getText().toString(), (account, exception) -> {
+                            loadingData(false);
+                            // The email belongs to another account
+                            if (exception instanceof AccountException) {
+                                showToast("An account with this email already exists");
+                                return;
+                            }
+                            // Failure to add user
+                            if (exception != null) {
+                                showToast(exception.getMessage());
+                                return;
+                            }
+                            // Store the session with a single write
+                            preferenceManager.edit(preferences -> preferences
+                                    .putBoolean(Constants.KEY_IS_SIGNED_IN,true)
+                                    .putString(Constants.KEY_FIRSTNAME,account.firstName)
+                                    .putString(Constants.KEY_LASTNAME,account.lastName)
+                                    .putString(Constants.KEY_IMAGE_REF,account.imageRef)
+                                    .putString(Constants.KEY_IMAGE_HEADER_REF,account.imageHeaderRef)
+                                    .putString(Constants.KEY_USERID,account.userid));
+                            // Change activity to MainActivity
+                            Intent intent = new Intent(getApplicationContext(),MainActivity.class);
+                            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                            startActivity(intent);
+                        }))
+                // Failure to write the images
                 .addOnFailureListener(exception -> {
                     loadingData(false);
                     showToast(exception.getMessage());
                 });
     }
 
-    /**
-     * Encodes a BitMap object into a BASE64 string so it can be
-     * stored in a database
-     * @param image bitmap image to be encoded
-     * @return string of the image in BASE64
-     */
-    private String encodeImage(Bitmap image) {
-        int previewWidth = 150;
-        int previewHeight = image.getHeight() * previewWidth / image.getWidth();
-
-        Bitmap previewImage = Bitmap.createScaledBitmap(image,previewWidth,previewHeight,false);
-
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-        previewImage.compress(Bitmap.CompressFormat.JPEG,50,byteArrayOutputStream);
-
-        byte[] bytes = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(bytes,Base64.DEFAULT);
-    }
-
     /**
      * This will take the result of an activity that picks an image
-     * and then decode the image represented as a BASE64 string
+     * and read it into its variants in the background
      */
     private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 // If the Intent response was ok
-                if (result.getResultCode() == RESULT_OK) {
+                if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                     // Get the URI data
                     Uri imageUri = result.getData().getData();
-                    // Try and decode
-                    try {
-                        InputStream inputStream = getContentResolver().openInputStream(imageUri);
-                        Bitmap image = BitmapFactory.decodeStream(inputStream);
-
-                        binding.imageProfile.setImageBitmap(image);
-                        binding.addImageMessage.setVisibility(View.GONE);
-                        encodedImage = encodeImage(image);
-                    }
-                    // Exception if decode fails
-                    catch (FileNotFoundException e) {
-                        e.printStackTrace();
+                    // Only the latest pick counts
+                    if (ingestJob != null) {
+                        ingestJob.cancel();
                     }
+                    encodedImages = null;
+                    ingestJob = ImageIngestor.getInstance(getApplicationContext())
+                            .ingest(imageUri, (image, exception) -> {
+                                ingestJob = null;
+                                // Exception if decode fails
+                                if (exception != null) {
+                                    showToast("Could not read that image");
+                                    return;
+                                }
+                                binding.imageProfile.setImageBitmap(image.preview);
+                                binding.addImageMessage.setVisibility(View.GONE);
+                                encodedImages = image.encodedImages;
+                            });
                 }
             }
     );
@@ -184,7 +195,7 @@ public class SignUpActivity extends AppCompatActivity {
         String password = binding.inputPassword.getText().toString();
         String passwordConfirm = binding.inputConfirmPassword.getText().toString();
         // Conditional checks for conformance of inputs
-        if (encodedImage == null) {
+        if (encodedImages == null) {
             showToast("Please select an image for profile");
             return false;
         }
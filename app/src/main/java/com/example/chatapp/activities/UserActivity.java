@@ -2,30 +2,67 @@ package com.example.chatapp.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatapp.adapters.UserAdapter;
+import com.example.chatapp.database.UserCache;
 import com.example.chatapp.databinding.ActivityUserBinding;
 
 import com.example.chatapp.listeners.UserListener;
 import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.LifecycleRegistration;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.repositories.UserRepository;
 import com.example.chatapp.utilities.Constants;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.example.chatapp.utilities.PresenceManager;
+import com.example.chatapp.utilities.UserDirectory;
+import com.example.chatapp.utilities.UserTrie;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * This is the User activity view, which extended the UserListener
+ * This is the User activity view, which extended the UserListener.
+ * The directory is shown from the local cache straight away, then
+ * only the users that changed since the last sync are fetched
  */
 public class UserActivity extends AppCompatActivity implements UserListener {
+    // These are the directory constants
+    private static final int PAGE_SIZE = 30;
+    private static final int PREFETCH_DISTANCE = 5;
+    private static final long SEARCH_DELAY_MILLIS = 300;
+    // The online dots are checked this often so old heartbeats expire on screen
+    private static final long PRESENCE_REFRESH_MILLIS = 30_000;
     // These are the private variables
     private ActivityUserBinding binding;
     private PreferenceManager preferenceManager;
+    private UserRepository userRepository;
+    private UserAdapter usersAdapter;
+    private UserCache userCache;
+    private String currentUserID;
+    private final UserDirectory directory = new UserDirectory();
+    private final UserTrie userTrie = new UserTrie();
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Handler presenceHandler = new Handler(Looper.getMainLooper());
+    private Map<String, Long> lastSeen = new HashMap<>();
+    private String query = "";
+    // The cache is read first, then pages and syncs run one at a time
+    private boolean cacheLoaded, loadingPage;
+    private long syncedAt = UserCache.NOT_SYNCED;
 
     /**
      * This is the override for the onCreate method
@@ -38,74 +75,312 @@ public class UserActivity extends AppCompatActivity implements UserListener {
         binding = ActivityUserBinding.inflate(getLayoutInflater());
         // Bind the preference manager
         preferenceManager = new PreferenceManager(getApplicationContext());
+        currentUserID = preferenceManager.getString(Constants.KEY_USERID);
+        userRepository = Repositories.getUserRepository();
+        userCache = new UserCache(getApplicationContext());
         // Set the content view
         setContentView(binding.getRoot());
+        // Attach an empty adapter that pages are added to
+        usersAdapter = new UserAdapter(new ArrayList<>(), this);
+        binding.usersRecyclerView.setAdapter(usersAdapter);
         // Set the listeners
         setListeners();
-        // Get list of users
-        getUsers();
+        // Show the cached users, then bring them up to date
+        loadCachedUsers();
     }
 
+    /**
+     * This is the override for the onStart method, the online users
+     * are listened to while the Activity is visible
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        PresenceManager.getInstance().start(currentUserID);
+        LifecycleRegistration.removeOn(this, Lifecycle.Event.ON_STOP, Repositories.getPresenceRepository()
+                .listenOnlineUsers((result, exception) -> {
+                    if (exception == null && result != null) {
+                        lastSeen = result;
+                        usersAdapter.setLastSeen(lastSeen);
+                    }
+                }));
+        presenceHandler.postDelayed(presenceRefresh, PRESENCE_REFRESH_MILLIS);
+    }
+
+    /**
+     * This is the override for the onStop method
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        PresenceManager.getInstance().stop();
+        presenceHandler.removeCallbacks(presenceRefresh);
+    }
+
+    /**
+     * This redraws the online dots so the users whose heartbeat stopped go offline
+     */
+    private final Runnable presenceRefresh = new Runnable() {
+        @Override
+        public void run() {
+            usersAdapter.setLastSeen(lastSeen);
+            presenceHandler.postDelayed(this, PRESENCE_REFRESH_MILLIS);
+        }
+    };
+
     /**
      * Sets the listeners in this view
      */
     private void setListeners() {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
+        // Load the next page as the list nears its end
+        binding.usersRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (query.isEmpty() && layoutManager.findLastVisibleItemPosition()
+                        >= usersAdapter.getItemCount() - 1 - PREFETCH_DISTANCE) {
+                    getUsers();
+                }
+            }
+        });
+        // Filter as the user types
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable text) {
+                search(text.toString());
+            }
+        });
     }
 
     /**
-     * Gets the users to display in the view
+     * This will show the users cached on the device, then ask the
+     * server for the ones that changed since they were cached
      */
-    private void getUsers() {
-        // Show the progress bar
+    private void loadCachedUsers() {
         loading(true);
-        // Initialize the database
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        // Get the users from the database
-        database.collection(Constants.KEY_COLLECTION_USERS).get()
-                .addOnCompleteListener(task -> {
-                    // Remove progress bar
+        userCache.load((users, cachedSyncedAt, complete) -> {
+            cacheLoaded = true;
+            syncedAt = cachedSyncedAt;
+            directory.addPage(users);
+            directory.setComplete(complete);
+            for (User user : removeCurrentUser(users)) {
+                userTrie.insert(user);
+            }
+            if (directory.size() > 0) {
+                loading(false);
+                showDirectory();
+            }
+            // A fill that never started has nothing to bring up to date
+            if (syncedAt == UserCache.NOT_SYNCED) {
+                getUsers();
+                return;
+            }
+            loadingPage = true;
+            syncChanges(syncedAt, null, new LinkedHashMap<>());
+        });
+    }
+
+    /**
+     * This will fetch the users that changed since the last sync, a
+     * page at a time, and then apply them all at once
+     * @param since this is the update time to fetch changes after
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param changed these are the changes fetched so far by user ID
+     */
+    private void syncChanges(long since, User after, Map<String, User> changed) {
+        userRepository.loadUsersUpdatedSince(since, after, PAGE_SIZE, (page, exception) -> {
+            // The cached users are still shown if the sync fails
+            if (exception != null || page == null) {
+                loadingPage = false;
+                getUsers();
+                return;
+            }
+            for (User user : page) {
+                changed.put(user.userid, user);
+            }
+            // A full page may have more changes after it, even at the same time
+            if (page.size() == PAGE_SIZE) {
+                syncChanges(since, page.get(page.size() - 1), changed);
+                return;
+            }
+            long newest = since;
+            for (User user : changed.values()) {
+                newest = Math.max(newest, user.updatedAt);
+            }
+            applyChanges(new ArrayList<>(changed.values()), newest);
+            loadingPage = false;
+            getUsers();
+        });
+    }
+
+    /**
+     * This will apply changed users to the list and the cache, so only
+     * their rows are redrawn
+     * @param changed these are the changed users
+     * @param newest this is the update time of the newest change
+     */
+    private void applyChanges(List<User> changed, long newest) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> droppedIDs = directory.applyChanges(changed);
+        List<User> kept = new ArrayList<>();
+        for (User user : changed) {
+            if (directory.contains(user.userid)) {
+                kept.add(user);
+            }
+            if (!user.userid.equals(currentUserID)) {
+                userTrie.insert(user);
+            }
+        }
+        syncedAt = newest;
+        userCache.applyChanges(kept, droppedIDs, newest);
+        if (query.isEmpty()) {
+            showDirectory();
+        }
+        else {
+            usersAdapter.setUsers(userTrie.search(query));
+            showUsers();
+        }
+    }
+
+    /**
+     * Gets the next page of users to display in the view
+     */
+    private void getUsers() {
+        if (!cacheLoaded || loadingPage || directory.isComplete()) {
+            return;
+        }
+        loadingPage = true;
+        // Show the progress bar for the first page
+        loading(directory.size() == 0);
+        // A new fill syncs changes from the newest update before its first page
+        if (syncedAt == UserCache.NOT_SYNCED) {
+            userRepository.loadLastUpdatedAt((lastUpdatedAt, exception) -> {
+                if (exception != null || lastUpdatedAt == null) {
+                    loadingPage = false;
                     loading(false);
-                    // Get the current userID
-                    String currentUserID = preferenceManager.getString(Constants.KEY_USERID);
-                    // If they results are successful
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        // Initialize a new list of users
-                        List<User> users = new ArrayList<>();
-                        // Iterate through the results
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            // If the user is the same as the logged in one, skip
-                            if (currentUserID.equals(queryDocumentSnapshot.getId())) {
-                                continue;
-                            }
-                            // Otherwise, create a user object
-                            User user = new User();
-                            // Add the information from the database
-                            user.firstName = queryDocumentSnapshot.getString(Constants.KEY_FIRSTNAME);
-                            user.lastName = queryDocumentSnapshot.getString(Constants.KEY_LASTNAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.userid = queryDocumentSnapshot.getId();
-                            // Add the user to the list
-                            users.add(user);
-                        }
-                        // If the users is greater than zero add the adaptor
-                        if (users.size() > 0) {
-                            UserAdapter usersAdapter = new UserAdapter(users, this);
-                            binding.usersRecyclerView.setAdapter(usersAdapter);
-                            binding.usersRecyclerView.setVisibility(View.VISIBLE);
-                        }
-                        // Otherwise show error message
-                        else {
-                            showErrorMessage();
-                        }
+                    showErrorMessage();
+                    return;
+                }
+                syncedAt = lastUpdatedAt;
+                userCache.setSyncedAt(syncedAt);
+                loadPage();
+            });
+        }
+        else {
+            loadPage();
+        }
+    }
+
+    /**
+     * This will load the page after the last loaded user
+     */
+    private void loadPage() {
+        userRepository.loadUsers(directory.getLast(), PAGE_SIZE, (page, exception) -> {
+            loadingPage = false;
+            // Remove progress bar
+            loading(false);
+            // If they results are successful
+            if (exception == null && page != null) {
+                directory.addPage(page);
+                userCache.put(page);
+                if (page.size() < PAGE_SIZE) {
+                    directory.setComplete(true);
+                    userCache.setComplete();
+                }
+                for (User user : removeCurrentUser(page)) {
+                    userTrie.insert(user);
+                }
+                // Show the page unless a search is showing
+                if (query.isEmpty()) {
+                    showDirectory();
+                }
+            }
+            // Otherwise show error message if failure to get data from database
+            else if (directory.size() == 0) {
+                showErrorMessage();
+            }
+        });
+    }
+
+    /**
+     * This will show the loaded directory, only the rows that changed are redrawn
+     */
+    private void showDirectory() {
+        usersAdapter.setUsers(removeCurrentUser(directory.getUsers()));
+        showUsers();
+    }
+
+    /**
+     * This will filter the list for a search. Loaded users are filtered
+     * straight away, and the server is searched once typing pauses
+     * @param text this is the text the user typed
+     */
+    private void search(String text) {
+        query = UserTrie.normalize(text);
+        searchHandler.removeCallbacksAndMessages(null);
+        // An empty search goes back to the paged directory
+        if (query.isEmpty()) {
+            showDirectory();
+            return;
+        }
+        // Instant results from the users already loaded
+        usersAdapter.setUsers(userTrie.search(query));
+        showUsers();
+        // Then ask the server for users that are not loaded yet
+        String searched = query;
+        searchHandler.postDelayed(() -> userRepository.searchUsers(searched, PAGE_SIZE,
+                (users, exception) -> {
+                    if (exception != null) {
+                        return;
+                    }
+                    for (User user : removeCurrentUser(users)) {
+                        userTrie.insert(user);
                     }
-                    // Otherwise show error message if failure to get data from database
-                    else {
-                        showErrorMessage();
+                    // Only show the results if the search is still the same
+                    if (searched.equals(query)) {
+                        usersAdapter.setUsers(userTrie.search(query));
+                        showUsers();
                     }
-                });
+                }), SEARCH_DELAY_MILLIS);
+    }
+
+    /**
+     * This will leave the logged in user out of a list of users
+     * @param users these are the users to filter
+     * @return the users without the logged in user
+     */
+    private List<User> removeCurrentUser(List<User> users) {
+        List<User> others = new ArrayList<>();
+        for (User user : users) {
+            if (!user.userid.equals(currentUserID)) {
+                others.add(user);
+            }
+        }
+        return others;
+    }
+
+    /**
+     * This will show the list, or the error message if it is empty
+     */
+    private void showUsers() {
+        if (usersAdapter.getItemCount() > 0) {
+            binding.usersRecyclerView.setVisibility(View.VISIBLE);
+            binding.textErrorMessage.setVisibility(View.GONE);
+        }
+        else {
+            showErrorMessage();
+        }
     }
 
     /**
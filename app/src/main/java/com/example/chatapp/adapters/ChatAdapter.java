@@ -1,40 +1,223 @@
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
 import com.example.chatapp.databinding.ItemContainerReceivedMessageBinding;
 import com.example.chatapp.databinding.ItemContainerSentMessageBinding;
+import com.example.chatapp.listeners.MessageListener;
 import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.AttachmentLoader;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.MessageStore;
+import com.example.chatapp.utilities.TimestampFormatter;
 
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
- * This is the Chat Adaptor used for Recycle Views
+ * This is the Chat Adaptor used for Recycle Views. Rows have stable
+ * IDs, the first rows are inflated in the background before the chat
+ * shows, and the text layout of long messages is measured in the
+ * background so binding them while flinging stays cheap
  */
-public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+        implements MessageListener {
     // These are the private variables
-    private Bitmap receiverProfileImage;
-    private final List<ChatMessage> chatMessages;
+    private final User receiverUser;
+    private final MessageStore chatMessages;
     private final String sendID;
     // These are the view type constants
     public static final int VIEW_TYPE_SENT = 1;
     public static final int VIEW_TYPE_RECEIVED = 2;
+    // Rows kept for reuse of each type, a fling through mixed rows needs more than the default
+    private static final int POOL_SIZE_PER_TYPE = 15;
+    // Rows of each type inflated in the background before the first messages show
+    private static final int PREWARM_PER_TYPE = 8;
+    // Messages at least this long get their text layout measured in the background
+    private static final int PRECOMPUTE_MIN_LENGTH = 120;
+    // Measured texts kept for each type
+    private static final int PRECOMPUTED_PER_TYPE = 200;
+    // Tall attachments are cropped to this height over width
+    private static final float MAX_ATTACHMENT_ASPECT = 4f / 3f;
+    // Text layout is measured here instead of on the main thread
+    private static final Executor TEXT_EXECUTOR = Executors.newSingleThreadExecutor();
+    // This is the payload of a sent row whose receipt changed
+    private static final Object PAYLOAD_RECEIPT = new Object();
+    // These are the other user's watermarks, sent rows at or before them are delivered or seen
+    private long peerDeliveredUpTo, peerReadUpTo;
+    // These are the rendering variables
+    private final SparseArray<ArrayDeque<View>> prewarmedViews = new SparseArray<>();
+    private final SparseArray<TextLayouts> textLayouts = new SparseArray<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * These are the measured texts of one row type
+     */
+    private static class TextLayouts {
+        // These are the text settings of the rows, known once a row is made
+        PrecomputedTextCompat.Params params;
+        // These are the measured texts by their text
+        final LruCache<String, PrecomputedTextCompat> cache = new LruCache<>(PRECOMPUTED_PER_TYPE);
+        // These are the texts being measured
+        final Set<String> measuring = new HashSet<>();
+    }
 
     /**
      * This is the default constructor
-     * @param chatMessages these are the chat messages
-     * @param receiverProfileImage this is the receiver profile image bitmap
+     * @param chatMessages this is the ordered store of chat messages
+     * @param receiverUser this is the receiver, for their profile image
      * @param sendID this is the senders user ID
      */
-    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileImage, String sendID) {
+    public ChatAdapter(MessageStore chatMessages, User receiverUser, String sendID) {
         this.chatMessages = chatMessages;
-        this.receiverProfileImage = receiverProfileImage;
+        this.receiverUser = receiverUser;
         this.sendID = sendID;
+        // Rows keep their views when messages move or the list is refreshed
+        setHasStableIds(true);
+        textLayouts.put(VIEW_TYPE_SENT, new TextLayouts());
+        textLayouts.put(VIEW_TYPE_RECEIVED, new TextLayouts());
+        // Listen to the store so only the changed rows are redrawn
+        this.chatMessages.setMessageListener(this);
+    }
+
+    /**
+     * This will set up a recycler view for chat rows: its pool keeps
+     * enough rows of each type, and the first rows are inflated in the
+     * background so the first messages bind without inflating
+     * @param recyclerView this is the recycler view of the chat
+     */
+    public void attach(RecyclerView recyclerView) {
+        RecyclerView.RecycledViewPool viewPool = recyclerView.getRecycledViewPool();
+        viewPool.setMaxRecycledViews(VIEW_TYPE_SENT, POOL_SIZE_PER_TYPE);
+        viewPool.setMaxRecycledViews(VIEW_TYPE_RECEIVED, POOL_SIZE_PER_TYPE);
+        prewarm(recyclerView, VIEW_TYPE_SENT, R.layout.item_container_sent_message);
+        prewarm(recyclerView, VIEW_TYPE_RECEIVED, R.layout.item_container_received_message);
+        recyclerView.setAdapter(this);
+    }
+
+    /**
+     * This will set how far the other user has received and read the
+     * chat. Only the rows between the old and new watermarks are redrawn,
+     * and they are found from the end, where the watermarks move
+     * @param deliveredUpTo this is the timestamp of the newest message delivered to them
+     * @param readUpTo this is the timestamp of the newest message they read
+     */
+    public void setPeerWatermarks(long deliveredUpTo, long readUpTo) {
+        if (deliveredUpTo == peerDeliveredUpTo && readUpTo == peerReadUpTo) {
+            return;
+        }
+        long from = Math.min(Math.min(deliveredUpTo, peerDeliveredUpTo), Math.min(readUpTo, peerReadUpTo));
+        long to = Math.max(Math.max(deliveredUpTo, peerDeliveredUpTo), Math.max(readUpTo, peerReadUpTo));
+        peerDeliveredUpTo = deliveredUpTo;
+        peerReadUpTo = readUpTo;
+        for (int position = chatMessages.size() - 1; position >= 0; position--) {
+            ChatMessage chatMessage = chatMessages.get(position);
+            if (chatMessage.timestamp <= from) {
+                break;
+            }
+            if (chatMessage.timestamp <= to && getItemViewType(position) == VIEW_TYPE_SENT) {
+                notifyItemChanged(position, PAYLOAD_RECEIPT);
+            }
+        }
+    }
+
+    /**
+     * This will inflate rows of a type in the background
+     * @param recyclerView this is the recycler view the rows are for
+     * @param viewType this is the type of the rows
+     * @param layout this is the layout of the rows
+     */
+    private void prewarm(RecyclerView recyclerView, int viewType, int layout) {
+        ArrayDeque<View> views = new ArrayDeque<>();
+        prewarmedViews.put(viewType, views);
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(recyclerView.getContext());
+        for (int i = 0; i < PREWARM_PER_TYPE; i++) {
+            // The view arrives on the main thread
+            inflater.inflate(layout, recyclerView, (view, resid, parent) -> views.add(view));
+        }
+    }
+
+    /**
+     * This will take a row inflated in the background
+     * @param viewType this is the type of the row
+     * @return the row, or null if none is ready
+     */
+    private View takePrewarmedView(int viewType) {
+        ArrayDeque<View> views = prewarmedViews.get(viewType);
+        return views != null ? views.poll() : null;
+    }
+
+    /**
+     * This will get the text to show for a message, measured if it is ready
+     * @param viewType this is the type of the row
+     * @param message this is the text of the message
+     * @return the measured text, or the plain text
+     */
+    private CharSequence getMessageText(int viewType, String message) {
+        if (message == null || message.length() < PRECOMPUTE_MIN_LENGTH) {
+            return message;
+        }
+        PrecomputedTextCompat precomputed = textLayouts.get(viewType).cache.get(message);
+        if (precomputed != null) {
+            return precomputed;
+        }
+        // Measure it for the next time it is bound
+        precompute(viewType, message);
+        return message;
+    }
+
+    /**
+     * This will measure the text layout of a long message in the background
+     * @param viewType this is the type of the row
+     * @param message this is the text of the message
+     */
+    private void precompute(int viewType, String message) {
+        TextLayouts layouts = textLayouts.get(viewType);
+        PrecomputedTextCompat.Params params = layouts.params;
+        if (params == null || message == null || message.length() < PRECOMPUTE_MIN_LENGTH
+                || layouts.cache.get(message) != null || !layouts.measuring.add(message)) {
+            return;
+        }
+        TEXT_EXECUTOR.execute(() -> {
+            PrecomputedTextCompat precomputed = PrecomputedTextCompat.create(message, params);
+            mainHandler.post(() -> {
+                layouts.measuring.remove(message);
+                layouts.cache.put(message, precomputed);
+            });
+        });
+    }
+
+    /**
+     * This will keep the text settings of a row type the first time a row is made
+     * @param viewType this is the type of the row
+     * @param textMessage this is the message view of the row
+     */
+    private void keepTextParams(int viewType, TextView textMessage) {
+        TextLayouts layouts = textLayouts.get(viewType);
+        if (layouts.params == null) {
+            layouts.params = TextViewCompat.getTextMetricsParams(textMessage);
+        }
     }
 
     /**
@@ -48,15 +231,23 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        // Use a row inflated in the background when one is ready
+        View prewarmed = takePrewarmedView(viewType);
         // If the view type is sender
         if (viewType == VIEW_TYPE_SENT) {
-            return new SentMessageViewHolder(ItemContainerSentMessageBinding
-                    .inflate(LayoutInflater.from(parent.getContext()),parent,false));
+            ItemContainerSentMessageBinding binding = prewarmed != null
+                    ? ItemContainerSentMessageBinding.bind(prewarmed)
+                    : ItemContainerSentMessageBinding.inflate(LayoutInflater.from(parent.getContext()),parent,false);
+            keepTextParams(viewType, binding.textMessage);
+            return new SentMessageViewHolder(binding);
         }
         // If the view type is receiver
         else {
-            return new ReceiverMessageViewHolder(ItemContainerReceivedMessageBinding
-                    .inflate(LayoutInflater.from(parent.getContext()),parent,false));
+            ItemContainerReceivedMessageBinding binding = prewarmed != null
+                    ? ItemContainerReceivedMessageBinding.bind(prewarmed)
+                    : ItemContainerReceivedMessageBinding.inflate(LayoutInflater.from(parent.getContext()),parent,false);
+            keepTextParams(viewType, binding.textMessage);
+            return new ReceiverMessageViewHolder(binding);
         }
     }
 
@@ -68,14 +259,67 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        ChatMessage chatMessage = chatMessages.get(position);
+        boolean showDay = isFirstOfDay(position);
+        int viewType = getItemViewType(position);
+        CharSequence text = getMessageText(viewType, chatMessage.message);
         // If the view type is sender
-        if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder)holder).setData(chatMessages.get(position));
+        if (viewType == VIEW_TYPE_SENT) {
+            ((SentMessageViewHolder)holder).setData(chatMessage, text, showDay);
+            ((SentMessageViewHolder)holder).setReceipt(chatMessage, peerDeliveredUpTo, peerReadUpTo);
         }
         // If the view type is receiver
         else {
             ((ReceiverMessageViewHolder)holder)
-                    .setData(chatMessages.get(position), receiverProfileImage);
+                    .setData(chatMessage, text, showDay, receiverUser);
+        }
+    }
+
+    /**
+     * This is the override for the onBindViewHolder method with payloads,
+     * a receipt change only updates the time line of the row
+     * @param holder The ViewHolder which should be updated
+     * @param position The position of the item within the adapter's data set.
+     * @param payloads The payloads of the partial update, empty for a full bind
+     */
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        boolean receiptOnly = !payloads.isEmpty() && holder instanceof SentMessageViewHolder;
+        for (Object payload : payloads) {
+            receiptOnly &= payload == PAYLOAD_RECEIPT;
+        }
+        if (receiptOnly) {
+            ((SentMessageViewHolder)holder).setReceipt(chatMessages.get(position),
+                    peerDeliveredUpTo, peerReadUpTo);
+        }
+        else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * This will check whether a message starts a new day, by
+     * comparing it with only the message before it
+     * @param position this is the position of the message
+     * @return true if the row should show a day header
+     */
+    private boolean isFirstOfDay(int position) {
+        if (position == 0) {
+            return true;
+        }
+        return TimestampFormatter.getDayKey(chatMessages.get(position - 1).timestamp)
+                != TimestampFormatter.getDayKey(chatMessages.get(position).timestamp);
+    }
+
+    /**
+     * This will redraw a row whose day header may have changed
+     * because the row before it changed
+     * @param position this is the position of the row
+     */
+    private void notifyDayHeaderChanged(int position) {
+        if (position >= 0 && position < chatMessages.size()) {
+            notifyItemChanged(position);
         }
     }
 
@@ -96,6 +340,16 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
+    /**
+     * This is the override for the getItemId method
+     * @param position position to query
+     * @return the stable ID of the message
+     */
+    @Override
+    public long getItemId(int position) {
+        return ChatMessage.getStableID(chatMessages.get(position).messageID);
+    }
+
     /**
      * This is the override for the getItemCount method
      * @return this size of the chat messages list
@@ -105,6 +359,65 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         return chatMessages.size();
     }
 
+    /**
+     * This is the override for the onMessageInserted method
+     * @param position the position the message was inserted at
+     */
+    @Override
+    public void onMessageInserted(int position) {
+        notifyItemInserted(position);
+        // Measure long messages before they scroll into view
+        precompute(getItemViewType(position), chatMessages.get(position).message);
+        // The next row may no longer start a day
+        notifyDayHeaderChanged(position + 1);
+    }
+
+    /**
+     * This is the override for the onMessageChanged method
+     * @param position the position of the changed message
+     */
+    @Override
+    public void onMessageChanged(int position) {
+        notifyItemChanged(position);
+    }
+
+    /**
+     * This is the override for the onMessageMoved method
+     * @param fromPosition the old position of the message
+     * @param toPosition the new position of the message
+     */
+    @Override
+    public void onMessageMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+        // The rows after both the old and new positions have a new neighbour
+        notifyDayHeaderChanged(fromPosition < toPosition ? fromPosition : fromPosition + 1);
+        notifyDayHeaderChanged(toPosition);
+        notifyDayHeaderChanged(toPosition + 1);
+    }
+
+    /**
+     * This is the override for the onMessageRemoved method
+     * @param position the position the message was removed from
+     */
+    @Override
+    public void onMessageRemoved(int position) {
+        notifyItemRemoved(position);
+        // The row that moved up may now start a day
+        notifyDayHeaderChanged(position);
+    }
+
+    /**
+     * This is the override for the onMessageRangeRemoved method
+     * @param position the first position that was removed
+     * @param count the number of messages that were removed
+     */
+    @Override
+    public void onMessageRangeRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+        // The row that moved up may now start a day
+        notifyDayHeaderChanged(position);
+    }
+
     /**
      * This is the Send Message View Holder
      */
@@ -126,11 +439,39 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         /**
          * This sets the data for the chat message
          * @param chatMessage this chat message to display
+         * @param text this is the text of the message, measured if it is long
+         * @param showDay this is whether the row shows a day header
          */
-        void setData(ChatMessage chatMessage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+        void setData(ChatMessage chatMessage, CharSequence text, boolean showDay) {
+            setText(binding.textMessage, text);
+            setAttachment(binding.imageAttachment, binding.textMessage, chatMessage);
+            setDay(binding.textDay, chatMessage, showDay);
+        }
 
+        /**
+         * This sets the time and receipt of the chat message, a message
+         * is delivered or seen when it is at or before the other user's watermark
+         * @param chatMessage this chat message to display
+         * @param deliveredUpTo this is the other user's delivered watermark
+         * @param readUpTo this is the other user's read watermark
+         */
+        void setReceipt(ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
+            // Pending messages have not reached the server yet
+            if (chatMessage.pending) {
+                binding.textDateTime.setText(R.string.sending);
+                return;
+            }
+            Context context = binding.getRoot().getContext();
+            String time = TimestampFormatter.formatTime(chatMessage.timestamp);
+            if (chatMessage.timestamp <= readUpTo) {
+                binding.textDateTime.setText(context.getString(R.string.time_seen, time));
+            }
+            else if (chatMessage.timestamp <= deliveredUpTo) {
+                binding.textDateTime.setText(context.getString(R.string.time_delivered, time));
+            }
+            else {
+                binding.textDateTime.setText(time);
+            }
         }
     }
 
@@ -140,6 +481,8 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     static class ReceiverMessageViewHolder extends RecyclerView.ViewHolder {
         // This is the view binding
         private final ItemContainerReceivedMessageBinding binding;
+        // This is the user whose avatar the row already shows
+        private String avatarUserID;
 
         /**
          * This is the default constructor
@@ -155,13 +498,86 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         /**
          * This sets the data for the chat message
          * @param chatMessage this chat message to display
-         * @param receiverProfileImage this is the receiver profile image
+         * @param text this is the text of the message, measured if it is long
+         * @param showDay this is whether the row shows a day header
+         * @param receiverUser this is the receiver, for their profile image
          */
-        void setData(ChatMessage chatMessage, Bitmap receiverProfileImage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
-            binding.imageProfile.setImageBitmap(receiverProfileImage);
+        void setData(ChatMessage chatMessage, CharSequence text, boolean showDay, User receiverUser) {
+            setText(binding.textMessage, text);
+            setAttachment(binding.imageAttachment, binding.textMessage, chatMessage);
+            binding.textDateTime.setText(TimestampFormatter.formatTime(chatMessage.timestamp));
+            setDay(binding.textDay, chatMessage, showDay);
+            // Every received row shows the same avatar, so a reused row keeps it
+            if (!receiverUser.userid.equals(avatarUserID)) {
+                avatarUserID = receiverUser.userid;
+                AvatarCache.getInstance(binding.getRoot().getContext())
+                        .load(receiverUser, binding.imageProfile);
+            }
+        }
+    }
+
+    /**
+     * This sets the text of a message, using its measured layout if it has one
+     * @param textMessage this is the message view
+     * @param text this is the plain or measured text
+     */
+    static void setText(TextView textMessage, CharSequence text) {
+        if (text instanceof PrecomputedTextCompat) {
+            try {
+                TextViewCompat.setPrecomputedText(textMessage, (PrecomputedTextCompat) text);
+                return;
+            }
+            // The view's text settings changed since the text was measured
+            catch (IllegalArgumentException exception) {
+                text = text.toString();
+            }
+        }
+        textMessage.setText(text);
+    }
+
+    /**
+     * This sets the attachment of a row. The view takes the shape of the
+     * image before it loads, so the row does not jump when it arrives,
+     * and a photo without a caption has no text bubble
+     * @param imageAttachment this is the attachment view
+     * @param textMessage this is the message view
+     * @param chatMessage this is the chat message of the row
+     */
+    static void setAttachment(ImageView imageAttachment, TextView textMessage, ChatMessage chatMessage) {
+        boolean hasText = chatMessage.message != null && !chatMessage.message.isEmpty();
+        textMessage.setVisibility(hasText || !chatMessage.hasAttachment() ? View.VISIBLE : View.GONE);
+        if (!chatMessage.hasAttachment()) {
+            imageAttachment.setVisibility(View.GONE);
+            AttachmentLoader.getInstance(imageAttachment.getContext()).load(chatMessage, imageAttachment, 0);
+            return;
+        }
+        int width = imageAttachment.getLayoutParams().width;
+        int height = width;
+        if (chatMessage.attachmentWidth > 0 && chatMessage.attachmentHeight > 0) {
+            float aspect = (float) chatMessage.attachmentHeight / chatMessage.attachmentWidth;
+            height = Math.round(width * Math.min(aspect, MAX_ATTACHMENT_ASPECT));
+        }
+        if (imageAttachment.getLayoutParams().height != height) {
+            imageAttachment.getLayoutParams().height = height;
+            imageAttachment.requestLayout();
+        }
+        imageAttachment.setVisibility(View.VISIBLE);
+        AttachmentLoader.getInstance(imageAttachment.getContext()).load(chatMessage, imageAttachment, width);
+    }
 
+    /**
+     * This sets the day header of a row
+     * @param textDay this is the day header view
+     * @param chatMessage this is the chat message of the row
+     * @param showDay this is whether the header is shown
+     */
+    static void setDay(TextView textDay, ChatMessage chatMessage, boolean showDay) {
+        if (showDay) {
+            textDay.setText(TimestampFormatter.formatDay(chatMessage.timestamp));
+            textDay.setVisibility(View.VISIBLE);
+        }
+        else {
+            textDay.setVisibility(View.GONE);
         }
     }
 }
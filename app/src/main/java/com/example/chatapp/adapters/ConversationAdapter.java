@@ -0,0 +1,198 @@
+package com.example.chatapp.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.databinding.ItemContainerConversationBinding;
+import com.example.chatapp.listeners.ConversationListener;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.TimestampFormatter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Conversation Adaptor for the recent conversations list.
+ * Rows are changed one at a time as the database reports them, and
+ * have stable IDs so an entry moving to the top animates as a move
+ */
+public class ConversationAdapter extends RecyclerView.Adapter<ConversationAdapter.ConversationViewHolder> {
+    // These are the private variables
+    private final List<Conversation> conversations = new ArrayList<>();
+    private final Map<String, Long> stableIDs = new HashMap<>();
+    private final ConversationListener conversationListener;
+    private long nextStableID;
+
+    /**
+     * This is the default constructor
+     * @param conversationListener this is the conversation Listener instance
+     */
+    public ConversationAdapter(ConversationListener conversationListener) {
+        this.conversationListener = conversationListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * This will add a conversation at a position
+     * @param position this is the position in the list
+     * @param conversation this is the conversation to add
+     */
+    public void addConversation(int position, Conversation conversation) {
+        conversations.add(position, conversation);
+        notifyItemInserted(position);
+    }
+
+    /**
+     * This will replace a conversation, moving it if its position changed
+     * @param fromPosition this is the old position in the list
+     * @param toPosition this is the new position in the list
+     * @param conversation this is the new version of the conversation
+     */
+    public void updateConversation(int fromPosition, int toPosition, Conversation conversation) {
+        if (fromPosition != toPosition) {
+            conversations.remove(fromPosition);
+            conversations.add(toPosition, conversation);
+            notifyItemMoved(fromPosition, toPosition);
+        }
+        else {
+            conversations.set(toPosition, conversation);
+        }
+        notifyItemChanged(toPosition);
+    }
+
+    /**
+     * This will remove every conversation
+     */
+    public void clear() {
+        int count = conversations.size();
+        conversations.clear();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    /**
+     * This will remove a conversation
+     * @param position this is the position in the list
+     */
+    public void removeConversation(int position) {
+        conversations.remove(position);
+        notifyItemRemoved(position);
+    }
+
+    /**
+     * This is the override for the getItemId method
+     * @param position Adapter position to query
+     * @return the stable ID of the conversation at the position
+     */
+    @Override
+    public long getItemId(int position) {
+        String conversationID = conversations.get(position).conversationID;
+        Long stableID = stableIDs.get(conversationID);
+        if (stableID == null) {
+            stableID = nextStableID++;
+            stableIDs.put(conversationID, stableID);
+        }
+        return stableID;
+    }
+
+    /**
+     * This is the override for the onCreateViewHolder method
+     * @param parent The ViewGroup into which the new View will be added after it is bound to
+     *               an adapter position.
+     * @param viewType The view type of the new View.
+     *
+     * @return an instance of the ConversationViewHolder
+     */
+    @NonNull
+    @Override
+    public ConversationViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ConversationViewHolder(ItemContainerConversationBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    /**
+     * This is the override for the onBindViewHolder method
+     * @param holder The ViewHolder which should be updated to represent the contents of the
+     *        item at the given position in the data set.
+     * @param position The position of the item within the adapter's data set.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ConversationViewHolder holder, int position) {
+        holder.setConversationData(conversations.get(position));
+    }
+
+    /**
+     * This is the override for the getItemCount method
+     * @return the size of the conversations list
+     */
+    @Override
+    public int getItemCount() {
+        return conversations.size();
+    }
+
+    /**
+     * This will format the time of a last message, with the day
+     * instead when it was not sent today
+     * @param lastTimestamp this is the timestamp in epoch milliseconds
+     * @return the formatted time, or null if there is no message yet
+     */
+    private static String formatLastTimestamp(long lastTimestamp) {
+        if (lastTimestamp <= 0) {
+            return null;
+        }
+        if (TimestampFormatter.getDayKey(lastTimestamp)
+                == TimestampFormatter.getDayKey(System.currentTimeMillis())) {
+            return TimestampFormatter.formatTime(lastTimestamp);
+        }
+        return TimestampFormatter.formatDay(lastTimestamp);
+    }
+
+    /**
+     * This is the ConversationViewHolder for Recycle Views
+     */
+    class ConversationViewHolder extends RecyclerView.ViewHolder {
+        // This is the view binding
+        private final ItemContainerConversationBinding binding;
+
+        /**
+         * This is the default constructor
+         * @param itemContainerConversationBinding this is the view binding
+         */
+        ConversationViewHolder(ItemContainerConversationBinding itemContainerConversationBinding) {
+            super(itemContainerConversationBinding.getRoot());
+            // Attach the binding
+            this.binding = itemContainerConversationBinding;
+        }
+
+        /**
+         * Set the conversation data into the view
+         * @param conversation This is the conversation to display
+         */
+        private void setConversationData(Conversation conversation) {
+            // Set the other user's name and image
+            binding.textName.setText(conversation.partnerFirstName + " " + conversation.partnerLastName);
+            AvatarCache.getInstance(binding.getRoot().getContext())
+                    .loadReference(conversation.partnerImageRef, binding.imageProfile);
+            // Set the last message and when it was sent
+            binding.textLastMessage.setText(conversation.lastMessage);
+            binding.textTime.setText(formatLastTimestamp(conversation.lastTimestamp));
+            // Show the unread count if there is one
+            if (conversation.unreadCount > 0) {
+                binding.textUnread.setText(String.valueOf(conversation.unreadCount));
+                binding.textUnread.setVisibility(View.VISIBLE);
+            }
+            else {
+                binding.textUnread.setVisibility(View.GONE);
+            }
+            // Set the OnClickListener to the entire container view
+            binding.getRoot().setOnClickListener(v ->
+                    conversationListener.onConversationClicked(conversation));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.chatapp.adapters;
+
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.databinding.ItemContainerSearchResultBinding;
+import com.example.chatapp.listeners.SearchResultListener;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.SearchResult;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.SearchQuery;
+import com.example.chatapp.utilities.TimestampFormatter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Search Result Adaptor for message search. Every row shows
+ * the other user of the conversation and the words around the match,
+ * with the matched words in bold. A row shows its user once it is loaded
+ */
+public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.SearchResultViewHolder> {
+    // These are the private variables
+    private final List<SearchResult> results = new ArrayList<>();
+    private final Map<String, User> partners = new HashMap<>();
+    private final SearchResultListener searchResultListener;
+    private final String userID;
+
+    /**
+     * This is the default constructor
+     * @param searchResultListener this is the search result Listener instance
+     * @param userID this is the ID of the signed in user
+     */
+    public SearchResultAdapter(SearchResultListener searchResultListener, String userID) {
+        this.searchResultListener = searchResultListener;
+        this.userID = userID;
+        setHasStableIds(true);
+    }
+
+    /**
+     * This will show a new set of results
+     * @param searchResults these are the results of the signed in user, best first
+     */
+    public void setResults(List<SearchResult> searchResults) {
+        results.clear();
+        results.addAll(searchResults);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * This will show a user on the rows of their results
+     * @param partner this is the user that was loaded
+     */
+    public void setPartner(User partner) {
+        partners.put(partner.userid, partner);
+        for (int i = 0; i < results.size(); i++) {
+            if (partner.userid.equals(results.get(i).getPartnerID(userID))) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+    /**
+     * This is the override for the getItemId method
+     * @param position position to query
+     * @return the stable ID of the message
+     */
+    @Override
+    public long getItemId(int position) {
+        return ChatMessage.getStableID(results.get(position).messageID);
+    }
+
+    /**
+     * This is the override for the onCreateViewHolder method
+     * @param parent The ViewGroup into which the new View will be added after it is bound to
+     *               an adapter position.
+     * @param viewType The view type of the new View.
+     *
+     * @return an instance of the SearchResultViewHolder
+     */
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new SearchResultViewHolder(ItemContainerSearchResultBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    /**
+     * This is the override for the onBindViewHolder method
+     * @param holder The ViewHolder which should be updated to represent the contents of the
+     *        item at the given position in the data set.
+     * @param position The position of the item within the adapter's data set.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        SearchResult searchResult = results.get(position);
+        holder.setResultData(searchResult, partners.get(searchResult.getPartnerID(userID)));
+    }
+
+    /**
+     * This is the override for the getItemCount method
+     * @return the size of the results list
+     */
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    /**
+     * This is the SearchResultViewHolder for Recycle Views
+     */
+    class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        // This is the view binding
+        private final ItemContainerSearchResultBinding binding;
+
+        /**
+         * This is the default constructor
+         * @param itemContainerSearchResultBinding this is the view binding
+         */
+        SearchResultViewHolder(ItemContainerSearchResultBinding itemContainerSearchResultBinding) {
+            super(itemContainerSearchResultBinding.getRoot());
+            // Attach the binding
+            this.binding = itemContainerSearchResultBinding;
+        }
+
+        /**
+         * Set the result data into the view
+         * @param searchResult this is the result to display
+         * @param partner this is the other user of the result, or null until it is loaded
+         */
+        private void setResultData(SearchResult searchResult, User partner) {
+            // Set the other user's name and image
+            binding.textName.setText(partner != null ? partner.firstName + " " + partner.lastName : null);
+            AvatarCache.getInstance(binding.getRoot().getContext())
+                    .loadReference(partner != null ? partner.imageRef : null, binding.imageProfile);
+            binding.textTime.setText(TimestampFormatter.formatDay(searchResult.timestamp));
+            binding.textSnippet.setText(highlight(searchResult.snippet));
+            // Set the OnClickListener to the entire container view, the chat needs the user
+            binding.getRoot().setOnClickListener(v -> {
+                if (partner != null) {
+                    searchResultListener.onSearchResultClicked(searchResult, partner);
+                }
+            });
+        }
+
+        /**
+         * This will turn the marked matches of a snippet into bold text
+         * @param snippet this is the snippet with its matches marked
+         * @return the text to show
+         */
+        private CharSequence highlight(String snippet) {
+            if (snippet == null) {
+                return null;
+            }
+            List<int[]> highlights = new ArrayList<>();
+            SpannableString text = new SpannableString(SearchQuery.stripMarkers(snippet, highlights));
+            int color = ContextCompat.getColor(binding.getRoot().getContext(), R.color.primaryText);
+            for (int[] range : highlights) {
+                text.setSpan(new StyleSpan(Typeface.BOLD), range[0], range[1], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                text.setSpan(new ForegroundColorSpan(color), range[0], range[1], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            return text;
+        }
+    }
+}
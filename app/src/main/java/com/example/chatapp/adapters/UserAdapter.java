@@ -1,26 +1,34 @@
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatapp.databinding.ItemContainerUserBinding;
 import com.example.chatapp.listeners.UserListener;
 import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.PresenceRepository;
+import com.example.chatapp.utilities.AvatarCache;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * This is the User Adaptor for use with Recycle Views
  */
 public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder> {
+    // This is the payload of a row whose online dot changed
+    private static final Object PAYLOAD_PRESENCE = new Object();
     // These are the private variables
     private List<User> users;
+    private Map<String, Long> lastSeen = new HashMap<>();
     private final UserListener userListener;
 
     /**
@@ -30,10 +38,59 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
      */
     public UserAdapter(List<User> users, UserListener userListener)
     {
-        this.users = users;
+        this.users = new ArrayList<>(users);
         this.userListener = userListener;
     }
 
+    /**
+     * This will replace the list, only redrawing the rows that changed
+     * @param newUsers these are the users to show
+     */
+    public void setUsers(List<User> newUsers) {
+        List<User> oldUsers = users;
+        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldUsers.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newUsers.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldUsers.get(oldItemPosition).userid.equals(newUsers.get(newItemPosition).userid);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                User oldUser = oldUsers.get(oldItemPosition);
+                User newUser = newUsers.get(newItemPosition);
+                return Objects.equals(oldUser.firstName, newUser.firstName)
+                        && Objects.equals(oldUser.lastName, newUser.lastName)
+                        && Objects.equals(oldUser.email, newUser.email)
+                        && Objects.equals(oldUser.imageRef, newUser.imageRef)
+                        && Objects.equals(oldUser.imageThumbnailRef, newUser.imageThumbnailRef)
+                        && oldUser.imageVersion == newUser.imageVersion
+                        && Objects.equals(oldUser.image, newUser.image);
+            }
+        });
+        users = new ArrayList<>(newUsers);
+        diffResult.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * This will set the heartbeat times of the online users. Only the
+     * online dots are redrawn, it is also called as the times grow old
+     * @param lastSeen these are the heartbeat times by user ID
+     */
+    public void setLastSeen(Map<String, Long> lastSeen) {
+        this.lastSeen = new HashMap<>(lastSeen);
+        notifyItemRangeChanged(0, users.size(), PAYLOAD_PRESENCE);
+    }
+
     /**
      * This is the override for the onCreateViewHolder method
      * @param parent The ViewGroup into which the new View will be added after it is bound to
@@ -63,6 +120,28 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         holder.setUserData(users.get(position));
     }
 
+    /**
+     * This is the override for the onBindViewHolder method with payloads,
+     * a presence change only updates the online dot
+     * @param holder The ViewHolder which should be updated
+     * @param position The position of the item within the adapter's data set.
+     * @param payloads The payloads of the partial update, empty for a full bind
+     */
+    @Override
+    public void onBindViewHolder(@NonNull UserViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        boolean presenceOnly = !payloads.isEmpty();
+        for (Object payload : payloads) {
+            presenceOnly &= payload == PAYLOAD_PRESENCE;
+        }
+        if (presenceOnly) {
+            holder.setOnline(users.get(position));
+        }
+        else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
     /**
      * This is the override for the getItemCount method
      * @return the size of the users list
@@ -98,22 +177,22 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
             binding.textName.setText(user.firstName + " " + user.lastName);
             // Set the email
             binding.textEmail.setText(user.email);
-            // Set the user profile image
-            binding.imageProfile.setImageBitmap(getUserImage(user.image));
+            // Set the user profile image from the shared cache
+            AvatarCache.getInstance(binding.getRoot().getContext()).load(user, binding.imageProfile);
+            // Show whether the user is online
+            setOnline(user);
             // Set the OnClickListener to the entire container view
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
-    }
 
-    /**
-     * This will return a Bitmap object from a BASE64 encoded string
-     * @param encodedImage the BASE64 encoded string of the image
-     * @return a Bitmap instance form the encoded string
-     */
-    private Bitmap getUserImage(String encodedImage) {
-        // Get the bytes from the string decode
-        byte[] bytes = Base64.decode(encodedImage,Base64.DEFAULT);
-        // Create an image from the bytes array
-        return BitmapFactory.decodeByteArray(bytes,0,bytes.length);
+        /**
+         * Show the online dot if the user has a recent heartbeat
+         * @param user This is the user to display
+         */
+        private void setOnline(User user) {
+            boolean online = PresenceRepository.isOnline(lastSeen.get(user.userid),
+                    System.currentTimeMillis());
+            binding.viewOnline.setVisibility(online ? View.VISIBLE : View.GONE);
+        }
     }
 }
@@ -0,0 +1,219 @@
+package com.example.chatapp.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * This is the local SQLite database for the chat data
+ * that is kept on the device between sessions
+ */
+public class ChatDatabase extends SQLiteOpenHelper {
+    // These are the database constants
+    private static final String DATABASE_NAME = "chatApp.db";
+    private static final int DATABASE_VERSION = 6;
+    // These are the message table constants
+    public static final String TABLE_MESSAGES = "messages";
+    public static final String COLUMN_MESSAGE_ID = "message_id";
+    public static final String COLUMN_CONVERSATION_ID = "conversation_id";
+    public static final String COLUMN_SENDER_ID = "sender_id";
+    public static final String COLUMN_RECEIVER_ID = "receiver_id";
+    public static final String COLUMN_MESSAGE = "message";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_ATTACHMENT_REF = "attachment_ref";
+    public static final String COLUMN_ATTACHMENT_BLUR_HASH = "attachment_blur_hash";
+    public static final String COLUMN_ATTACHMENT_WIDTH = "attachment_width";
+    public static final String COLUMN_ATTACHMENT_HEIGHT = "attachment_height";
+    // This is the outbox table, it has the same columns as the message table
+    public static final String TABLE_OUTBOX = "outbox";
+    // This is the full-text search table, it keeps every message that was cached
+    public static final String TABLE_SEARCH = "message_search";
+    // This is the search document of every message, so a message can be replaced by its ID
+    public static final String TABLE_SEARCH_IDS = "message_search_ids";
+    public static final String COLUMN_DOCID = "docid";
+    // These are the user directory table constants
+    public static final String TABLE_USERS = "users";
+    public static final String COLUMN_USER_ID = "user_id";
+    public static final String COLUMN_FIRST_NAME = "first_name";
+    public static final String COLUMN_LAST_NAME = "last_name";
+    public static final String COLUMN_EMAIL = "email";
+    public static final String COLUMN_IMAGE_REF = "image_ref";
+    public static final String COLUMN_IMAGE_THUMBNAIL_REF = "image_thumbnail_ref";
+    public static final String COLUMN_IMAGE_HEADER_REF = "image_header_ref";
+    public static final String COLUMN_IMAGE_VERSION = "image_version";
+    public static final String COLUMN_TOKEN = "token";
+    public static final String COLUMN_NAME_KEY = "name_key";
+    public static final String COLUMN_UPDATED_AT = "updated_at";
+    // This is the sync state table, a value for every name
+    public static final String TABLE_SYNC_STATE = "sync_state";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_VALUE = "value";
+    // This is the shared instance
+    private static ChatDatabase instance;
+
+    // These are the attachment columns of both tables
+    private static final String ATTACHMENT_COLUMNS = COLUMN_ATTACHMENT_REF + " TEXT, "
+            + COLUMN_ATTACHMENT_BLUR_HASH + " TEXT, "
+            + COLUMN_ATTACHMENT_WIDTH + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_ATTACHMENT_HEIGHT + " INTEGER NOT NULL DEFAULT 0";
+
+    /**
+     * This will get the shared database instance
+     * @param context this is the current Context
+     * @return the shared ChatDatabase
+     */
+    public static synchronized ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private ChatDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Searches read while the index writes in the background
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * This is the override for the onCreate method
+     * @param db The database.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createMessages(db);
+        createOutbox(db);
+        createSearch(db);
+        createUsers(db);
+    }
+
+    /**
+     * This is the override for the onUpgrade method
+     * @param db The database.
+     * @param oldVersion The old database version.
+     * @param newVersion The new database version.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The cache can always be refilled from the server
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
+        createMessages(db);
+        // The outbox holds unsent messages, so it is only ever added to
+        if (oldVersion < 2) {
+            createOutbox(db);
+        }
+        else if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_ATTACHMENT_REF + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_ATTACHMENT_BLUR_HASH + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_ATTACHMENT_WIDTH
+                    + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_ATTACHMENT_HEIGHT
+                    + " INTEGER NOT NULL DEFAULT 0");
+        }
+        // The index outlives the cache, so it is only ever added to
+        if (oldVersion < 4) {
+            createSearch(db);
+        }
+        if (oldVersion < 5) {
+            createUsers(db);
+        }
+        else if (oldVersion < 6) {
+            // The change times are in microseconds now, so the directory is cached again
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+            createUsers(db);
+        }
+    }
+
+    /**
+     * This will create the message cache table
+     * @param db The database.
+     */
+    private void createMessages(SQLiteDatabase db) {
+        // Messages are keyed by ID and read by conversation and timestamp
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COLUMN_MESSAGE_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CONVERSATION_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + ATTACHMENT_COLUMNS + ")");
+        db.execSQL("CREATE INDEX index_messages_conversation ON " + TABLE_MESSAGES + " ("
+                + COLUMN_CONVERSATION_ID + ", " + COLUMN_TIMESTAMP + ", " + COLUMN_MESSAGE_ID + ")");
+    }
+
+    /**
+     * This will create the outbox table for messages that are not sent yet
+     * @param db The database.
+     */
+    private void createOutbox(SQLiteDatabase db) {
+        // Unsent messages are read in the order they were written
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + COLUMN_MESSAGE_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CONVERSATION_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + ATTACHMENT_COLUMNS + ")");
+    }
+
+    /**
+     * This will create the full-text search tables. Only the text is
+     * indexed, the other columns are kept to show and open a result.
+     * The prefix index keeps search as you type fast on short prefixes
+     * @param db The database.
+     */
+    private void createSearch(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4("
+                + COLUMN_MESSAGE + ", "
+                + COLUMN_MESSAGE_ID + ", "
+                + COLUMN_CONVERSATION_ID + ", "
+                + COLUMN_SENDER_ID + ", "
+                + COLUMN_RECEIVER_ID + ", "
+                + COLUMN_TIMESTAMP + ", "
+                + "notindexed=" + COLUMN_MESSAGE_ID + ", "
+                + "notindexed=" + COLUMN_CONVERSATION_ID + ", "
+                + "notindexed=" + COLUMN_SENDER_ID + ", "
+                + "notindexed=" + COLUMN_RECEIVER_ID + ", "
+                + "notindexed=" + COLUMN_TIMESTAMP + ", "
+                + "prefix=\"2,3\", "
+                + "tokenize=unicode61)");
+        // Merge small segments as messages arrive so queries do not slow down
+        db.execSQL("INSERT INTO " + TABLE_SEARCH + "(" + TABLE_SEARCH + ") VALUES('automerge=8')");
+        db.execSQL("CREATE TABLE " + TABLE_SEARCH_IDS + " ("
+                + COLUMN_MESSAGE_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_DOCID + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * This will create the user directory tables. Users are read in
+     * the order the directory is paged, and the sync state keeps the
+     * time the directory is up to date to
+     * @param db The database.
+     */
+    private void createUsers(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + COLUMN_USER_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_FIRST_NAME + " TEXT, "
+                + COLUMN_LAST_NAME + " TEXT, "
+                + COLUMN_EMAIL + " TEXT, "
+                + COLUMN_IMAGE_REF + " TEXT, "
+                + COLUMN_IMAGE_THUMBNAIL_REF + " TEXT, "
+                + COLUMN_IMAGE_HEADER_REF + " TEXT, "
+                + COLUMN_IMAGE_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_TOKEN + " TEXT, "
+                + COLUMN_NAME_KEY + " TEXT NOT NULL, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX index_users_name ON " + TABLE_USERS + " ("
+                + COLUMN_NAME_KEY + ", " + COLUMN_USER_ID + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COLUMN_NAME + " TEXT PRIMARY KEY, "
+                + COLUMN_VALUE + " INTEGER NOT NULL)");
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.chatapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This is the write-through Message Cache that keeps the tail of
+ * every conversation on disk, so a chat can render before the
+ * network answers. All disk work runs on one background thread.
+ * Every message written here is also indexed for search
+ */
+public class MessageCache {
+    // This is the default cap on messages kept per conversation
+    public static final int DEFAULT_MAX_MESSAGES_PER_CONVERSATION = 1000;
+    // This is how many writes happen between compactions
+    private static final int WRITES_PER_COMPACTION = 500;
+    // This is the shared disk thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // This counts writes since the last compaction, only touched on the disk thread
+    private static int writesSinceCompaction = WRITES_PER_COMPACTION;
+    // These are the private variables
+    private final ChatDatabase chatDatabase;
+    private final SearchIndex searchIndex;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int maxMessagesPerConversation;
+
+    /**
+     * This is the callback for messages read from the cache
+     */
+    public interface LoadCallback {
+        // OnLoaded method, the messages are in timestamp order
+        void onLoaded(List<ChatMessage> messages);
+    }
+
+    /**
+     * This is the default constructor
+     * @param context this is the current Context
+     */
+    public MessageCache(Context context) {
+        this(context, DEFAULT_MAX_MESSAGES_PER_CONVERSATION);
+    }
+
+    /**
+     * This is the constructor with a size cap
+     * @param context this is the current Context
+     * @param maxMessagesPerConversation this is the most messages kept per conversation
+     */
+    public MessageCache(Context context, int maxMessagesPerConversation) {
+        this.chatDatabase = ChatDatabase.getInstance(context);
+        this.searchIndex = SearchIndex.getInstance(context);
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+    }
+
+    /**
+     * This will load the newest cached messages of a conversation
+     * @param conversationID this is the conversation to load
+     * @param limit this is the most messages to load
+     * @param callback this is called on the main thread with the messages
+     */
+    public void loadLatest(String conversationID, int limit, LoadCallback callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = new ArrayList<>();
+            SQLiteDatabase db = chatDatabase.getReadableDatabase();
+            // Read the tail newest first, then flip it into timestamp order
+            try (Cursor cursor = db.query(ChatDatabase.TABLE_MESSAGES, null,
+                    ChatDatabase.COLUMN_CONVERSATION_ID + " = ?", new String[]{conversationID},
+                    null, null,
+                    ChatDatabase.COLUMN_TIMESTAMP + " DESC, " + ChatDatabase.COLUMN_MESSAGE_ID + " DESC",
+                    String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    messages.add(getChatMessage(cursor));
+                }
+            }
+            Collections.reverse(messages);
+            mainHandler.post(() -> callback.onLoaded(messages));
+        });
+    }
+
+    /**
+     * This will read the newest cached message of a conversation, the
+     * point a sync continues from. It reads the disk on the calling
+     * thread, so it must not be called on the main thread
+     * @param conversationID this is the conversation to read
+     * @return the newest cached message, or null if none are cached
+     */
+    public ChatMessage getLatest(String conversationID) {
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(ChatDatabase.TABLE_MESSAGES, null,
+                ChatDatabase.COLUMN_CONVERSATION_ID + " = ?", new String[]{conversationID},
+                null, null,
+                ChatDatabase.COLUMN_TIMESTAMP + " DESC, " + ChatDatabase.COLUMN_MESSAGE_ID + " DESC",
+                "1")) {
+            return cursor.moveToFirst() ? getChatMessage(cursor) : null;
+        }
+    }
+
+    /**
+     * This will write messages of a conversation to the cache
+     * @param conversationID this is the conversation the messages belong to
+     * @param messages these are the messages to add or replace
+     * @return the future that completes when the messages are written
+     */
+    public Future<?> put(String conversationID, Collection<ChatMessage> messages) {
+        List<ChatMessage> copy = new ArrayList<>(messages);
+        // The index keeps messages after compaction drops them from the cache
+        searchIndex.index(conversationID, copy);
+        return executor.submit(() -> {
+            if (copy.isEmpty()) {
+                return;
+            }
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            // Write the whole set in one transaction
+            db.beginTransaction();
+            try {
+                for (ChatMessage chatMessage : copy) {
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_MESSAGE_ID, chatMessage.messageID);
+                    values.put(ChatDatabase.COLUMN_CONVERSATION_ID, conversationID);
+                    values.put(ChatDatabase.COLUMN_SENDER_ID, chatMessage.senderID);
+                    values.put(ChatDatabase.COLUMN_RECEIVER_ID, chatMessage.receiverID);
+                    values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+                    values.put(ChatDatabase.COLUMN_TIMESTAMP, chatMessage.timestamp);
+                    putAttachment(values, chatMessage);
+                    db.insertWithOnConflict(ChatDatabase.TABLE_MESSAGES, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+            // Compact every so often so the cache stays capped
+            writesSinceCompaction += copy.size();
+            if (writesSinceCompaction >= WRITES_PER_COMPACTION) {
+                compact(db);
+            }
+        });
+    }
+
+    /**
+     * This will remove every message from the cache and the search index
+     */
+    public void clear() {
+        searchIndex.clear();
+        executor.execute(() -> chatDatabase.getWritableDatabase().delete(ChatDatabase.TABLE_MESSAGES, null, null));
+    }
+
+    /**
+     * This will remove messages from the cache
+     * @param messageIDs these are the IDs of the messages to remove
+     */
+    public void remove(Collection<String> messageIDs) {
+        if (messageIDs.isEmpty()) {
+            return;
+        }
+        List<String> copy = new ArrayList<>(messageIDs);
+        searchIndex.remove(copy);
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String messageID : copy) {
+                    db.delete(ChatDatabase.TABLE_MESSAGES,
+                            ChatDatabase.COLUMN_MESSAGE_ID + " = ?", new String[]{messageID});
+                }
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * This will drop the oldest messages of every conversation
+     * that is over the size cap
+     * @param db this is the writable database
+     */
+    private void compact(SQLiteDatabase db) {
+        writesSinceCompaction = 0;
+        // Find the conversations over the cap
+        List<String> conversations = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + ChatDatabase.COLUMN_CONVERSATION_ID
+                + " FROM " + ChatDatabase.TABLE_MESSAGES
+                + " GROUP BY " + ChatDatabase.COLUMN_CONVERSATION_ID
+                + " HAVING COUNT(*) > " + maxMessagesPerConversation, null)) {
+            while (cursor.moveToNext()) {
+                conversations.add(cursor.getString(0));
+            }
+        }
+        // Delete everything older than the newest messages of each
+        for (String conversationID : conversations) {
+            db.execSQL("DELETE FROM " + ChatDatabase.TABLE_MESSAGES
+                    + " WHERE " + ChatDatabase.COLUMN_CONVERSATION_ID + " = ?"
+                    + " AND " + ChatDatabase.COLUMN_MESSAGE_ID + " NOT IN (SELECT "
+                    + ChatDatabase.COLUMN_MESSAGE_ID + " FROM " + ChatDatabase.TABLE_MESSAGES
+                    + " WHERE " + ChatDatabase.COLUMN_CONVERSATION_ID + " = ?"
+                    + " ORDER BY " + ChatDatabase.COLUMN_TIMESTAMP + " DESC LIMIT "
+                    + maxMessagesPerConversation + ")",
+                    new Object[]{conversationID, conversationID});
+        }
+    }
+
+    /**
+     * This will build a chat message from a cursor row
+     * @param cursor this is the cursor at the row
+     * @return a ChatMessage object for the row
+     */
+    static ChatMessage getChatMessage(Cursor cursor) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageID = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_MESSAGE_ID));
+        chatMessage.senderID = ChatMessage.internID(
+                cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_SENDER_ID)));
+        chatMessage.receiverID = ChatMessage.internID(
+                cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_RECEIVER_ID)));
+        chatMessage.message = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_MESSAGE));
+        chatMessage.timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_TIMESTAMP));
+        chatMessage.attachmentRef = cursor.getString(
+                cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ATTACHMENT_REF));
+        chatMessage.attachmentBlurHash = cursor.getString(
+                cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ATTACHMENT_BLUR_HASH));
+        chatMessage.attachmentWidth = cursor.getInt(
+                cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ATTACHMENT_WIDTH));
+        chatMessage.attachmentHeight = cursor.getInt(
+                cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ATTACHMENT_HEIGHT));
+        return chatMessage;
+    }
+
+    /**
+     * This will put the attachment of a message into a row
+     * @param values this is the row
+     * @param chatMessage this is the message
+     */
+    static void putAttachment(ContentValues values, ChatMessage chatMessage) {
+        values.put(ChatDatabase.COLUMN_ATTACHMENT_REF, chatMessage.attachmentRef);
+        values.put(ChatDatabase.COLUMN_ATTACHMENT_BLUR_HASH, chatMessage.attachmentBlurHash);
+        values.put(ChatDatabase.COLUMN_ATTACHMENT_WIDTH, chatMessage.attachmentWidth);
+        values.put(ChatDatabase.COLUMN_ATTACHMENT_HEIGHT, chatMessage.attachmentHeight);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.chatapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repositories.ChatRepository;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.repositories.ResultCallback;
+import com.example.chatapp.utilities.Backoff;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This is the Message Outbox that makes sending durable. A message is
+ * written to disk before it is sent, sends that arrive close together
+ * are committed as one batch, and failed batches are retried with
+ * backoff until the server accepts them. Messages carry their ID from
+ * the client, so a retried write replaces itself instead of duplicating,
+ * and a message that may have been sent before is resent only if the
+ * server does not have it, keeping its first timestamp
+ */
+public class MessageOutbox {
+    // This is the most messages sent in one batch
+    private static final int MAX_BATCH_MESSAGES = ChatRepository.MAX_MESSAGES_PER_BATCH;
+    // This is how long a send waits for others to join its batch
+    private static final long COALESCE_DELAY_MILLIS = 150;
+    // These are the retry delays
+    private static final long RETRY_BASE_DELAY_MILLIS = 1_000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 5 * 60_000;
+    // This is the shared instance
+    private static MessageOutbox instance;
+    // These are the private variables, the flags are only touched on the main thread
+    private final ChatDatabase chatDatabase;
+    private final ChatRepository chatRepository;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Backoff backoff = new Backoff(RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS);
+    private final Runnable flushRunnable = this::flush;
+    // These are the messages enqueued by this process that were never sent
+    private final Set<String> unsentIDs = new HashSet<>();
+    private boolean flushScheduled, flushing, flushAgain;
+    private int failures;
+
+    /**
+     * This will get the shared outbox instance
+     * @param context this is the current Context
+     * @return the shared MessageOutbox
+     */
+    public static synchronized MessageOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private MessageOutbox(Context context) {
+        this.chatDatabase = ChatDatabase.getInstance(context);
+        this.chatRepository = Repositories.getChatRepository();
+    }
+
+    /**
+     * This will create an ID for a new message without a network round trip
+     * @return the new message ID
+     */
+    public String newMessageID() {
+        return chatRepository.newMessageID();
+    }
+
+    /**
+     * This will store a message and send it with the next batch
+     * @param conversationID this is the conversation of the message
+     * @param chatMessage this is the message, with its ID already set
+     */
+    public void enqueue(String conversationID, ChatMessage chatMessage) {
+        ContentValues values = new ContentValues();
+        values.put(ChatDatabase.COLUMN_MESSAGE_ID, chatMessage.messageID);
+        values.put(ChatDatabase.COLUMN_CONVERSATION_ID, conversationID);
+        values.put(ChatDatabase.COLUMN_SENDER_ID, chatMessage.senderID);
+        values.put(ChatDatabase.COLUMN_RECEIVER_ID, chatMessage.receiverID);
+        values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+        values.put(ChatDatabase.COLUMN_TIMESTAMP, chatMessage.timestamp);
+        MessageCache.putAttachment(values, chatMessage);
+        unsentIDs.add(chatMessage.messageID);
+        executor.execute(() -> {
+            chatDatabase.getWritableDatabase().insertWithOnConflict(ChatDatabase.TABLE_OUTBOX,
+                    null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            mainHandler.post(() -> scheduleFlush(COALESCE_DELAY_MILLIS));
+        });
+    }
+
+    /**
+     * This will load the messages of a conversation that are not sent yet
+     * @param conversationID this is the conversation to load
+     * @param callback this is called on the main thread with the messages
+     */
+    public void loadPending(String conversationID, MessageCache.LoadCallback callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = query(ChatDatabase.COLUMN_CONVERSATION_ID + " = ?",
+                    new String[]{conversationID}, null);
+            mainHandler.post(() -> callback.onLoaded(messages));
+        });
+    }
+
+    /**
+     * This will send whatever is in the outbox, for example after a restart
+     */
+    public void flush() {
+        flushScheduled = false;
+        // Only one batch is in flight at a time
+        if (flushing) {
+            return;
+        }
+        flushing = true;
+        executor.execute(() -> {
+            List<ChatMessage> batch = query(null, null, String.valueOf(MAX_BATCH_MESSAGES));
+            mainHandler.post(() -> commit(batch));
+        });
+    }
+
+    /**
+     * This will commit one batch of messages
+     * @param batch these are the oldest messages in the outbox
+     */
+    private void commit(List<ChatMessage> batch) {
+        if (batch.isEmpty()) {
+            flushing = false;
+            return;
+        }
+        // A message from an earlier attempt or an earlier run may be on the server already
+        boolean firstAttempt = true;
+        for (ChatMessage chatMessage : batch) {
+            firstAttempt &= unsentIDs.remove(chatMessage.messageID);
+        }
+        ResultCallback<Void> onSent = (result, exception) -> {
+            if (exception == null) {
+                failures = 0;
+                // Drop the sent messages, then send whatever arrived meanwhile
+                List<String> sentIDs = new ArrayList<>();
+                for (ChatMessage chatMessage : batch) {
+                    sentIDs.add(chatMessage.messageID);
+                }
+                executor.execute(() -> {
+                    delete(sentIDs);
+                    mainHandler.post(() -> {
+                        flushing = false;
+                        if (flushAgain || batch.size() >= MAX_BATCH_MESSAGES) {
+                            flushAgain = false;
+                            scheduleFlush(0);
+                        }
+                    });
+                });
+            }
+            else {
+                // Nothing in a failed batch was written, so retry it whole
+                flushing = false;
+                flushAgain = false;
+                failures++;
+                scheduleFlush(backoff.getDelay(failures));
+            }
+        };
+        if (firstAttempt) {
+            chatRepository.sendMessages(batch, onSent);
+        }
+        else {
+            chatRepository.resendMessages(batch, onSent);
+        }
+    }
+
+    /**
+     * This will run a flush after a delay unless one is already coming
+     * @param delayMillis this is the delay in milliseconds
+     */
+    private void scheduleFlush(long delayMillis) {
+        if (flushScheduled) {
+            return;
+        }
+        // A flush in flight sends again when it completes
+        if (flushing) {
+            flushAgain = true;
+            return;
+        }
+        flushScheduled = true;
+        mainHandler.postDelayed(flushRunnable, delayMillis);
+    }
+
+    /**
+     * This will read messages from the outbox, oldest first
+     * @param selection this is the where clause, or null for all
+     * @param selectionArgs these are the where clause arguments
+     * @param limit this is the most messages to read, or null for all
+     * @return the pending messages
+     */
+    private List<ChatMessage> query(String selection, String[] selectionArgs, String limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(ChatDatabase.TABLE_OUTBOX, null, selection, selectionArgs,
+                null, null, ChatDatabase.COLUMN_TIMESTAMP + ", " + ChatDatabase.COLUMN_MESSAGE_ID,
+                limit)) {
+            while (cursor.moveToNext()) {
+                ChatMessage chatMessage = MessageCache.getChatMessage(cursor);
+                chatMessage.pending = true;
+                messages.add(chatMessage);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * This will remove sent messages from the outbox
+     * @param messageIDs these are the IDs of the sent messages
+     */
+    private void delete(List<String> messageIDs) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String messageID : messageIDs) {
+                db.delete(ChatDatabase.TABLE_OUTBOX,
+                        ChatDatabase.COLUMN_MESSAGE_ID + " = ?", new String[]{messageID});
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+}
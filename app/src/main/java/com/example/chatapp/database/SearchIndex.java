@@ -0,0 +1,346 @@
+package com.example.chatapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.SearchResult;
+import com.example.chatapp.utilities.SearchQuery;
+import com.example.chatapp.utilities.SearchRanker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This is the full-text Search Index of messages. It is fed by the
+ * message cache, so every message the chat or the background sync has
+ * seen is searchable without the network, and it keeps messages after
+ * the cache drops them. Writes are queued and applied in batches on a
+ * background thread, and searches run on their own thread
+ */
+public class SearchIndex {
+    // This is the most messages written in one transaction
+    public static final int BATCH_SIZE = 200;
+    // This is the most of the newest matches that are ranked
+    public static final int MAX_CANDIDATES = 500;
+    // This is the number of words around the matches in a snippet
+    private static final int SNIPPET_TOKENS = 12;
+    // Only the text is scored, the other columns are not indexed
+    private static final double[] COLUMN_WEIGHTS = {1, 0, 0, 0, 0, 0};
+    // Documents are numbered by time so the newest matches are read first,
+    // the low bits tell apart messages sent in the same millisecond
+    private static final int DOCID_SHIFT = 20;
+    private static final long DOCID_LOW_BITS = (1L << DOCID_SHIFT) - 1;
+    // This is the shared instance
+    private static SearchIndex instance;
+    // These are the private variables
+    private final ChatDatabase chatDatabase;
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private boolean draining;
+
+    /**
+     * This is the callback for search results
+     */
+    public interface SearchCallback {
+        // OnResults method, the results are best first, and limited is true
+        // when there were more matches than the newest MAX_CANDIDATES
+        void onResults(String query, List<SearchResult> results, boolean limited);
+    }
+
+    /**
+     * This is the matches of a search before they are ranked
+     */
+    private static class Candidates {
+        final List<SearchResult> results = new ArrayList<>();
+        boolean limited;
+    }
+
+    /**
+     * This is a queued write, a message to index or an ID to remove
+     */
+    private static class Entry {
+        final String conversationID;
+        final ChatMessage chatMessage;
+        final String removedID;
+
+        Entry(String conversationID, ChatMessage chatMessage, String removedID) {
+            this.conversationID = conversationID;
+            this.chatMessage = chatMessage;
+            this.removedID = removedID;
+        }
+    }
+
+    /**
+     * This will get the shared search index
+     * @param context this is the current Context
+     * @return the shared SearchIndex
+     */
+    public static synchronized SearchIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new SearchIndex(ChatDatabase.getInstance(context));
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param chatDatabase this is the database the index is in
+     */
+    private SearchIndex(ChatDatabase chatDatabase) {
+        this.chatDatabase = chatDatabase;
+    }
+
+    /**
+     * This will queue messages to be indexed, a message that is already
+     * indexed is replaced. Messages without text are only removed
+     * @param conversationID this is the conversation the messages belong to
+     * @param messages these are the messages
+     */
+    public void index(String conversationID, Collection<ChatMessage> messages) {
+        List<Entry> entries = new ArrayList<>();
+        for (ChatMessage chatMessage : messages) {
+            entries.add(new Entry(conversationID, chatMessage, null));
+        }
+        enqueue(entries);
+    }
+
+    /**
+     * This will queue messages to be removed from the index
+     * @param messageIDs these are the IDs of the messages
+     */
+    public void remove(Collection<String> messageIDs) {
+        List<Entry> entries = new ArrayList<>();
+        for (String messageID : messageIDs) {
+            entries.add(new Entry(null, null, messageID));
+        }
+        enqueue(entries);
+    }
+
+    /**
+     * This will remove every message from the index, the queued writes too
+     */
+    public void clear() {
+        synchronized (queue) {
+            queue.clear();
+        }
+        writeExecutor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(ChatDatabase.TABLE_SEARCH, null, null);
+                db.delete(ChatDatabase.TABLE_SEARCH_IDS, null, null);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * This will search the messages of every conversation of a user
+     * @param query this is the text the user typed
+     * @param userID this is the user who sent or received the messages
+     * @param limit this is the most results to return
+     * @param callback this is called on the main thread with the results
+     */
+    public void search(String query, String userID, int limit, SearchCallback callback) {
+        searchExecutor.execute(() -> {
+            Candidates candidates = search(query, userID);
+            List<SearchResult> results = SearchRanker.rank(candidates.results, limit);
+            mainHandler.post(() -> callback.onResults(query, results, candidates.limited));
+        });
+    }
+
+    /**
+     * This will add entries to the queue and start draining it
+     * @param entries these are the entries
+     */
+    private void enqueue(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (queue) {
+            queue.addAll(entries);
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        writeExecutor.execute(this::drain);
+    }
+
+    /**
+     * This will write one batch from the queue, and queue the next batch
+     * as a new task so a long backlog never holds the database for long
+     */
+    private void drain() {
+        List<Entry> batch = new ArrayList<>();
+        synchronized (queue) {
+            while (batch.size() < BATCH_SIZE && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+        }
+        try {
+            write(batch);
+        }
+        catch (SQLiteException exception) {
+            // The messages are indexed again the next time they are cached
+        }
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                draining = false;
+                return;
+            }
+        }
+        writeExecutor.execute(this::drain);
+    }
+
+    /**
+     * This will write a batch of entries in one transaction
+     * @param batch these are the entries
+     */
+    private void write(List<Entry> batch) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement isTaken = db.compileStatement("SELECT COUNT(*) FROM " + ChatDatabase.TABLE_SEARCH
+                     + " WHERE " + ChatDatabase.COLUMN_DOCID + " = ?");
+             SQLiteStatement deleteDocument = db.compileStatement("DELETE FROM " + ChatDatabase.TABLE_SEARCH
+                     + " WHERE " + ChatDatabase.COLUMN_DOCID + " = ?");
+             SQLiteStatement deleteDocid = db.compileStatement("DELETE FROM " + ChatDatabase.TABLE_SEARCH_IDS
+                     + " WHERE " + ChatDatabase.COLUMN_MESSAGE_ID + " = ?");
+             SQLiteStatement insertDocument = db.compileStatement("INSERT INTO " + ChatDatabase.TABLE_SEARCH
+                     + " (" + ChatDatabase.COLUMN_DOCID + ", " + ChatDatabase.COLUMN_MESSAGE + ", "
+                     + ChatDatabase.COLUMN_MESSAGE_ID + ", " + ChatDatabase.COLUMN_CONVERSATION_ID + ", "
+                     + ChatDatabase.COLUMN_SENDER_ID + ", " + ChatDatabase.COLUMN_RECEIVER_ID + ", "
+                     + ChatDatabase.COLUMN_TIMESTAMP + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+             SQLiteStatement insertDocid = db.compileStatement("INSERT INTO " + ChatDatabase.TABLE_SEARCH_IDS
+                     + " (" + ChatDatabase.COLUMN_MESSAGE_ID + ", " + ChatDatabase.COLUMN_DOCID + ") VALUES (?, ?)")) {
+            for (Entry entry : batch) {
+                String messageID = entry.chatMessage != null ? entry.chatMessage.messageID : entry.removedID;
+                if (messageID == null) {
+                    continue;
+                }
+                // Take out the old document of the message first
+                try (Cursor cursor = db.rawQuery("SELECT " + ChatDatabase.COLUMN_DOCID + " FROM "
+                        + ChatDatabase.TABLE_SEARCH_IDS + " WHERE " + ChatDatabase.COLUMN_MESSAGE_ID + " = ?",
+                        new String[]{messageID})) {
+                    if (cursor.moveToFirst()) {
+                        deleteDocument.bindLong(1, cursor.getLong(0));
+                        deleteDocument.executeUpdateDelete();
+                        deleteDocid.bindString(1, messageID);
+                        deleteDocid.executeUpdateDelete();
+                    }
+                }
+                ChatMessage chatMessage = entry.chatMessage;
+                if (chatMessage == null || chatMessage.message == null || chatMessage.message.isEmpty()) {
+                    continue;
+                }
+                // Find a free number at the time of the message
+                long docid = (chatMessage.timestamp << DOCID_SHIFT)
+                        | (ChatMessage.getStableID(messageID) & DOCID_LOW_BITS);
+                isTaken.bindLong(1, docid);
+                while (isTaken.simpleQueryForLong() > 0) {
+                    docid++;
+                    isTaken.bindLong(1, docid);
+                }
+                insertDocument.bindLong(1, docid);
+                insertDocument.bindString(2, chatMessage.message);
+                insertDocument.bindString(3, messageID);
+                insertDocument.bindString(4, entry.conversationID);
+                bindNullable(insertDocument, 5, chatMessage.senderID);
+                bindNullable(insertDocument, 6, chatMessage.receiverID);
+                insertDocument.bindLong(7, chatMessage.timestamp);
+                insertDocument.executeInsert();
+                insertDocid.bindString(1, messageID);
+                insertDocid.bindLong(2, docid);
+                insertDocid.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * This will search the index. Only the newest matches are ranked,
+     * which keeps a common word fast however many messages are indexed.
+     * Messages of other users are left out before the cap, so they never
+     * take the place of a match. It runs on a background thread
+     * @param query this is the text the user typed
+     * @param userID this is the user who sent or received the messages
+     * @return the scored matches, newest first
+     */
+    private Candidates search(String query, String userID) {
+        Candidates candidates = new Candidates();
+        String expression = SearchQuery.toMatchExpression(query);
+        if (expression == null) {
+            return candidates;
+        }
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        String sql = "SELECT " + ChatDatabase.COLUMN_MESSAGE_ID + ", "
+                + ChatDatabase.COLUMN_CONVERSATION_ID + ", "
+                + ChatDatabase.COLUMN_SENDER_ID + ", "
+                + ChatDatabase.COLUMN_RECEIVER_ID + ", "
+                + ChatDatabase.COLUMN_TIMESTAMP + ", "
+                + ChatDatabase.COLUMN_MESSAGE + ", "
+                + "snippet(" + ChatDatabase.TABLE_SEARCH + ", ?, ?, '…', 0, " + SNIPPET_TOKENS + "), "
+                + "matchinfo(" + ChatDatabase.TABLE_SEARCH + ", '" + SearchRanker.MATCHINFO_FORMAT + "')"
+                + " FROM " + ChatDatabase.TABLE_SEARCH
+                + " WHERE " + ChatDatabase.TABLE_SEARCH + " MATCH ?"
+                + " AND (" + ChatDatabase.COLUMN_SENDER_ID + " = ? OR " + ChatDatabase.COLUMN_RECEIVER_ID + " = ?)"
+                // One more than the cap tells whether older matches were left out
+                + " ORDER BY " + ChatDatabase.COLUMN_DOCID + " DESC LIMIT " + (MAX_CANDIDATES + 1);
+        try (Cursor cursor = db.rawQuery(sql,
+                new String[]{SearchQuery.MATCH_START, SearchQuery.MATCH_END, expression, userID, userID})) {
+            while (cursor.moveToNext()) {
+                if (candidates.results.size() == MAX_CANDIDATES) {
+                    candidates.limited = true;
+                    break;
+                }
+                SearchResult result = new SearchResult();
+                result.messageID = cursor.getString(0);
+                result.conversationID = cursor.getString(1);
+                result.senderID = cursor.getString(2);
+                result.receiverID = cursor.getString(3);
+                result.timestamp = cursor.getLong(4);
+                result.message = cursor.getString(5);
+                result.snippet = cursor.getString(6);
+                result.score = SearchRanker.score(SearchRanker.readMatchinfo(cursor.getBlob(7)), COLUMN_WEIGHTS);
+                candidates.results.add(result);
+            }
+        }
+        catch (SQLiteException exception) {
+            return new Candidates();
+        }
+        return candidates;
+    }
+
+    /**
+     * This will bind a string that may be null
+     * @param statement this is the statement
+     * @param index this is the index of the argument
+     * @param value this is the value
+     */
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        }
+        else {
+            statement.bindString(index, value);
+        }
+    }
+}
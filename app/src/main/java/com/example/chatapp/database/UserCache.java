@@ -0,0 +1,229 @@
+package com.example.chatapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.UserTrie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This is the User Cache that keeps the user directory on disk, so
+ * it can be shown straight away and then brought up to date with only
+ * the users that changed. It holds the directory from its start up to
+ * the last page that was loaded, and the time the rows are current to.
+ * All disk work runs on one background thread
+ */
+public class UserCache {
+    // This is the sync time of a directory that was never synced
+    public static final long NOT_SYNCED = -1;
+    // These are the names of the sync state values
+    private static final String STATE_SYNCED_AT = "users_synced_at";
+    private static final String STATE_COMPLETE = "users_complete";
+    // This is the shared disk thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // These are the private variables
+    private final ChatDatabase chatDatabase;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * This is the callback for the cached directory
+     */
+    public interface LoadCallback {
+        // OnLoaded method, the users are in directory order
+        void onLoaded(List<User> users, long syncedAt, boolean complete);
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the current Context
+     */
+    public UserCache(Context context) {
+        this.chatDatabase = ChatDatabase.getInstance(context);
+    }
+
+    /**
+     * This will load the cached directory
+     * @param callback this is called on the main thread with the users,
+     *                 the time they are current to, or NOT_SYNCED, and
+     *                 whether the last page is cached
+     */
+    public void load(LoadCallback callback) {
+        executor.execute(() -> {
+            List<User> users = new ArrayList<>();
+            SQLiteDatabase db = chatDatabase.getReadableDatabase();
+            try (Cursor cursor = db.query(ChatDatabase.TABLE_USERS, null, null, null, null, null,
+                    ChatDatabase.COLUMN_NAME_KEY + ", " + ChatDatabase.COLUMN_USER_ID)) {
+                while (cursor.moveToNext()) {
+                    users.add(getUser(cursor));
+                }
+            }
+            long syncedAt = getState(db, STATE_SYNCED_AT, NOT_SYNCED);
+            boolean complete = getState(db, STATE_COMPLETE, 0) != 0;
+            mainHandler.post(() -> callback.onLoaded(users, syncedAt, complete));
+        });
+    }
+
+    /**
+     * This will write a page of the directory
+     * @param users these are the users to add or replace
+     */
+    public void put(Collection<User> users) {
+        List<User> copy = new ArrayList<>(users);
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                putUsers(db, copy);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * This will write the users that changed and the time the cache is
+     * now current to, in one transaction
+     * @param changed these are the users to add or replace
+     * @param removedIDs these are the IDs of the users to remove
+     * @param syncedAt this is the time of the newest change
+     */
+    public void applyChanges(Collection<User> changed, Collection<String> removedIDs, long syncedAt) {
+        List<User> copy = new ArrayList<>(changed);
+        List<String> removed = new ArrayList<>(removedIDs);
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                putUsers(db, copy);
+                for (String userID : removed) {
+                    db.delete(ChatDatabase.TABLE_USERS,
+                            ChatDatabase.COLUMN_USER_ID + " = ?", new String[]{userID});
+                }
+                putState(db, STATE_SYNCED_AT, syncedAt);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * This will set the time the cache syncs changes from, before
+     * the first page is written
+     * @param syncedAt this is the time of the newest change on the server
+     */
+    public void setSyncedAt(long syncedAt) {
+        executor.execute(() -> putState(chatDatabase.getWritableDatabase(), STATE_SYNCED_AT, syncedAt));
+    }
+
+    /**
+     * This will mark the last page of the directory as cached
+     */
+    public void setComplete() {
+        executor.execute(() -> putState(chatDatabase.getWritableDatabase(), STATE_COMPLETE, 1));
+    }
+
+    /**
+     * This will remove the cached directory and its sync state, so the
+     * next user syncs from the start
+     */
+    public void clear() {
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(ChatDatabase.TABLE_USERS, null, null);
+                db.delete(ChatDatabase.TABLE_SYNC_STATE, null, null);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * This will write users, the caller holds a transaction
+     * @param db this is the writable database
+     * @param users these are the users
+     */
+    private static void putUsers(SQLiteDatabase db, List<User> users) {
+        for (User user : users) {
+            ContentValues values = new ContentValues();
+            values.put(ChatDatabase.COLUMN_USER_ID, user.userid);
+            values.put(ChatDatabase.COLUMN_FIRST_NAME, user.firstName);
+            values.put(ChatDatabase.COLUMN_LAST_NAME, user.lastName);
+            values.put(ChatDatabase.COLUMN_EMAIL, user.email);
+            values.put(ChatDatabase.COLUMN_IMAGE_REF, user.imageRef);
+            values.put(ChatDatabase.COLUMN_IMAGE_THUMBNAIL_REF, user.imageThumbnailRef);
+            values.put(ChatDatabase.COLUMN_IMAGE_HEADER_REF, user.imageHeaderRef);
+            values.put(ChatDatabase.COLUMN_IMAGE_VERSION, user.imageVersion);
+            values.put(ChatDatabase.COLUMN_TOKEN, user.token);
+            values.put(ChatDatabase.COLUMN_NAME_KEY, UserTrie.getNameKey(user));
+            values.put(ChatDatabase.COLUMN_UPDATED_AT, user.updatedAt);
+            db.insertWithOnConflict(ChatDatabase.TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * This will read a sync state value
+     * @param db this is the database
+     * @param name this is the name of the value
+     * @param missing this is returned if the value was never written
+     * @return the value
+     */
+    private static long getState(SQLiteDatabase db, String name, long missing) {
+        try (Cursor cursor = db.query(ChatDatabase.TABLE_SYNC_STATE,
+                new String[]{ChatDatabase.COLUMN_VALUE}, ChatDatabase.COLUMN_NAME + " = ?",
+                new String[]{name}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : missing;
+        }
+    }
+
+    /**
+     * This will write a sync state value
+     * @param db this is the writable database
+     * @param name this is the name of the value
+     * @param value this is the value
+     */
+    private static void putState(SQLiteDatabase db, String name, long value) {
+        ContentValues values = new ContentValues();
+        values.put(ChatDatabase.COLUMN_NAME, name);
+        values.put(ChatDatabase.COLUMN_VALUE, value);
+        db.insertWithOnConflict(ChatDatabase.TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * This will build a user from a cursor row
+     * @param cursor this is the cursor at the row
+     * @return a User object for the row
+     */
+    private static User getUser(Cursor cursor) {
+        User user = new User();
+        user.userid = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_USER_ID));
+        user.firstName = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_FIRST_NAME));
+        user.lastName = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_LAST_NAME));
+        user.email = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_EMAIL));
+        user.imageRef = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_REF));
+        user.imageThumbnailRef = cursor.getString(
+                cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_THUMBNAIL_REF));
+        user.imageHeaderRef = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_HEADER_REF));
+        user.imageVersion = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_VERSION));
+        user.token = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_TOKEN));
+        user.updatedAt = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_UPDATED_AT));
+        return user;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.chatapp.firebase;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.ChunkedUploader;
+import com.example.chatapp.utilities.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the Attachment Upload Worker that copies an attachment from
+ * the device into the blob store. The work is kept by the system, so it
+ * continues after the app is closed or killed, and every attempt picks
+ * up after the last chunk the store has
+ */
+public class AttachmentUploadWorker extends Worker {
+    // This is the first delay before a failed upload is tried again
+    private static final long RETRY_DELAY_SECONDS = 10;
+    // This is the prefix of the unique work name of an attachment
+    private static final String WORK_NAME = "uploadAttachment_";
+    // This is the input key of the file to upload
+    private static final String KEY_FILE = "file";
+
+    /**
+     * This will schedule the upload of an attachment. An upload that is
+     * already scheduled for the same blob is kept
+     * @param context this is the current Context
+     * @param blobID this is the ID of the blob to upload into
+     * @param file this is the file to upload, it must stay until the upload is done
+     */
+    public static void enqueue(Context context, String blobID, File file) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(AttachmentUploadWorker.class)
+                .setInputData(new Data.Builder()
+                        .putString(Constants.KEY_ATTACHMENT_REF, blobID)
+                        .putString(KEY_FILE, file.getAbsolutePath())
+                        .build())
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, RETRY_DELAY_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME + blobID, ExistingWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * This is the default constructor
+     * @param context this is the application Context
+     * @param workerParams these are the parameters of the work
+     */
+    public AttachmentUploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * This is the override for the doWork method, it runs on a background thread
+     * @return the result of the upload
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        String blobID = getInputData().getString(Constants.KEY_ATTACHMENT_REF);
+        String path = getInputData().getString(KEY_FILE);
+        if (blobID == null || path == null || !new File(path).exists()) {
+            return Result.failure();
+        }
+        try {
+            new ChunkedUploader(Repositories.getBlobStore()).upload(blobID, new File(path), null);
+            return Result.success();
+        }
+        catch (IOException exception) {
+            // Network errors are tried again later, from the last stored chunk
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.chatapp.firebase;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.Person;
+
+import com.example.chatapp.R;
+import com.example.chatapp.activities.ChatActivity;
+import com.example.chatapp.activities.MainActivity;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.Constants;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Chat Notifier that shows pushed messages. Each
+ * conversation is one MessagingStyle notification that is updated in
+ * place, grouped under one summary, and redrawn at most once per burst.
+ * The sender is loaded by ID, so opening the chat from a notification
+ * has the same details as opening it from the app
+ */
+public class ChatNotifier implements NotificationAggregator.Sink {
+    // These are the notification constants
+    private static final String CHANNEL_ID = "chatMessages";
+    private static final String GROUP_KEY = "com.example.chatapp.MESSAGES";
+    private static final int SUMMARY_ID = 0;
+    // This is how long a burst is collected before a redraw
+    private static final long REDRAW_DELAY_MILLIS = 1_000;
+    // This is the shared instance
+    private static ChatNotifier instance;
+    // These are the private variables
+    private final Context context;
+    private final NotificationManagerCompat notificationManager;
+    private final NotificationAggregator aggregator;
+
+    /**
+     * This will get the shared notifier instance
+     * @param context this is the current Context
+     * @return the shared ChatNotifier
+     */
+    public static synchronized ChatNotifier getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatNotifier(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private ChatNotifier(Context context) {
+        this.context = context;
+        this.notificationManager = NotificationManagerCompat.from(context);
+        // Redraws run on the main thread
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.aggregator = new NotificationAggregator(mainHandler::postDelayed, this, REDRAW_DELAY_MILLIS,
+                new NotificationStore(context));
+        createChannel();
+    }
+
+    /**
+     * This will add a pushed message to its conversation notification
+     * @param data this is the data payload of the push
+     */
+    public void onMessageReceived(Map<String, String> data) {
+        aggregator.onMessage(data);
+    }
+
+    /**
+     * This will set the conversation the user has open, and remove its notification
+     * @param conversationID this is the open conversation, or null
+     */
+    public void setActiveConversation(String conversationID) {
+        aggregator.setActiveConversation(conversationID);
+        if (conversationID != null) {
+            notificationManager.cancel(conversationID.hashCode());
+        }
+    }
+
+    /**
+     * This will drop what was collected for a dismissed notification
+     * @param conversationID this is the conversation of the notification
+     */
+    public void onDismissed(String conversationID) {
+        aggregator.onDismissed(conversationID);
+    }
+
+    /**
+     * This will update or remove the notification of a conversation the
+     * signed in user has read, here or on another device
+     * @param conversationID this is the conversation that was read
+     * @param readUpTo this is the timestamp of the newest read message
+     */
+    public void onConversationRead(String conversationID, long readUpTo) {
+        aggregator.onRead(conversationID, readUpTo);
+    }
+
+    /**
+     * This is the override for the showConversation method
+     * @param conversationID the conversation to show
+     * @param lines the latest lines, oldest first
+     * @param unreadCount the number of messages since the conversation was read
+     */
+    @Override
+    public void showConversation(String conversationID, List<NotificationAggregator.Line> lines,
+                                 int unreadCount) {
+        // Nothing can be posted without the permission
+        if (lines.isEmpty() || !notificationManager.areNotificationsEnabled()) {
+            return;
+        }
+        // The chat needs the whole user, the push only has the name
+        NotificationAggregator.Line last = lines.get(lines.size() - 1);
+        Repositories.getUserRepository().loadUser(last.senderID, (sender, exception) ->
+                postConversation(conversationID, lines, unreadCount, sender));
+    }
+
+    /**
+     * This will post the notification of a conversation
+     * @param conversationID this is the conversation to show
+     * @param lines these are the latest lines, oldest first
+     * @param unreadCount this is the number of messages since the conversation was read
+     * @param sender this is the sender of the last line, or null if it could not be loaded
+     */
+    private void postConversation(String conversationID, List<NotificationAggregator.Line> lines,
+                                  int unreadCount, User sender) {
+        // Build the conversation from the latest lines
+        Person user = new Person.Builder().setName(context.getString(R.string.you)).build();
+        NotificationCompat.MessagingStyle style = new NotificationCompat.MessagingStyle(user);
+        for (NotificationAggregator.Line line : lines) {
+            style.addMessage(line.message, line.timestamp,
+                    new Person.Builder().setKey(line.senderID).setName(line.senderName).build());
+        }
+        try {
+            // Only the first post of a conversation makes a sound
+            notificationManager.notify(conversationID.hashCode(),
+                    new NotificationCompat.Builder(context, CHANNEL_ID)
+                            .setSmallIcon(R.drawable.ic_info)
+                            .setStyle(style)
+                            .setNumber(unreadCount)
+                            .setCategory(NotificationCompat.CATEGORY_MESSAGE)
+                            .setGroup(GROUP_KEY)
+                            .setOnlyAlertOnce(true)
+                            .setAutoCancel(true)
+                            .setContentIntent(getChatIntent(conversationID, sender))
+                            .setDeleteIntent(getDeleteIntent(conversationID))
+                            .build());
+            notificationManager.notify(SUMMARY_ID,
+                    new NotificationCompat.Builder(context, CHANNEL_ID)
+                            .setSmallIcon(R.drawable.ic_info)
+                            .setGroup(GROUP_KEY)
+                            .setGroupSummary(true)
+                            .setOnlyAlertOnce(true)
+                            .setAutoCancel(true)
+                            .build());
+        }
+        catch (SecurityException exception) {
+            // The permission was revoked while posting
+        }
+    }
+
+    /**
+     * This is the override for the syncConversation method
+     * @param conversationID the conversation to pull
+     */
+    @Override
+    public void syncConversation(String conversationID) {
+        MessageSyncWorker.enqueue(context, conversationID);
+    }
+
+    /**
+     * This is the override for the cancelConversation method
+     * @param conversationID the conversation to remove
+     */
+    @Override
+    public void cancelConversation(String conversationID) {
+        notificationManager.cancel(conversationID.hashCode());
+    }
+
+    /**
+     * This will build the intent that opens a conversation
+     * @param conversationID this is the conversation to open
+     * @param sender this is the other user, or null to open the conversation list
+     * @return the intent for the notification
+     */
+    private PendingIntent getChatIntent(String conversationID, User sender) {
+        Intent intent;
+        // A partial user would be copied into the recent conversation entry
+        if (sender != null) {
+            intent = new Intent(context, ChatActivity.class);
+            intent.putExtra(Constants.KEY_USER, sender);
+        }
+        else {
+            intent = new Intent(context, MainActivity.class);
+        }
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, conversationID.hashCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * This will build the intent sent when a notification is dismissed
+     * @param conversationID this is the conversation of the notification
+     * @return the delete intent for the notification
+     */
+    private PendingIntent getDeleteIntent(String conversationID) {
+        Intent intent = new Intent(context, NotificationDismissedReceiver.class);
+        intent.putExtra(Constants.KEY_CONVERSATION_ID, conversationID);
+        return PendingIntent.getBroadcast(context, conversationID.hashCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * This will create the notification channel for messages
+     */
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    context.getString(R.string.messages), NotificationManager.IMPORTANCE_HIGH);
+            context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chatapp.firebase;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.chatapp.database.MessageCache;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repositories.BlockingCallback;
+import com.example.chatapp.repositories.ChatRepository;
+import com.example.chatapp.repositories.Repositories;
+import com.example.chatapp.utilities.Constants;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the Message Sync Worker that pulls the new messages of one
+ * conversation into the local cache in the background, so a chat
+ * opened from a notification is already filled in. Only messages after
+ * the newest cached one are read
+ */
+public class MessageSyncWorker extends Worker {
+    // This is how long a sync waits so pushes close together share it
+    private static final long SYNC_DELAY_SECONDS = 5;
+    // These are the sync page constants
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 5;
+    // This is the longest a page may take to load
+    private static final long PAGE_TIMEOUT_MILLIS = 60_000;
+    // This is the prefix of the unique work name of a conversation
+    private static final String WORK_NAME = "syncConversation_";
+    // These are the conversations being synced, and the ones with a sync queued after that
+    private static final Set<String> running = new HashSet<>();
+    private static final Set<String> queued = new HashSet<>();
+
+    /**
+     * This will schedule a sync of a conversation. A sync that is
+     * already waiting for the same conversation is kept and the new
+     * one is dropped, so a burst of pushes becomes one fetch. A sync
+     * that is running may have read past the pushed message already,
+     * so one more sync is queued to run after it
+     * @param context this is the current Context
+     * @param conversationID this is the conversation to sync
+     */
+    public static void enqueue(Context context, String conversationID) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(MessageSyncWorker.class)
+                .setInputData(new Data.Builder()
+                        .putString(Constants.KEY_CONVERSATION_ID, conversationID)
+                        .build())
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setInitialDelay(SYNC_DELAY_SECONDS, TimeUnit.SECONDS)
+                .build();
+        ExistingWorkPolicy policy;
+        synchronized (running) {
+            policy = running.contains(conversationID) && queued.add(conversationID)
+                    ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.KEEP;
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME + conversationID, policy, request);
+    }
+
+    /**
+     * This is the default constructor
+     * @param context this is the application Context
+     * @param workerParams these are the parameters of the work
+     */
+    public MessageSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * This is the override for the doWork method, it runs on a background thread
+     * @return the result of the sync
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        String conversationID = getInputData().getString(Constants.KEY_CONVERSATION_ID);
+        if (conversationID == null) {
+            return Result.failure();
+        }
+        // Pushes from now on are read by this run or queue the next one
+        synchronized (running) {
+            running.add(conversationID);
+            queued.remove(conversationID);
+        }
+        ChatRepository chatRepository = Repositories.getChatRepository();
+        MessageCache messageCache = new MessageCache(getApplicationContext());
+        try {
+            // Continue from the newest cached message, the local watermark
+            ChatMessage newest = messageCache.getLatest(conversationID);
+            for (int page = 0; page < MAX_PAGES; page++) {
+                BlockingCallback<List<ChatMessage>> result = new BlockingCallback<>();
+                if (newest == null) {
+                    chatRepository.loadLatestMessages(conversationID, PAGE_SIZE, result);
+                }
+                else {
+                    chatRepository.loadMessagesAfter(conversationID, newest, PAGE_SIZE, result);
+                }
+                List<ChatMessage> messages = result.await(PAGE_TIMEOUT_MILLIS);
+                if (messages.isEmpty()) {
+                    break;
+                }
+                // Wait for the write so the work is not done before the cache is
+                messageCache.put(conversationID, messages).get();
+                // A short page means the cache has caught up
+                if (messages.size() < PAGE_SIZE) {
+                    break;
+                }
+                newest = messages.get(messages.size() - 1);
+            }
+            return Result.success();
+        }
+        catch (Exception exception) {
+            // Network and disk errors are tried again later
+            return Result.retry();
+        }
+        finally {
+            synchronized (running) {
+                running.remove(conversationID);
+            }
+        }
+    }
+}
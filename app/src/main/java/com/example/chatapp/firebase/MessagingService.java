@@ -4,12 +4,20 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.PreferenceManager;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 
+import java.util.Map;
+
 /**
  * Firebase Cloud Messaging Service to handle message
- * events from firebase
+ * events from firebase. A new chat message is pushed as a data
+ * message carrying its conversationID, messageID, timestamp,
+ * senderID, senderName and message
  */
 public class MessagingService extends FirebaseMessagingService {
 
@@ -22,6 +30,17 @@ public class MessagingService extends FirebaseMessagingService {
     public void onNewToken(@NonNull String token) {
         super.onNewToken(token);
         Log.d("FCM","Token: " + token);
+        // Store the new token on the signed in user so pushes keep arriving
+        PreferenceManager preferenceManager = new PreferenceManager(getApplicationContext());
+        if (preferenceManager.getBoolean(Constants.KEY_IS_SIGNED_IN)) {
+            FirebaseFirestore.getInstance().collection(Constants.KEY_COLLECTION_USERS)
+                    .document(preferenceManager.getString(Constants.KEY_USERID))
+                    .update(Constants.KEY_FCM_TOKEN, token,
+                            Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp())
+                    // Remember the token that was pushed
+                    .addOnSuccessListener(result ->
+                            preferenceManager.putString(Constants.KEY_FCM_TOKEN, token));
+        }
     }
 
     /**
@@ -31,6 +50,11 @@ public class MessagingService extends FirebaseMessagingService {
     @Override
     public void onMessageReceived(@NonNull RemoteMessage message) {
         super.onMessageReceived(message);
-        Log.d("FCM","460 Message: " + message.getNotification().getBody());
+        // Collect the message into its conversation notification, which
+        // also pulls the new messages of the conversation into the cache
+        Map<String, String> data = message.getData();
+        if (data.get(Constants.KEY_CONVERSATION_ID) != null) {
+            ChatNotifier.getInstance(getApplicationContext()).onMessageReceived(data);
+        }
     }
 }
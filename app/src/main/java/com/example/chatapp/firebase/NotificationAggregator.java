@@ -0,0 +1,306 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.utilities.Constants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Notification Aggregator that turns a burst of pushed
+ * messages into a few notification updates. Each conversation keeps a
+ * small inbox of its latest lines, and the first message of a burst
+ * schedules one redraw that every message until then joins. Each
+ * redraw also asks for one sync of the conversation. The inboxes are
+ * saved as they change, so a new process carries on where the last one
+ * stopped, and they are dropped when the notification is dismissed or
+ * the conversation is read
+ */
+public class NotificationAggregator {
+    /**
+     * This is the scheduler the redraws are delayed with
+     */
+    public interface Scheduler {
+        // Run the task after a delay
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * This is where the aggregated conversations are shown
+     */
+    public interface Sink {
+        // Show or update the notification of a conversation, the lines are oldest first
+        void showConversation(String conversationID, List<Line> lines, int unreadCount);
+        // Pull the new messages of a conversation
+        void syncConversation(String conversationID);
+        // Remove the notification of a conversation
+        void cancelConversation(String conversationID);
+    }
+
+    /**
+     * This is where the inboxes are saved between processes
+     */
+    public interface Store {
+        // Read every saved inbox by conversation
+        Map<String, Saved> load();
+        // Save the inbox of a conversation
+        void save(String conversationID, Saved saved);
+        // Drop the inbox of a conversation
+        void remove(String conversationID);
+    }
+
+    /**
+     * This is the saved inbox of one conversation
+     */
+    public static class Saved {
+        // These are the latest lines, oldest first
+        public final List<Line> lines;
+        // This is every message since the conversation was last read
+        public final int unreadCount;
+
+        /**
+         * This is the default constructor
+         * @param lines these are the latest lines, oldest first
+         * @param unreadCount this is every message since the conversation was last read
+         */
+        public Saved(List<Line> lines, int unreadCount) {
+            this.lines = lines;
+            this.unreadCount = unreadCount;
+        }
+    }
+
+    /**
+     * This is one line of a conversation notification
+     */
+    public static class Line {
+        // String variables
+        public final String senderID, senderName, message;
+        // Timestamp in epoch milliseconds
+        public final long timestamp;
+
+        /**
+         * This is the default constructor
+         * @param senderID this is the user ID of the sender
+         * @param senderName this is the name of the sender
+         * @param message this is the message text
+         * @param timestamp this is the timestamp in epoch milliseconds
+         */
+        public Line(String senderID, String senderName, String message, long timestamp) {
+            this.senderID = senderID;
+            this.senderName = senderName;
+            this.message = message;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * This is the inbox of one conversation
+     */
+    private static class Inbox {
+        // These are the latest lines, oldest first
+        final ArrayDeque<Line> lines = new ArrayDeque<>();
+        // This is every message since the conversation was last read
+        int unreadCount;
+        boolean redrawScheduled;
+    }
+
+    // This is the most lines kept per conversation
+    public static final int MAX_LINES = 6;
+    // This is the store of an aggregator that keeps nothing between processes
+    private static final Store NO_STORE = new Store() {
+        @Override
+        public Map<String, Saved> load() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void save(String conversationID, Saved saved) {
+        }
+
+        @Override
+        public void remove(String conversationID) {
+        }
+    };
+    // These are the private variables, guarded by this
+    private final Scheduler scheduler;
+    private final Sink sink;
+    private final Store store;
+    private final long redrawDelayMillis;
+    private final Map<String, Inbox> inboxes = new HashMap<>();
+    private String activeConversationID;
+
+    /**
+     * This is the default constructor
+     * @param scheduler this is the scheduler the redraws are delayed with
+     * @param sink this is where the conversations are shown
+     * @param redrawDelayMillis this is how long a burst is collected before a redraw
+     */
+    public NotificationAggregator(Scheduler scheduler, Sink sink, long redrawDelayMillis) {
+        this(scheduler, sink, redrawDelayMillis, NO_STORE);
+    }
+
+    /**
+     * This is the constructor that carries on from the saved inboxes
+     * @param scheduler this is the scheduler the redraws are delayed with
+     * @param sink this is where the conversations are shown
+     * @param redrawDelayMillis this is how long a burst is collected before a redraw
+     * @param store this is where the inboxes are saved
+     */
+    public NotificationAggregator(Scheduler scheduler, Sink sink, long redrawDelayMillis, Store store) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.redrawDelayMillis = redrawDelayMillis;
+        this.store = store;
+        for (Map.Entry<String, Saved> entry : store.load().entrySet()) {
+            Inbox inbox = new Inbox();
+            inbox.lines.addAll(entry.getValue().lines);
+            inbox.unreadCount = entry.getValue().unreadCount;
+            inboxes.put(entry.getKey(), inbox);
+        }
+    }
+
+    /**
+     * This will add a pushed message to the inbox of its conversation
+     * @param data this is the data payload of the push
+     */
+    public synchronized void onMessage(Map<String, String> data) {
+        String conversationID = data.get(Constants.KEY_CONVERSATION_ID);
+        // The open chat is already listening to its messages
+        if (conversationID == null || conversationID.equals(activeConversationID)) {
+            return;
+        }
+        Inbox inbox = inboxes.get(conversationID);
+        if (inbox == null) {
+            inbox = new Inbox();
+            inboxes.put(conversationID, inbox);
+        }
+        // Keep only the latest lines
+        inbox.lines.addLast(new Line(data.get(Constants.KEY_SENDER_ID),
+                data.get(Constants.KEY_SENDER_NAME), data.get(Constants.KEY_MESSAGE),
+                parseTimestamp(data.get(Constants.KEY_TIMESTAMP))));
+        if (inbox.lines.size() > MAX_LINES) {
+            inbox.lines.removeFirst();
+        }
+        inbox.unreadCount++;
+        save(conversationID, inbox);
+        // The first message of a burst schedules the redraw
+        if (!inbox.redrawScheduled) {
+            inbox.redrawScheduled = true;
+            scheduler.schedule(() -> redraw(conversationID), redrawDelayMillis);
+        }
+    }
+
+    /**
+     * This will set the conversation the user has open, which is not
+     * notified about, and drop what was collected for it
+     * @param conversationID this is the open conversation, or null
+     */
+    public synchronized void setActiveConversation(String conversationID) {
+        activeConversationID = conversationID;
+        if (conversationID != null) {
+            remove(conversationID);
+        }
+    }
+
+    /**
+     * This will drop what was collected for a conversation whose
+     * notification the user dismissed
+     * @param conversationID this is the conversation of the notification
+     */
+    public synchronized void onDismissed(String conversationID) {
+        remove(conversationID);
+    }
+
+    /**
+     * This will drop the lines of a conversation that were read, for
+     * example on another device, and update or remove its notification
+     * @param conversationID this is the conversation that was read
+     * @param readUpTo this is the timestamp of the newest read message
+     */
+    public void onRead(String conversationID, long readUpTo) {
+        List<Line> lines;
+        int unreadCount;
+        synchronized (this) {
+            Inbox inbox = inboxes.get(conversationID);
+            // Nothing is read unless the oldest line is
+            if (inbox == null || inbox.lines.isEmpty() || inbox.lines.getFirst().timestamp > readUpTo) {
+                return;
+            }
+            while (!inbox.lines.isEmpty() && inbox.lines.getFirst().timestamp <= readUpTo) {
+                inbox.lines.removeFirst();
+            }
+            // Messages older than the kept lines were read too
+            inbox.unreadCount = inbox.lines.size();
+            if (inbox.lines.isEmpty()) {
+                remove(conversationID);
+            }
+            else {
+                save(conversationID, inbox);
+            }
+            lines = new ArrayList<>(inbox.lines);
+            unreadCount = inbox.unreadCount;
+        }
+        if (lines.isEmpty()) {
+            sink.cancelConversation(conversationID);
+        }
+        else {
+            sink.showConversation(conversationID, lines, unreadCount);
+        }
+    }
+
+    /**
+     * This will show the collected lines of a conversation
+     * @param conversationID this is the conversation to show
+     */
+    private void redraw(String conversationID) {
+        List<Line> lines;
+        int unreadCount;
+        synchronized (this) {
+            Inbox inbox = inboxes.get(conversationID);
+            // The conversation was opened since the redraw was scheduled
+            if (inbox == null || !inbox.redrawScheduled) {
+                return;
+            }
+            inbox.redrawScheduled = false;
+            lines = new ArrayList<>(inbox.lines);
+            unreadCount = inbox.unreadCount;
+        }
+        sink.showConversation(conversationID, lines, unreadCount);
+        sink.syncConversation(conversationID);
+    }
+
+    /**
+     * This will save the inbox of a conversation, the caller holds the lock
+     * @param conversationID this is the conversation
+     * @param inbox this is its inbox
+     */
+    private void save(String conversationID, Inbox inbox) {
+        store.save(conversationID, new Saved(new ArrayList<>(inbox.lines), inbox.unreadCount));
+    }
+
+    /**
+     * This will drop the inbox of a conversation, the caller holds the lock
+     * @param conversationID this is the conversation
+     */
+    private void remove(String conversationID) {
+        if (inboxes.remove(conversationID) != null) {
+            store.remove(conversationID);
+        }
+    }
+
+    /**
+     * This will read a pushed timestamp
+     * @param timestamp this is the timestamp in epoch milliseconds, as text
+     * @return the timestamp, or now if it is missing
+     */
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        }
+        catch (NumberFormatException exception) {
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.chatapp.firebase;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.example.chatapp.utilities.Constants;
+
+/**
+ * This is the receiver of the delete intent of a conversation
+ * notification. Dismissing it drops what was collected, so the next
+ * message starts a new notification instead of bringing the old lines back
+ */
+public class NotificationDismissedReceiver extends BroadcastReceiver {
+
+    /**
+     * This is the override for the onReceive method
+     * @param context this is the current Context
+     * @param intent this is the delete intent, with the conversation ID
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String conversationID = intent.getStringExtra(Constants.KEY_CONVERSATION_ID);
+        if (conversationID != null) {
+            ChatNotifier.getInstance(context).onDismissed(conversationID);
+        }
+    }
+}
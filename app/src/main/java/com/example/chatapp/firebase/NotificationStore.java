@@ -0,0 +1,103 @@
+package com.example.chatapp.firebase;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.chatapp.utilities.Constants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Notification Store that keeps the inboxes of the
+ * NotificationAggregator in their own SharedPreferences file, one JSON
+ * value per conversation, written asynchronously
+ */
+public class NotificationStore implements NotificationAggregator.Store {
+    // This is the name of the preferences file
+    private static final String PREFERENCE_NAME = "chatAppNotifications";
+    // These are the JSON field names
+    private static final String FIELD_LINES = "lines";
+    private static final String FIELD_UNREAD_COUNT = "unreadCount";
+    // Instance variables
+    private final SharedPreferences sharedPreferences;
+
+    /**
+     * This is the constructor
+     * @param context this is the current Context
+     */
+    public NotificationStore(Context context) {
+        sharedPreferences = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * This is the override for the load method
+     * @return the saved inboxes by conversation
+     */
+    @Override
+    public Map<String, NotificationAggregator.Saved> load() {
+        Map<String, NotificationAggregator.Saved> inboxes = new HashMap<>();
+        for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+            try {
+                JSONObject inbox = new JSONObject(String.valueOf(entry.getValue()));
+                JSONArray array = inbox.getJSONArray(FIELD_LINES);
+                List<NotificationAggregator.Line> lines = new ArrayList<>();
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject line = array.getJSONObject(i);
+                    lines.add(new NotificationAggregator.Line(line.optString(Constants.KEY_SENDER_ID, null),
+                            line.optString(Constants.KEY_SENDER_NAME, null),
+                            line.optString(Constants.KEY_MESSAGE, null),
+                            line.getLong(Constants.KEY_TIMESTAMP)));
+                }
+                inboxes.put(entry.getKey(),
+                        new NotificationAggregator.Saved(lines, inbox.getInt(FIELD_UNREAD_COUNT)));
+            }
+            catch (JSONException exception) {
+                // A value that cannot be read is only a lost notification
+            }
+        }
+        return inboxes;
+    }
+
+    /**
+     * This is the override for the save method
+     * @param conversationID this is the conversation
+     * @param saved this is its inbox
+     */
+    @Override
+    public void save(String conversationID, NotificationAggregator.Saved saved) {
+        try {
+            JSONArray lines = new JSONArray();
+            for (NotificationAggregator.Line line : saved.lines) {
+                lines.put(new JSONObject()
+                        .put(Constants.KEY_SENDER_ID, line.senderID)
+                        .put(Constants.KEY_SENDER_NAME, line.senderName)
+                        .put(Constants.KEY_MESSAGE, line.message)
+                        .put(Constants.KEY_TIMESTAMP, line.timestamp));
+            }
+            JSONObject inbox = new JSONObject()
+                    .put(FIELD_LINES, lines)
+                    .put(FIELD_UNREAD_COUNT, saved.unreadCount);
+            // apply() hands the write to a background thread
+            sharedPreferences.edit().putString(conversationID, inbox.toString()).apply();
+        }
+        catch (JSONException exception) {
+            // Only a lost notification, the inbox in memory is still right
+        }
+    }
+
+    /**
+     * This is the override for the remove method
+     * @param conversationID this is the conversation
+     */
+    @Override
+    public void remove(String conversationID) {
+        sharedPreferences.edit().remove(conversationID).apply();
+    }
+}
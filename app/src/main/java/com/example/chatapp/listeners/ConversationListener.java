@@ -0,0 +1,11 @@
+package com.example.chatapp.listeners;
+
+import com.example.chatapp.models.Conversation;
+
+/**
+ * This is the Listener methods for recent conversations
+ */
+public interface ConversationListener {
+    // OnConversationClicked method
+    void onConversationClicked(Conversation conversation);
+}
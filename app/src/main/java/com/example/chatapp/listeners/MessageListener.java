@@ -0,0 +1,17 @@
+package com.example.chatapp.listeners;
+
+/**
+ * This is the Listener methods for changes to an ordered message store
+ */
+public interface MessageListener {
+    // OnMessageInserted method
+    void onMessageInserted(int position);
+    // OnMessageChanged method
+    void onMessageChanged(int position);
+    // OnMessageMoved method
+    void onMessageMoved(int fromPosition, int toPosition);
+    // OnMessageRemoved method
+    void onMessageRemoved(int position);
+    // OnMessageRangeRemoved method
+    void onMessageRangeRemoved(int position, int count);
+}
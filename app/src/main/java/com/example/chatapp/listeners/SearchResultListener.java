@@ -0,0 +1,12 @@
+package com.example.chatapp.listeners;
+
+import com.example.chatapp.models.SearchResult;
+import com.example.chatapp.models.User;
+
+/**
+ * This is the Listener methods for message search results
+ */
+public interface SearchResultListener {
+    // OnSearchResultClicked method
+    void onSearchResultClicked(SearchResult searchResult, User partner);
+}
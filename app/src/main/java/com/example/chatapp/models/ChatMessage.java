@@ -1,13 +1,56 @@
 package com.example.chatapp.models;
 
-import java.util.Date;
-
 /**
- * This is a model for Chat Messages
+ * This is a model for Chat Messages. It is kept compact because
+ * long chats hold many of them: the timestamp is a primitive and
+ * is only formatted when the message is shown
  */
 public class ChatMessage {
-    // String variables
-    public String senderID, receiverID, message, dateTime;
-    // Date object
-    public Date dateObject;
+    // String variables, the user IDs are interned so messages share them
+    public String messageID, senderID, receiverID, message;
+    // Timestamp in epoch milliseconds
+    public long timestamp;
+    // True while the message is only on this device
+    public boolean pending;
+    // The image attachment is a blob reference, never the bytes, with its
+    // size and a tiny placeholder so the row can be laid out before it loads
+    public String attachmentRef, attachmentBlurHash;
+    public int attachmentWidth, attachmentHeight;
+
+    // These are the 64-bit FNV-1a constants
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * This will get a stable numeric ID for a message ID, for lists
+     * with stable IDs. Message IDs are random, so a 64-bit hash of them
+     * practically never collides
+     * @param messageID this is the message ID
+     * @return the numeric ID
+     */
+    public static long getStableID(String messageID) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < messageID.length(); i++) {
+            hash ^= messageID.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * This will get the shared copy of a user ID
+     * @param userID this is the user ID
+     * @return the interned user ID, or null
+     */
+    public static String internID(String userID) {
+        return userID != null ? userID.intern() : null;
+    }
+
+    /**
+     * This will check if the message has an image attachment
+     * @return true if it has one
+     */
+    public boolean hasAttachment() {
+        return attachmentRef != null && attachmentWidth > 0 && attachmentHeight > 0;
+    }
 }
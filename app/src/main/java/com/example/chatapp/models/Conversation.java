@@ -0,0 +1,29 @@
+package com.example.chatapp.models;
+
+/**
+ * This is a model for an entry of a user's recent conversations.
+ * It carries a copy of the other user's details and of the last
+ * message, so the list can be shown from one query
+ */
+public class Conversation {
+    // String variables
+    public String conversationID, partnerID, partnerFirstName, partnerLastName, partnerImageRef;
+    public String lastMessage, lastSenderID;
+    // Timestamp of the last message in epoch milliseconds
+    public long lastTimestamp;
+    // Number of messages the user has not read
+    public long unreadCount;
+
+    /**
+     * This will get the other user of the conversation
+     * @return a User object with the details copied into the conversation
+     */
+    public User getPartner() {
+        User user = new User();
+        user.userid = partnerID;
+        user.firstName = partnerFirstName;
+        user.lastName = partnerLastName;
+        user.imageRef = partnerImageRef;
+        return user;
+    }
+}
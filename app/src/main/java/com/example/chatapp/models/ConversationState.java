@@ -0,0 +1,61 @@
+package com.example.chatapp.models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is a model for the state of a conversation that is not part of
+ * any message: who is typing, and how far each user has received and
+ * read it. It is kept in one document per conversation, so none of it
+ * is written per message
+ */
+public class ConversationState {
+    // A typing state older than this is stale, the typist's app may have gone away
+    public static final long TYPING_TIMEOUT_MILLIS = 10_000;
+    // Typing times by user ID in epoch milliseconds
+    public final Map<String, Long> typing = new HashMap<>();
+    // Timestamps of the newest message each user's device received and read, by user ID
+    public final Map<String, Long> delivered = new HashMap<>();
+    public final Map<String, Long> read = new HashMap<>();
+
+    /**
+     * This will check if a user is typing, stale states are ignored
+     * @param userID this is the ID of the user
+     * @param now this is now in epoch milliseconds
+     * @return true if the user is typing
+     */
+    public boolean isTyping(String userID, long now) {
+        Long typingAt = typing.get(userID);
+        return typingAt != null && now - typingAt < TYPING_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * This will get how far a user has received the conversation
+     * @param userID this is the ID of the user
+     * @return the timestamp of the newest delivered message, or 0 if there is none
+     */
+    public long getDeliveredUpTo(String userID) {
+        // A read message was delivered too
+        return Math.max(getOrZero(delivered, userID), getReadUpTo(userID));
+    }
+
+    /**
+     * This will get how far a user has read the conversation
+     * @param userID this is the ID of the user
+     * @return the timestamp of the newest read message, or 0 if there is none
+     */
+    public long getReadUpTo(String userID) {
+        return getOrZero(read, userID);
+    }
+
+    /**
+     * This will get a watermark of a user
+     * @param watermarks these are the watermarks by user ID
+     * @param userID this is the ID of the user
+     * @return the watermark, or 0 if there is none
+     */
+    private static long getOrZero(Map<String, Long> watermarks, String userID) {
+        Long watermark = watermarks.get(userID);
+        return watermark != null ? watermark : 0;
+    }
+}
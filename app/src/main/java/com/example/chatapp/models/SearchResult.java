@@ -0,0 +1,25 @@
+package com.example.chatapp.models;
+
+/**
+ * This is a model for a result of a message search. It carries what
+ * the result row shows and what is needed to open the chat at it
+ */
+public class SearchResult {
+    // String variables
+    public String messageID, conversationID, senderID, receiverID, message;
+    // The text around the matches, with the matches marked
+    public String snippet;
+    // Timestamp in epoch milliseconds
+    public long timestamp;
+    // Relevance of the match, higher is better
+    public double score;
+
+    /**
+     * This will get the other user of the message
+     * @param userID this is the ID of the signed in user
+     * @return the ID of the user the message was sent to or received from
+     */
+    public String getPartnerID(String userID) {
+        return userID.equals(senderID) ? receiverID : senderID;
+    }
+}
@@ -8,5 +8,11 @@ import java.io.Serializable;
 public class User implements Serializable {
     // String variables
     public String firstName, lastName, image, email, token, userid;
+    // Image reference variables, the image itself is fetched on demand
+    public String imageRef, imageThumbnailRef, imageHeaderRef;
+    public long imageVersion;
+    // Time of the last change to the user document in epoch microseconds,
+    // the precision of a server timestamp, so it can continue a page
+    public long updatedAt;
 
 }
@@ -0,0 +1,31 @@
+package com.example.chatapp.repositories;
+
+/**
+ * This is the failure of a sign in or a sign up that the user can fix
+ */
+public class AccountException extends Exception {
+    // This is the version of the serialized form
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * These are the reasons an account action fails
+     */
+    public enum Reason {
+        // The email and password do not match an account
+        INVALID_CREDENTIALS,
+        // Another account already has the email
+        EMAIL_TAKEN
+    }
+
+    // This is the public variable
+    public final Reason reason;
+
+    /**
+     * This is the constructor
+     * @param reason this is the reason the action failed
+     */
+    public AccountException(Reason reason) {
+        super(reason.name());
+        this.reason = reason;
+    }
+}
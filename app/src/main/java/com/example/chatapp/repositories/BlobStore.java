@@ -0,0 +1,49 @@
+package com.example.chatapp.repositories;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This is the Blob Store for attachments. A blob is written in
+ * numbered chunks, so an upload that stops can pick up after the last
+ * chunk that was stored, and it can only be read once it is committed.
+ * Chats only carry the blob ID, never the bytes. The methods block, so
+ * they are called from a background thread like a worker
+ */
+public interface BlobStore {
+    // Chunks stay well under the Firestore document limit of 1 MiB
+    int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * This will get how far an upload got
+     * @param blobID this is the ID of the blob
+     * @return the number of chunks stored in order from the first one
+     */
+    int getStoredChunks(String blobID) throws IOException;
+
+    /**
+     * This will store a chunk, chunks are stored in order
+     * @param blobID this is the ID of the blob
+     * @param index this is the index of the chunk
+     * @param data this is the buffer holding the chunk
+     * @param length this is the number of bytes of the buffer in the chunk
+     */
+    void putChunk(String blobID, int index, byte[] data, int length) throws IOException;
+
+    /**
+     * This will mark a blob complete so it can be read
+     * @param blobID this is the ID of the blob
+     * @param chunkCount this is the number of chunks
+     * @param length this is the length of the blob in bytes
+     */
+    void commit(String blobID, int chunkCount, long length) throws IOException;
+
+    /**
+     * This will open a committed blob. The chunks are read as the
+     * stream reaches them, so a decoder can start on the first one
+     * @param blobID this is the ID of the blob
+     * @return the stream of the blob
+     * @throws java.io.FileNotFoundException if the blob is not committed yet
+     */
+    InputStream open(String blobID) throws IOException;
+}
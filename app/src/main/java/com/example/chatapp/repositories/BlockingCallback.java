@@ -0,0 +1,47 @@
+package com.example.chatapp.repositories;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This is a callback a background thread can wait on, for work like
+ * a sync job that has to finish before it returns
+ * @param <T> this is the type of the result
+ */
+public class BlockingCallback<T> implements ResultCallback<T> {
+    // These are the private variables
+    private final CountDownLatch done = new CountDownLatch(1);
+    private T result;
+    private Exception exception;
+
+    /**
+     * This is the override for the onComplete method
+     * @param result this is the result, or null if the operation failed
+     * @param exception this is why the operation failed, or null if it succeeded
+     */
+    @Override
+    public void onComplete(T result, Exception exception) {
+        this.result = result;
+        this.exception = exception;
+        done.countDown();
+    }
+
+    /**
+     * This will wait for the result. Never call it on the thread the
+     * result is delivered on
+     * @param timeoutMillis this is the longest to wait in milliseconds
+     * @return the result
+     * @throws Exception if the operation failed, timed out or the wait was interrupted
+     */
+    public T await(long timeoutMillis) throws Exception {
+        if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException();
+        }
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.chatapp.repositories;
+
+/**
+ * This is one change to the results of a query
+ * @param <T> this is the type of the results
+ */
+public class Change<T> {
+    /**
+     * These are the kinds of change
+     */
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    // This is the kind of change
+    public final Type type;
+    // This is the new version of the result, or the last one if it was removed
+    public final T item;
+    // These are the positions before and after the change, -1 when there is none
+    public final int oldIndex;
+    public final int newIndex;
+
+    /**
+     * This is the constructor
+     * @param type this is the kind of change
+     * @param item this is the result that changed
+     * @param oldIndex this is the position before the change, or -1 if it was added
+     * @param newIndex this is the position after the change, or -1 if it was removed
+     */
+    public Change(Type type, T item, int oldIndex, int newIndex) {
+        this.type = type;
+        this.item = item;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.chatapp.repositories;
+
+import java.util.List;
+
+/**
+ * This is the listener for the changes to the results of a query
+ * @param <T> this is the type of the results
+ */
+public interface ChangeListener<T> {
+    /**
+     * This is called with the changes of each snapshot. The first
+     * snapshot adds every result, and the indexes of the changes
+     * apply to the results one change after the other
+     * @param changes these are the changes, or null if the query failed
+     * @param exception this is why the query failed, or null
+     */
+    void onChanges(List<Change<T>> changes, Exception exception);
+}
@@ -0,0 +1,140 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.models.User;
+
+import java.util.List;
+
+/**
+ * This is the Chat Repository for the messages and the recent
+ * conversations. Messages are ordered by timestamp with the message ID
+ * breaking ties, so page cursors are exact. Results and snapshots are
+ * delivered on the thread of the implementation, the main thread for
+ * the database
+ */
+public interface ChatRepository {
+    // This is the most writes the database accepts in one batch
+    int MAX_BATCH_WRITES = 500;
+    // A sent message writes itself and at most two recent conversation entries
+    int MAX_MESSAGES_PER_BATCH = MAX_BATCH_WRITES / 3;
+
+    /**
+     * This will derive the conversation ID for two users. The
+     * result is the same whichever user is passed first
+     * @param firstUserID this is the ID of one user
+     * @param secondUserID this is the ID of the other user
+     * @return the conversation ID for the pair of users
+     */
+    static String getConversationID(String firstUserID, String secondUserID) {
+        if (firstUserID.compareTo(secondUserID) <= 0) {
+            return firstUserID + "_" + secondUserID;
+        }
+        else {
+            return secondUserID + "_" + firstUserID;
+        }
+    }
+
+    /**
+     * This will create the ID of a new message on the device, so the
+     * message can be shown and stored before it reaches the server
+     * @return the new message ID
+     */
+    String newMessageID();
+
+    /**
+     * This will send messages in one batch. Each message is set under its
+     * own ID with the server time, so sending the same message again does
+     * not duplicate it. The recent conversation entries of both users are
+     * updated in the same batch
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the batch is committed, or null
+     */
+    void sendMessages(List<ChatMessage> messages, ResultCallback<Void> callback);
+
+    /**
+     * This will send messages that an earlier attempt may already have
+     * written. A message the server has is left as it is, so it keeps the
+     * time of its first write and is not counted as unread again
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the messages are written, or null
+     */
+    void resendMessages(List<ChatMessage> messages, ResultCallback<Void> callback);
+
+    /**
+     * This will load the newest page of a conversation
+     * @param conversationID this is the conversation to load
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    void loadLatestMessages(String conversationID, int limit, ResultCallback<List<ChatMessage>> callback);
+
+    /**
+     * This will load the page of messages before a cursor
+     * @param conversationID this is the conversation to load
+     * @param oldest this is the oldest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    void loadMessagesBefore(String conversationID, ChatMessage oldest, int limit,
+                            ResultCallback<List<ChatMessage>> callback);
+
+    /**
+     * This will load the page of messages after a cursor
+     * @param conversationID this is the conversation to load
+     * @param newest this is the newest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    void loadMessagesAfter(String conversationID, ChatMessage newest, int limit,
+                           ResultCallback<List<ChatMessage>> callback);
+
+    /**
+     * This will listen to the messages of a conversation in timestamp order.
+     * A message is reported again when its pending write is accepted
+     * @param conversationID this is the conversation to listen to
+     * @param since this is the oldest timestamp to listen from, or 0 for all
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    Registration listenMessages(String conversationID, long since, ChangeListener<ChatMessage> changeListener);
+
+    /**
+     * This will copy the details of each user into the other user's
+     * recent conversation entry, so the list needs no user lookups.
+     * The signed in user's entry is marked read at the same time. An
+     * entry that is already current is not written
+     * @param user this is the signed in user
+     * @param partner this is the other user of the conversation
+     * @param callback this is called when the entries are written, or null
+     */
+    void openConversation(User user, User partner, ResultCallback<Void> callback);
+
+    /**
+     * This will clear the unread count of a recent conversation entry,
+     * unless it is already clear
+     * @param userID this is the user who read the conversation
+     * @param conversationID this is the conversation that was read
+     * @param callback this is called when the entry is written, or null
+     */
+    void markConversationRead(String userID, String conversationID, ResultCallback<Void> callback);
+
+    /**
+     * This will listen to the most recent conversations of a user,
+     * newest first. Entries without a message yet are left out
+     * @param userID this is the user whose conversations are listened to
+     * @param limit this is the most conversations to listen to
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    Registration listenConversations(String userID, int limit, ChangeListener<Conversation> changeListener);
+
+    /**
+     * This will migrate the messages of a conversation that were written
+     * before messages carried a conversation ID
+     * @param firstUserID this is the ID of one user
+     * @param secondUserID this is the ID of the other user
+     * @param callback this is called when every message is migrated, or null
+     */
+    void migrateConversation(String firstUserID, String secondUserID, ResultCallback<Void> callback);
+}
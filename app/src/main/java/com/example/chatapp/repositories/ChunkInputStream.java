@@ -0,0 +1,82 @@
+package com.example.chatapp.repositories;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This is the stream of a chunked blob. Each chunk is only opened
+ * when the reader reaches it, so reading can start before the rest
+ * of the blob is fetched
+ */
+abstract class ChunkInputStream extends InputStream {
+    // These are the private variables
+    private final int chunkCount;
+    private int nextChunk;
+    private InputStream current;
+
+    /**
+     * This is the constructor
+     * @param chunkCount this is the number of chunks of the blob
+     */
+    ChunkInputStream(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * This will open a chunk
+     * @param index this is the index of the chunk
+     * @return the stream of the chunk
+     */
+    abstract InputStream openChunk(int index) throws IOException;
+
+    /**
+     * This is the override for the read method
+     * @return the next byte, or -1 at the end of the blob
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    /**
+     * This is the override for the read method with a buffer
+     * @param buffer this is where the bytes are read to
+     * @param offset this is the first index of the buffer to fill
+     * @param length this is the most bytes to read
+     * @return the number of bytes read, or -1 at the end of the blob
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            if (current == null) {
+                if (nextChunk >= chunkCount) {
+                    return -1;
+                }
+                current = openChunk(nextChunk++);
+            }
+            int read = current.read(buffer, offset, length);
+            if (read != -1) {
+                return read;
+            }
+            // Move on to the next chunk
+            current.close();
+            current = null;
+        }
+    }
+
+    /**
+     * This is the override for the close method
+     */
+    @Override
+    public void close() throws IOException {
+        nextChunk = chunkCount;
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
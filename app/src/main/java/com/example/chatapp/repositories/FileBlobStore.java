@@ -0,0 +1,149 @@
+package com.example.chatapp.repositories;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This is the File Blob Store that keeps blobs in a folder on the
+ * device, one folder per blob and one file per chunk. Every file is
+ * written beside its final name and then renamed, so a process that
+ * dies mid-write never leaves a half chunk that counts as stored.
+ * It is used for tests and for attachments kept only on the device
+ */
+public class FileBlobStore implements BlobStore {
+    // These are the file names in the folder of a blob
+    private static final String CHUNK_PREFIX = "chunk_";
+    private static final String MANIFEST = "manifest";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // These are the private variables
+    private final File root;
+
+    /**
+     * This is the constructor
+     * @param root this is the folder that holds the blobs
+     */
+    public FileBlobStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * This is the override for the getStoredChunks method
+     * @param blobID this is the ID of the blob
+     * @return the number of chunks stored in order from the first one
+     */
+    @Override
+    public int getStoredChunks(String blobID) {
+        File folder = getFolder(blobID);
+        int count = 0;
+        while (new File(folder, CHUNK_PREFIX + count).exists()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * This is the override for the putChunk method
+     * @param blobID this is the ID of the blob
+     * @param index this is the index of the chunk
+     * @param data this is the buffer holding the chunk
+     * @param length this is the number of bytes of the buffer in the chunk
+     */
+    @Override
+    public void putChunk(String blobID, int index, byte[] data, int length) throws IOException {
+        if (index > getStoredChunks(blobID)) {
+            throw new IOException("Chunk " + index + " is out of order");
+        }
+        writeAtomically(new File(getFolder(blobID), CHUNK_PREFIX + index), output ->
+                output.write(data, 0, length));
+    }
+
+    /**
+     * This is the override for the commit method
+     * @param blobID this is the ID of the blob
+     * @param chunkCount this is the number of chunks
+     * @param length this is the length of the blob in bytes
+     */
+    @Override
+    public void commit(String blobID, int chunkCount, long length) throws IOException {
+        if (getStoredChunks(blobID) < chunkCount) {
+            throw new IOException("Blob " + blobID + " is missing chunks");
+        }
+        writeAtomically(new File(getFolder(blobID), MANIFEST), output -> {
+            output.writeInt(chunkCount);
+            output.writeLong(length);
+        });
+    }
+
+    /**
+     * This is the override for the open method
+     * @param blobID this is the ID of the blob
+     * @return the stream of the blob
+     */
+    @Override
+    public InputStream open(String blobID) throws IOException {
+        File folder = getFolder(blobID);
+        File manifest = new File(folder, MANIFEST);
+        if (!manifest.exists()) {
+            throw new FileNotFoundException("Blob " + blobID + " is not committed");
+        }
+        int chunkCount;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(manifest))) {
+            chunkCount = input.readInt();
+        }
+        return new ChunkInputStream(chunkCount) {
+            @Override
+            InputStream openChunk(int index) throws IOException {
+                return new FileInputStream(new File(folder, CHUNK_PREFIX + index));
+            }
+        };
+    }
+
+    /**
+     * This will get the folder of a blob
+     * @param blobID this is the ID of the blob
+     * @return the folder
+     */
+    private File getFolder(String blobID) {
+        if (blobID.isEmpty() || blobID.contains("/") || blobID.contains("\\") || blobID.startsWith(".")) {
+            throw new IllegalArgumentException("Not a blob ID: " + blobID);
+        }
+        return new File(root, blobID);
+    }
+
+    /**
+     * This is how the content of a file is written
+     */
+    private interface Content {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * This will write a file beside its name and rename it into place
+     * @param file this is the file to write
+     * @param content this writes the content
+     */
+    private static void writeAtomically(File file, Content content) throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        File temporary = new File(folder, file.getName() + TEMPORARY_SUFFIX);
+        try (FileOutputStream fileOutput = new FileOutputStream(temporary);
+             DataOutputStream output = new DataOutputStream(fileOutput)) {
+            content.write(output);
+            output.flush();
+            // Make sure the bytes are on disk before the rename makes them count
+            fileOutput.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not write " + file);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This is the Firestore Blob Store. A blob is a manifest document with
+ * one chunk document per chunk under it. Every chunk is written in one
+ * batch with the count of stored chunks, so the manifest alone says
+ * where an upload resumes, without reading any chunk
+ */
+public class FirestoreBlobStore implements BlobStore {
+    // This is the longest a single read or write may take
+    private static final long TIMEOUT_MILLIS = 60_000;
+    // These are the private variables
+    private final FirebaseFirestore database;
+
+    /**
+     * This is the default constructor
+     * @param database this is the Firestore database instance
+     */
+    public FirestoreBlobStore(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * This is the override for the getStoredChunks method
+     * @param blobID this is the ID of the blob
+     * @return the number of chunks stored in order from the first one
+     */
+    @Override
+    public int getStoredChunks(String blobID) throws IOException {
+        DocumentSnapshot manifest = await(manifestReference(blobID).get());
+        Long storedChunks = manifest.getLong(Constants.KEY_STORED_CHUNKS);
+        return storedChunks != null ? storedChunks.intValue() : 0;
+    }
+
+    /**
+     * This is the override for the putChunk method
+     * @param blobID this is the ID of the blob
+     * @param index this is the index of the chunk
+     * @param data this is the buffer holding the chunk
+     * @param length this is the number of bytes of the buffer in the chunk
+     */
+    @Override
+    public void putChunk(String blobID, int index, byte[] data, int length) throws IOException {
+        WriteBatch batch = database.batch();
+        batch.set(manifestReference(blobID).collection(Constants.KEY_COLLECTION_CHUNKS)
+                .document(String.valueOf(index)),
+                Collections.singletonMap(Constants.KEY_CHUNK_DATA,
+                        Blob.fromBytes(Arrays.copyOf(data, length))));
+        // The count moves with the chunk, so it never claims a chunk that is missing
+        batch.set(manifestReference(blobID),
+                Collections.singletonMap(Constants.KEY_STORED_CHUNKS, index + 1), SetOptions.merge());
+        await(batch.commit());
+    }
+
+    /**
+     * This is the override for the commit method
+     * @param blobID this is the ID of the blob
+     * @param chunkCount this is the number of chunks
+     * @param length this is the length of the blob in bytes
+     */
+    @Override
+    public void commit(String blobID, int chunkCount, long length) throws IOException {
+        HashMap<String, Object> manifest = new HashMap<>();
+        manifest.put(Constants.KEY_CHUNK_COUNT, chunkCount);
+        manifest.put(Constants.KEY_BLOB_LENGTH, length);
+        manifest.put(Constants.KEY_COMMITTED, true);
+        await(manifestReference(blobID).set(manifest, SetOptions.merge()));
+    }
+
+    /**
+     * This is the override for the open method. Chunks are fetched one
+     * at a time as the stream reaches them
+     * @param blobID this is the ID of the blob
+     * @return the stream of the blob
+     */
+    @Override
+    public InputStream open(String blobID) throws IOException {
+        DocumentSnapshot manifest = await(manifestReference(blobID).get());
+        Long chunkCount = manifest.getLong(Constants.KEY_CHUNK_COUNT);
+        if (!Boolean.TRUE.equals(manifest.getBoolean(Constants.KEY_COMMITTED)) || chunkCount == null) {
+            throw new FileNotFoundException("Blob " + blobID + " is not committed");
+        }
+        return new ChunkInputStream(chunkCount.intValue()) {
+            @Override
+            InputStream openChunk(int index) throws IOException {
+                DocumentSnapshot chunk = await(manifestReference(blobID)
+                        .collection(Constants.KEY_COLLECTION_CHUNKS)
+                        .document(String.valueOf(index))
+                        .get());
+                Blob data = chunk.getBlob(Constants.KEY_CHUNK_DATA);
+                if (data == null) {
+                    throw new IOException("Blob " + blobID + " is missing chunk " + index);
+                }
+                return new ByteArrayInputStream(data.toBytes());
+            }
+        };
+    }
+
+    /**
+     * This is the manifest document of a blob
+     * @param blobID this is the ID of the blob
+     * @return the document reference of the manifest
+     */
+    private DocumentReference manifestReference(String blobID) {
+        return database.collection(Constants.KEY_COLLECTION_BLOBS).document(blobID);
+    }
+
+    /**
+     * This will wait for a database task
+     * @param task this is the task
+     * @param <T> this is the type of the result
+     * @return the result
+     */
+    private static <T> T await(Task<T> task) throws IOException {
+        try {
+            return Tasks.await(task, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException | TimeoutException exception) {
+            throw new IOException(exception);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exception);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This is the Firestore Chat Repository that owns the chat queries.
+ * Every message carries a conversation ID derived from the two users,
+ * so one ordered query covers both directions of a chat.
+ * The query needs a composite index on conversationID and timestamp
+ */
+public class FirestoreChatRepository implements ChatRepository {
+    // This is the recent conversation text of a photo sent without a caption
+    private static final String ATTACHMENT_PREVIEW = "\uD83D\uDCF7 Photo";
+    // These are the private variables
+    private final FirebaseFirestore database;
+    private final SubscriptionManager subscriptions;
+
+    /**
+     * This is the default constructor
+     * @param database this is the Firestore database instance
+     * @param subscriptions this owns the listeners, identical queries share one
+     */
+    public FirestoreChatRepository(FirebaseFirestore database, SubscriptionManager subscriptions) {
+        this.database = database;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * This is the override for the newMessageID method
+     * @return the new message ID
+     */
+    @Override
+    public String newMessageID() {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document().getId();
+    }
+
+    /**
+     * This is a write of a send, put in a batch or a transaction
+     */
+    private static class Write {
+        final DocumentReference reference;
+        final HashMap<String, Object> data;
+        final boolean merge;
+
+        Write(DocumentReference reference, HashMap<String, Object> data, boolean merge) {
+            this.reference = reference;
+            this.data = data;
+            this.merge = merge;
+        }
+    }
+
+    /**
+     * This is the override for the sendMessages method. The recent
+     * conversation entries get the same server timestamp as the messages,
+     * so an entry always shows the last message committed to its
+     * conversation even when both users send at once
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the batch is committed, or null
+     */
+    @Override
+    public void sendMessages(List<ChatMessage> messages, ResultCallback<Void> callback) {
+        WriteBatch batch = database.batch();
+        for (Write write : getWrites(messages)) {
+            if (write.merge) {
+                batch.set(write.reference, write.data, SetOptions.merge());
+            }
+            else {
+                batch.set(write.reference, write.data);
+            }
+        }
+        FirestoreResults.complete(batch.commit(), callback);
+    }
+
+    /**
+     * This is the override for the resendMessages method. The messages
+     * are read in a transaction and only the ones the server does not
+     * have are written, so a message keeps its first server timestamp
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the transaction is committed, or null
+     */
+    @Override
+    public void resendMessages(List<ChatMessage> messages, ResultCallback<Void> callback) {
+        FirestoreResults.complete(database.runTransaction(transaction -> {
+            List<ChatMessage> unsent = new ArrayList<>();
+            for (ChatMessage chatMessage : messages) {
+                if (!transaction.get(messageReference(chatMessage.messageID)).exists()) {
+                    unsent.add(chatMessage);
+                }
+            }
+            for (Write write : getWrites(unsent)) {
+                if (write.merge) {
+                    transaction.set(write.reference, write.data, SetOptions.merge());
+                }
+                else {
+                    transaction.set(write.reference, write.data);
+                }
+            }
+            return null;
+        }), callback);
+    }
+
+    /**
+     * This will build the writes that send messages, the messages and
+     * the recent conversation entries of both users
+     * @param messages these are the messages to send
+     * @return the writes
+     */
+    private List<Write> getWrites(List<ChatMessage> messages) {
+        List<Write> writes = new ArrayList<>();
+        // These are the newest message and message count of each conversation
+        Map<String, ChatMessage> lastMessages = new LinkedHashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (ChatMessage chatMessage : messages) {
+            String conversationID = ChatRepository.getConversationID(chatMessage.senderID,
+                    chatMessage.receiverID);
+            // New object for the Firestore database
+            HashMap<String, Object> message = new HashMap<>();
+            // Put the information into the hash
+            message.put(Constants.KEY_CONVERSATION_ID, conversationID);
+            message.put(Constants.KEY_SENDER_ID, chatMessage.senderID);
+            message.put(Constants.KEY_RECEIVER_ID, chatMessage.receiverID);
+            message.put(Constants.KEY_MESSAGE, chatMessage.message);
+            // The server clock orders the conversation, not the device clock
+            message.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            // Only the reference of an attachment, the bytes are in the blob store
+            if (chatMessage.hasAttachment()) {
+                message.put(Constants.KEY_ATTACHMENT_REF, chatMessage.attachmentRef);
+                message.put(Constants.KEY_ATTACHMENT_BLUR_HASH, chatMessage.attachmentBlurHash);
+                message.put(Constants.KEY_ATTACHMENT_WIDTH, chatMessage.attachmentWidth);
+                message.put(Constants.KEY_ATTACHMENT_HEIGHT, chatMessage.attachmentHeight);
+            }
+            writes.add(new Write(messageReference(chatMessage.messageID), message, false));
+            lastMessages.put(conversationID, chatMessage);
+            Integer count = counts.get(conversationID);
+            counts.put(conversationID, count == null ? 1 : count + 1);
+        }
+        // One update per user and conversation, however many messages were sent
+        for (Map.Entry<String, ChatMessage> entry : lastMessages.entrySet()) {
+            ChatMessage last = entry.getValue();
+            HashMap<String, Object> summary = new HashMap<>();
+            summary.put(Constants.KEY_CONVERSATION_ID, entry.getKey());
+            summary.put(Constants.KEY_LAST_MESSAGE,
+                    last.hasAttachment() && (last.message == null || last.message.isEmpty())
+                            ? ATTACHMENT_PREVIEW : last.message);
+            summary.put(Constants.KEY_LAST_SENDER_ID, last.senderID);
+            summary.put(Constants.KEY_LAST_TIMESTAMP, FieldValue.serverTimestamp());
+            // The sender's entry
+            HashMap<String, Object> senderSummary = new HashMap<>(summary);
+            senderSummary.put(Constants.KEY_PARTNER_ID, last.receiverID);
+            writes.add(new Write(conversationReference(last.senderID, entry.getKey()), senderSummary, true));
+            // The receiver's entry, the unread count goes up without reading it
+            HashMap<String, Object> receiverSummary = new HashMap<>(summary);
+            receiverSummary.put(Constants.KEY_PARTNER_ID, last.senderID);
+            receiverSummary.put(Constants.KEY_UNREAD_COUNT,
+                    FieldValue.increment(counts.get(entry.getKey())));
+            writes.add(new Write(conversationReference(last.receiverID, entry.getKey()), receiverSummary, true));
+        }
+        return writes;
+    }
+
+    /**
+     * This is the override for the openConversation method. Both entries
+     * are read first and only the ones that are out of date are written,
+     * so opening a chat that is read and current costs no writes
+     * @param user this is the signed in user
+     * @param partner this is the other user of the conversation
+     * @param callback this is called when the entries are written, or null
+     */
+    @Override
+    public void openConversation(User user, User partner, ResultCallback<Void> callback) {
+        String conversationID = ChatRepository.getConversationID(user.userid, partner.userid);
+        DocumentReference userReference = conversationReference(user.userid, conversationID);
+        DocumentReference partnerReference = conversationReference(partner.userid, conversationID);
+        FirestoreResults.complete(database.runTransaction(transaction -> {
+            DocumentSnapshot userEntry = transaction.get(userReference);
+            DocumentSnapshot partnerEntry = transaction.get(partnerReference);
+            HashMap<String, Object> userData = getPartnerData(conversationID, partner);
+            userData.put(Constants.KEY_UNREAD_COUNT, 0);
+            if (!hasFields(userEntry, userData)) {
+                transaction.set(userReference, userData, SetOptions.merge());
+            }
+            HashMap<String, Object> partnerData = getPartnerData(conversationID, user);
+            if (!hasFields(partnerEntry, partnerData)) {
+                transaction.set(partnerReference, partnerData, SetOptions.merge());
+            }
+            return null;
+        }), callback);
+    }
+
+    /**
+     * This is the override for the markConversationRead method. An
+     * entry that is already read is not written again
+     * @param userID this is the user who read the conversation
+     * @param conversationID this is the conversation that was read
+     * @param callback this is called when the entry is written, or null
+     */
+    @Override
+    public void markConversationRead(String userID, String conversationID, ResultCallback<Void> callback) {
+        DocumentReference reference = conversationReference(userID, conversationID);
+        FirestoreResults.complete(database.runTransaction(transaction -> {
+            Long unreadCount = transaction.get(reference).getLong(Constants.KEY_UNREAD_COUNT);
+            if (unreadCount != null && unreadCount != 0) {
+                HashMap<String, Object> read = new HashMap<>();
+                read.put(Constants.KEY_UNREAD_COUNT, 0);
+                transaction.set(reference, read, SetOptions.merge());
+            }
+            return null;
+        }), callback);
+    }
+
+    /**
+     * This is the override for the listenConversations method
+     * @param userID this is the user whose conversations are listened to
+     * @param limit this is the most conversations to listen to
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    @Override
+    public Registration listenConversations(String userID, int limit,
+                                            ChangeListener<Conversation> changeListener) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .document(userID)
+                .collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .orderBy(Constants.KEY_LAST_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit);
+        return subscriptions.subscribeChanges("conversations/" + userID + "/" + limit, shared -> {
+            ListenerRegistration registration = query.addSnapshotListener(
+                    FirestoreResults.listen(shared, FirestoreChatRepository::getConversation));
+            return registration::remove;
+        }, changeListener);
+    }
+
+    /**
+     * This will build a chat message from a database document
+     * @param document this is the database document for the message
+     * @return a ChatMessage object for the document
+     */
+    private static ChatMessage getChatMessage(DocumentSnapshot document) {
+        // Empty chat message
+        ChatMessage chatMessage = new ChatMessage();
+        // Add the information to the instance
+        chatMessage.messageID = document.getId();
+        chatMessage.senderID = ChatMessage.internID(document.getString(Constants.KEY_SENDER_ID));
+        chatMessage.receiverID = ChatMessage.internID(document.getString(Constants.KEY_RECEIVER_ID));
+        chatMessage.message = document.getString(Constants.KEY_MESSAGE);
+        // Timestamps are formatted when the row is shown, not here.
+        // A pending server timestamp reads as a local estimate
+        Date date = document.getDate(Constants.KEY_TIMESTAMP,
+                DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        chatMessage.timestamp = date != null ? date.getTime() : System.currentTimeMillis();
+        // The message is pending until the server has accepted the write
+        chatMessage.pending = document.getMetadata().hasPendingWrites();
+        chatMessage.attachmentRef = document.getString(Constants.KEY_ATTACHMENT_REF);
+        if (chatMessage.attachmentRef != null) {
+            chatMessage.attachmentBlurHash = document.getString(Constants.KEY_ATTACHMENT_BLUR_HASH);
+            Long width = document.getLong(Constants.KEY_ATTACHMENT_WIDTH);
+            Long height = document.getLong(Constants.KEY_ATTACHMENT_HEIGHT);
+            chatMessage.attachmentWidth = width != null ? width.intValue() : 0;
+            chatMessage.attachmentHeight = height != null ? height.intValue() : 0;
+        }
+        return chatMessage;
+    }
+
+    /**
+     * This will build a recent conversation from a database document
+     * @param document this is the database document for the conversation
+     * @return a Conversation object for the document
+     */
+    private static Conversation getConversation(DocumentSnapshot document) {
+        Conversation conversation = new Conversation();
+        conversation.conversationID = document.getId();
+        conversation.partnerID = document.getString(Constants.KEY_PARTNER_ID);
+        conversation.partnerFirstName = document.getString(Constants.KEY_PARTNER_FIRSTNAME);
+        conversation.partnerLastName = document.getString(Constants.KEY_PARTNER_LASTNAME);
+        conversation.partnerImageRef = document.getString(Constants.KEY_PARTNER_IMAGE_REF);
+        conversation.lastMessage = document.getString(Constants.KEY_LAST_MESSAGE);
+        conversation.lastSenderID = document.getString(Constants.KEY_LAST_SENDER_ID);
+        // A pending server timestamp reads as a local estimate
+        Date date = document.getDate(Constants.KEY_LAST_TIMESTAMP,
+                DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        conversation.lastTimestamp = date != null ? date.getTime() : 0;
+        Long unreadCount = document.getLong(Constants.KEY_UNREAD_COUNT);
+        conversation.unreadCount = unreadCount != null ? unreadCount : 0;
+        return conversation;
+    }
+
+    /**
+     * This will get the document of a message
+     * @param messageID this is the ID of the message
+     * @return the message document reference
+     */
+    private DocumentReference messageReference(String messageID) {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document(messageID);
+    }
+
+    /**
+     * This is the recent conversation entry of a user
+     * @param userID this is the user the entry belongs to
+     * @param conversationID this is the conversation of the entry
+     * @return the document reference of the entry
+     */
+    private DocumentReference conversationReference(String userID, String conversationID) {
+        return database.collection(Constants.KEY_COLLECTION_USERS)
+                .document(userID)
+                .collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .document(conversationID);
+    }
+
+    /**
+     * This will check whether a document already holds some values
+     * @param document this is the document
+     * @param fields these are the values to compare
+     * @return true if the document exists and every value is the same
+     */
+    private static boolean hasFields(DocumentSnapshot document, Map<String, Object> fields) {
+        if (!document.exists()) {
+            return false;
+        }
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = document.get(field.getKey());
+            // Firestore reads every whole number back as a Long
+            Object expected = field.getValue() instanceof Integer
+                    ? Long.valueOf((Integer) field.getValue()) : field.getValue();
+            if (!Objects.equals(value, expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This will get the details of a user kept in a recent conversation entry
+     * @param conversationID this is the conversation of the entry
+     * @param partner this is the other user of the conversation
+     * @return the hash of the partner fields
+     */
+    private static HashMap<String, Object> getPartnerData(String conversationID, User partner) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_CONVERSATION_ID, conversationID);
+        data.put(Constants.KEY_PARTNER_ID, partner.userid);
+        data.put(Constants.KEY_PARTNER_FIRSTNAME, partner.firstName);
+        data.put(Constants.KEY_PARTNER_LASTNAME, partner.lastName);
+        data.put(Constants.KEY_PARTNER_IMAGE_REF, partner.imageRef);
+        return data;
+    }
+
+    /**
+     * This is the override for the listenMessages method. Metadata
+     * changes are included so a message is reported again when its
+     * pending write is accepted by the server
+     * @param conversationID this is the conversation to listen to
+     * @param since this is the oldest timestamp to listen from, or 0 for all
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    @Override
+    public Registration listenMessages(String conversationID, long since,
+                                       ChangeListener<ChatMessage> changeListener) {
+        Query query = messagesQuery(conversationID);
+        // Only listen from the start of the loaded window
+        if (since > 0) {
+            query = query.startAt(new Date(since));
+        }
+        Query window = query;
+        return subscriptions.subscribeChanges("messages/" + conversationID + "/" + since, shared -> {
+            ListenerRegistration registration = window.addSnapshotListener(MetadataChanges.INCLUDE,
+                    FirestoreResults.listen(shared, FirestoreChatRepository::getChatMessage));
+            return registration::remove;
+        }, changeListener);
+    }
+
+    /**
+     * This is the override for the loadLatestMessages method
+     * @param conversationID this is the conversation to load
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadLatestMessages(String conversationID, int limit,
+                                   ResultCallback<List<ChatMessage>> callback) {
+        load(messagesQuery(conversationID).limitToLast(limit), callback);
+    }
+
+    /**
+     * This is the override for the loadMessagesBefore method
+     * @param conversationID this is the conversation to load
+     * @param oldest this is the oldest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadMessagesBefore(String conversationID, ChatMessage oldest, int limit,
+                                   ResultCallback<List<ChatMessage>> callback) {
+        load(messagesQuery(conversationID)
+                .endBefore(new Date(oldest.timestamp), oldest.messageID)
+                .limitToLast(limit), callback);
+    }
+
+    /**
+     * This is the override for the loadMessagesAfter method
+     * @param conversationID this is the conversation to load
+     * @param newest this is the newest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadMessagesAfter(String conversationID, ChatMessage newest, int limit,
+                                  ResultCallback<List<ChatMessage>> callback) {
+        load(messagesQuery(conversationID)
+                .startAfter(new Date(newest.timestamp), newest.messageID)
+                .limit(limit), callback);
+    }
+
+    /**
+     * This will run a message query and read its messages
+     * @param query this is the query to run
+     * @param callback this is called with the messages in query order
+     */
+    private void load(Query query, ResultCallback<List<ChatMessage>> callback) {
+        FirestoreResults.complete(query.get().continueWith(task ->
+                FirestoreResults.read(task.getResult(), FirestoreChatRepository::getChatMessage)), callback);
+    }
+
+    /**
+     * This is the ordered query over one conversation. The document ID
+     * breaks timestamp ties so page cursors are exact
+     * @param conversationID this is the conversation to query
+     * @return the ordered query
+     */
+    private Query messagesQuery(String conversationID) {
+        return database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_CONVERSATION_ID, conversationID)
+                .orderBy(Constants.KEY_TIMESTAMP)
+                .orderBy(FieldPath.documentId());
+    }
+
+    /**
+     * This is the override for the migrateConversation method. It reads
+     * both directions once and stamps the conversation ID onto the
+     * documents missing it
+     * @param firstUserID this is the ID of one user
+     * @param secondUserID this is the ID of the other user
+     * @param callback this is called when every message is migrated, or null
+     */
+    @Override
+    public void migrateConversation(String firstUserID, String secondUserID, ResultCallback<Void> callback) {
+        String conversationID = ChatRepository.getConversationID(firstUserID, secondUserID);
+        // Get the legacy messages in both directions
+        Task<QuerySnapshot> sent = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, firstUserID)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, secondUserID)
+                .get();
+        Task<QuerySnapshot> received = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, secondUserID)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, firstUserID)
+                .get();
+        FirestoreResults.complete(Tasks.<QuerySnapshot>whenAllSuccess(sent, received)
+                .continueWithTask(task -> {
+                    // Collect the documents that are missing the conversation ID
+                    List<DocumentReference> legacy = new ArrayList<>();
+                    for (QuerySnapshot result : task.getResult()) {
+                        for (DocumentSnapshot document : result.getDocuments()) {
+                            if (document.getString(Constants.KEY_CONVERSATION_ID) == null) {
+                                legacy.add(document.getReference());
+                            }
+                        }
+                    }
+                    // Update them in batches
+                    List<Task<Void>> commits = new ArrayList<>();
+                    for (int start = 0; start < legacy.size(); start += MAX_BATCH_WRITES) {
+                        WriteBatch batch = database.batch();
+                        int end = Math.min(start + MAX_BATCH_WRITES, legacy.size());
+                        for (DocumentReference reference : legacy.subList(start, end)) {
+                            batch.update(reference, Constants.KEY_CONVERSATION_ID, conversationID);
+                        }
+                        commits.add(batch.commit());
+                    }
+                    return Tasks.whenAll(commits);
+                }), callback);
+    }
+}
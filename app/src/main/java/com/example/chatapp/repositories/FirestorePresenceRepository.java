@@ -0,0 +1,216 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ConversationState;
+import com.example.chatapp.utilities.Constants;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the Firestore Presence Repository. A heartbeat is one small
+ * document per user, and typing and read receipts are fields per user
+ * in the state document of a conversation, so none of them touch the messages
+ */
+public class FirestorePresenceRepository implements PresenceRepository {
+    // These are the private variables
+    private final FirebaseFirestore database;
+    private final SubscriptionManager subscriptions;
+
+    /**
+     * This is the default constructor
+     * @param database this is the Firestore database instance
+     * @param subscriptions this owns the listeners, identical queries share one
+     */
+    public FirestorePresenceRepository(FirebaseFirestore database, SubscriptionManager subscriptions) {
+        this.database = database;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * This is the override for the writeHeartbeat method
+     * @param userID this is the ID of the user
+     * @param callback this is called when the write is done, or null
+     */
+    @Override
+    public void writeHeartbeat(String userID, ResultCallback<Void> callback) {
+        // The server clock is used so every reader compares against the same clock
+        FirestoreResults.complete(database.collection(Constants.KEY_COLLECTION_PRESENCE)
+                .document(userID)
+                .set(Collections.singletonMap(Constants.KEY_LAST_SEEN, FieldValue.serverTimestamp())),
+                callback);
+    }
+
+    /**
+     * This is the override for the setTyping method. Only the field of
+     * the user is merged, so the two users never overwrite each other
+     * @param conversationID this is the ID of the conversation
+     * @param userID this is the ID of the user
+     * @param typing this is true while the user is typing
+     * @param callback this is called when the write is done, or null
+     */
+    @Override
+    public void setTyping(String conversationID, String userID, boolean typing,
+                          ResultCallback<Void> callback) {
+        Map<String, Object> typingField = new HashMap<>();
+        typingField.put(userID, typing ? FieldValue.serverTimestamp() : FieldValue.delete());
+        FirestoreResults.complete(database.collection(Constants.KEY_COLLECTION_CONVERSATION_STATES)
+                .document(conversationID)
+                .set(Collections.singletonMap(Constants.KEY_TYPING, typingField), SetOptions.merge()),
+                callback);
+    }
+
+    /**
+     * This is the override for the writeReceipts method. Only the
+     * fields of the user are merged
+     * @param conversationID this is the ID of the conversation
+     * @param userID this is the ID of the user
+     * @param deliveredUpTo this is the timestamp of the newest delivered message
+     * @param readUpTo this is the timestamp of the newest read message
+     * @param callback this is called when the write is done, or null
+     */
+    @Override
+    public void writeReceipts(String conversationID, String userID, long deliveredUpTo, long readUpTo,
+                              ResultCallback<Void> callback) {
+        Map<String, Object> receipts = new HashMap<>();
+        receipts.put(Constants.KEY_DELIVERED, Collections.singletonMap(userID, deliveredUpTo));
+        receipts.put(Constants.KEY_READ, Collections.singletonMap(userID, readUpTo));
+        FirestoreResults.complete(database.collection(Constants.KEY_COLLECTION_CONVERSATION_STATES)
+                .document(conversationID)
+                .set(receipts, SetOptions.merge()), callback);
+    }
+
+    /**
+     * This is the override for the listenConversationState method
+     * @param conversationID this is the ID of the conversation
+     * @param listener this is called with every new state
+     * @return the registration to stop listening with
+     */
+    @Override
+    public Registration listenConversationState(String conversationID,
+                                                ResultCallback<ConversationState> listener) {
+        return subscriptions.subscribeValues("states/" + conversationID, shared -> {
+            ListenerRegistration registration = database
+                    .collection(Constants.KEY_COLLECTION_CONVERSATION_STATES)
+                    .document(conversationID)
+                    .addSnapshotListener((value, error) -> {
+                        if (error != null || value == null) {
+                            shared.onComplete(null, error);
+                            return;
+                        }
+                        shared.onComplete(getConversationState(value), null);
+                    });
+            return registration::remove;
+        }, listener);
+    }
+
+    /**
+     * This is the override for the listenLastSeen method
+     * @param userID this is the ID of the user
+     * @param listener this is called with the time of every new heartbeat
+     * @return the registration to stop listening with
+     */
+    @Override
+    public Registration listenLastSeen(String userID, ResultCallback<Long> listener) {
+        return subscriptions.subscribeValues("presence/" + userID, shared -> {
+            ListenerRegistration registration = database.collection(Constants.KEY_COLLECTION_PRESENCE)
+                    .document(userID)
+                    .addSnapshotListener((value, error) -> {
+                        if (error != null || value == null) {
+                            shared.onComplete(null, error);
+                            return;
+                        }
+                        shared.onComplete(getLastSeen(value), null);
+                    });
+            return registration::remove;
+        }, listener);
+    }
+
+    /**
+     * This is the override for the listenOnlineUsers method. Only the
+     * heartbeats newer than the timeout at the time the query is opened
+     * are read, the reader expires the ones that grow old after that
+     * @param listener this is called with the heartbeat times by user ID
+     * @return the registration to stop listening with
+     */
+    @Override
+    public Registration listenOnlineUsers(ResultCallback<Map<String, Long>> listener) {
+        return subscriptions.subscribeValues("presence/online", shared -> {
+            Date since = new Date(System.currentTimeMillis() - ONLINE_TIMEOUT_MILLIS);
+            ListenerRegistration registration = database.collection(Constants.KEY_COLLECTION_PRESENCE)
+                    .whereGreaterThan(Constants.KEY_LAST_SEEN, since)
+                    .addSnapshotListener((value, error) -> {
+                        if (error != null || value == null) {
+                            shared.onComplete(null, error);
+                            return;
+                        }
+                        Map<String, Long> lastSeen = new HashMap<>();
+                        for (DocumentSnapshot document : value.getDocuments()) {
+                            Long time = getLastSeen(document);
+                            if (time != null) {
+                                lastSeen.put(document.getId(), time);
+                            }
+                        }
+                        shared.onComplete(lastSeen, null);
+                    });
+            return registration::remove;
+        }, listener);
+    }
+
+    /**
+     * This will read the time of a heartbeat
+     * @param document this is the presence document of a user
+     * @return the time in epoch milliseconds, or null if there is none
+     */
+    private static Long getLastSeen(DocumentSnapshot document) {
+        // A pending server timestamp reads as a local estimate
+        Date date = document.getDate(Constants.KEY_LAST_SEEN,
+                DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        return date != null ? date.getTime() : null;
+    }
+
+    /**
+     * This will build the state of a conversation from its document
+     * @param document this is the state document of the conversation
+     * @return a ConversationState object for the document
+     */
+    private static ConversationState getConversationState(DocumentSnapshot document) {
+        ConversationState state = new ConversationState();
+        // A pending server timestamp reads as a local estimate
+        Object typing = document.get(Constants.KEY_TYPING,
+                DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        if (typing instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) typing).entrySet()) {
+                if (entry.getValue() instanceof Timestamp) {
+                    state.typing.put(String.valueOf(entry.getKey()),
+                            ((Timestamp) entry.getValue()).toDate().getTime());
+                }
+            }
+        }
+        readWatermarks(document.get(Constants.KEY_DELIVERED), state.delivered);
+        readWatermarks(document.get(Constants.KEY_READ), state.read);
+        return state;
+    }
+
+    /**
+     * This will read a map of watermarks
+     * @param field this is the field of the state document
+     * @param watermarks this is where the watermarks are put by user ID
+     */
+    private static void readWatermarks(Object field, Map<String, Long> watermarks) {
+        if (field instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) field).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    watermarks.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+    }
+}
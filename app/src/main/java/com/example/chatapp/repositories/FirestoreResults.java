@@ -0,0 +1,105 @@
+package com.example.chatapp.repositories;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These are the helpers that turn Firestore tasks and snapshots
+ * into the results of the repository interfaces
+ */
+final class FirestoreResults {
+    /**
+     * This is how a document is read into a result
+     * @param <T> this is the type of the result
+     */
+    interface Reader<T> {
+        T read(DocumentSnapshot document);
+    }
+
+    /**
+     * This class only has static methods
+     */
+    private FirestoreResults() {
+    }
+
+    /**
+     * This will pass the outcome of a task to a callback
+     * @param task this is the database task
+     * @param callback this is the callback, or null
+     * @param <T> this is the type of the result
+     */
+    static <T> void complete(Task<T> task, ResultCallback<T> callback) {
+        if (callback == null) {
+            return;
+        }
+        task.addOnCompleteListener(result -> {
+            if (result.isSuccessful()) {
+                callback.onComplete(result.getResult(), null);
+            }
+            else {
+                callback.onComplete(null, result.getException());
+            }
+        });
+    }
+
+    /**
+     * This will read every document of a query result
+     * @param querySnapshot this is the query result
+     * @param reader this reads one document
+     * @param <T> this is the type of the results
+     * @return the results in query order
+     */
+    static <T> List<T> read(QuerySnapshot querySnapshot, Reader<T> reader) {
+        List<T> results = new ArrayList<>();
+        for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+            results.add(reader.read(document));
+        }
+        return results;
+    }
+
+    /**
+     * This will turn a change listener into a snapshot listener
+     * @param changeListener this is the listener for the changes
+     * @param reader this reads one document
+     * @param <T> this is the type of the results
+     * @return the snapshot listener
+     */
+    static <T> EventListener<QuerySnapshot> listen(ChangeListener<T> changeListener, Reader<T> reader) {
+        return (value, error) -> {
+            if (error != null || value == null) {
+                changeListener.onChanges(null, error);
+                return;
+            }
+            List<Change<T>> changes = new ArrayList<>();
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                changes.add(new Change<>(getType(documentChange.getType()),
+                        reader.read(documentChange.getDocument()),
+                        documentChange.getOldIndex(), documentChange.getNewIndex()));
+            }
+            changeListener.onChanges(changes, null);
+        };
+    }
+
+    /**
+     * This will map the type of a document change
+     * @param type this is the Firestore type
+     * @return the repository type
+     */
+    private static Change.Type getType(DocumentChange.Type type) {
+        if (type == DocumentChange.Type.ADDED) {
+            return Change.Type.ADDED;
+        }
+        else if (type == DocumentChange.Type.MODIFIED) {
+            return Change.Type.MODIFIED;
+        }
+        else {
+            return Change.Type.REMOVED;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Credentials;
+import com.example.chatapp.utilities.UserTrie;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.Filter;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * This is the Firestore User Repository. The directory is read a page
+ * at a time in name order, and searched on the server over the stored
+ * prefixes of each normalized word of the name and email, the way the
+ * UserTrie matches. Every write to a user sets
+ * its updatedAt time, so a cached directory only reads what changed.
+ * Accounts live in their own collection keyed by the normalized email
+ */
+public class FirestoreUserRepository implements UserRepository {
+    // Password hashing runs here instead of on the main thread
+    private static final Executor HASH_EXECUTOR = Executors.newSingleThreadExecutor();
+    // These are the private variables
+    private final FirebaseFirestore database;
+
+    /**
+     * This is the default constructor
+     * @param database this is the Firestore database instance
+     */
+    public FirestoreUserRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * This is the override for the loadUsers method
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the page of users
+     */
+    @Override
+    public void loadUsers(User after, int limit, ResultCallback<List<User>> callback) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .orderBy(Constants.KEY_NAME_SEARCH)
+                .orderBy(FieldPath.documentId());
+        // Continue after the cursor
+        if (after != null) {
+            query = query.startAfter(UserTrie.getNameKey(after), after.userid);
+        }
+        FirestoreResults.complete(query.limit(limit).get().continueWith(task ->
+                FirestoreResults.read(task.getResult(), FirestoreUserRepository::getUser)), callback);
+    }
+
+    /**
+     * This is the override for the loadUser method
+     * @param userID this is the ID of the user
+     * @param callback this is called with the user, or null if there is none
+     */
+    @Override
+    public void loadUser(String userID, ResultCallback<User> callback) {
+        FirestoreResults.complete(database.collection(Constants.KEY_COLLECTION_USERS).document(userID).get()
+                .continueWith(task -> {
+                    DocumentSnapshot document = task.getResult();
+                    return document.exists() ? getUser(document) : null;
+                }), callback);
+    }
+
+    /**
+     * This is the override for the loadUsersUpdatedSince method
+     * @param since this is the time to load changes after, in epoch microseconds
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the changed users, oldest change first
+     */
+    @Override
+    public void loadUsersUpdatedSince(long since, User after, int limit, ResultCallback<List<User>> callback) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .whereGreaterThan(Constants.KEY_UPDATED_AT, toTimestamp(since))
+                .orderBy(Constants.KEY_UPDATED_AT)
+                .orderBy(FieldPath.documentId());
+        // Continue after the cursor, a batch write gives many users one time
+        if (after != null) {
+            query = query.startAfter(toTimestamp(after.updatedAt), after.userid);
+        }
+        FirestoreResults.complete(query.limit(limit).get().continueWith(task ->
+                FirestoreResults.read(task.getResult(), FirestoreUserRepository::getUser)), callback);
+    }
+
+    /**
+     * This is the override for the loadLastUpdatedAt method
+     * @param callback this is called with the time in epoch microseconds, or 0 if no user has one
+     */
+    @Override
+    public void loadLastUpdatedAt(ResultCallback<Long> callback) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .orderBy(Constants.KEY_UPDATED_AT, Query.Direction.DESCENDING)
+                .limit(1);
+        FirestoreResults.complete(query.get().continueWith(task -> {
+            List<User> newest = FirestoreResults.read(task.getResult(), FirestoreUserRepository::getUser);
+            return newest.isEmpty() ? 0L : newest.get(0).updatedAt;
+        }), callback);
+    }
+
+    /**
+     * This is the override for the searchUsers method
+     * @param prefix this is the text the user typed
+     * @param limit this is the most users to load
+     * @param callback this is called with the matching users
+     */
+    @Override
+    public void searchUsers(String prefix, int limit, ResultCallback<List<User>> callback) {
+        String normalized = UserTrie.normalize(prefix);
+        String word = UserTrie.getLongestWord(normalized);
+        if (word.isEmpty()) {
+            loadUsers(null, limit, callback);
+            return;
+        }
+        // The longest word narrows the query, the other words are checked here
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .whereArrayContains(Constants.KEY_SEARCH_PREFIXES,
+                        word.substring(0, Math.min(word.length(), UserTrie.MAX_SEARCH_PREFIX)))
+                .limit(limit);
+        FirestoreResults.complete(query.get().<List<User>>continueWith(task -> {
+            List<User> users = new ArrayList<>();
+            for (User user : FirestoreResults.read(task.getResult(), FirestoreUserRepository::getUser)) {
+                if (UserTrie.matches(user, normalized)) {
+                    users.add(user);
+                }
+            }
+            return users;
+        }), callback);
+    }
+
+    /**
+     * This is the override for the signIn method. The account document
+     * is keyed by the normalized email, so this is one document read,
+     * and it holds only what the session needs
+     * @param email this is the email as the user typed it
+     * @param password this is the password
+     * @param callback this is called with the signed in user, or an AccountException
+     */
+    @Override
+    public void signIn(String email, String password, ResultCallback<User> callback) {
+        FirestoreResults.complete(getAccountReference(email).get()
+                // Hashing is slow, so the check runs off the main thread
+                .continueWithTask(HASH_EXECUTOR, task -> {
+                    DocumentSnapshot account = task.getResult();
+                    if (account.exists()) {
+                        Credentials credentials = getCredentials(account);
+                        if (!credentials.verify(password)) {
+                            throw new AccountException(AccountException.Reason.INVALID_CREDENTIALS);
+                        }
+                        // A weaker hash is made again now the password is known,
+                        // the sign in does not wait for the write
+                        if (credentials.needsRehash()) {
+                            account.getReference().update(getCredentialFields(Credentials.create(password)));
+                        }
+                        return Tasks.forResult(getAccountUser(account));
+                    }
+                    // Accounts made before the account documents still have a plain password
+                    return signInLegacy(email, password);
+                })
+                .continueWith(FirestoreUserRepository::getAccountResult), callback);
+    }
+
+    /**
+     * This is the override for the signUp method. The email is reserved
+     * in the same transaction that makes the user, so two sign ups with
+     * one email cannot both succeed
+     * @param user this is the new user, without an ID
+     * @param password this is the password
+     * @param callback this is called with the user and its new ID, or an AccountException
+     */
+    @Override
+    public void signUp(User user, String password, ResultCallback<User> callback) {
+        DocumentReference accountReference = getAccountReference(user.email);
+        DocumentReference userReference = database.collection(Constants.KEY_COLLECTION_USERS).document();
+        FirestoreResults.complete(Tasks.call(HASH_EXECUTOR, () -> Credentials.create(password))
+                .onSuccessTask(credentials -> database.collection(Constants.KEY_COLLECTION_USERS)
+                        // Accounts made before the account documents are only found by a query
+                        .where(getLegacyEmailFilter(user.email))
+                        .limit(1)
+                        .get()
+                        .onSuccessTask(legacy -> {
+                            if (!legacy.isEmpty()) {
+                                throw new AccountException(AccountException.Reason.EMAIL_TAKEN);
+                            }
+                            return database.runTransaction(transaction -> {
+                                if (transaction.get(accountReference).exists()) {
+                                    throw new FirebaseFirestoreException("Email is taken",
+                                            FirebaseFirestoreException.Code.ALREADY_EXISTS);
+                                }
+                                user.userid = userReference.getId();
+                                transaction.set(userReference, getUserData(user));
+                                transaction.set(accountReference, getAccountData(user, credentials));
+                                return user;
+                            });
+                        }))
+                .continueWith(FirestoreUserRepository::getAccountResult), callback);
+    }
+
+    /**
+     * This will sign in an account made before the account documents,
+     * then give it an account document and drop its plain password
+     * @param email this is the email as the user typed it
+     * @param password this is the password
+     * @return the task for the signed in user
+     */
+    private Task<User> signInLegacy(String email, String password) {
+        return database.collection(Constants.KEY_COLLECTION_USERS)
+                .where(getLegacyEmailFilter(email))
+                .get()
+                .continueWithTask(HASH_EXECUTOR, task -> {
+                    byte[] typed = password.getBytes(StandardCharsets.UTF_8);
+                    for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                        String stored = document.getString(Constants.KEY_PASSWORD);
+                        if (stored != null && MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), typed)) {
+                            return migrateAccount(document, Credentials.create(password));
+                        }
+                    }
+                    throw new AccountException(AccountException.Reason.INVALID_CREDENTIALS);
+                });
+    }
+
+    /**
+     * This will give an older account its account document. An inline
+     * image moves to the image collection in the same transaction, so
+     * the account document can always point at it
+     * @param document this is the user document
+     * @param credentials this is the new password hash
+     * @return the task for the signed in user
+     */
+    private Task<User> migrateAccount(DocumentSnapshot document, Credentials credentials) {
+        User user = getUser(document);
+        DocumentReference accountReference = getAccountReference(user.email);
+        return database.runTransaction(transaction -> {
+            DocumentSnapshot account = transaction.get(accountReference);
+            if (account.exists() && !user.userid.equals(account.getString(Constants.KEY_USERID))) {
+                throw new FirebaseFirestoreException("Email is taken",
+                        FirebaseFirestoreException.Code.ALREADY_EXISTS);
+            }
+            HashMap<String, Object> updates = new HashMap<>();
+            updates.put(Constants.KEY_PASSWORD, FieldValue.delete());
+            updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+            if (user.imageRef == null && user.image != null) {
+                user.imageRef = new ImageRepository(database).putImage(transaction, user.image);
+                user.image = null;
+                updates.put(Constants.KEY_IMAGE_REF, user.imageRef);
+                updates.put(Constants.KEY_IMAGE_VERSION, FieldValue.increment(1));
+                updates.put(Constants.KEY_IMAGE, FieldValue.delete());
+            }
+            transaction.update(document.getReference(), updates);
+            transaction.set(accountReference, getAccountData(user, credentials));
+            return user;
+        });
+    }
+
+    /**
+     * This will turn the failure of an account task into an AccountException
+     * when the user can fix it
+     * @param task this is the account task
+     * @return the user of the task
+     */
+    private static User getAccountResult(Task<User> task) throws Exception {
+        if (task.isSuccessful()) {
+            return task.getResult();
+        }
+        Exception exception = task.getException();
+        if (exception instanceof FirebaseFirestoreException && ((FirebaseFirestoreException) exception)
+                .getCode() == FirebaseFirestoreException.Code.ALREADY_EXISTS) {
+            throw new AccountException(AccountException.Reason.EMAIL_TAKEN);
+        }
+        throw exception;
+    }
+
+    /**
+     * This will build the filter for the user documents of an email. The
+     * normalized field matches however the email is typed, and the email
+     * itself matches documents the admin backfill has not reached yet
+     * @param email this is the email as the user typed it
+     * @return the filter
+     */
+    private static Filter getLegacyEmailFilter(String email) {
+        return Filter.or(Filter.equalTo(Constants.KEY_EMAIL_SEARCH, UserTrie.normalize(email)),
+                Filter.equalTo(Constants.KEY_EMAIL, email));
+    }
+
+    /**
+     * This will get the account document of an email
+     * @param email this is the email
+     * @return the account document reference
+     */
+    private DocumentReference getAccountReference(String email) {
+        return database.collection(Constants.KEY_COLLECTION_USER_EMAILS).document(Credentials.getEmailKey(email));
+    }
+
+    /**
+     * This will build the data of a new user document
+     * @param user this is the user
+     * @return the fields to store in the user document
+     */
+    private static HashMap<String, Object> getUserData(User user) {
+        HashMap<String, Object> data = UserTrie.getSearchFields(user);
+        data.put(Constants.KEY_FIRSTNAME, user.firstName);
+        data.put(Constants.KEY_LASTNAME, user.lastName);
+        data.put(Constants.KEY_EMAIL, user.email);
+        data.put(Constants.KEY_IMAGE_REF, user.imageRef);
+        data.put(Constants.KEY_IMAGE_THUMBNAIL_REF, user.imageThumbnailRef);
+        data.put(Constants.KEY_IMAGE_HEADER_REF, user.imageHeaderRef);
+        data.put(Constants.KEY_IMAGE_VERSION, 1);
+        data.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        return data;
+    }
+
+    /**
+     * This will build the data of an account document, the credentials
+     * and the profile fields the session needs
+     * @param user this is the user
+     * @param credentials this is the password hash
+     * @return the fields to store in the account document
+     */
+    private static HashMap<String, Object> getAccountData(User user, Credentials credentials) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_USERID, user.userid);
+        data.put(Constants.KEY_EMAIL, user.email);
+        data.put(Constants.KEY_FIRSTNAME, user.firstName);
+        data.put(Constants.KEY_LASTNAME, user.lastName);
+        data.put(Constants.KEY_IMAGE_REF, user.imageRef);
+        data.put(Constants.KEY_IMAGE_HEADER_REF, user.imageHeaderRef);
+        data.putAll(getCredentialFields(credentials));
+        return data;
+    }
+
+    /**
+     * This will build the credential fields of an account document
+     * @param credentials this is the password hash
+     * @return the fields to store in the account document
+     */
+    private static HashMap<String, Object> getCredentialFields(Credentials credentials) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_PASSWORD_ALGORITHM, credentials.algorithm);
+        fields.put(Constants.KEY_PASSWORD_HASH, credentials.hash);
+        fields.put(Constants.KEY_PASSWORD_SALT, credentials.salt);
+        fields.put(Constants.KEY_PASSWORD_ITERATIONS, credentials.iterations);
+        return fields;
+    }
+
+    /**
+     * This will read the credentials of an account document
+     * @param account this is the account document
+     * @return the credentials
+     */
+    private static Credentials getCredentials(DocumentSnapshot account) {
+        Long iterations = account.getLong(Constants.KEY_PASSWORD_ITERATIONS);
+        return new Credentials(account.getString(Constants.KEY_PASSWORD_ALGORITHM),
+                account.getString(Constants.KEY_PASSWORD_SALT),
+                account.getString(Constants.KEY_PASSWORD_HASH),
+                iterations != null ? iterations.intValue() : 0);
+    }
+
+    /**
+     * This will build the signed in user from an account document
+     * @param account this is the account document
+     * @return the user
+     */
+    private static User getAccountUser(DocumentSnapshot account) {
+        User user = new User();
+        user.userid = account.getString(Constants.KEY_USERID);
+        user.email = account.getString(Constants.KEY_EMAIL);
+        user.firstName = account.getString(Constants.KEY_FIRSTNAME);
+        user.lastName = account.getString(Constants.KEY_LASTNAME);
+        user.imageRef = account.getString(Constants.KEY_IMAGE_REF);
+        user.imageHeaderRef = account.getString(Constants.KEY_IMAGE_HEADER_REF);
+        return user;
+    }
+
+    /**
+     * This will build a user from a database document
+     * @param document this is the database document for the user
+     * @return a User object for the document
+     */
+    public static User getUser(DocumentSnapshot document) {
+        // Create a user object
+        User user = new User();
+        // Add the information from the database
+        user.firstName = document.getString(Constants.KEY_FIRSTNAME);
+        user.lastName = document.getString(Constants.KEY_LASTNAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        user.image = document.getString(Constants.KEY_IMAGE);
+        user.imageRef = document.getString(Constants.KEY_IMAGE_REF);
+        user.imageThumbnailRef = document.getString(Constants.KEY_IMAGE_THUMBNAIL_REF);
+        user.imageHeaderRef = document.getString(Constants.KEY_IMAGE_HEADER_REF);
+        Long imageVersion = document.getLong(Constants.KEY_IMAGE_VERSION);
+        user.imageVersion = imageVersion != null ? imageVersion : 0;
+        user.token = document.getString(Constants.KEY_FCM_TOKEN);
+        user.userid = document.getId();
+        // A pending server timestamp reads as 0, a local estimate could pass the server time
+        Timestamp updatedAt = document.getTimestamp(Constants.KEY_UPDATED_AT);
+        user.updatedAt = updatedAt != null ? toMicros(updatedAt) : 0;
+        return user;
+    }
+
+    /**
+     * This will convert a timestamp to epoch microseconds, which is all
+     * the precision a server timestamp has
+     * @param timestamp this is the timestamp
+     * @return the time in epoch microseconds
+     */
+    private static long toMicros(Timestamp timestamp) {
+        return timestamp.getSeconds() * 1_000_000 + timestamp.getNanoseconds() / 1_000;
+    }
+
+    /**
+     * This will convert epoch microseconds to a timestamp
+     * @param micros this is the time in epoch microseconds
+     * @return the timestamp
+     */
+    private static Timestamp toTimestamp(long micros) {
+        return new Timestamp(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1_000);
+    }
+}
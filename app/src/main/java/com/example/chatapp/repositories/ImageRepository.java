@@ -0,0 +1,106 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+
+/**
+ * This is the Image Repository for profile images. Images live in
+ * their own collection keyed by a hash of their content, so user
+ * documents only carry a small reference to them
+ */
+public class ImageRepository {
+    // These are the private variables
+    private final FirebaseFirestore database;
+
+    /**
+     * This is the default constructor
+     * @param database this is the Firestore database instance
+     */
+    public ImageRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * This will get the reference for an image, the hash of its content
+     * @param encodedImage this is the BASE64 string encoded image
+     * @return the image reference
+     */
+    public static String getImageRef(String encodedImage) {
+        return AvatarCache.getContentHash(encodedImage);
+    }
+
+    /**
+     * This will fetch an image by its reference
+     * @param imageRef this is the image reference
+     * @return the task for the BASE64 string encoded image
+     */
+    public Task<String> getImage(String imageRef) {
+        return database.collection(Constants.KEY_COLLECTION_IMAGES)
+                .document(imageRef)
+                .get()
+                .continueWith(task -> task.getResult().getString(Constants.KEY_IMAGE_DATA));
+    }
+
+    /**
+     * This will add an image write to a batch. Identical images share
+     * one document, so writing it again is harmless
+     * @param batch this is the batch to add the write to
+     * @param encodedImage this is the BASE64 string encoded image
+     * @return the image reference
+     */
+    public String putImage(WriteBatch batch, String encodedImage) {
+        String imageRef = getImageRef(encodedImage);
+        HashMap<String, Object> image = new HashMap<>();
+        image.put(Constants.KEY_IMAGE_DATA, encodedImage);
+        batch.set(database.collection(Constants.KEY_COLLECTION_IMAGES).document(imageRef), image);
+        return imageRef;
+    }
+
+    /**
+     * This will add an image write to a transaction
+     * @param transaction this is the transaction to add the write to
+     * @param encodedImage this is the BASE64 string encoded image
+     * @return the image reference
+     */
+    public String putImage(Transaction transaction, String encodedImage) {
+        String imageRef = getImageRef(encodedImage);
+        HashMap<String, Object> image = new HashMap<>();
+        image.put(Constants.KEY_IMAGE_DATA, encodedImage);
+        transaction.set(database.collection(Constants.KEY_COLLECTION_IMAGES).document(imageRef), image);
+        return imageRef;
+    }
+
+    /**
+     * This will move the inline image of a user document into the
+     * image collection and leave a reference behind
+     * @param userID this is the ID of the user
+     * @param encodedImage this is the inline BASE64 string encoded image
+     * @return the task for the migration, with the new image reference
+     */
+    public Task<String> migrateUserImage(String userID, String encodedImage) {
+        WriteBatch batch = database.batch();
+        String imageRef = putImage(batch, encodedImage);
+        // Swap the inline image for the reference in one write
+        DocumentReference user = database.collection(Constants.KEY_COLLECTION_USERS).document(userID);
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_IMAGE_REF, imageRef);
+        updates.put(Constants.KEY_IMAGE_VERSION, FieldValue.increment(1));
+        updates.put(Constants.KEY_IMAGE, FieldValue.delete());
+        updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        batch.update(user, updates);
+        return batch.commit().continueWith(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+            return imageRef;
+        });
+    }
+}
@@ -0,0 +1,747 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This is the in-memory Chat Repository. It keeps the messages of each
+ * conversation ordered like the database query, so pages, cursors and
+ * listeners behave the same and cost a tree lookup, even with millions
+ * of messages. Writes are committed after the latency and then reported
+ * to the listeners, there is no pending local copy like the database has
+ */
+public class InMemoryChatRepository extends InMemoryRepository implements ChatRepository {
+    // This is the order of a conversation, by timestamp then message ID
+    private static final Comparator<ChatMessage> MESSAGE_ORDER = (first, second) ->
+            first.timestamp != second.timestamp ? Long.compare(first.timestamp, second.timestamp)
+                    : first.messageID.compareTo(second.messageID);
+    // This is the order of the recent conversations, newest first
+    private static final Comparator<Conversation> CONVERSATION_ORDER = (first, second) ->
+            first.lastTimestamp != second.lastTimestamp ? Long.compare(second.lastTimestamp, first.lastTimestamp)
+                    : second.conversationID.compareTo(first.conversationID);
+
+    /**
+     * This is a listener on the messages of a conversation
+     */
+    private static class MessageQuery {
+        final ChatMessage start;
+        final ChangeListener<ChatMessage> changeListener;
+        volatile boolean active = true;
+
+        MessageQuery(long since, ChangeListener<ChatMessage> changeListener) {
+            this.start = cursor(since, "");
+            this.changeListener = changeListener;
+        }
+    }
+
+    /**
+     * This is a listener on the recent conversations of a user
+     */
+    private static class ConversationQuery {
+        final String userID;
+        final int limit;
+        final ChangeListener<Conversation> changeListener;
+        List<String> conversationIDs = new ArrayList<>();
+        volatile boolean active = true;
+
+        ConversationQuery(String userID, int limit, ChangeListener<Conversation> changeListener) {
+            this.userID = userID;
+            this.limit = limit;
+            this.changeListener = changeListener;
+        }
+    }
+
+    // These are the messages of each conversation, and every message by ID
+    private final Map<String, TreeSet<ChatMessage>> messages = new HashMap<>();
+    // These are the positions of the messages of each conversation
+    private final Map<String, RankedSet<ChatMessage>> ranks = new HashMap<>();
+    private final Map<String, ChatMessage> messagesByID = new HashMap<>();
+    // These are the recent conversation entries of each user
+    private final Map<String, Map<String, Conversation>> conversations = new HashMap<>();
+    // These are the listeners
+    private final Map<String, List<MessageQuery>> messageQueries = new HashMap<>();
+    private final Map<String, List<ConversationQuery>> conversationQueries = new HashMap<>();
+    // These are the ID counter and the server clock
+    private long nextMessageID;
+    private long serverTime;
+
+    /**
+     * This is the constructor
+     * @param scheduler this is what runs the work of the repository
+     */
+    public InMemoryChatRepository(Scheduler scheduler) {
+        super(scheduler);
+    }
+
+    /**
+     * This will store a message as it is, keeping its timestamp, for
+     * filling the repository with a history or a message from another device
+     * @param chatMessage this is the message to store
+     */
+    public void putMessage(ChatMessage chatMessage) {
+        List<Runnable> deliveries = new ArrayList<>();
+        synchronized (this) {
+            Map<MessageQuery, List<Change<ChatMessage>>> changes = new LinkedHashMap<>();
+            write(copy(chatMessage), changes);
+            deliverMessages(changes, deliveries);
+        }
+        runAll(deliveries);
+    }
+
+    /**
+     * This will get the number of messages in a conversation
+     * @param conversationID this is the conversation
+     * @return the number of messages
+     */
+    public synchronized int getMessageCount(String conversationID) {
+        TreeSet<ChatMessage> conversation = messages.get(conversationID);
+        return conversation != null ? conversation.size() : 0;
+    }
+
+    /**
+     * This is the override for the newMessageID method
+     * @return the new message ID
+     */
+    @Override
+    public synchronized String newMessageID() {
+        return "message" + nextMessageID++;
+    }
+
+    /**
+     * This is the override for the sendMessages method
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the batch is committed, or null
+     */
+    @Override
+    public void sendMessages(List<ChatMessage> messages, ResultCallback<Void> callback) {
+        sendMessages(messages, false, callback);
+    }
+
+    /**
+     * This is the override for the resendMessages method
+     * @param messages these are the messages to send, at most MAX_MESSAGES_PER_BATCH
+     * @param callback this is called when the messages are written, or null
+     */
+    @Override
+    public void resendMessages(List<ChatMessage> messages, ResultCallback<Void> callback) {
+        sendMessages(messages, true, callback);
+    }
+
+    /**
+     * This will write messages and the recent conversation entries
+     * @param messages these are the messages to send
+     * @param skipStored this is true to leave messages that are already stored
+     * @param callback this is called when the messages are written, or null
+     */
+    private void sendMessages(List<ChatMessage> messages, boolean skipStored, ResultCallback<Void> callback) {
+        List<ChatMessage> batch = new ArrayList<>();
+        for (ChatMessage chatMessage : messages) {
+            batch.add(copy(chatMessage));
+        }
+        run(callback, () -> {
+            List<Runnable> deliveries = new ArrayList<>();
+            synchronized (this) {
+                Map<MessageQuery, List<Change<ChatMessage>>> changes = new LinkedHashMap<>();
+                Map<String, Set<String>> changedEntries = new HashMap<>();
+                // The whole batch gets one server time like a committed batch
+                long timestamp = nextServerTime();
+                for (ChatMessage chatMessage : batch) {
+                    ChatMessage stored = messagesByID.get(chatMessage.messageID);
+                    if (stored != null && skipStored) {
+                        continue;
+                    }
+                    // A message written again keeps its first time
+                    chatMessage.timestamp = stored != null ? stored.timestamp : timestamp;
+                    String conversationID = write(chatMessage, changes);
+                    // The entries already count a message written before
+                    if (stored != null) {
+                        continue;
+                    }
+                    // The sender's entry
+                    Conversation sender = getEntry(chatMessage.senderID, conversationID, changedEntries);
+                    sender.partnerID = chatMessage.receiverID;
+                    setLastMessage(sender, chatMessage);
+                    // The receiver's entry, which is unread once more
+                    Conversation receiver = getEntry(chatMessage.receiverID, conversationID, changedEntries);
+                    receiver.partnerID = chatMessage.senderID;
+                    setLastMessage(receiver, chatMessage);
+                    receiver.unreadCount++;
+                }
+                deliverMessages(changes, deliveries);
+                deliverConversations(changedEntries, deliveries);
+            }
+            runAll(deliveries);
+            return null;
+        });
+    }
+
+    /**
+     * This is the override for the loadLatestMessages method
+     * @param conversationID this is the conversation to load
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadLatestMessages(String conversationID, int limit,
+                                   ResultCallback<List<ChatMessage>> callback) {
+        run(callback, () -> {
+            synchronized (this) {
+                return lastPage(getMessages(conversationID), limit);
+            }
+        });
+    }
+
+    /**
+     * This is the override for the loadMessagesBefore method
+     * @param conversationID this is the conversation to load
+     * @param oldest this is the oldest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadMessagesBefore(String conversationID, ChatMessage oldest, int limit,
+                                   ResultCallback<List<ChatMessage>> callback) {
+        ChatMessage before = cursor(oldest.timestamp, oldest.messageID);
+        run(callback, () -> {
+            synchronized (this) {
+                return lastPage(getMessages(conversationID).headSet(before, false), limit);
+            }
+        });
+    }
+
+    /**
+     * This is the override for the loadMessagesAfter method
+     * @param conversationID this is the conversation to load
+     * @param newest this is the newest loaded message
+     * @param limit this is the most messages to load
+     * @param callback this is called with the messages in timestamp order
+     */
+    @Override
+    public void loadMessagesAfter(String conversationID, ChatMessage newest, int limit,
+                                  ResultCallback<List<ChatMessage>> callback) {
+        ChatMessage after = cursor(newest.timestamp, newest.messageID);
+        run(callback, () -> {
+            synchronized (this) {
+                List<ChatMessage> page = new ArrayList<>();
+                for (ChatMessage chatMessage : getMessages(conversationID).tailSet(after, false)) {
+                    if (page.size() >= limit) {
+                        break;
+                    }
+                    page.add(copy(chatMessage));
+                }
+                return page;
+            }
+        });
+    }
+
+    /**
+     * This is the override for the listenMessages method
+     * @param conversationID this is the conversation to listen to
+     * @param since this is the oldest timestamp to listen from, or 0 for all
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    @Override
+    public Registration listenMessages(String conversationID, long since,
+                                       ChangeListener<ChatMessage> changeListener) {
+        MessageQuery query = new MessageQuery(since, changeListener);
+        run(() -> {
+            List<Change<ChatMessage>> changes = new ArrayList<>();
+            synchronized (this) {
+                if (!query.active) {
+                    return;
+                }
+                getQueries(messageQueries, conversationID).add(query);
+                // The first snapshot adds everything from the start
+                for (ChatMessage chatMessage : getMessages(conversationID).tailSet(query.start, true)) {
+                    changes.add(new Change<>(Change.Type.ADDED, copy(chatMessage), -1, changes.size()));
+                }
+            }
+            changeListener.onChanges(changes, null);
+        });
+        return () -> {
+            synchronized (this) {
+                query.active = false;
+                getQueries(messageQueries, conversationID).remove(query);
+            }
+        };
+    }
+
+    /**
+     * This is the override for the openConversation method
+     * @param user this is the signed in user
+     * @param partner this is the other user of the conversation
+     * @param callback this is called when the entries are written, or null
+     */
+    @Override
+    public void openConversation(User user, User partner, ResultCallback<Void> callback) {
+        String conversationID = ChatRepository.getConversationID(user.userid, partner.userid);
+        run(callback, () -> {
+            List<Runnable> deliveries = new ArrayList<>();
+            synchronized (this) {
+                Map<String, Set<String>> changedEntries = new HashMap<>();
+                // Only entries that are out of date are written
+                Conversation entry = getEntries(user.userid).get(conversationID);
+                if (entry == null || entry.unreadCount != 0 || !hasPartner(entry, partner)) {
+                    entry = getEntry(user.userid, conversationID, changedEntries);
+                    setPartner(entry, partner);
+                    entry.unreadCount = 0;
+                }
+                Conversation partnerEntry = getEntries(partner.userid).get(conversationID);
+                if (partnerEntry == null || !hasPartner(partnerEntry, user)) {
+                    setPartner(getEntry(partner.userid, conversationID, changedEntries), user);
+                }
+                deliverConversations(changedEntries, deliveries);
+            }
+            runAll(deliveries);
+            return null;
+        });
+    }
+
+    /**
+     * This is the override for the markConversationRead method
+     * @param userID this is the user who read the conversation
+     * @param conversationID this is the conversation that was read
+     * @param callback this is called when the entry is written, or null
+     */
+    @Override
+    public void markConversationRead(String userID, String conversationID, ResultCallback<Void> callback) {
+        run(callback, () -> {
+            List<Runnable> deliveries = new ArrayList<>();
+            synchronized (this) {
+                // An entry that is already read is not written again
+                Conversation entry = getEntries(userID).get(conversationID);
+                if (entry == null || entry.unreadCount == 0) {
+                    return null;
+                }
+                Map<String, Set<String>> changedEntries = new HashMap<>();
+                getEntry(userID, conversationID, changedEntries).unreadCount = 0;
+                deliverConversations(changedEntries, deliveries);
+            }
+            runAll(deliveries);
+            return null;
+        });
+    }
+
+    /**
+     * This is the override for the listenConversations method
+     * @param userID this is the user whose conversations are listened to
+     * @param limit this is the most conversations to listen to
+     * @param changeListener this is the listener for the changes
+     * @return the registration used to stop listening
+     */
+    @Override
+    public Registration listenConversations(String userID, int limit,
+                                            ChangeListener<Conversation> changeListener) {
+        ConversationQuery query = new ConversationQuery(userID, limit, changeListener);
+        run(() -> {
+            List<Change<Conversation>> changes;
+            synchronized (this) {
+                if (!query.active) {
+                    return;
+                }
+                getQueries(conversationQueries, userID).add(query);
+                changes = diff(query, Collections.<String>emptySet());
+            }
+            changeListener.onChanges(changes, null);
+        });
+        return () -> {
+            synchronized (this) {
+                query.active = false;
+                getQueries(conversationQueries, userID).remove(query);
+            }
+        };
+    }
+
+    /**
+     * This is the override for the migrateConversation method, messages
+     * in memory always carry their conversation ID
+     * @param firstUserID this is the ID of one user
+     * @param secondUserID this is the ID of the other user
+     * @param callback this is called when every message is migrated, or null
+     */
+    @Override
+    public void migrateConversation(String firstUserID, String secondUserID, ResultCallback<Void> callback) {
+        run(callback, () -> null);
+    }
+
+    /**
+     * This will store a message and record the changes for the listeners
+     * @param chatMessage this is the message, owned by the repository
+     * @param changes these are the changes of each listener so far
+     * @return the conversation ID of the message
+     */
+    private String write(ChatMessage chatMessage, Map<MessageQuery, List<Change<ChatMessage>>> changes) {
+        String conversationID = ChatRepository.getConversationID(chatMessage.senderID, chatMessage.receiverID);
+        TreeSet<ChatMessage> conversation = getMessages(conversationID);
+        RankedSet<ChatMessage> positions = getRanks(conversationID);
+        List<MessageQuery> queries = getQueries(messageQueries, conversationID);
+        // Find the old positions before the message moves
+        ChatMessage previous = messagesByID.get(chatMessage.messageID);
+        int[] oldIndexes = new int[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            oldIndexes[i] = previous != null ? indexOf(queries.get(i), conversation, positions, previous) : -1;
+        }
+        if (previous != null) {
+            conversation.remove(previous);
+            positions.remove(previous);
+        }
+        conversation.add(chatMessage);
+        positions.add(chatMessage);
+        messagesByID.put(chatMessage.messageID, chatMessage);
+        // Then report the change to every listener that can see it
+        for (int i = 0; i < queries.size(); i++) {
+            MessageQuery query = queries.get(i);
+            int newIndex = indexOf(query, conversation, positions, chatMessage);
+            Change.Type type;
+            if (oldIndexes[i] < 0 && newIndex < 0) {
+                continue;
+            }
+            else if (oldIndexes[i] < 0) {
+                type = Change.Type.ADDED;
+            }
+            else if (newIndex < 0) {
+                type = Change.Type.REMOVED;
+            }
+            else {
+                type = Change.Type.MODIFIED;
+            }
+            List<Change<ChatMessage>> queryChanges = changes.get(query);
+            if (queryChanges == null) {
+                queryChanges = new ArrayList<>();
+                changes.put(query, queryChanges);
+            }
+            queryChanges.add(new Change<>(type, copy(chatMessage), oldIndexes[i], newIndex));
+        }
+        return conversationID;
+    }
+
+    /**
+     * This will find the position of a message in the results of a
+     * listener. It counts the messages from the start of the listener,
+     * which is the loaded window for a chat, as the difference of two
+     * positions in the conversation
+     * @param query this is the listener
+     * @param conversation these are the messages of the conversation
+     * @param positions these are the positions of the messages
+     * @param chatMessage this is the message
+     * @return the position, or -1 if the listener does not see the message
+     */
+    private static int indexOf(MessageQuery query, TreeSet<ChatMessage> conversation,
+                               RankedSet<ChatMessage> positions, ChatMessage chatMessage) {
+        if (MESSAGE_ORDER.compare(chatMessage, query.start) < 0 || !conversation.contains(chatMessage)) {
+            return -1;
+        }
+        return positions.rank(chatMessage) - positions.rank(query.start);
+    }
+
+    /**
+     * This will queue the message changes for their listeners
+     * @param changes these are the changes of each listener
+     * @param deliveries this is where the deliveries are added
+     */
+    private static void deliverMessages(Map<MessageQuery, List<Change<ChatMessage>>> changes,
+                                        List<Runnable> deliveries) {
+        for (Map.Entry<MessageQuery, List<Change<ChatMessage>>> entry : changes.entrySet()) {
+            MessageQuery query = entry.getKey();
+            List<Change<ChatMessage>> queryChanges = entry.getValue();
+            deliveries.add(() -> {
+                if (query.active) {
+                    query.changeListener.onChanges(queryChanges, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * This will queue the conversation changes for their listeners
+     * @param changedEntries these are the changed entries of each user
+     * @param deliveries this is where the deliveries are added
+     */
+    private void deliverConversations(Map<String, Set<String>> changedEntries, List<Runnable> deliveries) {
+        for (Map.Entry<String, Set<String>> entry : changedEntries.entrySet()) {
+            for (ConversationQuery query : getQueries(conversationQueries, entry.getKey())) {
+                List<Change<Conversation>> changes = diff(query, entry.getValue());
+                if (changes.isEmpty()) {
+                    continue;
+                }
+                deliveries.add(() -> {
+                    if (query.active) {
+                        query.changeListener.onChanges(changes, null);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * This will work out the changes that turn the last results of a
+     * conversation listener into the current ones. Removals come first,
+     * then every position is filled in from the top
+     * @param query this is the listener
+     * @param changedIDs these are the conversations whose entries were written
+     * @return the changes in the order they apply
+     */
+    private List<Change<Conversation>> diff(ConversationQuery query, Set<String> changedIDs) {
+        Map<String, Conversation> entries = getEntries(query.userID);
+        // Entries without a message are left out like the ordered query does
+        List<Conversation> view = new ArrayList<>();
+        for (Conversation conversation : entries.values()) {
+            if (conversation.lastTimestamp > 0) {
+                view.add(conversation);
+            }
+        }
+        Collections.sort(view, CONVERSATION_ORDER);
+        if (view.size() > query.limit) {
+            view = view.subList(0, query.limit);
+        }
+        Set<String> viewIDs = new HashSet<>();
+        for (Conversation conversation : view) {
+            viewIDs.add(conversation.conversationID);
+        }
+        List<Change<Conversation>> changes = new ArrayList<>();
+        List<String> current = new ArrayList<>(query.conversationIDs);
+        // Remove from the bottom so the earlier positions stay right
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (!viewIDs.contains(current.get(i))) {
+                changes.add(new Change<>(Change.Type.REMOVED, copy(entries.get(current.get(i))), i, -1));
+                current.remove(i);
+            }
+        }
+        for (int i = 0; i < view.size(); i++) {
+            Conversation conversation = view.get(i);
+            int oldIndex = current.indexOf(conversation.conversationID);
+            if (oldIndex < 0) {
+                current.add(i, conversation.conversationID);
+                changes.add(new Change<>(Change.Type.ADDED, copy(conversation), -1, i));
+            }
+            else if (oldIndex != i || changedIDs.contains(conversation.conversationID)) {
+                current.remove(oldIndex);
+                current.add(i, conversation.conversationID);
+                changes.add(new Change<>(Change.Type.MODIFIED, copy(conversation), oldIndex, i));
+            }
+        }
+        query.conversationIDs = current;
+        return changes;
+    }
+
+    /**
+     * This will get the messages of a conversation
+     * @param conversationID this is the conversation
+     * @return the ordered messages
+     */
+    private TreeSet<ChatMessage> getMessages(String conversationID) {
+        TreeSet<ChatMessage> conversation = messages.get(conversationID);
+        if (conversation == null) {
+            conversation = new TreeSet<>(MESSAGE_ORDER);
+            messages.put(conversationID, conversation);
+        }
+        return conversation;
+    }
+
+    /**
+     * This will get the positions of the messages of a conversation
+     * @param conversationID this is the conversation
+     * @return the positions
+     */
+    private RankedSet<ChatMessage> getRanks(String conversationID) {
+        RankedSet<ChatMessage> positions = ranks.get(conversationID);
+        if (positions == null) {
+            positions = new RankedSet<>(MESSAGE_ORDER);
+            ranks.put(conversationID, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * This will get the recent conversation entries of a user
+     * @param userID this is the user
+     * @return the entries by conversation ID
+     */
+    private Map<String, Conversation> getEntries(String userID) {
+        Map<String, Conversation> entries = conversations.get(userID);
+        if (entries == null) {
+            entries = new HashMap<>();
+            conversations.put(userID, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * This will get a recent conversation entry to write, creating it if needed
+     * @param userID this is the user the entry belongs to
+     * @param conversationID this is the conversation of the entry
+     * @param changedEntries this is where the write is recorded
+     * @return the entry
+     */
+    private Conversation getEntry(String userID, String conversationID, Map<String, Set<String>> changedEntries) {
+        Map<String, Conversation> entries = getEntries(userID);
+        Conversation conversation = entries.get(conversationID);
+        if (conversation == null) {
+            conversation = new Conversation();
+            conversation.conversationID = conversationID;
+            entries.put(conversationID, conversation);
+        }
+        Set<String> changed = changedEntries.get(userID);
+        if (changed == null) {
+            changed = new HashSet<>();
+            changedEntries.put(userID, changed);
+        }
+        changed.add(conversationID);
+        return conversation;
+    }
+
+    /**
+     * This will get the listeners of a key
+     * @param queries these are the listeners by key
+     * @param key this is the conversation or user
+     * @param <Q> this is the type of the listeners
+     * @return the listeners
+     */
+    private static <Q> List<Q> getQueries(Map<String, List<Q>> queries, String key) {
+        List<Q> keyQueries = queries.get(key);
+        if (keyQueries == null) {
+            keyQueries = new ArrayList<>();
+            queries.put(key, keyQueries);
+        }
+        return keyQueries;
+    }
+
+    /**
+     * This will get the server time of a commit. Commits are applied one
+     * at a time, so each one is later than the last
+     * @return the timestamp in epoch milliseconds
+     */
+    private long nextServerTime() {
+        serverTime = Math.max(serverTime + 1, System.currentTimeMillis());
+        return serverTime;
+    }
+
+    /**
+     * This will copy the newest messages of an ordered set
+     * @param ordered these are the messages in timestamp order
+     * @param limit this is the most messages to copy
+     * @return the messages in timestamp order
+     */
+    private static List<ChatMessage> lastPage(NavigableSet<ChatMessage> ordered, int limit) {
+        List<ChatMessage> page = new ArrayList<>();
+        Iterator<ChatMessage> iterator = ordered.descendingIterator();
+        while (iterator.hasNext() && page.size() < limit) {
+            page.add(copy(iterator.next()));
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * This will run the deliveries, outside the lock
+     * @param deliveries these are the deliveries in order
+     */
+    private static void runAll(List<Runnable> deliveries) {
+        for (Runnable delivery : deliveries) {
+            delivery.run();
+        }
+    }
+
+    /**
+     * This will build a cursor, a message that is only a position
+     * @param timestamp this is the timestamp of the position
+     * @param messageID this is the message ID of the position
+     * @return the cursor
+     */
+    private static ChatMessage cursor(long timestamp, String messageID) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.timestamp = timestamp;
+        chatMessage.messageID = messageID;
+        return chatMessage;
+    }
+
+    /**
+     * This will copy a message, so callers never share the stored one
+     * @param chatMessage this is the message
+     * @return the copy, which is not pending
+     */
+    private static ChatMessage copy(ChatMessage chatMessage) {
+        ChatMessage copy = new ChatMessage();
+        copy.messageID = chatMessage.messageID;
+        copy.senderID = chatMessage.senderID;
+        copy.receiverID = chatMessage.receiverID;
+        copy.message = chatMessage.message;
+        copy.timestamp = chatMessage.timestamp;
+        copy.attachmentRef = chatMessage.attachmentRef;
+        copy.attachmentBlurHash = chatMessage.attachmentBlurHash;
+        copy.attachmentWidth = chatMessage.attachmentWidth;
+        copy.attachmentHeight = chatMessage.attachmentHeight;
+        return copy;
+    }
+
+    /**
+     * This will copy a recent conversation entry
+     * @param conversation this is the entry
+     * @return the copy
+     */
+    private static Conversation copy(Conversation conversation) {
+        Conversation copy = new Conversation();
+        copy.conversationID = conversation.conversationID;
+        copy.partnerID = conversation.partnerID;
+        copy.partnerFirstName = conversation.partnerFirstName;
+        copy.partnerLastName = conversation.partnerLastName;
+        copy.partnerImageRef = conversation.partnerImageRef;
+        copy.lastMessage = conversation.lastMessage;
+        copy.lastSenderID = conversation.lastSenderID;
+        copy.lastTimestamp = conversation.lastTimestamp;
+        copy.unreadCount = conversation.unreadCount;
+        return copy;
+    }
+
+    /**
+     * This will set the last message of a recent conversation entry
+     * @param conversation this is the entry
+     * @param chatMessage this is the last message
+     */
+    private static void setLastMessage(Conversation conversation, ChatMessage chatMessage) {
+        conversation.lastMessage = chatMessage.message;
+        conversation.lastSenderID = chatMessage.senderID;
+        conversation.lastTimestamp = chatMessage.timestamp;
+    }
+
+    /**
+     * This will copy the details of the other user into an entry
+     * @param conversation this is the entry
+     * @param partner this is the other user of the conversation
+     */
+    private static void setPartner(Conversation conversation, User partner) {
+        conversation.partnerID = partner.userid;
+        conversation.partnerFirstName = partner.firstName;
+        conversation.partnerLastName = partner.lastName;
+        conversation.partnerImageRef = partner.imageRef;
+    }
+
+    /**
+     * This will check whether an entry has the current details of the other user
+     * @param conversation this is the entry
+     * @param partner this is the other user of the conversation
+     * @return true if nothing would change
+     */
+    private static boolean hasPartner(Conversation conversation, User partner) {
+        return Objects.equals(conversation.partnerID, partner.userid)
+                && Objects.equals(conversation.partnerFirstName, partner.firstName)
+                && Objects.equals(conversation.partnerLastName, partner.lastName)
+                && Objects.equals(conversation.partnerImageRef, partner.imageRef);
+    }
+}
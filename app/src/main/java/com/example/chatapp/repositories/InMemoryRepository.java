@@ -0,0 +1,95 @@
+package com.example.chatapp.repositories;
+
+/**
+ * This is the base of the in-memory repositories, used to drive the
+ * app and its data paths without a database. Every read and write is
+ * run through a Scheduler after the configured latency, and can be
+ * made to fail, so slow and broken networks can be simulated
+ */
+public abstract class InMemoryRepository {
+    /**
+     * This is how the repository runs its work, for example on a
+     * Handler of the main thread or on a virtual clock in tests
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    // These are the private variables
+    private final Scheduler scheduler;
+    private volatile long latencyMillis;
+    private volatile Exception failure;
+
+    /**
+     * This is the constructor
+     * @param scheduler this is what runs the work of the repository
+     */
+    protected InMemoryRepository(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * This will set how long every read and write takes
+     * @param latencyMillis this is the latency in milliseconds
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * This will make every read and write fail until it is cleared.
+     * Listeners that are already registered keep working
+     * @param failure this is the exception to fail with, or null to succeed again
+     */
+    public void setFailure(Exception failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * This will run work after the latency
+     * @param task this is the work to run
+     */
+    protected void run(Runnable task) {
+        scheduler.schedule(task, latencyMillis);
+    }
+
+    /**
+     * This will run an operation after the latency, or fail it
+     * @param callback this is the callback of the operation, or null
+     * @param operation this is the operation, it returns the result
+     * @param <T> this is the type of the result
+     */
+    protected <T> void run(ResultCallback<T> callback, Operation<T> operation) {
+        run(() -> {
+            Exception exception = failure;
+            if (exception != null) {
+                if (callback != null) {
+                    callback.onComplete(null, exception);
+                }
+                return;
+            }
+            T result;
+            try {
+                result = operation.run();
+            }
+            // An operation can fail the way the database would
+            catch (Exception failed) {
+                if (callback != null) {
+                    callback.onComplete(null, failed);
+                }
+                return;
+            }
+            if (callback != null) {
+                callback.onComplete(result, null);
+            }
+        });
+    }
+
+    /**
+     * This is an operation of the repository
+     * @param <T> this is the type of the result
+     */
+    protected interface Operation<T> {
+        T run() throws Exception;
+    }
+}
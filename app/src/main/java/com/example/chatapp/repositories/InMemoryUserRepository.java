@@ -0,0 +1,270 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Credentials;
+import com.example.chatapp.utilities.UserTrie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * This is the in-memory User Repository. The users are indexed by
+ * their normalized name and by each word of their name and email, with
+ * the user ID breaking ties, the same order the database queries use,
+ * and by their change time, so
+ * pages, prefix searches and changes cost a tree lookup even with
+ * hundreds of thousands of users
+ */
+public class InMemoryUserRepository extends InMemoryRepository implements UserRepository {
+    // This separates a field from the user ID in an index key, it sorts first
+    private static final char KEY_SEPARATOR = '\u0000';
+    // These are the private variables
+    private final Map<String, User> users = new HashMap<>();
+    private final TreeMap<String, User> byName = new TreeMap<>();
+    private final TreeMap<String, User> byWord = new TreeMap<>();
+    private final TreeMap<Long, User> byUpdatedAt = new TreeMap<>();
+    private final Map<String, Credentials> credentialsByUserID = new HashMap<>();
+    private final Map<String, String> userIDsByEmailKey = new HashMap<>();
+    private long lastUpdatedAt;
+
+    /**
+     * This is the constructor
+     * @param scheduler this is what runs the work of the repository
+     */
+    public InMemoryUserRepository(Scheduler scheduler) {
+        super(scheduler);
+    }
+
+    /**
+     * This will store a user, replacing an older copy of them. Every
+     * write gets a later change time, the way a server timestamp would
+     * @param user this is the user to store
+     */
+    public synchronized void putUser(User user) {
+        User previous = users.remove(user.userid);
+        if (previous != null) {
+            byName.remove(getKey(UserTrie.getNameKey(previous), previous.userid));
+            for (String word : UserTrie.getWords(previous)) {
+                byWord.remove(getKey(word, previous.userid));
+            }
+            byUpdatedAt.remove(previous.updatedAt);
+        }
+        User stored = copy(user);
+        lastUpdatedAt = Math.max(System.currentTimeMillis() * 1_000, lastUpdatedAt + 1);
+        stored.updatedAt = lastUpdatedAt;
+        byUpdatedAt.put(stored.updatedAt, stored);
+        users.put(stored.userid, stored);
+        byName.put(getKey(UserTrie.getNameKey(stored), stored.userid), stored);
+        for (String word : UserTrie.getWords(stored)) {
+            byWord.put(getKey(word, stored.userid), stored);
+        }
+    }
+
+    /**
+     * This will get the number of users
+     * @return the number of users
+     */
+    public synchronized int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * This is the override for the loadUsers method
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the page of users
+     */
+    @Override
+    public void loadUsers(User after, int limit, ResultCallback<List<User>> callback) {
+        String cursor = after != null ? getKey(UserTrie.getNameKey(after), after.userid) : null;
+        run(callback, () -> {
+            synchronized (this) {
+                SortedMap<String, User> page = cursor != null ? byName.tailMap(cursor, false) : byName;
+                List<User> result = new ArrayList<>();
+                for (User user : page.values()) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    result.add(copy(user));
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * This is the override for the loadUser method
+     * @param userID this is the ID of the user
+     * @param callback this is called with the user, or null if there is none
+     */
+    @Override
+    public void loadUser(String userID, ResultCallback<User> callback) {
+        run(callback, () -> {
+            synchronized (this) {
+                User user = users.get(userID);
+                return user != null ? copy(user) : null;
+            }
+        });
+    }
+
+    /**
+     * This is the override for the loadUsersUpdatedSince method. Every
+     * write here has its own time, so the time of the cursor is enough
+     * @param since this is the time to load changes after, in epoch microseconds
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the changed users, oldest change first
+     */
+    @Override
+    public void loadUsersUpdatedSince(long since, User after, int limit, ResultCallback<List<User>> callback) {
+        long from = after != null ? Math.max(since, after.updatedAt) : since;
+        run(callback, () -> {
+            synchronized (this) {
+                List<User> result = new ArrayList<>();
+                for (User user : byUpdatedAt.tailMap(from, false).values()) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    result.add(copy(user));
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * This is the override for the loadLastUpdatedAt method
+     * @param callback this is called with the time in epoch microseconds, or 0 if no user has one
+     */
+    @Override
+    public void loadLastUpdatedAt(ResultCallback<Long> callback) {
+        run(callback, () -> {
+            synchronized (this) {
+                return byUpdatedAt.isEmpty() ? 0L : byUpdatedAt.lastKey();
+            }
+        });
+    }
+
+    /**
+     * This is the override for the searchUsers method
+     * @param prefix this is the text the user typed
+     * @param limit this is the most users to load
+     * @param callback this is called with the matching users
+     */
+    @Override
+    public void searchUsers(String prefix, int limit, ResultCallback<List<User>> callback) {
+        String normalized = UserTrie.normalize(prefix);
+        String word = UserTrie.getLongestWord(normalized);
+        run(callback, () -> {
+            synchronized (this) {
+                // Look up the longest word, then check the others the way the trie does
+                Map<String, User> matches = new LinkedHashMap<>();
+                for (Map.Entry<String, User> entry : byWord.tailMap(word, true).entrySet()) {
+                    // A key starts with the word only when its field does
+                    if (matches.size() >= limit || !entry.getKey().startsWith(word)) {
+                        break;
+                    }
+                    User user = entry.getValue();
+                    if (!matches.containsKey(user.userid) && UserTrie.matches(user, normalized)) {
+                        matches.put(user.userid, copy(user));
+                    }
+                }
+                return new ArrayList<>(matches.values());
+            }
+        });
+    }
+
+    /**
+     * This is the override for the signIn method
+     * @param email this is the email as the user typed it
+     * @param password this is the password
+     * @param callback this is called with the signed in user, or an AccountException
+     */
+    @Override
+    public void signIn(String email, String password, ResultCallback<User> callback) {
+        String emailKey = Credentials.getEmailKey(email);
+        run(callback, () -> {
+            User user;
+            Credentials credentials;
+            synchronized (this) {
+                String userID = userIDsByEmailKey.get(emailKey);
+                user = userID != null ? users.get(userID) : null;
+                credentials = userID != null ? credentialsByUserID.get(userID) : null;
+            }
+            // Hash outside the lock, it is slow on purpose
+            if (user == null || !credentials.verify(password)) {
+                throw new AccountException(AccountException.Reason.INVALID_CREDENTIALS);
+            }
+            if (credentials.needsRehash()) {
+                Credentials rehashed = Credentials.create(password);
+                synchronized (this) {
+                    credentialsByUserID.replace(user.userid, credentials, rehashed);
+                }
+            }
+            return copy(user);
+        });
+    }
+
+    /**
+     * This is the override for the signUp method
+     * @param user this is the new user, without an ID
+     * @param password this is the password
+     * @param callback this is called with the user and its new ID, or an AccountException
+     */
+    @Override
+    public void signUp(User user, String password, ResultCallback<User> callback) {
+        String emailKey = Credentials.getEmailKey(user.email);
+        User stored = copy(user);
+        run(callback, () -> {
+            Credentials credentials = Credentials.create(password);
+            synchronized (this) {
+                // Reserve the email and make the user in one step
+                if (userIDsByEmailKey.containsKey(emailKey)) {
+                    throw new AccountException(AccountException.Reason.EMAIL_TAKEN);
+                }
+                stored.userid = UUID.randomUUID().toString();
+                userIDsByEmailKey.put(emailKey, stored.userid);
+                credentialsByUserID.put(stored.userid, credentials);
+                putUser(stored);
+            }
+            return copy(stored);
+        });
+    }
+
+    /**
+     * This will build the key of a user in an index
+     * @param field this is the normalized field
+     * @param userID this is the ID of the user
+     * @return the key
+     */
+    private static String getKey(String field, String userID) {
+        return field + KEY_SEPARATOR + userID;
+    }
+
+    /**
+     * This will copy a user, so callers never share the stored one
+     * @param user this is the user
+     * @return the copy
+     */
+    private static User copy(User user) {
+        User copy = new User();
+        copy.firstName = user.firstName;
+        copy.lastName = user.lastName;
+        copy.email = user.email;
+        copy.image = user.image;
+        copy.imageRef = user.imageRef;
+        copy.imageThumbnailRef = user.imageThumbnailRef;
+        copy.imageHeaderRef = user.imageHeaderRef;
+        copy.imageVersion = user.imageVersion;
+        copy.token = user.token;
+        copy.userid = user.userid;
+        copy.updatedAt = user.updatedAt;
+        return copy;
+    }
+}
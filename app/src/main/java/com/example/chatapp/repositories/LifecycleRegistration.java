@@ -0,0 +1,78 @@
+package com.example.chatapp.repositories;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * This is a registration bound to the lifecycle of a screen. It is
+ * removed when the screen reaches the given event, so a listener can
+ * never outlive the screen that registered it
+ */
+public final class LifecycleRegistration implements Registration, LifecycleEventObserver {
+    // These are the private variables
+    private final Lifecycle lifecycle;
+    private final Lifecycle.Event removeOn;
+    private final Registration registration;
+    private boolean removed;
+
+    /**
+     * This is the constructor
+     * @param lifecycle this is the lifecycle of the screen
+     * @param removeOn this is the event the registration is removed on
+     * @param registration this is the registration
+     */
+    private LifecycleRegistration(Lifecycle lifecycle, Lifecycle.Event removeOn, Registration registration) {
+        this.lifecycle = lifecycle;
+        this.removeOn = removeOn;
+        this.registration = registration;
+    }
+
+    /**
+     * This will bind a registration to the lifecycle of a screen. It
+     * must be called on the main thread
+     * @param owner this is the screen
+     * @param removeOn this is the event the registration is removed on,
+     *                 ON_STOP for listeners opened in onStart, ON_DESTROY otherwise
+     * @param registration this is the registration
+     * @return the registration, it can still be removed earlier
+     */
+    public static Registration removeOn(LifecycleOwner owner, Lifecycle.Event removeOn,
+                                        Registration registration) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        // A screen that is already gone never reaches the event
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            registration.remove();
+            return registration;
+        }
+        LifecycleRegistration bound = new LifecycleRegistration(lifecycle, removeOn, registration);
+        lifecycle.addObserver(bound);
+        return bound;
+    }
+
+    /**
+     * This is the override for the onStateChanged method
+     * @param source this is the screen
+     * @param event this is the lifecycle event
+     */
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == removeOn || event == Lifecycle.Event.ON_DESTROY) {
+            remove();
+        }
+    }
+
+    /**
+     * This is the override for the remove method
+     */
+    @Override
+    public void remove() {
+        if (removed) {
+            return;
+        }
+        removed = true;
+        lifecycle.removeObserver(this);
+        registration.remove();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ConversationState;
+
+import java.util.Map;
+
+/**
+ * This is the Presence Repository for who is online and who is typing.
+ * Online users write a heartbeat, typing is kept in the state document
+ * of the conversation, and both expire on the reading side by their
+ * timestamps, so an app that goes away never leaves a stale status.
+ * Read receipts are kept in the same state document
+ */
+public interface PresenceRepository {
+    // A signed in app writes a heartbeat this often
+    long HEARTBEAT_INTERVAL_MILLIS = 60_000;
+    // A user is online until two heartbeats are missed, with room for clock skew
+    long ONLINE_TIMEOUT_MILLIS = 2 * HEARTBEAT_INTERVAL_MILLIS + 30_000;
+
+    /**
+     * This will check if a heartbeat is recent enough to count as online
+     * @param lastSeen this is the time of the last heartbeat, or null
+     * @param now this is now in epoch milliseconds
+     * @return true if the user is online
+     */
+    static boolean isOnline(Long lastSeen, long now) {
+        return lastSeen != null && now - lastSeen < ONLINE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * This will write a heartbeat for a user
+     * @param userID this is the ID of the user
+     * @param callback this is called when the write is done, or null
+     */
+    void writeHeartbeat(String userID, ResultCallback<Void> callback);
+
+    /**
+     * This will write whether a user is typing in a conversation
+     * @param conversationID this is the ID of the conversation
+     * @param userID this is the ID of the user
+     * @param typing this is true while the user is typing
+     * @param callback this is called when the write is done, or null
+     */
+    void setTyping(String conversationID, String userID, boolean typing, ResultCallback<Void> callback);
+
+    /**
+     * This will write how far a user has received and read a conversation
+     * @param conversationID this is the ID of the conversation
+     * @param userID this is the ID of the user
+     * @param deliveredUpTo this is the timestamp of the newest delivered message
+     * @param readUpTo this is the timestamp of the newest read message
+     * @param callback this is called when the write is done, or null
+     */
+    void writeReceipts(String conversationID, String userID, long deliveredUpTo, long readUpTo,
+                       ResultCallback<Void> callback);
+
+    /**
+     * This will listen to the state of a conversation
+     * @param conversationID this is the ID of the conversation
+     * @param listener this is called with every new state
+     * @return the registration to stop listening with
+     */
+    Registration listenConversationState(String conversationID, ResultCallback<ConversationState> listener);
+
+    /**
+     * This will listen to the heartbeat of a user
+     * @param userID this is the ID of the user
+     * @param listener this is called with the time of every new heartbeat, or null if there is none
+     * @return the registration to stop listening with
+     */
+    Registration listenLastSeen(String userID, ResultCallback<Long> listener);
+
+    /**
+     * This will listen to the users with a recent heartbeat
+     * @param listener this is called with the heartbeat times by user ID
+     * @return the registration to stop listening with
+     */
+    Registration listenOnlineUsers(ResultCallback<Map<String, Long>> listener);
+}
@@ -0,0 +1,162 @@
+package com.example.chatapp.repositories;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * This is a set that knows the position of every element, so a
+ * listener position costs a tree walk instead of counting the messages
+ * in front of it. It is a treap that keeps the size of each subtree.
+ * It is not thread safe, the in-memory repository holds its lock
+ */
+class RankedSet<T> {
+    /**
+     * This is a node of the tree
+     */
+    private static class Node<T> {
+        final T value;
+        final int priority;
+        int size = 1;
+        Node<T> left, right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * This is a tree split in two around a value
+     */
+    private static class Split<T> {
+        Node<T> left, right;
+    }
+
+    // These are the private variables
+    private final Comparator<? super T> order;
+    private final Random random = new Random();
+    private Node<T> root;
+
+    /**
+     * This is the constructor
+     * @param order this is the order of the elements
+     */
+    RankedSet(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    /**
+     * This will get the number of elements
+     * @return the number of elements
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * This will count the elements that come before a value, which is
+     * the position of the value if it is in the set
+     * @param value this is the value
+     * @return the number of smaller elements
+     */
+    int rank(T value) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (order.compare(value, node.value) <= 0) {
+                node = node.left;
+            }
+            else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * This will add a value that is not in the set
+     * @param value this is the value
+     */
+    void add(T value) {
+        Split<T> parts = split(root, value, false);
+        root = merge(merge(parts.left, new Node<>(value, random.nextInt())), parts.right);
+    }
+
+    /**
+     * This will remove a value, if it is in the set
+     * @param value this is the value
+     */
+    void remove(T value) {
+        Split<T> smaller = split(root, value, false);
+        Split<T> equal = split(smaller.right, value, true);
+        root = merge(smaller.left, equal.right);
+    }
+
+    /**
+     * This will split a tree around a value
+     * @param node this is the root of the tree
+     * @param value this is the value to split at
+     * @param inclusive this is true to put elements equal to the value on the left
+     * @return the left and right trees
+     */
+    private Split<T> split(Node<T> node, T value, boolean inclusive) {
+        if (node == null) {
+            return new Split<>();
+        }
+        int compare = order.compare(node.value, value);
+        Split<T> parts;
+        if (compare < 0 || (inclusive && compare == 0)) {
+            parts = split(node.right, value, inclusive);
+            node.right = parts.left;
+            parts.left = update(node);
+        }
+        else {
+            parts = split(node.left, value, inclusive);
+            node.left = parts.right;
+            parts.right = update(node);
+        }
+        return parts;
+    }
+
+    /**
+     * This will join two trees where every element of the first comes
+     * before every element of the second
+     * @param left this is the first tree
+     * @param right this is the second tree
+     * @return the joined tree
+     */
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    /**
+     * This will work out the size of a node from its children
+     * @param node this is the node
+     * @return the node
+     */
+    private static <T> Node<T> update(Node<T> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * This will get the size of a tree
+     * @param node this is the root of the tree, or null
+     * @return the number of elements
+     */
+    private static <T> int size(Node<T> node) {
+        return node != null ? node.size : 0;
+    }
+}
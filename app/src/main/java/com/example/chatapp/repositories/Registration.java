@@ -0,0 +1,11 @@
+package com.example.chatapp.repositories;
+
+/**
+ * This is the registration of a repository listener
+ */
+public interface Registration {
+    /**
+     * This will stop the listener, nothing is delivered to it afterwards
+     */
+    void remove();
+}
@@ -0,0 +1,123 @@
+package com.example.chatapp.repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * These are the repositories the app uses. They are backed by Firestore
+ * unless other ones are set, for example the in-memory repositories
+ * for tests and load simulation
+ */
+public final class Repositories {
+    // This is the tag of the listener count in the log
+    private static final String TAG = "Subscriptions";
+    // A listener stays open this long after its last screen leaves
+    private static final long LINGER_MILLIS = 10_000;
+    // These are the shared instances
+    private static SubscriptionManager subscriptionManager;
+    private static ChatRepository chatRepository;
+    private static UserRepository userRepository;
+    private static PresenceRepository presenceRepository;
+    private static BlobStore blobStore;
+
+    /**
+     * This class only has static methods
+     */
+    private Repositories() {
+    }
+
+    /**
+     * This will get the shared Subscription Manager that owns the
+     * database listeners. The number of open listeners is logged
+     * @return the Subscription Manager
+     */
+    public static synchronized SubscriptionManager getSubscriptionManager() {
+        if (subscriptionManager == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
+            subscriptionManager = new SubscriptionManager(LINGER_MILLIS, handler::postDelayed);
+            subscriptionManager.setCountListener(count -> Log.d(TAG, "Active listeners: " + count));
+        }
+        return subscriptionManager;
+    }
+
+    /**
+     * This will get the shared Chat Repository
+     * @return the Chat Repository
+     */
+    public static synchronized ChatRepository getChatRepository() {
+        if (chatRepository == null) {
+            chatRepository = new FirestoreChatRepository(FirebaseFirestore.getInstance(),
+                    getSubscriptionManager());
+        }
+        return chatRepository;
+    }
+
+    /**
+     * This will replace the shared Chat Repository, before it is first used
+     * @param repository this is the repository to use, or null for Firestore
+     */
+    public static synchronized void setChatRepository(ChatRepository repository) {
+        chatRepository = repository;
+    }
+
+    /**
+     * This will get the shared User Repository
+     * @return the User Repository
+     */
+    public static synchronized UserRepository getUserRepository() {
+        if (userRepository == null) {
+            userRepository = new FirestoreUserRepository(FirebaseFirestore.getInstance());
+        }
+        return userRepository;
+    }
+
+    /**
+     * This will replace the shared User Repository, before it is first used
+     * @param repository this is the repository to use, or null for Firestore
+     */
+    public static synchronized void setUserRepository(UserRepository repository) {
+        userRepository = repository;
+    }
+
+    /**
+     * This will get the shared Presence Repository
+     * @return the Presence Repository
+     */
+    public static synchronized PresenceRepository getPresenceRepository() {
+        if (presenceRepository == null) {
+            presenceRepository = new FirestorePresenceRepository(FirebaseFirestore.getInstance(),
+                    getSubscriptionManager());
+        }
+        return presenceRepository;
+    }
+
+    /**
+     * This will replace the shared Presence Repository, before it is first used
+     * @param repository this is the repository to use, or null for Firestore
+     */
+    public static synchronized void setPresenceRepository(PresenceRepository repository) {
+        presenceRepository = repository;
+    }
+
+    /**
+     * This will get the shared Blob Store
+     * @return the Blob Store
+     */
+    public static synchronized BlobStore getBlobStore() {
+        if (blobStore == null) {
+            blobStore = new FirestoreBlobStore(FirebaseFirestore.getInstance());
+        }
+        return blobStore;
+    }
+
+    /**
+     * This will replace the shared Blob Store, before it is first used
+     * @param store this is the store to use, or null for Firestore
+     */
+    public static synchronized void setBlobStore(BlobStore store) {
+        blobStore = store;
+    }
+}
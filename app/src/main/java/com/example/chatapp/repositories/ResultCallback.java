@@ -0,0 +1,14 @@
+package com.example.chatapp.repositories;
+
+/**
+ * This is the callback for the result of a repository operation
+ * @param <T> this is the type of the result
+ */
+public interface ResultCallback<T> {
+    /**
+     * This is called once when the operation is done
+     * @param result this is the result, or null if the operation failed
+     * @param exception this is why the operation failed, or null if it succeeded
+     */
+    void onComplete(T result, Exception exception);
+}
@@ -0,0 +1,470 @@
+package com.example.chatapp.repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the Subscription Manager that owns the database listeners.
+ * Screens that listen to the same query share one listener, a screen
+ * that joins late is sent the current results first, and the listener
+ * is kept open for a while after the last screen leaves, so going
+ * back and forth between screens does not open the query again
+ */
+public class SubscriptionManager {
+    /**
+     * This is what closes listeners after the linger time, for example
+     * a Handler of the main thread or a virtual clock in tests
+     */
+    public interface Scheduler {
+        // Run the task after the delay
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * This opens the database listener of a query
+     * @param <L> this is the type of the listener
+     */
+    public interface Source<L> {
+        // Open the listener, it is given the shared listener to deliver to
+        Registration open(L listener);
+    }
+
+    /**
+     * This is told how many database listeners are open
+     */
+    public interface CountListener {
+        // The count includes the listeners that linger
+        void onActiveCount(int count);
+    }
+
+    // These are the private variables
+    private final long lingerMillis;
+    private final Scheduler scheduler;
+    private final Map<String, Shared<?>> shared = new HashMap<>();
+    private CountListener countListener;
+
+    /**
+     * This is the constructor
+     * @param lingerMillis this is how long a listener stays open without subscribers
+     * @param scheduler this is what closes the listeners later
+     */
+    public SubscriptionManager(long lingerMillis, Scheduler scheduler) {
+        this.lingerMillis = lingerMillis;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * This will subscribe to a query whose results change, the listener
+     * is first sent the current results as added if the query is open
+     * @param key this is the key of the query, the same query has the same key
+     * @param source this opens the database listener if it is not open
+     * @param changeListener this is the listener for the changes
+     * @param <T> this is the type of the results
+     * @return the registration used to stop listening
+     */
+    public <T> Registration subscribeChanges(String key, Source<ChangeListener<T>> source,
+                                             ChangeListener<T> changeListener) {
+        return subscribe(key, source, changeListener, SharedChanges::new);
+    }
+
+    /**
+     * This will subscribe to a query with one value, the listener is
+     * first sent the current value if the query is open
+     * @param key this is the key of the query, the same query has the same key
+     * @param source this opens the database listener if it is not open
+     * @param listener this is called with every new value
+     * @param <T> this is the type of the value
+     * @return the registration used to stop listening
+     */
+    public <T> Registration subscribeValues(String key, Source<ResultCallback<T>> source,
+                                            ResultCallback<T> listener) {
+        return subscribe(key, source, listener, SharedValues::new);
+    }
+
+    /**
+     * This will get the number of open database listeners
+     * @return the number of listeners, including the ones that linger
+     */
+    public synchronized int getActiveCount() {
+        return shared.size();
+    }
+
+    /**
+     * This will set the listener for the number of open database listeners
+     * @param countListener this is the listener, or null
+     */
+    public void setCountListener(CountListener countListener) {
+        int count;
+        synchronized (this) {
+            this.countListener = countListener;
+            count = shared.size();
+        }
+        if (countListener != null) {
+            countListener.onActiveCount(count);
+        }
+    }
+
+    /**
+     * This is how a shared listener is made for a key
+     * @param <L> this is the type of the listener
+     */
+    private interface Factory<L> {
+        Shared<L> create(String key);
+    }
+
+    /**
+     * This will add a subscriber to the shared listener of a key
+     * @param key this is the key of the query
+     * @param source this opens the database listener if it is not open
+     * @param listener this is the subscriber
+     * @param factory this makes the shared listener if it is not open
+     * @param <L> this is the type of the listener
+     * @return the registration used to stop listening
+     */
+    @SuppressWarnings("unchecked")
+    private <L> Registration subscribe(String key, Source<L> source, L listener, Factory<L> factory) {
+        Shared<L> entry;
+        boolean opened = false;
+        synchronized (this) {
+            entry = (Shared<L>) shared.get(key);
+            if (entry == null) {
+                entry = factory.create(key);
+                shared.put(key, entry);
+                opened = true;
+            }
+            // A subscriber in time keeps a lingering listener open
+            entry.generation++;
+        }
+        if (opened) {
+            entry.add(listener);
+            Registration upstream = source.open((L) entry);
+            boolean closed;
+            synchronized (this) {
+                closed = entry.closed;
+                entry.upstream = upstream;
+            }
+            // The query failed while it was opening
+            if (closed) {
+                upstream.remove();
+            }
+            notifyCount();
+        }
+        else {
+            // The late subscriber catches up before any new change
+            entry.join(listener);
+        }
+        Shared<L> subscribed = entry;
+        return () -> unsubscribe(subscribed, listener);
+    }
+
+    /**
+     * This will remove a subscriber, the listener lingers if it was the last
+     * @param entry this is the shared listener
+     * @param listener this is the subscriber
+     * @param <L> this is the type of the listener
+     */
+    private <L> void unsubscribe(Shared<L> entry, L listener) {
+        if (!entry.remove(listener)) {
+            return;
+        }
+        long generation;
+        synchronized (this) {
+            if (entry.closed || entry.hasListeners()) {
+                return;
+            }
+            generation = ++entry.generation;
+        }
+        scheduler.schedule(() -> close(entry, generation), lingerMillis);
+    }
+
+    /**
+     * This will close a shared listener if nobody subscribed while it lingered
+     * @param entry this is the shared listener
+     * @param generation this is the generation it lingered from
+     */
+    private void close(Shared<?> entry, long generation) {
+        Registration upstream;
+        synchronized (this) {
+            if (entry.closed || entry.generation != generation || entry.hasListeners()) {
+                return;
+            }
+            upstream = detach(entry);
+        }
+        if (upstream != null) {
+            upstream.remove();
+        }
+        notifyCount();
+    }
+
+    /**
+     * This will close a shared listener after its query failed, a failed
+     * query delivers nothing more so the next subscriber opens it again
+     * @param entry this is the shared listener
+     */
+    private void evict(Shared<?> entry) {
+        Registration upstream;
+        synchronized (this) {
+            if (entry.closed) {
+                return;
+            }
+            upstream = detach(entry);
+        }
+        if (upstream != null) {
+            upstream.remove();
+        }
+        notifyCount();
+    }
+
+    /**
+     * This will forget a shared listener, the caller holds the lock
+     * @param entry this is the shared listener
+     * @return the database listener to remove, or null if it is still opening
+     */
+    private Registration detach(Shared<?> entry) {
+        entry.closed = true;
+        shared.remove(entry.key);
+        return entry.upstream;
+    }
+
+    /**
+     * This will tell the count listener the number of open listeners
+     */
+    private void notifyCount() {
+        CountListener listener;
+        int count;
+        synchronized (this) {
+            listener = countListener;
+            count = shared.size();
+        }
+        if (listener != null) {
+            listener.onActiveCount(count);
+        }
+    }
+
+    /**
+     * This is one open database listener and its subscribers
+     * @param <L> this is the type of the listener
+     */
+    private abstract class Shared<L> {
+        // Everything here is guarded by the lock of the manager
+        final String key;
+        Registration upstream;
+        long generation;
+        boolean closed;
+        // These are the subscribers
+        private final List<L> listeners = new ArrayList<>();
+        // These are the deliveries held back while a subscriber catches up
+        private final Map<L, List<Runnable>> catchingUp = new HashMap<>();
+
+        /**
+         * This is the constructor
+         * @param key this is the key of the query
+         */
+        Shared(String key) {
+            this.key = key;
+        }
+
+        /**
+         * This will copy the current state for a new subscriber, the
+         * caller holds the lock of the manager
+         * @param listener this is the subscriber
+         * @return the delivery of the state, or null if there is none yet
+         */
+        abstract Runnable replay(L listener);
+
+        /**
+         * This will add a subscriber and send it the current state. The
+         * state is copied in the lock and sent after it, and changes that
+         * arrive meanwhile are held back until the subscriber caught up
+         * @param listener this is the subscriber
+         */
+        void join(L listener) {
+            Runnable replay;
+            synchronized (SubscriptionManager.this) {
+                replay = replay(listener);
+                listeners.add(listener);
+                catchingUp.put(listener, new ArrayList<>());
+            }
+            if (replay != null) {
+                replay.run();
+            }
+            while (true) {
+                List<Runnable> pending;
+                synchronized (SubscriptionManager.this) {
+                    pending = catchingUp.remove(listener);
+                    if (pending == null || pending.isEmpty()) {
+                        return;
+                    }
+                    catchingUp.put(listener, new ArrayList<>());
+                }
+                for (Runnable delivery : pending) {
+                    if (isListening(listener)) {
+                        delivery.run();
+                    }
+                }
+            }
+        }
+
+        /**
+         * This will send something to a subscriber, or hold it back while
+         * the subscriber catches up. A subscriber removed by an earlier
+         * one gets nothing more
+         * @param listener this is the subscriber
+         * @param delivery this is what sends it
+         */
+        void deliver(L listener, Runnable delivery) {
+            synchronized (SubscriptionManager.this) {
+                if (!listeners.contains(listener)) {
+                    return;
+                }
+                List<Runnable> pending = catchingUp.get(listener);
+                if (pending != null) {
+                    pending.add(delivery);
+                    return;
+                }
+            }
+            delivery.run();
+        }
+
+        void add(L listener) {
+            synchronized (SubscriptionManager.this) {
+                listeners.add(listener);
+            }
+        }
+
+        boolean remove(L listener) {
+            synchronized (SubscriptionManager.this) {
+                catchingUp.remove(listener);
+                return listeners.remove(listener);
+            }
+        }
+
+        boolean isListening(L listener) {
+            synchronized (SubscriptionManager.this) {
+                return listeners.contains(listener);
+            }
+        }
+
+        boolean hasListeners() {
+            synchronized (SubscriptionManager.this) {
+                return !listeners.isEmpty();
+            }
+        }
+
+        /**
+         * This will get the subscribers to deliver to
+         * @return a copy of the subscribers
+         */
+        List<L> getListeners() {
+            synchronized (SubscriptionManager.this) {
+                return new ArrayList<>(listeners);
+            }
+        }
+
+        /**
+         * This will close the listener after its query failed
+         */
+        void fail() {
+            evict(this);
+        }
+    }
+
+    /**
+     * This is a shared listener of a query whose results change. It
+     * keeps the results so late subscribers can be sent them
+     * @param <T> this is the type of the results
+     */
+    private class SharedChanges<T> extends Shared<ChangeListener<T>> implements ChangeListener<T> {
+        // These are the current results in query order
+        private final List<T> items = new ArrayList<>();
+        private boolean hasSnapshot;
+
+        SharedChanges(String key) {
+            super(key);
+        }
+
+        @Override
+        public void onChanges(List<Change<T>> changes, Exception exception) {
+            List<ChangeListener<T>> listeners;
+            synchronized (SubscriptionManager.this) {
+                if (exception == null && changes != null) {
+                    hasSnapshot = true;
+                    // Apply the changes one after the other
+                    for (Change<T> change : changes) {
+                        if (change.oldIndex >= 0) {
+                            items.remove(change.oldIndex);
+                        }
+                        if (change.newIndex >= 0) {
+                            items.add(change.newIndex, change.item);
+                        }
+                    }
+                }
+                listeners = getListeners();
+            }
+            if (exception != null || changes == null) {
+                fail();
+            }
+            for (ChangeListener<T> listener : listeners) {
+                // Each subscriber gets its own list, so one cannot change another's
+                List<Change<T>> copy = changes != null ? new ArrayList<>(changes) : null;
+                deliver(listener, () -> listener.onChanges(copy, exception));
+            }
+        }
+
+        @Override
+        Runnable replay(ChangeListener<T> listener) {
+            if (!hasSnapshot) {
+                return null;
+            }
+            List<Change<T>> changes = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                changes.add(new Change<>(Change.Type.ADDED, items.get(i), -1, i));
+            }
+            return () -> listener.onChanges(changes, null);
+        }
+    }
+
+    /**
+     * This is a shared listener of a query with one value. It keeps
+     * the last value so late subscribers can be sent it
+     * @param <T> this is the type of the value
+     */
+    private class SharedValues<T> extends Shared<ResultCallback<T>> implements ResultCallback<T> {
+        // This is the last value
+        private T value;
+        private boolean hasValue;
+
+        SharedValues(String key) {
+            super(key);
+        }
+
+        @Override
+        public void onComplete(T result, Exception exception) {
+            List<ResultCallback<T>> listeners;
+            synchronized (SubscriptionManager.this) {
+                if (exception == null) {
+                    value = result;
+                    hasValue = true;
+                }
+                listeners = getListeners();
+            }
+            if (exception != null) {
+                fail();
+            }
+            for (ResultCallback<T> listener : listeners) {
+                deliver(listener, () -> listener.onComplete(result, exception));
+            }
+        }
+
+        @Override
+        Runnable replay(ResultCallback<T> listener) {
+            if (!hasValue) {
+                return null;
+            }
+            T current = value;
+            return () -> listener.onComplete(current, null);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.User;
+
+import java.util.List;
+
+/**
+ * This is the User Repository for the user directory. The directory
+ * is read a page at a time in name order, or as the users changed
+ * since a time, and searched by prefix over normalized copies of the
+ * name and email. Accounts are keyed by their normalized email and
+ * checked against a salted password hash
+ */
+public interface UserRepository {
+    /**
+     * This will load a page of the directory in name order
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the page of users
+     */
+    void loadUsers(User after, int limit, ResultCallback<List<User>> callback);
+
+    /**
+     * This will load one user by their ID
+     * @param userID this is the ID of the user
+     * @param callback this is called with the user, or null if there is none
+     */
+    void loadUser(String userID, ResultCallback<User> callback);
+
+    /**
+     * This will load the users changed after a time, to bring a cached
+     * copy of the directory up to date. The changes are ordered by time
+     * then user ID, so users changed at the same time can span pages
+     * @param since this is the time to load changes after, in epoch microseconds
+     * @param after this is the last user of the previous page, or null for the first page
+     * @param limit this is the most users to load
+     * @param callback this is called with the changed users, oldest change first
+     */
+    void loadUsersUpdatedSince(long since, User after, int limit, ResultCallback<List<User>> callback);
+
+    /**
+     * This will load the time of the newest change to the directory.
+     * A cache that is filled after reading it syncs changes from it
+     * @param callback this is called with the time in epoch microseconds, or 0 if no user has one
+     */
+    void loadLastUpdatedAt(ResultCallback<Long> callback);
+
+    /**
+     * This will search the directory for users with a word of their name
+     * or email starting with each word of a query, the way the UserTrie does
+     * @param prefix this is the text the user typed
+     * @param limit this is the most users to load
+     * @param callback this is called with the matching users
+     */
+    void searchUsers(String prefix, int limit, ResultCallback<List<User>> callback);
+
+    /**
+     * This will check an email and password with a single keyed read
+     * @param email this is the email as the user typed it
+     * @param password this is the password
+     * @param callback this is called with the signed in user, or an AccountException
+     */
+    void signIn(String email, String password, ResultCallback<User> callback);
+
+    /**
+     * This will make an account, reserving its email so no other
+     * account can have it
+     * @param user this is the new user, without an ID
+     * @param password this is the password
+     * @param callback this is called with the user and its new ID, or an AccountException
+     */
+    void signUp(User user, String password, ResultCallback<User> callback);
+}
@@ -0,0 +1,258 @@
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repositories.Repositories;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This is the shared Attachment Loader for images in chats. A row shows
+ * the blur placeholder carried by the message straight away, then the
+ * full image once it is read from the device or downloaded from the
+ * blob store. A blob that is still uploading is tried again with backoff
+ * for as long as the row still shows that attachment
+ */
+public class AttachmentLoader {
+    // This is the folder for the attachments sent from this device
+    private static final String ATTACHMENT_FOLDER = "attachments";
+    // This is the width placeholders are decoded at, they are stretched to fit
+    private static final int PLACEHOLDER_SIZE = 32;
+    // This is the number of placeholders kept in memory
+    private static final int PLACEHOLDER_CACHE_SIZE = 64;
+    // These are the retries of a blob that is not committed yet
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long RETRY_DELAY_MILLIS = 2_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    // This is the shared instance
+    private static AttachmentLoader instance;
+    // These are the private variables
+    private final LruCache<String, Bitmap> memoryCache;
+    private final LruCache<String, Bitmap> placeholderCache = new LruCache<>(PLACEHOLDER_CACHE_SIZE);
+    private final File localFolder;
+    private final File downloadFolder;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Backoff backoff = new Backoff(RETRY_DELAY_MILLIS, MAX_RETRY_DELAY_MILLIS);
+
+    /**
+     * This will get the shared attachment loader
+     * @param context this is the current Context
+     * @return the shared AttachmentLoader
+     */
+    public static synchronized AttachmentLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AttachmentLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private AttachmentLoader(Context context) {
+        // Use an eighth of the heap for decoded attachments
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        localFolder = new File(context.getFilesDir(), ATTACHMENT_FOLDER);
+        downloadFolder = new File(context.getCacheDir(), ATTACHMENT_FOLDER);
+    }
+
+    /**
+     * This will get the file an attachment sent from this device is kept
+     * in. It is not in the cache folder, so it stays until it is uploaded
+     * @param context this is the current Context
+     * @param attachmentRef this is the blob ID of the attachment
+     * @return the file of the attachment
+     */
+    public static File getLocalFile(Context context, String attachmentRef) {
+        return new File(new File(context.getFilesDir(), ATTACHMENT_FOLDER), attachmentRef + ".webp");
+    }
+
+    /**
+     * This will bind the attachment of a message to an image view. The
+     * view shows the placeholder until the image is ready, and a recycled
+     * view only gets the image it is still waiting for
+     * @param message this is the message with the attachment
+     * @param imageView this is the view to show the image in
+     * @param targetWidth this is the width in pixels the image is shown at
+     */
+    public void load(ChatMessage message, ImageView imageView, int targetWidth) {
+        if (!message.hasAttachment()) {
+            imageView.setTag(R.id.tagAttachmentKey, null);
+            imageView.setImageDrawable(null);
+            return;
+        }
+        // The width is part of the key since the same image is sampled per size
+        String key = targetWidth + ":" + message.attachmentRef;
+        imageView.setTag(R.id.tagAttachmentKey, key);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+        imageView.setImageBitmap(getPlaceholder(message));
+        request(key, message.attachmentRef, getInSampleSize(message, targetWidth), imageView, 0);
+    }
+
+    /**
+     * This will decode the placeholder of a message. Placeholders are
+     * tiny, so they are decoded on the main thread and shown in the same frame
+     * @param message this is the message with the attachment
+     * @return the placeholder, or null if the message has none
+     */
+    private Bitmap getPlaceholder(ChatMessage message) {
+        String blurHash = message.attachmentBlurHash;
+        if (!BlurHash.isValid(blurHash)) {
+            return null;
+        }
+        Bitmap placeholder = placeholderCache.get(blurHash);
+        if (placeholder == null) {
+            // Keep the shape of the image so the placeholder is not stretched
+            int width = PLACEHOLDER_SIZE;
+            int height = message.attachmentWidth > 0 && message.attachmentHeight > 0
+                    ? Math.max(1, PLACEHOLDER_SIZE * message.attachmentHeight / message.attachmentWidth)
+                    : PLACEHOLDER_SIZE;
+            height = Math.min(height, PLACEHOLDER_SIZE * 4);
+            int[] pixels = BlurHash.decode(blurHash, width, height, 1);
+            placeholder = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+            placeholderCache.put(blurHash, placeholder);
+        }
+        return placeholder;
+    }
+
+    /**
+     * This will load the image in the background and try again later if
+     * the blob is not committed yet
+     * @param key this is the memory cache key
+     * @param attachmentRef this is the blob ID of the attachment
+     * @param inSampleSize this is the sample size to decode with
+     * @param imageView this is the view waiting for the image
+     * @param failures this is the number of attempts that found no blob
+     */
+    private void request(String key, String attachmentRef, int inSampleSize, ImageView imageView, int failures) {
+        executor.execute(() -> {
+            Bitmap result = null;
+            boolean missing = false;
+            try {
+                result = loadBitmap(attachmentRef, inSampleSize);
+            }
+            catch (FileNotFoundException exception) {
+                missing = true;
+            }
+            catch (IOException | OutOfMemoryError exception) {
+                result = null;
+            }
+            Bitmap loaded = result;
+            boolean retry = missing && failures + 1 < MAX_ATTEMPTS;
+            mainHandler.post(() -> {
+                if (loaded != null) {
+                    memoryCache.put(key, loaded);
+                }
+                if (!key.equals(imageView.getTag(R.id.tagAttachmentKey))) {
+                    return;
+                }
+                if (loaded != null) {
+                    imageView.setImageBitmap(loaded);
+                }
+                else if (retry) {
+                    // The upload is still running, look again while the row still wants it
+                    mainHandler.postDelayed(() -> {
+                        if (key.equals(imageView.getTag(R.id.tagAttachmentKey))) {
+                            request(key, attachmentRef, inSampleSize, imageView, failures + 1);
+                        }
+                    }, backoff.getDelay(failures + 1));
+                }
+            });
+        });
+    }
+
+    /**
+     * This will load an attachment from this device, downloading it
+     * first if it is not here. It runs on a background thread
+     * @param attachmentRef this is the blob ID of the attachment
+     * @param inSampleSize this is the sample size to decode with
+     * @return the bitmap, or null if it could not be decoded
+     * @throws FileNotFoundException if the blob is not committed yet
+     */
+    private Bitmap loadBitmap(String attachmentRef, int inSampleSize) throws IOException {
+        // Attachments sent from here are read from the file they were uploaded from
+        File file = new File(localFolder, attachmentRef + ".webp");
+        if (!file.exists()) {
+            file = new File(downloadFolder, attachmentRef + ".webp");
+            if (!file.exists()) {
+                download(attachmentRef, file);
+            }
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = inSampleSize;
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    }
+
+    /**
+     * This will copy a blob into the download folder. The chunks are
+     * read as they are reached, and the file only appears once it is whole
+     * @param attachmentRef this is the blob ID of the attachment
+     * @param file this is the file to download into
+     */
+    private void download(String attachmentRef, File file) throws IOException {
+        if (!downloadFolder.exists() && !downloadFolder.mkdirs()) {
+            throw new IOException("Could not create " + downloadFolder);
+        }
+        File temporary = new File(downloadFolder, attachmentRef + ".tmp");
+        try (InputStream inputStream = Repositories.getBlobStore().open(attachmentRef);
+             FileOutputStream outputStream = new FileOutputStream(temporary)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        catch (IOException exception) {
+            temporary.delete();
+            throw exception;
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not keep " + file);
+        }
+    }
+
+    /**
+     * This will get the sample size for an attachment from the size the
+     * message carries, so the bounds do not need reading first
+     * @param message this is the message with the attachment
+     * @param targetWidth this is the width in pixels the image is shown at
+     * @return the sample size to decode with
+     */
+    private static int getInSampleSize(ChatMessage message, int targetWidth) {
+        if (message.attachmentWidth <= 0 || message.attachmentHeight <= 0 || targetWidth <= 0) {
+            return 1;
+        }
+        int inSampleSize = 1;
+        while (message.attachmentWidth / (inSampleSize * 2) >= targetWidth) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
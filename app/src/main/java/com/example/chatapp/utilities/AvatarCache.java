@@ -0,0 +1,505 @@
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repositories.ImageRepository;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the shared Avatar Cache for profile images. Images are
+ * fetched by reference or taken from inline BASE64 strings, decoded
+ * on a background thread, sampled down to the size of the view, and
+ * kept in a memory cache sized in bytes backed by a disk cache keyed
+ * by a hash of the image content. The disk cache keeps lossy WebP files
+ * and drops the least recently used ones past a size limit
+ */
+public class AvatarCache {
+    // This is the size used when a view has no fixed size
+    private static final int DEFAULT_TARGET_SIZE = 150;
+    // This is the folder for the disk cache
+    private static final String DISK_CACHE_FOLDER = "avatars";
+    // This is the most the disk cache may use
+    private static final long MAX_DISK_CACHE_BYTES = 20L * 1024 * 1024;
+    // This is the quality of the WebP files on disk
+    private static final int DISK_CACHE_QUALITY = 85;
+    // This is the number of inline image hashes kept, one per distinct image
+    private static final int CONTENT_HASH_CACHE_SIZE = 64;
+    // This is the shared instance
+    private static AvatarCache instance;
+    // These are the private variables
+    private final LruCache<String, Bitmap> memoryCache;
+    private final LruCache<String, String> contentHashes = new LruCache<>(CONTENT_HASH_CACHE_SIZE);
+    private final File diskCacheFolder;
+    private final ImageRepository imageRepository;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, List<BitmapCallback>> pending = new HashMap<>();
+    // These are the cache counters
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeTimeNanos = new AtomicLong();
+
+    /**
+     * This is the callback for a loaded bitmap
+     */
+    public interface BitmapCallback {
+        // OnBitmap method, the bitmap is null if the image could not be decoded
+        void onBitmap(Bitmap bitmap);
+    }
+
+    /**
+     * This will get the shared avatar cache
+     * @param context this is the current Context
+     * @return the shared AvatarCache
+     */
+    public static synchronized AvatarCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private AvatarCache(Context context) {
+        // Use an eighth of the heap for decoded avatars
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        diskCacheFolder = new File(context.getCacheDir(), DISK_CACHE_FOLDER);
+        imageRepository = new ImageRepository(FirebaseFirestore.getInstance());
+    }
+
+    /**
+     * This will bind the avatar of a user to an image view, by reference
+     * if the user has one and from the inline image otherwise
+     * @param user this is the user to show the avatar of
+     * @param imageView this is the view to show the image in
+     */
+    public void load(User user, ImageView imageView) {
+        // Small views fetch the small variant when the user has one
+        if (user.imageThumbnailRef != null && getTargetSize(imageView) <= ImagePlan.Variant.THUMBNAIL.size) {
+            loadReference(user.imageThumbnailRef, user.imageVersion, imageView);
+        }
+        else if (user.imageRef != null) {
+            loadReference(user.imageRef, user.imageVersion, imageView);
+        }
+        else {
+            load(user.image, imageView);
+        }
+    }
+
+    /**
+     * This will bind an avatar to an image view by its image reference
+     * @param imageRef this is the image reference, the hash of its content
+     * @param imageView this is the view to show the image in
+     */
+    public void loadReference(String imageRef, ImageView imageView) {
+        loadReference(imageRef, 0, imageView);
+    }
+
+    /**
+     * This will bind an avatar to an image view by its image reference.
+     * Each image version is cached on its own, so a new version is
+     * fetched and decoded again instead of showing the cached bitmap
+     * @param imageRef this is the image reference, the hash of its content
+     * @param imageVersion this is the image version of the user
+     * @param imageView this is the view to show the image in
+     */
+    public void loadReference(String imageRef, long imageVersion, ImageView imageView) {
+        if (imageRef == null) {
+            bind(null, imageView, null);
+            return;
+        }
+        int targetSize = getTargetSize(imageView);
+        bind(getReferenceKey(imageRef, imageVersion, targetSize), imageView,
+                callback -> getReference(imageRef, imageVersion, targetSize, callback));
+    }
+
+    /**
+     * This will bind an avatar to an image view. The view shows its
+     * placeholder until the bitmap is ready, and a recycled view only
+     * gets the bitmap it is still waiting for
+     * @param encodedImage this is the BASE64 string encoded image
+     * @param imageView this is the view to show the image in
+     */
+    public void load(String encodedImage, ImageView imageView) {
+        if (encodedImage == null) {
+            bind(null, imageView, null);
+            return;
+        }
+        int targetSize = getTargetSize(imageView);
+        bind(getMemoryKey(encodedImage, targetSize), imageView,
+                callback -> get(encodedImage, targetSize, callback));
+    }
+
+    /**
+     * This is the request for a bitmap that is not in memory yet
+     */
+    private interface BitmapRequest {
+        // Start the request and call back on the main thread
+        void start(BitmapCallback callback);
+    }
+
+    /**
+     * This will bind a cached bitmap to an image view, or show the
+     * placeholder and swap in the bitmap once the request finishes
+     * @param key this is the memory cache key, or null to clear the view
+     * @param imageView this is the view to show the image in
+     * @param request this is the request to run on a memory miss
+     */
+    private void bind(String key, ImageView imageView, BitmapRequest request) {
+        // Clear the view if there is no image
+        imageView.setTag(R.id.tagAvatarKey, key);
+        if (key == null) {
+            imageView.setImageDrawable(null);
+            return;
+        }
+        // Bind straight away on a memory hit
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            hitCount.incrementAndGet();
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+        // Otherwise show the placeholder and swap in the bitmap later
+        imageView.setImageDrawable(null);
+        request.start(result -> {
+            if (key.equals(imageView.getTag(R.id.tagAvatarKey))) {
+                imageView.setImageBitmap(result);
+            }
+        });
+    }
+
+    /**
+     * This will get an avatar bitmap, decoding it in the background if needed
+     * @param encodedImage this is the BASE64 string encoded image
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @param callback this is called on the main thread with the bitmap
+     */
+    public void get(String encodedImage, int targetSize, BitmapCallback callback) {
+        String contentHash = getCachedContentHash(encodedImage);
+        fetch(getReferenceKey(contentHash, 0, targetSize),
+                () -> loadBitmap(contentHash, 0, encodedImage, targetSize), callback);
+    }
+
+    /**
+     * This will get an avatar bitmap by its image reference, fetching
+     * and decoding it in the background if needed
+     * @param imageRef this is the image reference, the hash of its content
+     * @param imageVersion this is the image version of the user
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @param callback this is called on the main thread with the bitmap
+     */
+    public void getReference(String imageRef, long imageVersion, int targetSize, BitmapCallback callback) {
+        fetch(getReferenceKey(imageRef, imageVersion, targetSize),
+                () -> loadBitmap(imageRef, imageVersion, null, targetSize), callback);
+    }
+
+    /**
+     * This will get a bitmap from memory, or run the loader in the background
+     * @param key this is the memory cache key
+     * @param loader this is the loader that runs on a memory miss
+     * @param callback this is called on the main thread with the bitmap
+     */
+    private void fetch(String key, Callable<Bitmap> loader, BitmapCallback callback) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            hitCount.incrementAndGet();
+            callback.onBitmap(bitmap);
+            return;
+        }
+        missCount.incrementAndGet();
+        // Join a load that is already running for the same image
+        List<BitmapCallback> callbacks = pending.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(key, callbacks);
+        executor.execute(() -> {
+            Bitmap result;
+            try {
+                result = loader.call();
+            }
+            catch (Exception exception) {
+                result = null;
+            }
+            Bitmap loaded = result;
+            mainHandler.post(() -> {
+                if (loaded != null) {
+                    memoryCache.put(key, loaded);
+                }
+                for (BitmapCallback waiting : pending.remove(key)) {
+                    waiting.onBitmap(loaded);
+                }
+            });
+        });
+    }
+
+    /**
+     * This will load a bitmap from the disk cache, or decode it and
+     * write it to the disk cache. It runs on a background thread
+     * @param contentHash this is the hash of the image content
+     * @param imageVersion this is the image version, each version has its own file
+     * @param encodedImage this is the BASE64 string encoded image, or null to fetch it
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @return the bitmap, or null if it could not be decoded
+     */
+    private Bitmap loadBitmap(String contentHash, long imageVersion, String encodedImage, int targetSize)
+            throws ExecutionException, InterruptedException {
+        File file = new File(diskCacheFolder,
+                contentHash + "_" + imageVersion + "_" + targetSize + ".webp");
+        // Try the disk cache first
+        if (file.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+            if (bitmap != null) {
+                diskHitCount.incrementAndGet();
+                // Mark it as recently used
+                file.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+        // Fetch the image by reference if it was not inline
+        if (encodedImage == null) {
+            encodedImage = Tasks.await(imageRepository.getImage(contentHash));
+            if (encodedImage == null) {
+                return null;
+            }
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        Bitmap bitmap;
+        try {
+            // Get the bytes from the string decode
+            byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
+            // Read the bounds first so the decode can be sampled down
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetSize);
+            options.inJustDecodeBounds = false;
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+        catch (IllegalArgumentException exception) {
+            return null;
+        }
+        finally {
+            decodeCount.incrementAndGet();
+            decodeTimeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
+        }
+        // Keep the sampled bitmap on disk for next time
+        if (bitmap != null && (diskCacheFolder.exists() || diskCacheFolder.mkdirs())) {
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                bitmap.compress(getWebPFormat(), DISK_CACHE_QUALITY, outputStream);
+            }
+            catch (IOException exception) {
+                file.delete();
+            }
+            trimDiskCache();
+        }
+        return bitmap;
+    }
+
+    /**
+     * This will delete the least recently used files until the disk
+     * cache fits its size limit. It runs on a background thread
+     */
+    private synchronized void trimDiskCache() {
+        File[] files = diskCacheFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+            return;
+        }
+        // Oldest first, a disk hit moves a file to the back
+        Arrays.sort(files, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+        for (File file : files) {
+            if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    /**
+     * This will get the lossy WebP format of this Android version
+     * @return the compress format
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getWebPFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * This will find the largest power of two sample size that keeps
+     * the image at least as big as the target size
+     * @param width this is the width of the encoded image
+     * @param height this is the height of the encoded image
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @return the sample size to decode with
+     */
+    public static int calculateInSampleSize(int width, int height, int targetSize) {
+        return ImagePlan.calculateInSampleSize(width, height, targetSize);
+    }
+
+    /**
+     * This will get the size in pixels an image view shows its image at
+     * @param imageView this is the image view
+     * @return the size in pixels
+     */
+    private static int getTargetSize(ImageView imageView) {
+        if (imageView.getLayoutParams() != null) {
+            int size = Math.max(imageView.getLayoutParams().width, imageView.getLayoutParams().height);
+            if (size > 0) {
+                return size;
+            }
+        }
+        return DEFAULT_TARGET_SIZE;
+    }
+
+    /**
+     * This will get the memory cache key for an inline image. It is
+     * keyed on the content hash, so two images can never share a key
+     * @param encodedImage this is the BASE64 string encoded image
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @return the memory cache key
+     */
+    private String getMemoryKey(String encodedImage, int targetSize) {
+        return getReferenceKey(getCachedContentHash(encodedImage), 0, targetSize);
+    }
+
+    /**
+     * This will get the content hash of an inline image, hashing each
+     * distinct image only once however often it is bound
+     * @param encodedImage this is the BASE64 string encoded image
+     * @return the SHA-256 hash as a hex string
+     */
+    private String getCachedContentHash(String encodedImage) {
+        String contentHash = contentHashes.get(encodedImage);
+        if (contentHash == null) {
+            contentHash = getContentHash(encodedImage);
+            contentHashes.put(encodedImage, contentHash);
+        }
+        return contentHash;
+    }
+
+    /**
+     * This will get the memory cache key for an image reference
+     * @param imageRef this is the image reference
+     * @param imageVersion this is the image version
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @return the memory cache key
+     */
+    private static String getReferenceKey(String imageRef, long imageVersion, int targetSize) {
+        return targetSize + ":" + imageRef + ":" + imageVersion;
+    }
+
+    /**
+     * This will get the content hash of an image for the disk cache
+     * @param encodedImage this is the BASE64 string encoded image
+     * @return the SHA-256 hash as a hex string
+     */
+    public static String getContentHash(String encodedImage) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(encodedImage.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException exception) {
+            // Every Android device ships SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Get the number of requests served from memory
+     * @return the memory hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of requests that missed memory
+     * @return the memory miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of misses served from disk
+     * @return the disk hit count
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    /**
+     * Get the number of BASE64 images decoded
+     * @return the decode count
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    /**
+     * Get the total time spent decoding BASE64 images
+     * @return the decode time in nanoseconds
+     */
+    public long getDecodeTimeNanos() {
+        return decodeTimeNanos.get();
+    }
+}
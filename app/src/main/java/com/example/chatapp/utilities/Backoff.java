@@ -0,0 +1,55 @@
+package com.example.chatapp.utilities;
+
+import java.util.Random;
+
+/**
+ * This is the exponential Backoff used between retries. The delay
+ * doubles with every failed attempt up to a cap, and is jittered so
+ * many clients that failed together do not retry together
+ */
+public class Backoff {
+    // These are the private variables
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    /**
+     * This is the default constructor
+     * @param baseDelayMillis this is the delay after the first failure
+     * @param maxDelayMillis this is the longest delay
+     */
+    public Backoff(long baseDelayMillis, long maxDelayMillis) {
+        this(baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    /**
+     * This is the constructor with a source of jitter
+     * @param baseDelayMillis this is the delay after the first failure
+     * @param maxDelayMillis this is the longest delay
+     * @param random this is the source of the jitter
+     */
+    public Backoff(long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * This will get the delay before the next attempt
+     * @param failures this is the number of attempts that failed in a row
+     * @return the delay in milliseconds, between half and all of the ceiling
+     */
+    public long getDelay(int failures) {
+        if (failures <= 0) {
+            return 0;
+        }
+        // Double the delay per failure without overflowing
+        long ceiling = maxDelayMillis;
+        int shift = failures - 1;
+        if (shift < 62 && baseDelayMillis <= maxDelayMillis >> shift) {
+            ceiling = baseDelayMillis << shift;
+        }
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.chatapp.utilities;
+
+/**
+ * This is the BlurHash codec for image placeholders. An image is
+ * reduced to a few cosine components and written as a short string,
+ * small enough to travel inside a message, and decoded back into a
+ * blurred bitmap the size of a thumbnail. Pixels are ARGB ints
+ */
+public final class BlurHash {
+    // These are the characters of the base 83 encoding
+    private static final String CHARACTERS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+    // This is the most components in each direction
+    public static final int MAX_COMPONENTS = 9;
+
+    /**
+     * This class only has static methods
+     */
+    private BlurHash() {
+    }
+
+    /**
+     * This will encode an image, it should already be scaled down to a
+     * few dozen pixels a side since every pixel is read for every component
+     * @param pixels these are the ARGB pixels, row by row
+     * @param width this is the width of the image
+     * @param height this is the height of the image
+     * @param componentsX this is the number of horizontal components, 1 to 9
+     * @param componentsY this is the number of vertical components, 1 to 9
+     * @return the hash
+     */
+    public static String encode(int[] pixels, int width, int height, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > MAX_COMPONENTS || componentsY < 1 || componentsY > MAX_COMPONENTS) {
+            throw new IllegalArgumentException("Components must be from 1 to " + MAX_COMPONENTS);
+        }
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels");
+        }
+        // Linearize every pixel once
+        double[] linear = new double[width * height * 3];
+        for (int i = 0; i < width * height; i++) {
+            linear[i * 3] = toLinear((pixels[i] >> 16) & 0xFF);
+            linear[i * 3 + 1] = toLinear((pixels[i] >> 8) & 0xFF);
+            linear[i * 3 + 2] = toLinear(pixels[i] & 0xFF);
+        }
+        double[][] cosX = getCosines(componentsX, width);
+        double[][] cosY = getCosines(componentsY, height);
+        double[][] factors = new double[componentsX * componentsY][3];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                double normalisation = i == 0 && j == 0 ? 1 : 2;
+                double[] factor = factors[j * componentsX + i];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        double basis = cosX[i][x] * cosY[j][y];
+                        int index = (y * width + x) * 3;
+                        factor[0] += basis * linear[index];
+                        factor[1] += basis * linear[index + 1];
+                        factor[2] += basis * linear[index + 2];
+                    }
+                }
+                double scale = normalisation / (width * height);
+                factor[0] *= scale;
+                factor[1] *= scale;
+                factor[2] *= scale;
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83((componentsX - 1) + (componentsY - 1) * 9, 1, hash);
+        // The largest AC value scales all the others
+        double maximumValue;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int i = 1; i < factors.length; i++) {
+                for (double value : factors[i]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximumValue = (quantisedMaximum + 1) / 166.0;
+            encode83(quantisedMaximum, 1, hash);
+        }
+        else {
+            maximumValue = 1;
+            encode83(0, 1, hash);
+        }
+        double[] dc = factors[0];
+        encode83((toSRGB(dc[0]) << 16) + (toSRGB(dc[1]) << 8) + toSRGB(dc[2]), 4, hash);
+        for (int i = 1; i < factors.length; i++) {
+            encode83(encodeAC(factors[i], maximumValue), 2, hash);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * This will decode a hash into a blurred image
+     * @param hash this is the hash
+     * @param width this is the width to decode at
+     * @param height this is the height to decode at
+     * @param punch this is the contrast, 1 for the original
+     * @return the ARGB pixels, row by row
+     */
+    public static int[] decode(String hash, int width, int height, double punch) {
+        if (hash == null || hash.length() < 6) {
+            throw new IllegalArgumentException("Hash is too short");
+        }
+        int sizeFlag = decode83(hash, 0, 1);
+        int componentsX = sizeFlag % 9 + 1;
+        int componentsY = sizeFlag / 9 + 1;
+        if (hash.length() != 4 + 2 * componentsX * componentsY) {
+            throw new IllegalArgumentException("Hash length does not match its components");
+        }
+        double maximumValue = (decode83(hash, 1, 2) + 1) / 166.0 * punch;
+        double[][] colors = new double[componentsX * componentsY][];
+        int dc = decode83(hash, 2, 6);
+        colors[0] = new double[] {toLinear(dc >> 16), toLinear((dc >> 8) & 0xFF), toLinear(dc & 0xFF)};
+        for (int i = 1; i < colors.length; i++) {
+            colors[i] = decodeAC(decode83(hash, 4 + i * 2, 6 + i * 2), maximumValue);
+        }
+
+        double[][] cosX = getCosines(componentsX, width);
+        double[][] cosY = getCosines(componentsY, height);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double r = 0, g = 0, b = 0;
+                for (int j = 0; j < componentsY; j++) {
+                    for (int i = 0; i < componentsX; i++) {
+                        double basis = cosX[i][x] * cosY[j][y];
+                        double[] color = colors[j * componentsX + i];
+                        r += color[0] * basis;
+                        g += color[1] * basis;
+                        b += color[2] * basis;
+                    }
+                }
+                pixels[y * width + x] = 0xFF000000 | (toSRGB(r) << 16) | (toSRGB(g) << 8) | toSRGB(b);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * This will check if a string is a well formed hash
+     * @param hash this is the string to check
+     * @return true if it can be decoded
+     */
+    public static boolean isValid(String hash) {
+        if (hash == null || hash.length() < 6) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            if (CHARACTERS.indexOf(hash.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        int sizeFlag = decode83(hash, 0, 1);
+        return hash.length() == 4 + 2 * (sizeFlag % 9 + 1) * (sizeFlag / 9 + 1);
+    }
+
+    /**
+     * This will get the cosine of every component at every position
+     * @param components this is the number of components
+     * @param length this is the number of positions
+     * @return the cosines by component and position
+     */
+    private static double[][] getCosines(int components, int length) {
+        double[][] cosines = new double[components][length];
+        for (int i = 0; i < components; i++) {
+            for (int position = 0; position < length; position++) {
+                cosines[i][position] = Math.cos(Math.PI * i * position / length);
+            }
+        }
+        return cosines;
+    }
+
+    /**
+     * This will quantise an AC component
+     * @param value this is the colour of the component
+     * @param maximumValue this is the largest value of any component
+     * @return the quantised component
+     */
+    private static int encodeAC(double[] value, double maximumValue) {
+        int r = quantiseAC(value[0] / maximumValue);
+        int g = quantiseAC(value[1] / maximumValue);
+        int b = quantiseAC(value[2] / maximumValue);
+        return r * 19 * 19 + g * 19 + b;
+    }
+
+    /**
+     * This will quantise one channel of an AC component
+     * @param value this is the channel, scaled to -1 to 1
+     * @return the quantised channel, 0 to 18
+     */
+    private static int quantiseAC(double value) {
+        return (int) Math.max(0, Math.min(18, Math.floor(signPow(value, 0.5) * 9 + 9.5)));
+    }
+
+    /**
+     * This will restore an AC component
+     * @param value this is the quantised component
+     * @param maximumValue this is the largest value of any component
+     * @return the colour of the component
+     */
+    private static double[] decodeAC(int value, double maximumValue) {
+        int r = value / (19 * 19);
+        int g = (value / 19) % 19;
+        int b = value % 19;
+        return new double[] {
+                signPow((r - 9) / 9.0, 2) * maximumValue,
+                signPow((g - 9) / 9.0, 2) * maximumValue,
+                signPow((b - 9) / 9.0, 2) * maximumValue
+        };
+    }
+
+    /**
+     * This will raise a value to a power, keeping its sign
+     * @param value this is the value
+     * @param exponent this is the power
+     * @return the signed result
+     */
+    private static double signPow(double value, double exponent) {
+        return Math.copySign(Math.pow(Math.abs(value), exponent), value);
+    }
+
+    /**
+     * This will turn an sRGB channel into linear light
+     * @param value this is the channel, 0 to 255
+     * @return the linear value, 0 to 1
+     */
+    private static double toLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    /**
+     * This will turn linear light into an sRGB channel
+     * @param value this is the linear value
+     * @return the channel, 0 to 255
+     */
+    private static int toSRGB(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    /**
+     * This will write a value in base 83
+     * @param value this is the value
+     * @param length this is the number of characters
+     * @param hash this is where the characters are written
+     */
+    private static void encode83(int value, int length, StringBuilder hash) {
+        int divisor = 1;
+        for (int i = 1; i < length; i++) {
+            divisor *= 83;
+        }
+        for (int i = 0; i < length; i++) {
+            hash.append(CHARACTERS.charAt((value / divisor) % 83));
+            divisor /= 83;
+        }
+    }
+
+    /**
+     * This will read a value in base 83
+     * @param hash this is the hash
+     * @param start this is the first character of the value
+     * @param end this is after the last character of the value
+     * @return the value
+     */
+    private static int decode83(String hash, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = CHARACTERS.indexOf(hash.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a hash character: " + hash.charAt(i));
+            }
+            value = value * 83 + digit;
+        }
+        return value;
+    }
+}
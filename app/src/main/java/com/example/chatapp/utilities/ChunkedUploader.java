@@ -0,0 +1,78 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.repositories.BlobStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This is the Chunked Uploader that copies a local file into a blob
+ * store. It asks the store how far an earlier attempt got and carries
+ * on from there, so an upload that was cut off, even by the process
+ * dying, never sends a chunk twice. It blocks, so it runs in a worker
+ */
+public class ChunkedUploader {
+    /**
+     * This is the listener for upload progress
+     */
+    public interface Listener {
+        /**
+         * This will be called after every stored chunk
+         * @param uploadedBytes this is the number of bytes stored so far
+         * @param totalBytes this is the length of the file
+         */
+        void onProgress(long uploadedBytes, long totalBytes);
+    }
+
+    // These are the private variables
+    private final BlobStore blobStore;
+    private final int chunkSize;
+
+    /**
+     * This is the default constructor
+     * @param blobStore this is the store to upload to
+     */
+    public ChunkedUploader(BlobStore blobStore) {
+        this(blobStore, BlobStore.CHUNK_SIZE);
+    }
+
+    /**
+     * This is the constructor with a chunk size
+     * @param blobStore this is the store to upload to
+     * @param chunkSize this is the size of a chunk in bytes
+     */
+    public ChunkedUploader(BlobStore blobStore, int chunkSize) {
+        this.blobStore = blobStore;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * This will upload a file, or the part of it an earlier attempt did not
+     * @param blobID this is the ID of the blob
+     * @param file this is the file to upload, it must not change between attempts
+     * @param listener this is told about progress, or null
+     * @return the number of chunks stored by this attempt
+     */
+    public int upload(String blobID, File file, Listener listener) throws IOException {
+        long length = file.length();
+        // An empty file is still one chunk so it can be committed and read
+        int chunkCount = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+        int stored = Math.min(blobStore.getStoredChunks(blobID), chunkCount);
+        byte[] buffer = new byte[chunkSize];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (int index = stored; index < chunkCount; index++) {
+                long offset = (long) index * chunkSize;
+                int size = (int) Math.min(chunkSize, length - offset);
+                input.seek(offset);
+                input.readFully(buffer, 0, size);
+                blobStore.putChunk(blobID, index, buffer, size);
+                if (listener != null) {
+                    listener.onProgress(offset + size, length);
+                }
+            }
+        }
+        blobStore.commit(blobID, chunkCount, length);
+        return chunkCount - stored;
+    }
+}
@@ -6,20 +6,70 @@ package com.example.chatapp.utilities;
 public class Constants {
     // These are the user constant hash keys
     public static final String KEY_COLLECTION_USERS = "User";
+    public static final String KEY_COLLECTION_USER_EMAILS = "UserEmail";
     public static final String KEY_FIRSTNAME = "first_name";
     public static final String KEY_LASTNAME = "last_name";
     public static final String KEY_EMAIL = "email";
     public static final String KEY_PASSWORD = "password";
+    public static final String KEY_PASSWORD_HASH = "passwordHash";
+    public static final String KEY_PASSWORD_SALT = "passwordSalt";
+    public static final String KEY_PASSWORD_ITERATIONS = "passwordIterations";
+    public static final String KEY_PASSWORD_ALGORITHM = "passwordAlgorithm";
     public static final String KEY_USERID = "userid";
     public static final String KEY_IS_SIGNED_IN = "isSignedIn";
     public static final String KEY_PREFERENCE_NAME = "chatAppPreference";
     public static final String KEY_IMAGE = "image";
+    public static final String KEY_IMAGE_REF = "imageRef";
+    public static final String KEY_IMAGE_VERSION = "imageVersion";
+    public static final String KEY_IMAGE_THUMBNAIL_REF = "imageThumbnailRef";
+    public static final String KEY_IMAGE_HEADER_REF = "imageHeaderRef";
     public static final String KEY_FCM_TOKEN = "fcmToken";
+    public static final String KEY_NAME_SEARCH = "nameSearch";
+    public static final String KEY_EMAIL_SEARCH = "emailSearch";
+    public static final String KEY_SEARCH_PREFIXES = "searchPrefixes";
+    // Every write to a user document sets this, so the directory can sync only what changed
+    public static final String KEY_UPDATED_AT = "updatedAt";
     // These are the chat constants hash keys
     public static final String KEY_COLLECTION_CHAT = "Chat";
+    public static final String KEY_CONVERSATION_ID = "conversationID";
+    public static final String KEY_MESSAGE_ID = "messageID";
+    public static final String KEY_MIGRATED_CONVERSATION = "migratedConversation_";
     public static final String KEY_SENDER_ID = "senderID";
+    public static final String KEY_SENDER_NAME = "senderName";
     public static final String KEY_RECEIVER_ID = "receiverID";
     public static final String KEY_USER = "user";
     public static final String KEY_MESSAGE = "message";
     public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_ATTACHMENT_REF = "attachmentRef";
+    public static final String KEY_ATTACHMENT_BLUR_HASH = "attachmentBlurHash";
+    public static final String KEY_ATTACHMENT_WIDTH = "attachmentWidth";
+    public static final String KEY_ATTACHMENT_HEIGHT = "attachmentHeight";
+    // These are the recent conversation constants hash keys
+    public static final String KEY_COLLECTION_CONVERSATIONS = "Conversations";
+    public static final String KEY_PARTNER_ID = "partnerID";
+    public static final String KEY_PARTNER_FIRSTNAME = "partnerFirstName";
+    public static final String KEY_PARTNER_LASTNAME = "partnerLastName";
+    public static final String KEY_PARTNER_IMAGE_REF = "partnerImageRef";
+    public static final String KEY_LAST_MESSAGE = "lastMessage";
+    public static final String KEY_LAST_SENDER_ID = "lastSenderID";
+    public static final String KEY_LAST_TIMESTAMP = "lastTimestamp";
+    public static final String KEY_UNREAD_COUNT = "unreadCount";
+    // These are the image constants hash keys
+    public static final String KEY_COLLECTION_IMAGES = "Image";
+    public static final String KEY_IMAGE_DATA = "data";
+    // These are the blob constants hash keys
+    public static final String KEY_COLLECTION_BLOBS = "Blob";
+    public static final String KEY_COLLECTION_CHUNKS = "Chunk";
+    public static final String KEY_CHUNK_DATA = "data";
+    public static final String KEY_STORED_CHUNKS = "storedChunks";
+    public static final String KEY_CHUNK_COUNT = "chunkCount";
+    public static final String KEY_BLOB_LENGTH = "length";
+    public static final String KEY_COMMITTED = "committed";
+    // These are the presence constants hash keys
+    public static final String KEY_COLLECTION_PRESENCE = "Presence";
+    public static final String KEY_LAST_SEEN = "lastSeen";
+    public static final String KEY_COLLECTION_CONVERSATION_STATES = "ConversationState";
+    public static final String KEY_TYPING = "typing";
+    public static final String KEY_DELIVERED = "delivered";
+    public static final String KEY_READ = "read";
 }
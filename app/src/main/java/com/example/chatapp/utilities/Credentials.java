@@ -0,0 +1,151 @@
+package com.example.chatapp.utilities;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * This is the salted password hash of an account. Hashing is slow on
+ * purpose, so it should never run on the main thread. The algorithm and
+ * the iterations are stored with the hash, so older hashes still verify
+ * and can be hashed again when the user signs in
+ */
+public final class Credentials {
+    // PBKDF2 with HMAC-SHA256 is only on Android from API 26, hashes made
+    // with it on a newer device could not be checked on an older one
+    public static final String ALGORITHM_SHA256 = "PBKDF2WithHmacSHA256";
+    public static final String ALGORITHM_SHA1 = "PBKDF2WithHmacSHA1";
+    // This is the algorithm of every new hash, every device from API 24
+    // has it, so an account signs in from any device it was made on.
+    // The iterations are fewer than the OWASP count for HMAC-SHA1, which
+    // takes seconds on a low-end phone, and keep signing in under a second
+    public static final String ALGORITHM = ALGORITHM_SHA1;
+    public static final int ITERATIONS = 310_000;
+    // These are the lengths in bytes
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    // This is the shared source of salts
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // These are the public variables, the salt and hash are hex encoded
+    public final String algorithm;
+    public final String salt;
+    public final String hash;
+    public final int iterations;
+
+    /**
+     * This is the constructor
+     * @param algorithm this is the algorithm of the hash, or null for
+     *                  hashes made before it was stored, which are HMAC-SHA1
+     * @param salt this is the hex encoded salt
+     * @param hash this is the hex encoded hash
+     * @param iterations this is the number of iterations of the hash
+     */
+    public Credentials(String algorithm, String salt, String hash, int iterations) {
+        this.algorithm = algorithm != null ? algorithm : ALGORITHM_SHA1;
+        this.salt = salt;
+        this.hash = hash;
+        this.iterations = iterations;
+    }
+
+    /**
+     * This will hash a new password with a new salt
+     * @param password this is the password
+     * @return the credentials
+     */
+    public static Credentials create(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new Credentials(ALGORITHM, toHex(salt), toHex(hash(ALGORITHM, password, salt, ITERATIONS)),
+                ITERATIONS);
+    }
+
+    /**
+     * This will check a password against the credentials, taking the
+     * same time however much of the hash matches
+     * @param password this is the password to check
+     * @return true if the password is right
+     */
+    public boolean verify(String password) {
+        if (salt == null || hash == null || iterations <= 0) {
+            return false;
+        }
+        byte[] expected = fromHex(hash);
+        return MessageDigest.isEqual(expected, hash(algorithm, password, fromHex(salt), iterations));
+    }
+
+    /**
+     * This will check if the hash is not the same kind as the hashes made
+     * now, so it should be made again the next time the password is known
+     * @return true if the hash should be made again
+     */
+    public boolean needsRehash() {
+        // A hash of another algorithm is made again too, so it verifies on every device
+        return !ALGORITHM.equals(algorithm) || iterations < ITERATIONS;
+    }
+
+    /**
+     * This will get the key of an email, the same for every way of
+     * typing it, and safe to use as a document ID
+     * @param email this is the email
+     * @return the key
+     */
+    public static String getEmailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT)
+                .replace("%", "%25")
+                .replace("/", "%2F");
+    }
+
+    /**
+     * This will hash a password
+     * @param algorithm this is the algorithm
+     * @param password this is the password
+     * @param salt this is the salt
+     * @param iterations this is the number of iterations
+     * @return the hash
+     */
+    private static byte[] hash(String algorithm, String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH * 8);
+        try {
+            return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+        }
+        catch (GeneralSecurityException exception) {
+            // Every Android device ships PBKDF2 with HMAC-SHA1, only the
+            // SHA256 hashes made before it was the one algorithm can get here
+            throw new IllegalStateException(exception);
+        }
+        finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * This will encode bytes as a hex string
+     * @param bytes this is the bytes
+     * @return the hex string
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * This will decode a hex string
+     * @param hex this is the hex string
+     * @return the bytes
+     */
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.chatapp.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * This is the Deferred Initializer that holds back work that is not
+ * needed for the first frame. Once the first frame is drawn the work
+ * runs one task per main thread message, so no single frame has to
+ * wait for all of it
+ */
+public class DeferredInitializer {
+    /**
+     * This is one piece of deferred work
+     */
+    private static class Task {
+        final String name;
+        final Runnable runnable;
+
+        Task(String name, Runnable runnable) {
+            this.name = name;
+            this.runnable = runnable;
+        }
+    }
+
+    // These are the private variables
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Queue<Task> tasks = new ArrayDeque<>();
+    private boolean firstFrameDrawn;
+
+    /**
+     * This is the default constructor
+     * @param rootView this is the content view whose first frame is waited for
+     */
+    public DeferredInitializer(View rootView) {
+        ViewTreeObserver.OnDrawListener onDrawListener = new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                // The frame is still drawing, so continue right after it
+                ViewTreeObserver.OnDrawListener listener = this;
+                mainHandler.postAtFrontOfQueue(() -> {
+                    if (firstFrameDrawn) {
+                        return;
+                    }
+                    rootView.getViewTreeObserver().removeOnDrawListener(listener);
+                    onFirstFrame();
+                });
+            }
+        };
+        rootView.getViewTreeObserver().addOnDrawListener(onDrawListener);
+    }
+
+    /**
+     * This will add work to run after the first frame, or soon if it was drawn
+     * @param name this is the name of the work in traces
+     * @param runnable this is the work
+     */
+    public void add(String name, Runnable runnable) {
+        tasks.add(new Task(name, runnable));
+        if (firstFrameDrawn && tasks.size() == 1) {
+            runNext();
+        }
+    }
+
+    /**
+     * This will start the deferred work once the first frame is drawn
+     */
+    private void onFirstFrame() {
+        firstFrameDrawn = true;
+        StartupTracer.reportInitialDisplay();
+        runNext();
+    }
+
+    /**
+     * This will run the next task in its own main thread message
+     */
+    private void runNext() {
+        mainHandler.post(() -> {
+            Task task = tasks.poll();
+            if (task == null) {
+                return;
+            }
+            StartupTracer.beginSection(task.name);
+            try {
+                task.runnable.run();
+            }
+            finally {
+                StartupTracer.endSection();
+            }
+            if (!tasks.isEmpty()) {
+                runNext();
+            }
+        });
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.chatapp.utilities;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This is the Image Ingestor for picked profile photos and chat
+ * attachments. A photo is read on a background thread: the bounds and
+ * the EXIF orientation first, then a sampled decode no bigger than the
+ * largest output needs, then every output is cropped, turned and scaled
+ * in one step and compressed to WebP. Full resolution pixels are never decoded
+ */
+public class ImageIngestor {
+    // This is the WebP quality of the variants
+    private static final int WEBP_QUALITY = 80;
+    // This is the longest side of an attachment
+    public static final int ATTACHMENT_MAX_SIZE = 1600;
+    // This is the longest side of the image a placeholder is made from
+    private static final int BLUR_HASH_SIZE = 32;
+    // These are the components of a placeholder, wider than tall like most photos
+    private static final int BLUR_HASH_COMPONENTS_X = 4;
+    private static final int BLUR_HASH_COMPONENTS_Y = 3;
+    // This is the shared instance
+    private static ImageIngestor instance;
+    // These are the private variables
+    private final ContentResolver contentResolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * This is the callback for an ingested image
+     */
+    public interface Callback {
+        // OnIngested method, the result is null if the image could not be read
+        void onIngested(Result result, Exception exception);
+    }
+
+    /**
+     * This is an ingested image
+     */
+    public static class Result {
+        // This is the largest variant, to show straight away
+        public final Bitmap preview;
+        // These are the BASE64 string encoded WebP variants
+        public final EnumMap<ImagePlan.Variant, String> encodedImages;
+
+        /**
+         * This is the constructor
+         * @param preview this is the largest variant
+         * @param encodedImages this is the encoded variants
+         */
+        Result(Bitmap preview, EnumMap<ImagePlan.Variant, String> encodedImages) {
+            this.preview = preview;
+            this.encodedImages = encodedImages;
+        }
+    }
+
+    /**
+     * This is the callback for a prepared attachment
+     */
+    public interface AttachmentCallback {
+        // OnPrepared method, the attachment is null if the image could not be read
+        void onPrepared(Attachment attachment, Exception exception);
+    }
+
+    /**
+     * This is an attachment ready to upload
+     */
+    public static class Attachment {
+        // This is the WebP file of the attachment
+        public final File file;
+        // This is the size of the attachment, the right way up
+        public final int width, height;
+        // This is the placeholder of the attachment
+        public final String blurHash;
+
+        /**
+         * This is the constructor
+         * @param file this is the WebP file of the attachment
+         * @param width this is the width of the attachment
+         * @param height this is the height of the attachment
+         * @param blurHash this is the placeholder of the attachment
+         */
+        Attachment(File file, int width, int height, String blurHash) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.blurHash = blurHash;
+        }
+    }
+
+    /**
+     * This is a running ingestion
+     */
+    public static class Job {
+        // These are the private variables
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        /**
+         * This will cancel the ingestion, its callback will not be called
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * This will stop the ingestion between steps once it is cancelled
+         */
+        private void check() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    /**
+     * This will get the shared image ingestor
+     * @param context this is the current Context
+     * @return the shared ImageIngestor
+     */
+    public static synchronized ImageIngestor getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageIngestor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * This is the constructor
+     * @param context this is the application Context
+     */
+    private ImageIngestor(Context context) {
+        contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * This will ingest a photo in the background
+     * @param uri this is the URI of the photo
+     * @param callback this is called on the main thread unless the job is cancelled
+     * @return the job, to cancel it
+     */
+    public Job ingest(Uri uri, Callback callback) {
+        Job job = new Job();
+        job.future = executor.submit(() -> {
+            Result result = null;
+            Exception failure = null;
+            try {
+                result = read(uri, job);
+            }
+            catch (CancellationException exception) {
+                return;
+            }
+            catch (IOException | SecurityException exception) {
+                failure = exception;
+            }
+            catch (OutOfMemoryError error) {
+                failure = new IOException("Image is too large", error);
+            }
+            Result ingested = result;
+            Exception error = failure;
+            mainHandler.post(() -> {
+                if (!job.cancelled) {
+                    callback.onIngested(ingested, error);
+                }
+                else if (ingested != null) {
+                    ingested.preview.recycle();
+                }
+            });
+        });
+        return job;
+    }
+
+    /**
+     * This will prepare a photo to be sent as an attachment in the background
+     * @param uri this is the URI of the photo
+     * @param file this is where the attachment is written, it is kept for the upload
+     * @param callback this is called on the main thread unless the job is cancelled
+     * @return the job, to cancel it
+     */
+    public Job prepareAttachment(Uri uri, File file, AttachmentCallback callback) {
+        Job job = new Job();
+        job.future = executor.submit(() -> {
+            Attachment attachment = null;
+            Exception failure = null;
+            try {
+                attachment = readAttachment(uri, file, job);
+            }
+            catch (CancellationException exception) {
+                file.delete();
+                return;
+            }
+            catch (IOException | SecurityException exception) {
+                file.delete();
+                failure = exception;
+            }
+            catch (OutOfMemoryError error) {
+                file.delete();
+                failure = new IOException("Image is too large", error);
+            }
+            Attachment prepared = attachment;
+            Exception error = failure;
+            mainHandler.post(() -> {
+                if (!job.cancelled) {
+                    callback.onPrepared(prepared, error);
+                }
+            });
+        });
+        return job;
+    }
+
+    /**
+     * This will read a photo into an attachment file and its placeholder.
+     * It runs on a background thread
+     * @param uri this is the URI of the photo
+     * @param file this is where the attachment is written
+     * @param job this is the job, checked between steps
+     * @return the attachment
+     */
+    private Attachment readAttachment(Uri uri, File file, Job job) throws IOException {
+        // Read the bounds without decoding any pixels
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = open(uri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+        int orientation;
+        try (InputStream inputStream = open(uri)) {
+            orientation = new ExifInterface(inputStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }
+        job.check();
+
+        // Decode sampled down to no less than the attachment size, within the memory budget
+        int inSampleSize = 1;
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        while (longestSide / (inSampleSize * 2) >= ATTACHMENT_MAX_SIZE
+                || (long) (options.outWidth / inSampleSize) * (options.outHeight / inSampleSize)
+                * ImagePlan.BYTES_PER_PIXEL > ImagePlan.MAX_DECODED_BYTES) {
+            inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = inSampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded;
+        try (InputStream inputStream = open(uri)) {
+            decoded = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode: " + uri);
+        }
+
+        // Turn and scale it in one step
+        Bitmap attachment;
+        try {
+            job.check();
+            float scale = Math.min(1f, (float) ATTACHMENT_MAX_SIZE
+                    / Math.max(decoded.getWidth(), decoded.getHeight()));
+            Matrix matrix = new Matrix();
+            boolean flipped = ImagePlan.isFlipped(orientation);
+            matrix.setScale(flipped ? -scale : scale, scale);
+            matrix.postRotate(ImagePlan.getRotationDegrees(orientation));
+            attachment = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(),
+                    matrix, true);
+        }
+        finally {
+            decoded.recycle();
+        }
+
+        try {
+            job.check();
+            // The placeholder is made from a tiny copy
+            float blurScale = (float) BLUR_HASH_SIZE / Math.max(attachment.getWidth(), attachment.getHeight());
+            int blurWidth = Math.max(1, Math.round(attachment.getWidth() * blurScale));
+            int blurHeight = Math.max(1, Math.round(attachment.getHeight() * blurScale));
+            Bitmap small = Bitmap.createScaledBitmap(attachment, blurWidth, blurHeight, true);
+            int[] pixels = new int[blurWidth * blurHeight];
+            small.getPixels(pixels, 0, blurWidth, 0, 0, blurWidth, blurHeight);
+            if (small != attachment) {
+                small.recycle();
+            }
+            String blurHash = BlurHash.encode(pixels, blurWidth, blurHeight,
+                    BLUR_HASH_COMPONENTS_X, BLUR_HASH_COMPONENTS_Y);
+
+            // Write the attachment for the upload to read
+            File folder = file.getParentFile();
+            if (folder != null && !folder.exists() && !folder.mkdirs()) {
+                throw new IOException("Could not create " + folder);
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                attachment.compress(getWebPFormat(), WEBP_QUALITY, outputStream);
+            }
+            return new Attachment(file, attachment.getWidth(), attachment.getHeight(), blurHash);
+        }
+        finally {
+            attachment.recycle();
+        }
+    }
+
+    /**
+     * This will read a photo into its variants. It runs on a background thread
+     * @param uri this is the URI of the photo
+     * @param job this is the job, checked between steps
+     * @return the ingested image
+     */
+    private Result read(Uri uri, Job job) throws IOException {
+        // Read the bounds without decoding any pixels
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = open(uri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+        int orientation;
+        try (InputStream inputStream = open(uri)) {
+            orientation = new ExifInterface(inputStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }
+        ImagePlan plan = new ImagePlan(options.outWidth, options.outHeight, orientation);
+        job.check();
+
+        // Decode sampled down to the largest variant
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = plan.inSampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded;
+        try (InputStream inputStream = open(uri)) {
+            decoded = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode: " + uri);
+        }
+
+        // Make every variant straight from the decoded image
+        EnumMap<ImagePlan.Variant, String> encodedImages = new EnumMap<>(ImagePlan.Variant.class);
+        Bitmap preview = null;
+        try {
+            for (ImagePlan.Variant variant : ImagePlan.Variant.values()) {
+                job.check();
+                Bitmap bitmap = createVariant(decoded, plan, variant);
+                encodedImages.put(variant, encode(bitmap));
+                // Keep the largest for the preview, the others are done
+                if (variant == ImagePlan.Variant.HEADER) {
+                    preview = bitmap;
+                }
+                else if (bitmap != decoded) {
+                    bitmap.recycle();
+                }
+            }
+        }
+        catch (RuntimeException exception) {
+            if (preview != null && preview != decoded) {
+                preview.recycle();
+            }
+            decoded.recycle();
+            throw exception;
+        }
+        if (preview != decoded) {
+            decoded.recycle();
+        }
+        return new Result(preview, encodedImages);
+    }
+
+    /**
+     * This will open a photo for reading
+     * @param uri this is the URI of the photo
+     * @return the stream of the photo
+     */
+    private InputStream open(Uri uri) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Could not open: " + uri);
+        }
+        return inputStream;
+    }
+
+    /**
+     * This will crop, turn and scale a variant from the decoded image in one step
+     * @param decoded this is the decoded image
+     * @param plan this is the plan of the image
+     * @param variant this is the variant to make
+     * @return the variant bitmap
+     */
+    private static Bitmap createVariant(Bitmap decoded, ImagePlan plan, ImagePlan.Variant variant) {
+        Matrix matrix = new Matrix();
+        float scale = plan.getVariantScale(variant);
+        matrix.setScale(plan.flipped ? -scale : scale, scale);
+        matrix.postRotate(plan.rotationDegrees);
+        // Filtering keeps the downscale smooth
+        return Bitmap.createBitmap(decoded, plan.cropX, plan.cropY, plan.cropSize, plan.cropSize, matrix, true);
+    }
+
+    /**
+     * Encodes a bitmap as WebP into a BASE64 string so it can be
+     * stored in a database
+     * @param bitmap this is the bitmap to encode
+     * @return string of the image in BASE64
+     */
+    private static String encode(Bitmap bitmap) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        bitmap.compress(getWebPFormat(), WEBP_QUALITY, byteArrayOutputStream);
+        return Base64.encodeToString(byteArrayOutputStream.toByteArray(), Base64.DEFAULT);
+    }
+
+    /**
+     * This will get the lossy WebP format of this Android version
+     * @return the compress format
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getWebPFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+}
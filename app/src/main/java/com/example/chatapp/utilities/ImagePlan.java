@@ -0,0 +1,169 @@
+package com.example.chatapp.utilities;
+
+/**
+ * This is the plan for turning a picked photo into profile image
+ * variants. It is worked out from the bounds and the EXIF orientation
+ * alone, before any pixels are decoded, so the decode can be sampled
+ * down and the peak memory is known up front
+ */
+public final class ImagePlan {
+    // Decoded bitmaps are ARGB_8888
+    public static final int BYTES_PER_PIXEL = 4;
+    // The most bytes the sampled decode may take
+    public static final long MAX_DECODED_BYTES = 6L * 1024 * 1024;
+    // These are the EXIF orientation values
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    /**
+     * These are the square variants made of every profile image
+     */
+    public enum Variant {
+        // Rows of the user and conversation lists
+        THUMBNAIL(144),
+        // Messages in a chat
+        AVATAR(256),
+        // The profile header
+        HEADER(512);
+
+        // This is the length of a side in pixels
+        public final int size;
+
+        Variant(int size) {
+            this.size = size;
+        }
+    }
+
+    // These are the public variables
+    public final int inSampleSize;
+    public final int decodedWidth, decodedHeight;
+    public final int cropX, cropY, cropSize;
+    public final int rotationDegrees;
+    public final boolean flipped;
+
+    /**
+     * This is the constructor
+     * @param width this is the width of the encoded image
+     * @param height this is the height of the encoded image
+     * @param orientation this is the EXIF orientation of the image
+     */
+    public ImagePlan(int width, int height, int orientation) {
+        int largest = Variant.values()[Variant.values().length - 1].size;
+        int sampleSize = calculateInSampleSize(width, height, largest);
+        // Long thin images are sampled further to keep the decode in budget
+        while ((long) getSampledSize(width, sampleSize) * getSampledSize(height, sampleSize)
+                * BYTES_PER_PIXEL > MAX_DECODED_BYTES) {
+            sampleSize *= 2;
+        }
+        inSampleSize = sampleSize;
+        decodedWidth = getSampledSize(width, inSampleSize);
+        decodedHeight = getSampledSize(height, inSampleSize);
+        // The centre square, a square stays a square when it is turned
+        cropSize = Math.min(decodedWidth, decodedHeight);
+        cropX = (decodedWidth - cropSize) / 2;
+        cropY = (decodedHeight - cropSize) / 2;
+        rotationDegrees = getRotationDegrees(orientation);
+        flipped = isFlipped(orientation);
+    }
+
+    /**
+     * This will get the length of a side of a variant, images smaller
+     * than the variant are never scaled up
+     * @param variant this is the variant
+     * @return the length of a side in pixels
+     */
+    public int getVariantSize(Variant variant) {
+        return Math.min(variant.size, cropSize);
+    }
+
+    /**
+     * This will get the scale from the decoded image to a variant
+     * @param variant this is the variant
+     * @return the scale
+     */
+    public float getVariantScale(Variant variant) {
+        return getVariantSize(variant) / (float) cropSize;
+    }
+
+    /**
+     * This will get the most bytes held at once. The decoded image
+     * stays in memory while each variant is cropped, turned and scaled
+     * from it in one step, and every variant is compressed and dropped
+     * before the next one is made
+     * @return the peak number of bytes of bitmaps
+     */
+    public long getPeakBytes() {
+        long decoded = (long) decodedWidth * decodedHeight * BYTES_PER_PIXEL;
+        long largestVariant = 0;
+        for (Variant variant : Variant.values()) {
+            long size = getVariantSize(variant);
+            largestVariant = Math.max(largestVariant, size * size * BYTES_PER_PIXEL);
+        }
+        return decoded + largestVariant;
+    }
+
+    /**
+     * This will find the largest power of two sample size that keeps
+     * the image at least as big as the target size
+     * @param width this is the width of the encoded image
+     * @param height this is the height of the encoded image
+     * @param targetSize this is the size in pixels the bitmap is shown at
+     * @return the sample size to decode with
+     */
+    public static int calculateInSampleSize(int width, int height, int targetSize) {
+        int inSampleSize = 1;
+        int smallestSide = Math.min(width, height);
+        while (smallestSide / (inSampleSize * 2) >= targetSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * This will get the length of a side after sampling, the decoder rounds up
+     * @param length this is the length of the encoded side
+     * @param inSampleSize this is the sample size
+     * @return the length of the decoded side
+     */
+    private static int getSampledSize(int length, int inSampleSize) {
+        return (length + inSampleSize - 1) / inSampleSize;
+    }
+
+    /**
+     * This will get the clockwise turn of an EXIF orientation, applied
+     * after the flip
+     * @param orientation this is the EXIF orientation
+     * @return the turn in degrees
+     */
+    public static int getRotationDegrees(int orientation) {
+        switch (orientation) {
+            case ORIENTATION_ROTATE_180:
+            case ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSVERSE:
+                return 90;
+            case ORIENTATION_ROTATE_270:
+            case ORIENTATION_TRANSPOSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * This will check if an EXIF orientation mirrors the image left to right
+     * @param orientation this is the EXIF orientation
+     * @return true if the image is mirrored before it is turned
+     */
+    public static boolean isFlipped(int orientation) {
+        return orientation == ORIENTATION_FLIP_HORIZONTAL || orientation == ORIENTATION_FLIP_VERTICAL
+                || orientation == ORIENTATION_TRANSPOSE || orientation == ORIENTATION_TRANSVERSE;
+    }
+}
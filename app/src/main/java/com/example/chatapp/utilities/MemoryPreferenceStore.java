@@ -0,0 +1,52 @@
+package com.example.chatapp.utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the Preference Store that only keeps the preferences in
+ * memory, for tests and for sessions that should not outlive the process
+ */
+public class MemoryPreferenceStore implements PreferenceStore {
+    // These are the private variables
+    private final Map<String, Object> values = new HashMap<>();
+    private int saveCount;
+
+    /**
+     * This is the override for the load method
+     * @return a copy of the stored preferences
+     */
+    @Override
+    public synchronized Map<String, Object> load() {
+        return new HashMap<>(values);
+    }
+
+    /**
+     * This is the override for the save method
+     * @param changes this is the changed preferences by key, a null value removes the key
+     * @param clear this is true when every preference is removed before the changes
+     */
+    @Override
+    public synchronized void save(Map<String, Object> changes, boolean clear) {
+        if (clear) {
+            values.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                values.remove(change.getKey());
+            }
+            else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+        saveCount++;
+    }
+
+    /**
+     * This will get the number of batches written so far
+     * @return the number of writes
+     */
+    public synchronized int getSaveCount() {
+        return saveCount;
+    }
+}
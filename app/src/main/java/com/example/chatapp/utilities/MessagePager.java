@@ -0,0 +1,198 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.List;
+
+/**
+ * This is the Message Pager that keeps a bounded window of a chat
+ * in a MessageStore. Older and newer pages are loaded through cursors
+ * as the user scrolls near either end, and pages far from the
+ * viewport are dropped so they can be reloaded later
+ */
+public class MessagePager {
+    /**
+     * This is the source the pages of messages are loaded from
+     */
+    public interface PageSource {
+        // Load up to limit messages that order before the oldest message
+        void loadOlder(ChatMessage oldest, int limit, PageCallback callback);
+        // Load up to limit messages that order after the newest message
+        void loadNewer(ChatMessage newest, int limit, PageCallback callback);
+    }
+
+    /**
+     * This is the callback for a loaded page of messages
+     */
+    public interface PageCallback {
+        // OnPageLoaded method, the page is in timestamp order
+        void onPageLoaded(List<ChatMessage> page);
+    }
+
+    // These are the private variables
+    private final MessageStore store;
+    private final PageSource pageSource;
+    private final int pageSize;
+    private final int maxMessages;
+    private boolean loadingOlder, loadingNewer;
+    private boolean hasOlder = true;
+    private boolean hasNewer = false;
+
+    /**
+     * This is the default constructor
+     * @param store this is the store that holds the window of messages
+     * @param pageSource this is the source to load pages from
+     * @param pageSize this is the number of messages in a page
+     * @param maxMessages this is the most messages kept in the store
+     */
+    public MessagePager(MessageStore store, PageSource pageSource, int pageSize, int maxMessages) {
+        this.store = store;
+        this.pageSource = pageSource;
+        this.pageSize = pageSize;
+        this.maxMessages = Math.max(maxMessages, pageSize * 2);
+    }
+
+    /**
+     * This will add the first page of a chat, the newest messages
+     * @param page this is the newest page of messages
+     */
+    public void onFirstPage(List<ChatMessage> page) {
+        // A short first page means there is nothing older
+        hasOlder = page.size() >= pageSize;
+        hasNewer = false;
+        for (ChatMessage chatMessage : page) {
+            store.add(chatMessage);
+        }
+    }
+
+    /**
+     * This will replace the window with the messages around one message,
+     * for opening a chat at a search result. Half a page before it is
+     * loaded first, then a page from there, so the message itself is
+     * read from the source rather than from the caller
+     * @param anchor this is the message to open at, with its ID and timestamp
+     * @param callback this is called once the window holds the anchor's neighbourhood
+     */
+    public void jumpTo(ChatMessage anchor, Runnable callback) {
+        if (store.contains(anchor.messageID)) {
+            callback.run();
+            return;
+        }
+        // Scrolling must not page the old window while the new one loads
+        loadingOlder = true;
+        loadingNewer = true;
+        int before = Math.max(1, pageSize / 2);
+        pageSource.loadOlder(anchor, before, older -> {
+            // Continue after the last older message so the page starts with the anchor
+            ChatMessage from = older.isEmpty() ? null : older.get(older.size() - 1);
+            PageCallback onNewer = newer -> {
+                loadingOlder = false;
+                loadingNewer = false;
+                store.trimOldest(store.size());
+                hasOlder = older.size() >= before;
+                hasNewer = newer.size() >= pageSize;
+                for (ChatMessage chatMessage : older) {
+                    store.add(chatMessage);
+                }
+                // At the start of the chat there is no cursor before the anchor
+                if (from == null) {
+                    store.add(anchor);
+                }
+                for (ChatMessage chatMessage : newer) {
+                    store.add(chatMessage);
+                }
+                callback.run();
+            };
+            pageSource.loadNewer(from != null ? from : anchor, pageSize, onNewer);
+        });
+    }
+
+    /**
+     * This will check whether a message from the live listener
+     * belongs inside the current window
+     * @param chatMessage this is the live message
+     * @return true if the message should be put in the store
+     */
+    public boolean acceptsLive(ChatMessage chatMessage) {
+        if (store.size() == 0 || store.contains(chatMessage.messageID)) {
+            return true;
+        }
+        // Newer messages wait until the window is back at the end
+        if (hasNewer && MessageStore.compare(chatMessage, store.get(store.size() - 1)) > 0) {
+            return false;
+        }
+        // Older messages are reached through paging
+        return !hasOlder || MessageStore.compare(chatMessage, store.get(0)) >= 0;
+    }
+
+    /**
+     * This will check whether the window has dropped the newest messages
+     * @return true if the newest messages are not in the store
+     */
+    public boolean hasNewer() {
+        return hasNewer;
+    }
+
+    /**
+     * This will load pages when the visible rows get near either end
+     * @param firstVisible this is the first visible position
+     * @param lastVisible this is the last visible position
+     * @param prefetchDistance this is how close to an end a load starts
+     */
+    public void onScrolled(int firstVisible, int lastVisible, int prefetchDistance) {
+        if (firstVisible >= 0 && firstVisible <= prefetchDistance) {
+            loadOlder();
+        }
+        if (lastVisible >= store.size() - 1 - prefetchDistance) {
+            loadNewer();
+        }
+    }
+
+    /**
+     * This will load the page before the oldest message
+     */
+    public void loadOlder() {
+        if (loadingOlder || !hasOlder || store.size() == 0) {
+            return;
+        }
+        loadingOlder = true;
+        pageSource.loadOlder(store.get(0), pageSize, page -> {
+            loadingOlder = false;
+            // A short page means the start of the chat was reached
+            hasOlder = page.size() >= pageSize;
+            for (ChatMessage chatMessage : page) {
+                store.add(chatMessage);
+            }
+            // Drop the newest messages, the user is far from them
+            int excess = store.size() - maxMessages;
+            if (excess > 0) {
+                store.trimNewest(excess);
+                hasNewer = true;
+            }
+        });
+    }
+
+    /**
+     * This will load the page after the newest message
+     */
+    public void loadNewer() {
+        if (loadingNewer || !hasNewer || store.size() == 0) {
+            return;
+        }
+        loadingNewer = true;
+        pageSource.loadNewer(store.get(store.size() - 1), pageSize, page -> {
+            loadingNewer = false;
+            // A short page means the window is back at the end of the chat
+            hasNewer = page.size() >= pageSize;
+            for (ChatMessage chatMessage : page) {
+                store.add(chatMessage);
+            }
+            // Drop the oldest messages, the user is far from them
+            int excess = store.size() - maxMessages;
+            if (excess > 0) {
+                store.trimOldest(excess);
+                hasOlder = true;
+            }
+        });
+    }
+}
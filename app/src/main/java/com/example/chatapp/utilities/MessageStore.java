@@ -0,0 +1,259 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.listeners.MessageListener;
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This is an ordered store of chat messages that applies
+ * changes incrementally. Messages are kept sorted by their
+ * timestamp (and message ID for ties) so every change costs a
+ * binary search instead of a full re-sort of the list
+ */
+public class MessageStore {
+    // These are the private variables
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final HashMap<String, ChatMessage> messagesByID = new HashMap<>();
+    private MessageListener messageListener;
+
+    /**
+     * Set the listener that is told about every positional change
+     * @param messageListener this is the listener to notify, or null to detach
+     */
+    public void setMessageListener(MessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Get a read only view of the ordered messages
+     * @return the messages in timestamp order
+     */
+    public List<ChatMessage> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Get a message at a position in the store
+     * @param position this is the position of the message
+     * @return the chat message at the position
+     */
+    public ChatMessage get(int position) {
+        return messages.get(position);
+    }
+
+    /**
+     * Get the number of messages in the store
+     * @return the size of the store
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Check if a message is already in the store
+     * @param messageID this is the ID of the message
+     * @return true if the message is in the store
+     */
+    public boolean contains(String messageID) {
+        return messagesByID.containsKey(messageID);
+    }
+
+    /**
+     * Get the position of a message by its ID
+     * @param messageID this is the ID of the message
+     * @return the position of the message, or -1 if it is not in the store
+     */
+    public int positionOf(String messageID) {
+        ChatMessage chatMessage = messagesByID.get(messageID);
+        return chatMessage == null ? -1 : indexOf(chatMessage);
+    }
+
+    /**
+     * Add a new message, or update it if the ID is already in the store
+     * @param chatMessage this is the message to add
+     * @return the position the message now has
+     */
+    public int add(ChatMessage chatMessage) {
+        // If we already know the message, treat it as an update
+        if (messagesByID.containsKey(chatMessage.messageID)) {
+            return update(chatMessage);
+        }
+        // Find the insertion point and place the message
+        int position = insertionPoint(chatMessage);
+        messages.add(position, chatMessage);
+        messagesByID.put(chatMessage.messageID, chatMessage);
+        // Notify the listener of the single insertion
+        if (messageListener != null) {
+            messageListener.onMessageInserted(position);
+        }
+        return position;
+    }
+
+    /**
+     * Update a message that is already in the store. If the
+     * timestamp changed the message is moved to its new position
+     * @param chatMessage this is the new version of the message
+     * @return the position the message now has, or -1 if it is not in the store
+     */
+    public int update(ChatMessage chatMessage) {
+        // Find the old version of the message
+        ChatMessage previous = messagesByID.get(chatMessage.messageID);
+        if (previous == null) {
+            return -1;
+        }
+        int fromPosition = indexOf(previous);
+        // If the order key did not change, replace it in place
+        if (compare(previous, chatMessage) == 0) {
+            messages.set(fromPosition, chatMessage);
+            messagesByID.put(chatMessage.messageID, chatMessage);
+            if (messageListener != null) {
+                messageListener.onMessageChanged(fromPosition);
+            }
+            return fromPosition;
+        }
+        // Otherwise take it out and put it back at the new position
+        messages.remove(fromPosition);
+        int toPosition = insertionPoint(chatMessage);
+        messages.add(toPosition, chatMessage);
+        messagesByID.put(chatMessage.messageID, chatMessage);
+        if (messageListener != null) {
+            if (fromPosition != toPosition) {
+                messageListener.onMessageMoved(fromPosition, toPosition);
+            }
+            messageListener.onMessageChanged(toPosition);
+        }
+        return toPosition;
+    }
+
+    /**
+     * Remove a message from the store
+     * @param messageID this is the ID of the message to remove
+     * @return the position the message had, or -1 if it is not in the store
+     */
+    public int remove(String messageID) {
+        // Find the message
+        ChatMessage previous = messagesByID.remove(messageID);
+        if (previous == null) {
+            return -1;
+        }
+        // Remove it from its position
+        int position = indexOf(previous);
+        messages.remove(position);
+        if (messageListener != null) {
+            messageListener.onMessageRemoved(position);
+        }
+        return position;
+    }
+
+    /**
+     * Drop the oldest messages from the store
+     * @param count this is the number of messages to drop
+     */
+    public void trimOldest(int count) {
+        trim(0, Math.min(count, messages.size()));
+    }
+
+    /**
+     * Drop the newest messages from the store
+     * @param count this is the number of messages to drop
+     */
+    public void trimNewest(int count) {
+        count = Math.min(count, messages.size());
+        trim(messages.size() - count, count);
+    }
+
+    /**
+     * Drop a range of messages from the store
+     * @param position this is the first position to drop
+     * @param count this is the number of messages to drop
+     */
+    private void trim(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        // Forget the IDs and clear the range in one shift
+        List<ChatMessage> range = messages.subList(position, position + count);
+        for (ChatMessage chatMessage : range) {
+            messagesByID.remove(chatMessage.messageID);
+        }
+        range.clear();
+        if (messageListener != null) {
+            messageListener.onMessageRangeRemoved(position, count);
+        }
+    }
+
+    /**
+     * Clear every message from the store, the listener is told like any other removal
+     */
+    public void clear() {
+        trim(0, messages.size());
+    }
+
+    /**
+     * Find the position of a message that is in the store
+     * @param chatMessage this is the message to look for
+     * @return the position of the message
+     */
+    private int indexOf(ChatMessage chatMessage) {
+        int low = 0;
+        int high = messages.size() - 1;
+        // Binary search on the order key
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(messages.get(middle), chatMessage);
+            if (result < 0) {
+                low = middle + 1;
+            }
+            else if (result > 0) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the position a new message should be inserted at
+     * @param chatMessage this is the message to place
+     * @return the position after every message that orders before it
+     */
+    private int insertionPoint(ChatMessage chatMessage) {
+        int size = messages.size();
+        // Most messages arrive in order, so check the end first
+        if (size == 0 || compare(messages.get(size - 1), chatMessage) <= 0) {
+            return size;
+        }
+        int low = 0;
+        int high = size;
+        // Binary search for the first message that orders after
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(messages.get(middle), chatMessage) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare two messages by timestamp and then message ID
+     * @param first this is the first message
+     * @param second this is the second message
+     * @return the ordering of the two messages
+     */
+    static int compare(ChatMessage first, ChatMessage second) {
+        if (first.timestamp != second.timestamp) {
+            return first.timestamp < second.timestamp ? -1 : 1;
+        }
+        return first.messageID.compareTo(second.messageID);
+    }
+}
@@ -1,23 +1,47 @@
 package com.example.chatapp.utilities;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 /**
  * Preference Manage that will store preferences
  * about the user that can be checked while the program
- * is running
+ * is running. Every manager shares one in-memory snapshot
+ * of the preferences, so reads never touch the disk
  */
 public class PreferenceManager {
+    // This is the snapshot shared by the whole process
+    private static PreferenceSnapshot sharedSnapshot;
     // Instance variables
-    private final SharedPreferences sharedPreferences;
+    private final PreferenceSnapshot snapshot;
 
     /**
      * This is the constructor
      * @param context this is the current Context to get preference data from
      */
     public PreferenceManager(Context context) {
-        sharedPreferences = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME,Context.MODE_PRIVATE);
+        snapshot = getSnapshot(context);
+    }
+
+    /**
+     * This will get the shared snapshot, reading SharedPreferences the
+     * first time unless another store was set
+     * @param context this is the current Context to get preference data from
+     * @return the shared snapshot
+     */
+    private static synchronized PreferenceSnapshot getSnapshot(Context context) {
+        if (sharedSnapshot == null) {
+            sharedSnapshot = new PreferenceSnapshot(new SharedPreferencesStore(context.getApplicationContext()));
+        }
+        return sharedSnapshot;
+    }
+
+    /**
+     * This will replace the store behind the preferences, before the
+     * first manager is made or in tests
+     * @param store this is the new store
+     */
+    public static synchronized void setStore(PreferenceStore store) {
+        sharedSnapshot = new PreferenceSnapshot(store);
     }
 
     /**
@@ -26,9 +50,7 @@ public class PreferenceManager {
      * @param value this is boolean to assign to the index
      */
     public void putBoolean(String key, Boolean value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putBoolean(key,value);
-        editor.apply();
+        snapshot.edit(batch -> batch.putBoolean(key, value));
     }
 
     /**
@@ -36,7 +58,7 @@ public class PreferenceManager {
      * @param key this is string index to get
      */
     public Boolean getBoolean(String key) {
-        return sharedPreferences.getBoolean(key,false);
+        return snapshot.getBoolean(key);
     }
 
     /**
@@ -45,9 +67,7 @@ public class PreferenceManager {
      * @param value this is string to assign to the index
      */
     public void putString(String key, String value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(key,value);
-        editor.apply();
+        snapshot.edit(batch -> batch.putString(key, value));
     }
 
     /**
@@ -55,15 +75,45 @@ public class PreferenceManager {
      * @param key this is string index
      */
     public String getString(String key) {
-        return sharedPreferences.getString(key,null);
+        return snapshot.getString(key);
+    }
+
+    /**
+     * Make several changes to the preference hash with one write
+     * @param editor this is what makes the changes
+     */
+    public void edit(PreferenceSnapshot.Editor editor) {
+        snapshot.edit(editor);
+    }
+
+    /**
+     * Get the typed session of the signed in user
+     * @return the session
+     */
+    public PreferenceSnapshot.Session getSession() {
+        return snapshot.getSession();
+    }
+
+    /**
+     * Add a listener of preference changes
+     * @param listener this is the listener
+     */
+    public void addListener(PreferenceSnapshot.OnChangeListener listener) {
+        snapshot.addListener(listener);
+    }
+
+    /**
+     * Remove a listener of preference changes
+     * @param listener this is the listener
+     */
+    public void removeListener(PreferenceSnapshot.OnChangeListener listener) {
+        snapshot.removeListener(listener);
     }
 
     /**
      * Clear the preferences hash of all indexes
      */
     public void clear() {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.clear();
-        editor.apply();
+        snapshot.edit(PreferenceSnapshot.Batch::clear);
     }
 }
@@ -0,0 +1,243 @@
+package com.example.chatapp.utilities;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This is the in-memory copy of the preferences. The store is read
+ * once, reads never touch it again, and changes are made in batches
+ * that are written to the store once and reported to the listeners once
+ */
+public class PreferenceSnapshot {
+    /**
+     * This is the interface of a batch of changes
+     */
+    public interface Editor {
+        /**
+         * This will make the changes of the batch
+         * @param batch this is where the changes are made
+         */
+        void edit(Batch batch);
+    }
+
+    /**
+     * This is the interface of a listener of preference changes
+     */
+    public interface OnChangeListener {
+        /**
+         * This will be called once for every batch that changed something
+         * @param keys this is the keys whose values changed
+         */
+        void onPreferencesChanged(Set<String> keys);
+    }
+
+    /**
+     * This is a batch of changes, nothing is visible until the batch ends
+     */
+    public static class Batch {
+        // These are the private variables
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        /**
+         * Put a boolean value into the batch
+         * @param key this is string index
+         * @param value this is boolean to assign to the index
+         * @return this batch
+         */
+        public Batch putBoolean(String key, Boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Put a string value into the batch, null removes the index
+         * @param key this is string index
+         * @param value this is string to assign to the index
+         * @return this batch
+         */
+        public Batch putString(String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Remove an index
+         * @param key this is string index
+         * @return this batch
+         */
+        public Batch remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        /**
+         * Remove every index before the other changes of the batch
+         * @return this batch
+         */
+        public Batch clear() {
+            changes.clear();
+            clear = true;
+            return this;
+        }
+    }
+
+    /**
+     * This is the typed view of the signed in user, it is rebuilt only
+     * after one of its preferences changes
+     */
+    public static final class Session {
+        public final boolean signedIn;
+        public final String userID;
+        public final String firstName;
+        public final String lastName;
+        public final String imageRef;
+        public final String imageHeaderRef;
+        public final String image;
+        public final String fcmToken;
+
+        /**
+         * This is the constructor
+         * @param values this is the preferences to read the session from
+         */
+        private Session(Map<String, Object> values) {
+            signedIn = Boolean.TRUE.equals(values.get(Constants.KEY_IS_SIGNED_IN));
+            userID = getString(values, Constants.KEY_USERID);
+            firstName = getString(values, Constants.KEY_FIRSTNAME);
+            lastName = getString(values, Constants.KEY_LASTNAME);
+            imageRef = getString(values, Constants.KEY_IMAGE_REF);
+            imageHeaderRef = getString(values, Constants.KEY_IMAGE_HEADER_REF);
+            image = getString(values, Constants.KEY_IMAGE);
+            fcmToken = getString(values, Constants.KEY_FCM_TOKEN);
+        }
+
+        /**
+         * This will get the full name of the user
+         * @return the first and last name
+         */
+        public String getName() {
+            return firstName + " " + lastName;
+        }
+    }
+
+    // These are the preferences the session is read from
+    private static final Set<String> SESSION_KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Constants.KEY_IS_SIGNED_IN, Constants.KEY_USERID, Constants.KEY_FIRSTNAME, Constants.KEY_LASTNAME,
+            Constants.KEY_IMAGE_REF, Constants.KEY_IMAGE_HEADER_REF, Constants.KEY_IMAGE, Constants.KEY_FCM_TOKEN)));
+    // These are the private variables
+    private final PreferenceStore store;
+    private final Map<String, Object> values;
+    private final List<OnChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private Session session;
+
+    /**
+     * This is the constructor, it reads the store once
+     * @param store this is the store behind the preferences
+     */
+    public PreferenceSnapshot(PreferenceStore store) {
+        this.store = store;
+        this.values = new HashMap<>(store.load());
+    }
+
+    /**
+     * Get a boolean value, false when it is missing
+     * @param key this is string index to get
+     */
+    public synchronized Boolean getBoolean(String key) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : Boolean.FALSE;
+    }
+
+    /**
+     * Get a string value, null when it is missing
+     * @param key this is string index
+     */
+    public synchronized String getString(String key) {
+        return getString(values, key);
+    }
+
+    /**
+     * This will get the session of the signed in user
+     * @return the session, the same object until a session preference changes
+     */
+    public synchronized Session getSession() {
+        if (session == null) {
+            session = new Session(values);
+        }
+        return session;
+    }
+
+    /**
+     * This will make a batch of changes, the store is written once and
+     * the listeners are called once, and only when something changed
+     * @param editor this is what makes the changes
+     */
+    public void edit(Editor editor) {
+        Batch batch = new Batch();
+        editor.edit(batch);
+        Set<String> changed = new HashSet<>();
+        synchronized (this) {
+            if (batch.clear) {
+                changed.addAll(values.keySet());
+                values.clear();
+            }
+            for (Map.Entry<String, Object> change : batch.changes.entrySet()) {
+                Object previous = change.getValue() == null
+                        ? values.remove(change.getKey())
+                        : values.put(change.getKey(), change.getValue());
+                if (!Objects.equals(previous, change.getValue())) {
+                    changed.add(change.getKey());
+                }
+            }
+            if (changed.isEmpty() && !batch.clear) {
+                return;
+            }
+            // Other preferences change often and do not touch the session
+            if (!Collections.disjoint(changed, SESSION_KEYS)) {
+                session = null;
+            }
+            // The store is written in the lock so batches reach it in order
+            store.save(batch.changes, batch.clear);
+        }
+        if (!changed.isEmpty()) {
+            for (OnChangeListener listener : listeners) {
+                listener.onPreferencesChanged(changed);
+            }
+        }
+    }
+
+    /**
+     * This will add a listener of preference changes
+     * @param listener this is the listener
+     */
+    public void addListener(OnChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * This will remove a listener of preference changes
+     * @param listener this is the listener
+     */
+    public void removeListener(OnChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * This will get a string from a map of preferences
+     * @param values this is the preferences
+     * @param key this is string index
+     * @return the string, or null when it is missing or not a string
+     */
+    private static String getString(Map<String, Object> values, String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.chatapp.utilities;
+
+import java.util.Map;
+
+/**
+ * This is the interface of the store behind the preferences. The
+ * preferences are kept in memory, so a store is only read once when
+ * the app starts and written once for every batch of changes
+ */
+public interface PreferenceStore {
+    /**
+     * This will read every stored preference
+     * @return the preferences by key, the values are Strings or Booleans
+     */
+    Map<String, Object> load();
+
+    /**
+     * This will write a batch of changes in one go
+     * @param changes this is the changed preferences by key, a null value removes the key
+     * @param clear this is true when every preference is removed before the changes
+     */
+    void save(Map<String, Object> changes, boolean clear);
+}
@@ -0,0 +1,89 @@
+package com.example.chatapp.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.chatapp.repositories.PresenceRepository;
+import com.example.chatapp.repositories.Repositories;
+
+/**
+ * This is the Presence Manager that writes the heartbeat of the signed
+ * in user while any screen of the app is visible. Screens start and
+ * stop it, and however many are open there is only one timer, so
+ * moving between screens or rotating never writes an extra heartbeat
+ */
+public class PresenceManager {
+    // This is the shared instance
+    private static PresenceManager instance;
+    // These are the private variables, only used on the main thread
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PresenceRepository presenceRepository;
+    private int startCount;
+    private String userID;
+    private long lastHeartbeat = -PresenceRepository.HEARTBEAT_INTERVAL_MILLIS;
+
+    /**
+     * This is the constructor
+     * @param presenceRepository this is where the heartbeats are written
+     */
+    private PresenceManager(PresenceRepository presenceRepository) {
+        this.presenceRepository = presenceRepository;
+    }
+
+    /**
+     * This will get the shared Presence Manager
+     * @return the Presence Manager
+     */
+    public static synchronized PresenceManager getInstance() {
+        if (instance == null) {
+            instance = new PresenceManager(Repositories.getPresenceRepository());
+        }
+        return instance;
+    }
+
+    /**
+     * This will be called when a screen becomes visible
+     * @param userID this is the ID of the signed in user, or null if there is none
+     */
+    public void start(String userID) {
+        if (userID == null) {
+            return;
+        }
+        startCount++;
+        if (startCount == 1 || !userID.equals(this.userID)) {
+            this.userID = userID;
+            // Pick up the timer where it was, a heartbeat within the interval still counts
+            long sinceLast = SystemClock.elapsedRealtime() - lastHeartbeat;
+            handler.removeCallbacks(heartbeat);
+            handler.postDelayed(heartbeat,
+                    Math.max(0, PresenceRepository.HEARTBEAT_INTERVAL_MILLIS - sinceLast));
+        }
+    }
+
+    /**
+     * This will be called when a screen stops being visible
+     */
+    public void stop() {
+        if (startCount == 0) {
+            return;
+        }
+        startCount--;
+        // The heartbeat simply stops, readers time the user out
+        if (startCount == 0) {
+            handler.removeCallbacks(heartbeat);
+        }
+    }
+
+    /**
+     * This writes a heartbeat and schedules the next one
+     */
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            lastHeartbeat = SystemClock.elapsedRealtime();
+            presenceRepository.writeHeartbeat(userID, null);
+            handler.postDelayed(this, PresenceRepository.HEARTBEAT_INTERVAL_MILLIS);
+        }
+    };
+}
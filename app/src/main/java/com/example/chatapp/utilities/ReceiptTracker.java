@@ -0,0 +1,161 @@
+package com.example.chatapp.utilities;
+
+/**
+ * This is the Receipt Tracker for one conversation. Receipts are two
+ * watermarks, the newest message delivered and the newest message read,
+ * so reading a hundred messages is still one write. Watermarks only go
+ * up, and they are written once scrolling settles, at most once per
+ * interval however fast messages arrive. It is used on one thread
+ */
+public class ReceiptTracker {
+    // A write waits until the watermarks have not moved for this long
+    public static final long QUIET_MILLIS = 1_000;
+    // There are never two writes closer than this, and no change waits longer
+    public static final long MIN_INTERVAL_MILLIS = 5_000;
+
+    /**
+     * This is the write of both watermarks
+     */
+    public interface Writer {
+        /**
+         * This will write the watermarks
+         * @param deliveredUpTo this is the timestamp of the newest delivered message
+         * @param readUpTo this is the timestamp of the newest read message
+         */
+        void write(long deliveredUpTo, long readUpTo);
+    }
+
+    // These are the private variables
+    private final Throttler.Clock clock;
+    private final Throttler.Scheduler scheduler;
+    private final Writer writer;
+    private long deliveredUpTo, readUpTo;
+    private long writtenDeliveredUpTo, writtenReadUpTo;
+    private long lastWriteMillis = -MIN_INTERVAL_MILLIS;
+    private long firstChangeMillis, lastChangeMillis;
+    private boolean pending, checkScheduled;
+
+    /**
+     * This is the constructor
+     * @param clock this is the clock the waits are measured with
+     * @param scheduler this is what runs the delayed write
+     * @param writer this is the write of the watermarks
+     */
+    public ReceiptTracker(Throttler.Clock clock, Throttler.Scheduler scheduler, Writer writer) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.writer = writer;
+    }
+
+    /**
+     * This will take the watermarks that are already stored, for
+     * example by another device, so they are not written again
+     * @param deliveredUpTo this is the stored delivered watermark
+     * @param readUpTo this is the stored read watermark
+     */
+    public void seed(long deliveredUpTo, long readUpTo) {
+        writtenDeliveredUpTo = Math.max(writtenDeliveredUpTo, deliveredUpTo);
+        writtenReadUpTo = Math.max(writtenReadUpTo, readUpTo);
+        this.deliveredUpTo = Math.max(this.deliveredUpTo, writtenDeliveredUpTo);
+        this.readUpTo = Math.max(this.readUpTo, writtenReadUpTo);
+        pending = hasUnwritten();
+    }
+
+    /**
+     * This will raise the delivered watermark
+     * @param timestamp this is the timestamp of a message that reached the device
+     */
+    public void onDelivered(long timestamp) {
+        if (timestamp > deliveredUpTo) {
+            deliveredUpTo = timestamp;
+            changed();
+        }
+    }
+
+    /**
+     * This will raise the read watermark, a read message was also delivered
+     * @param timestamp this is the timestamp of a message the user saw
+     */
+    public void onRead(long timestamp) {
+        if (timestamp > readUpTo) {
+            readUpTo = timestamp;
+            deliveredUpTo = Math.max(deliveredUpTo, timestamp);
+            changed();
+        }
+    }
+
+    /**
+     * This will write the unwritten watermarks now, for when the chat closes
+     */
+    public void flush() {
+        if (pending) {
+            write();
+        }
+    }
+
+    /**
+     * This will note a change and make sure a check is scheduled
+     */
+    private void changed() {
+        long now = clock.now();
+        if (!pending) {
+            pending = true;
+            firstChangeMillis = now;
+        }
+        lastChangeMillis = now;
+        if (!checkScheduled) {
+            checkScheduled = true;
+            scheduler.schedule(this::check, Math.max(0, getDueMillis() - now));
+        }
+    }
+
+    /**
+     * This will write if it is due and check again later otherwise
+     */
+    private void check() {
+        checkScheduled = false;
+        if (!pending) {
+            return;
+        }
+        long now = clock.now();
+        long due = getDueMillis();
+        if (now >= due) {
+            write();
+        }
+        else {
+            checkScheduled = true;
+            scheduler.schedule(this::check, due - now);
+        }
+    }
+
+    /**
+     * This will get when the unwritten watermarks are due
+     * @return the due time on the clock
+     */
+    private long getDueMillis() {
+        long settled = Math.min(lastChangeMillis + QUIET_MILLIS, firstChangeMillis + MIN_INTERVAL_MILLIS);
+        return Math.max(settled, lastWriteMillis + MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * This will check if a watermark is higher than the stored one
+     * @return true if something is unwritten
+     */
+    private boolean hasUnwritten() {
+        return deliveredUpTo > writtenDeliveredUpTo || readUpTo > writtenReadUpTo;
+    }
+
+    /**
+     * This will write the watermarks
+     */
+    private void write() {
+        pending = false;
+        if (!hasUnwritten()) {
+            return;
+        }
+        lastWriteMillis = clock.now();
+        writtenDeliveredUpTo = deliveredUpTo;
+        writtenReadUpTo = readUpTo;
+        writer.write(deliveredUpTo, readUpTo);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.chatapp.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This is the Search Query helper for the full-text message index. It
+ * turns what the user typed into a safe FTS expression, so quotes and
+ * operators in the input are searched for as words, and it reads back
+ * the marked matches of a snippet
+ */
+public final class SearchQuery {
+    // These mark the matched words in a snippet, they never appear in messages
+    public static final String MATCH_START = "\u0002";
+    public static final String MATCH_END = "\u0003";
+    // This is the most words a query is made of
+    public static final int MAX_TERMS = 8;
+
+    /**
+     * This class only has static methods
+     */
+    private SearchQuery() {
+    }
+
+    /**
+     * This will get the words of a text, split the way the index splits them
+     * @param text this is the text
+     * @return the words in lower case
+     */
+    public static List<String> getTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                term.appendCodePoint(codePoint);
+            }
+            else if (term.length() > 0) {
+                terms.add(term.toString().toLowerCase(Locale.ROOT));
+                term.setLength(0);
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    /**
+     * This will build the MATCH expression for what the user typed. Every
+     * word must match, and the last one also matches as a prefix while
+     * it is still being typed
+     * @param input this is the text the user typed
+     * @return the expression, or null if there is nothing to search for
+     */
+    public static String toMatchExpression(String input) {
+        List<String> terms = getTerms(input);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        // A word is finished once the user typed something after it
+        boolean typing = Character.isLetterOrDigit(input.codePointBefore(input.length()))
+                && terms.size() <= MAX_TERMS;
+        if (terms.size() > MAX_TERMS) {
+            terms = terms.subList(0, MAX_TERMS);
+        }
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0) {
+                expression.append(' ');
+            }
+            // Quoted terms are never read as operators
+            expression.append('"').append(terms.get(i));
+            if (typing && i == terms.size() - 1) {
+                expression.append('*');
+            }
+            expression.append('"');
+        }
+        return expression.toString();
+    }
+
+    /**
+     * This will remove the match markers from a snippet
+     * @param snippet this is the snippet with its matches marked
+     * @param highlights this is where the start and end of every match are added
+     * @return the snippet without the markers
+     */
+    public static String stripMarkers(String snippet, List<int[]> highlights) {
+        StringBuilder text = new StringBuilder(snippet.length());
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == MATCH_START.charAt(0)) {
+                start = text.length();
+            }
+            else if (c == MATCH_END.charAt(0)) {
+                if (start >= 0 && text.length() > start) {
+                    highlights.add(new int[] {start, text.length()});
+                }
+                start = -1;
+            }
+            else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
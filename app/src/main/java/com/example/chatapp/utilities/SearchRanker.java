@@ -0,0 +1,92 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.SearchResult;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the Search Ranker for the full-text message index. The FTS4
+ * index on Android has no ranking function, so it returns its match
+ * statistics and the BM25 score is worked out here from them
+ */
+public final class SearchRanker {
+    // This is the matchinfo format the score is read from
+    public static final String MATCHINFO_FORMAT = "pcnalx";
+    // These are the usual BM25 constants
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Words in most messages still count for a little
+    private static final double MIN_IDF = 1e-6;
+
+    /**
+     * This class only has static methods
+     */
+    private SearchRanker() {
+    }
+
+    /**
+     * This will read a matchinfo blob, it is unsigned ints in the byte
+     * order of the device
+     * @param blob this is the matchinfo blob
+     * @return the values of the blob
+     */
+    public static int[] readMatchinfo(byte[] blob) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob).order(ByteOrder.nativeOrder());
+        int[] matchinfo = new int[blob.length / 4];
+        buffer.asIntBuffer().get(matchinfo);
+        return matchinfo;
+    }
+
+    /**
+     * This will score a row with BM25 from its matchinfo
+     * @param matchinfo this is the matchinfo of the row in the pcnalx format
+     * @param weights this is the weight of every column, unindexed columns weigh 0
+     * @return the score, higher is better
+     */
+    public static double score(int[] matchinfo, double[] weights) {
+        int phrases = matchinfo[0];
+        int columns = matchinfo[1];
+        long rows = matchinfo[2] & 0xFFFFFFFFL;
+        int averageLengths = 3;
+        int lengths = averageLengths + columns;
+        int hits = lengths + columns;
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                double weight = column < weights.length ? weights[column] : 0;
+                int index = hits + 3 * (phrase * columns + column);
+                long rowHits = matchinfo[index] & 0xFFFFFFFFL;
+                if (weight == 0 || rowHits == 0) {
+                    continue;
+                }
+                long rowsWithHits = matchinfo[index + 2] & 0xFFFFFFFFL;
+                double idf = Math.max(MIN_IDF,
+                        Math.log((rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5)));
+                double averageLength = Math.max(1, matchinfo[averageLengths + column] & 0xFFFFFFFFL);
+                double length = matchinfo[lengths + column] & 0xFFFFFFFFL;
+                score += weight * idf * rowHits * (K1 + 1)
+                        / (rowHits + K1 * (1 - B + B * length / averageLength));
+            }
+        }
+        return score;
+    }
+
+    /**
+     * This will order results by score, newer first when they tie
+     * @param results these are the scored results
+     * @param limit this is the most results to keep
+     * @return the best results, best first
+     */
+    public static List<SearchResult> rank(List<SearchResult> results, int limit) {
+        List<SearchResult> ranked = new ArrayList<>(results);
+        Collections.sort(ranked, (first, second) -> {
+            int byScore = Double.compare(second.score, first.score);
+            return byScore != 0 ? byScore : Long.compare(second.timestamp, first.timestamp);
+        });
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the Preference Store backed by SharedPreferences, every
+ * batch of changes is one editor and one asynchronous disk write
+ */
+public class SharedPreferencesStore implements PreferenceStore {
+    // Instance variables
+    private final SharedPreferences sharedPreferences;
+
+    /**
+     * This is the constructor
+     * @param context this is the current Context to get preference data from
+     */
+    public SharedPreferencesStore(Context context) {
+        sharedPreferences = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * This is the override for the load method
+     * @return the stored preferences
+     */
+    @Override
+    public Map<String, Object> load() {
+        return new HashMap<>(sharedPreferences.getAll());
+    }
+
+    /**
+     * This is the override for the save method
+     * @param changes this is the changed preferences by key, a null value removes the key
+     * @param clear this is true when every preference is removed before the changes
+     */
+    @Override
+    public void save(Map<String, Object> changes, boolean clear) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        if (clear) {
+            editor.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            Object value = change.getValue();
+            if (value instanceof Boolean) {
+                editor.putBoolean(change.getKey(), (Boolean) value);
+            }
+            else if (value instanceof String) {
+                editor.putString(change.getKey(), (String) value);
+            }
+            else {
+                editor.remove(change.getKey());
+            }
+        }
+        // apply() hands the write to a background thread
+        editor.apply();
+    }
+}
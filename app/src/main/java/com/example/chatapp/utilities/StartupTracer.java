@@ -0,0 +1,97 @@
+package com.example.chatapp.utilities;
+
+import android.app.Activity;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is the Startup Tracer for the launch critical path. Each init
+ * step runs in a named section that shows up in system traces and is
+ * timed for the startup report. The report is logged under the tag
+ * Startup once per process, when the first frame is drawn and when
+ * the content is fully drawn. It is only used from the main thread
+ */
+public final class StartupTracer {
+    // This is the log tag of the report
+    private static final String TAG = "Startup";
+    // These are the open sections and their start times
+    private static final Deque<String> sectionNames = new ArrayDeque<>();
+    private static final Deque<Long> sectionStarts = new ArrayDeque<>();
+    // These are the durations of the finished sections in milliseconds
+    private static final Map<String, Long> durations = new LinkedHashMap<>();
+    // These are set once the reports are logged
+    private static boolean initialDisplayReported, fullyDrawnReported;
+
+    /**
+     * This class only has static methods
+     */
+    private StartupTracer() {
+    }
+
+    /**
+     * This will start a named section
+     * @param name this is the name of the step
+     */
+    public static void beginSection(String name) {
+        Trace.beginSection(name);
+        sectionNames.push(name);
+        sectionStarts.push(SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * This will end the section that was started last
+     */
+    public static void endSection() {
+        Trace.endSection();
+        if (sectionNames.isEmpty()) {
+            return;
+        }
+        long elapsedNanos = SystemClock.elapsedRealtimeNanos() - sectionStarts.pop();
+        String name = sectionNames.pop();
+        // Only the startup is reported, later sections are only traced
+        if (!fullyDrawnReported) {
+            Long previous = durations.get(name);
+            durations.put(name, (previous != null ? previous : 0) + elapsedNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * This will report the time from process start to the first frame
+     */
+    public static void reportInitialDisplay() {
+        if (initialDisplayReported) {
+            return;
+        }
+        initialDisplayReported = true;
+        Log.i(TAG, "Time to initial display: " + getSinceProcessStart() + " ms " + durations);
+    }
+
+    /**
+     * This will report the time from process start until the content is shown
+     * @param activity this is the Activity that is fully drawn
+     */
+    public static void reportFullyDrawn(Activity activity) {
+        if (fullyDrawnReported) {
+            return;
+        }
+        fullyDrawnReported = true;
+        activity.reportFullyDrawn();
+        Log.i(TAG, "Time to full display: " + getSinceProcessStart() + " ms " + durations);
+        durations.clear();
+    }
+
+    /**
+     * This will get the time since the process started
+     * @return the time in milliseconds
+     */
+    private static long getSinceProcessStart() {
+        return SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+    }
+}
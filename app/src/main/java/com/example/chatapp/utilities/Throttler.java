@@ -0,0 +1,137 @@
+package com.example.chatapp.utilities;
+
+/**
+ * This is the Throttler for writes that can be offered far more often
+ * than they should be made, like a typing state on every keystroke.
+ * The first value is written straight away, later values within the
+ * interval are coalesced into one trailing write of the latest value
+ * @param <T> this is the type of the value
+ */
+public class Throttler<T> {
+    /**
+     * This is the clock the interval is measured with
+     */
+    public interface Clock {
+        // Now in milliseconds
+        long now();
+    }
+
+    /**
+     * This is what runs the trailing write later
+     */
+    public interface Scheduler {
+        // Run the task after the delay
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * This is the write
+     * @param <T> this is the type of the value
+     */
+    public interface Action<T> {
+        // Write the value
+        void run(T value);
+    }
+
+    // These are the private variables
+    private final long intervalMillis;
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final Action<T> action;
+    private long lastRunMillis;
+    private boolean ran, trailingScheduled, hasPending;
+    private T pending;
+
+    /**
+     * This is the constructor
+     * @param intervalMillis this is the shortest time between two writes
+     * @param clock this is the clock the interval is measured with
+     * @param scheduler this is what runs the trailing write
+     * @param action this is the write
+     */
+    public Throttler(long intervalMillis, Clock clock, Scheduler scheduler, Action<T> action) {
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.action = action;
+    }
+
+    /**
+     * This will offer a value, it is written now if the last write was
+     * long enough ago and at the end of the interval otherwise
+     * @param value this is the value
+     */
+    public void offer(T value) {
+        boolean runNow;
+        long delay = 0;
+        synchronized (this) {
+            long now = clock.now();
+            // Leading edge, nothing was written within the interval
+            runNow = !trailingScheduled && (!ran || now - lastRunMillis >= intervalMillis);
+            if (runNow) {
+                ran = true;
+                lastRunMillis = now;
+            }
+            // Trailing edge, keep only the latest value
+            else {
+                pending = value;
+                hasPending = true;
+                if (!trailingScheduled) {
+                    trailingScheduled = true;
+                    delay = Math.max(0, lastRunMillis + intervalMillis - now);
+                }
+                else {
+                    return;
+                }
+            }
+        }
+        if (runNow) {
+            action.run(value);
+        }
+        else {
+            scheduler.schedule(this::runTrailing, delay);
+        }
+    }
+
+    /**
+     * This will write the waiting value now instead of at the end of the interval
+     */
+    public void flush() {
+        T value;
+        synchronized (this) {
+            if (!hasPending) {
+                return;
+            }
+            value = take();
+        }
+        action.run(value);
+    }
+
+    /**
+     * This will write the waiting value at the end of the interval
+     */
+    private void runTrailing() {
+        T value;
+        synchronized (this) {
+            trailingScheduled = false;
+            if (!hasPending) {
+                return;
+            }
+            value = take();
+        }
+        action.run(value);
+    }
+
+    /**
+     * This will take the waiting value and count it as written now
+     * @return the waiting value
+     */
+    private T take() {
+        T value = pending;
+        pending = null;
+        hasPending = false;
+        ran = true;
+        lastRunMillis = clock.now();
+        return value;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.chatapp.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * This is the Timestamp Formatter for chat messages. Timestamps are
+ * formatted when a row is bound instead of when a message is parsed,
+ * with one reusable formatter per thread and a small cache of the
+ * minutes and days that were formatted recently
+ */
+public final class TimestampFormatter {
+    // These are the time constants
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // This is the number of recent minutes and days kept per thread
+    private static final int CACHE_SIZE = 64;
+    // This is the time zone, read once like the formatters below
+    private static final TimeZone timeZone = TimeZone.getDefault();
+    // These are the formatters, SimpleDateFormat is not thread safe
+    private static final ThreadLocal<SimpleDateFormat> timeFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("hh:mm a", Locale.getDefault());
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> dayFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        }
+    };
+    // These are the per thread caches of formatted minutes and days
+    private static final ThreadLocal<Map<Long, String>> timeCache = new ThreadLocal<Map<Long, String>>() {
+        @Override
+        protected Map<Long, String> initialValue() {
+            return newCache();
+        }
+    };
+    private static final ThreadLocal<Map<Long, String>> dayCache = new ThreadLocal<Map<Long, String>>() {
+        @Override
+        protected Map<Long, String> initialValue() {
+            return newCache();
+        }
+    };
+
+    /**
+     * This class only has static methods
+     */
+    private TimestampFormatter() {
+    }
+
+    /**
+     * This will format the time of day of a timestamp
+     * @param millis this is the timestamp in epoch milliseconds
+     * @return the time, like 04:05 PM
+     */
+    public static String formatTime(long millis) {
+        Long minute = Math.floorDiv(millis, MILLIS_PER_MINUTE);
+        Map<Long, String> cache = timeCache.get();
+        String formatted = cache.get(minute);
+        if (formatted == null) {
+            formatted = timeFormat.get().format(new Date(millis));
+            cache.put(minute, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * This will format the day of a timestamp
+     * @param millis this is the timestamp in epoch milliseconds
+     * @return the day, like Jan 05, 2025
+     */
+    public static String formatDay(long millis) {
+        Long day = getDayKey(millis);
+        Map<Long, String> cache = dayCache.get();
+        String formatted = cache.get(day);
+        if (formatted == null) {
+            formatted = dayFormat.get().format(new Date(millis));
+            cache.put(day, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * This will get the local day a timestamp falls on, so two
+     * timestamps can be checked for the same day without formatting
+     * @param millis this is the timestamp in epoch milliseconds
+     * @return the number of the local day
+     */
+    public static long getDayKey(long millis) {
+        return Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * This will make a small cache that drops the least recently used entry
+     * @return the new cache
+     */
+    private static Map<Long, String> newCache() {
+        return new LinkedHashMap<Long, String>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the loaded part of the User Directory, in the order the
+ * database pages it. Pages are loaded from the start, so until the
+ * last page the loaded part ends at a cursor. Changed users are merged
+ * in place, and a user that now sorts past the cursor is dropped,
+ * because the page after the cursor brings them back
+ */
+public class UserDirectory {
+    // This is the order of the pages, the name key then the user ID
+    public static final Comparator<User> NAME_ORDER = (first, second) -> {
+        int byName = UserTrie.getNameKey(first).compareTo(UserTrie.getNameKey(second));
+        return byName != 0 ? byName : first.userid.compareTo(second.userid);
+    };
+
+    // These are the private variables
+    private final List<User> users = new ArrayList<>();
+    private final Map<String, User> usersByID = new HashMap<>();
+    private boolean complete;
+
+    /**
+     * This will get the loaded users
+     * @return a copy of the users in name order
+     */
+    public List<User> getUsers() {
+        return new ArrayList<>(users);
+    }
+
+    /**
+     * This will get the last loaded user, the next page starts after them
+     * @return the last user, or null if none are loaded
+     */
+    public User getLast() {
+        return users.isEmpty() ? null : users.get(users.size() - 1);
+    }
+
+    /**
+     * This will get the number of loaded users
+     * @return the number of users
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * This will check whether a user is loaded
+     * @param userID this is the ID of the user
+     * @return true if the user is in the loaded part
+     */
+    public boolean contains(String userID) {
+        return usersByID.containsKey(userID);
+    }
+
+    /**
+     * This will check whether the last page is loaded
+     * @return true if every user is loaded
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * This will set whether the last page is loaded
+     * @param complete this is true once every user is loaded
+     */
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    /**
+     * This will add a page of users, a user that is already loaded is replaced
+     * @param page these are the users of the page
+     */
+    public void addPage(List<User> page) {
+        for (User user : page) {
+            remove(user.userid);
+            insert(user);
+        }
+    }
+
+    /**
+     * This will merge users that changed. Only the loaded part is kept,
+     * so a change past the cursor is left for its page
+     * @param changed these are the changed users
+     * @return the IDs of loaded users that moved past the cursor and were dropped
+     */
+    public List<String> applyChanges(List<User> changed) {
+        List<String> dropped = new ArrayList<>();
+        // The cursor is where the loaded part ended before the changes
+        User cursor = complete ? null : getLast();
+        for (User user : changed) {
+            boolean loaded = remove(user.userid);
+            if (complete || (cursor != null && NAME_ORDER.compare(user, cursor) <= 0)) {
+                insert(user);
+            }
+            else if (loaded) {
+                dropped.add(user.userid);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * This will insert a user at their place in name order
+     * @param user this is the user
+     */
+    private void insert(User user) {
+        int position = Collections.binarySearch(users, user, NAME_ORDER);
+        users.add(position < 0 ? -position - 1 : position, user);
+        usersByID.put(user.userid, user);
+    }
+
+    /**
+     * This will remove a loaded user
+     * @param userID this is the ID of the user
+     * @return true if the user was loaded
+     */
+    private boolean remove(String userID) {
+        User previous = usersByID.remove(userID);
+        if (previous == null) {
+            return false;
+        }
+        users.remove(Collections.binarySearch(users, previous, NAME_ORDER));
+        return true;
+    }
+}
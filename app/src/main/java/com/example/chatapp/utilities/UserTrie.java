@@ -0,0 +1,299 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.User;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * This is a prefix Trie over the users that are already loaded, used
+ * for instant as-you-type filtering. Every user is indexed under the
+ * normalized words of their name and their email, and a query matches
+ * a user when every word of it starts one of their words. The server
+ * search matches the same way
+ */
+public class UserTrie {
+    // This is the longest word prefix stored for search, longer words are matched locally
+    public static final int MAX_SEARCH_PREFIX = 20;
+    // These are the patterns normalize uses, compiled once
+    private static final Pattern MARKS = Pattern.compile("\\p{M}");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    /**
+     * This is a node of the trie
+     */
+    private static class Node {
+        // These are the child nodes by character
+        final HashMap<Character, Node> children = new HashMap<>();
+        // These are the users whose word ends at this node
+        final Set<String> userIDs = new HashSet<>();
+    }
+
+    /**
+     * This is an indexed user with the keys worked out once
+     */
+    private static class Entry {
+        final User user;
+        final String nameKey;
+        final List<String> words;
+
+        Entry(User user) {
+            this.user = user;
+            this.nameKey = getNameKey(user);
+            this.words = getWords(user);
+        }
+    }
+
+    // These are the private variables
+    private final Node root = new Node();
+    private final Map<String, Entry> users = new LinkedHashMap<>();
+
+    /**
+     * This will normalize text for searching, so case and accents
+     * do not matter. The database stores its search fields the same way,
+     * so the case is folded the same in every locale
+     * @param text this is the text to normalize
+     * @return the normalized text
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return SPACES.matcher(MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+    }
+
+    /**
+     * This will add a user to the trie, replacing an older copy of them
+     * @param user this is the user to add
+     */
+    public void insert(User user) {
+        Entry entry = new Entry(user);
+        Entry previous = users.put(user.userid, entry);
+        // Only index the words again when the name or email changed
+        if (previous != null) {
+            if (previous.words.equals(entry.words)) {
+                return;
+            }
+            removeWords(previous);
+        }
+        for (String word : entry.words) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                Node child = node.children.get(word.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(word.charAt(i), child);
+                }
+                node = child;
+            }
+            node.userIDs.add(user.userid);
+        }
+    }
+
+    /**
+     * This will find the users with a word starting with every word of the query
+     * @param query this is the text the user typed
+     * @return the matching users in name order
+     */
+    public List<User> search(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            List<User> all = new ArrayList<>();
+            for (Entry entry : users.values()) {
+                all.add(entry.user);
+            }
+            return all;
+        }
+        // Intersect the matches of each word of the query
+        Set<String> matches = null;
+        for (String word : normalized.split(" ")) {
+            Set<String> wordMatches = findPrefix(word);
+            if (matches == null) {
+                matches = wordMatches;
+            }
+            else {
+                matches.retainAll(wordMatches);
+            }
+        }
+        // Sort on the keys worked out at insert, not normalized per comparison
+        List<Entry> entries = new ArrayList<>(matches.size());
+        for (String userID : matches) {
+            entries.add(users.get(userID));
+        }
+        Collections.sort(entries, (first, second) -> {
+            int byName = first.nameKey.compareTo(second.nameKey);
+            return byName != 0 ? byName : first.user.userid.compareTo(second.user.userid);
+        });
+        List<User> results = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            results.add(entry.user);
+        }
+        return results;
+    }
+
+    /**
+     * This will check whether a user matches a query the way search does
+     * @param user this is the user
+     * @param query this is the normalized query
+     * @return true if every word of the query starts a word of the user
+     */
+    public static boolean matches(User user, String query) {
+        if (query.isEmpty()) {
+            return true;
+        }
+        List<String> words = getWords(user);
+        for (String queryWord : query.split(" ")) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This will get the number of users in the trie
+     * @return the number of users
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * This will take a user out of the nodes of their words. Empty
+     * nodes are left in place, they only cost a little memory
+     * @param entry this is the indexed copy of the user
+     */
+    private void removeWords(Entry entry) {
+        for (String word : entry.words) {
+            Node node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.children.get(word.charAt(i));
+            }
+            if (node != null) {
+                node.userIDs.remove(entry.user.userid);
+            }
+        }
+    }
+
+    /**
+     * This will collect every user under a prefix
+     * @param prefix this is the normalized prefix
+     * @return the IDs of the matching users
+     */
+    private Set<String> findPrefix(String prefix) {
+        Set<String> matches = new HashSet<>();
+        // Walk down to the prefix
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        if (node == null) {
+            return matches;
+        }
+        // Collect the whole subtree
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            matches.addAll(current.userIDs);
+            for (Node child : current.children.values()) {
+                stack.push(child);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * This will get the words a user is found by
+     * @param user this is the user
+     * @return the normalized words of the name and the email
+     */
+    public static List<String> getWords(User user) {
+        List<String> words = new ArrayList<>();
+        String name = normalize(user.firstName + " " + user.lastName);
+        if (!name.isEmpty()) {
+            Collections.addAll(words, name.split(" "));
+        }
+        String email = normalize(user.email);
+        if (!email.isEmpty()) {
+            words.add(email);
+        }
+        return words;
+    }
+
+    /**
+     * This will get the longest word of a query, the one that narrows
+     * the lookup the most
+     * @param query this is the normalized query
+     * @return the longest word
+     */
+    public static String getLongestWord(String query) {
+        String longest = "";
+        for (String word : query.split(" ")) {
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * This will get every prefix of the words of a user, which the
+     * database searches with an array-contains query
+     * @param user this is the user
+     * @param maxLength this is the longest prefix kept
+     * @return the distinct prefixes
+     */
+    public static List<String> getWordPrefixes(User user, int maxLength) {
+        Set<String> prefixes = new LinkedHashSet<>();
+        for (String word : getWords(user)) {
+            for (int length = 1; length <= Math.min(word.length(), maxLength); length++) {
+                prefixes.add(word.substring(0, length));
+            }
+        }
+        return new ArrayList<>(prefixes);
+    }
+
+    /**
+     * This will build the normalized search fields of a user document,
+     * the app and the admin backfill write the same ones
+     * @param user this is the user
+     * @return the fields to store in the user document
+     */
+    public static HashMap<String, Object> getSearchFields(User user) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_NAME_SEARCH, getNameKey(user));
+        fields.put(Constants.KEY_EMAIL_SEARCH, normalize(user.email));
+        fields.put(Constants.KEY_SEARCH_PREFIXES, getWordPrefixes(user, MAX_SEARCH_PREFIX));
+        return fields;
+    }
+
+    /**
+     * This will get the key users are ordered by, the same as the directory
+     * @param user this is the user
+     * @return the normalized full name
+     */
+    public static String getNameKey(User user) {
+        return normalize(user.firstName + " " + user.lastName);
+    }
+}
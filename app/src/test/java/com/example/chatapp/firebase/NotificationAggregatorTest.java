@@ -0,0 +1,260 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.utilities.Constants;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the burst tolerant NotificationAggregator
+ */
+public class NotificationAggregatorTest {
+    // Number of pushes in the burst
+    private static final int PUSHES = 1_000;
+    // Number of conversations the burst is spread over
+    private static final int CONVERSATIONS = 3;
+    // How long a burst is collected before a redraw
+    private static final long REDRAW_DELAY = 1_000;
+
+    /**
+     * Scheduler that runs tasks on a virtual clock
+     */
+    private static class FakeScheduler implements NotificationAggregator.Scheduler {
+        private static class Task {
+            final long time;
+            final long order;
+            final Runnable runnable;
+
+            Task(long time, long order, Runnable runnable) {
+                this.time = time;
+                this.order = order;
+                this.runnable = runnable;
+            }
+        }
+
+        final PriorityQueue<Task> tasks = new PriorityQueue<>((first, second) ->
+                first.time != second.time ? Long.compare(first.time, second.time)
+                        : Long.compare(first.order, second.order));
+        long now;
+        long scheduled;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(new Task(now + delayMillis, scheduled++, task));
+        }
+
+        void advanceTo(long time) {
+            while (!tasks.isEmpty() && tasks.peek().time <= time) {
+                Task task = tasks.poll();
+                now = task.time;
+                task.runnable.run();
+            }
+            now = time;
+        }
+    }
+
+    /**
+     * Sink that counts what would be posted and scheduled
+     */
+    private static class CountingSink implements NotificationAggregator.Sink {
+        final Map<String, Integer> lastUnread = new HashMap<>();
+        int updates;
+        int syncs;
+        int cancels;
+        int maxLines;
+
+        @Override
+        public void showConversation(String conversationID, List<NotificationAggregator.Line> lines,
+                                     int unreadCount) {
+            updates++;
+            maxLines = Math.max(maxLines, lines.size());
+            lastUnread.put(conversationID, unreadCount);
+        }
+
+        @Override
+        public void syncConversation(String conversationID) {
+            syncs++;
+        }
+
+        @Override
+        public void cancelConversation(String conversationID) {
+            cancels++;
+            lastUnread.remove(conversationID);
+        }
+    }
+
+    /**
+     * Store that keeps the saved inboxes in a map, like a file would
+     */
+    private static class MapStore implements NotificationAggregator.Store {
+        final Map<String, NotificationAggregator.Saved> saved = new HashMap<>();
+
+        @Override
+        public Map<String, NotificationAggregator.Saved> load() {
+            return new HashMap<>(saved);
+        }
+
+        @Override
+        public void save(String conversationID, NotificationAggregator.Saved inbox) {
+            saved.put(conversationID, inbox);
+        }
+
+        @Override
+        public void remove(String conversationID) {
+            saved.remove(conversationID);
+        }
+    }
+
+    /**
+     * Build the data payload of a synthetic push
+     */
+    private static Map<String, String> push(int index, long time) {
+        Map<String, String> data = new HashMap<>();
+        data.put(Constants.KEY_CONVERSATION_ID, "conversation" + (index % CONVERSATIONS));
+        data.put(Constants.KEY_MESSAGE_ID, "message" + index);
+        data.put(Constants.KEY_SENDER_ID, "sender" + (index % CONVERSATIONS));
+        data.put(Constants.KEY_SENDER_NAME, "Sender " + (index % CONVERSATIONS));
+        data.put(Constants.KEY_MESSAGE, "message " + index);
+        data.put(Constants.KEY_TIMESTAMP, String.valueOf(time));
+        return data;
+    }
+
+    /**
+     * 1000 pushes spread over ten seconds give a bounded number of
+     * notification updates and sync jobs
+     */
+    @Test
+    public void burstIsCoalesced() {
+        FakeScheduler scheduler = new FakeScheduler();
+        CountingSink sink = new CountingSink();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, sink, REDRAW_DELAY);
+        long spacing = 10;
+        for (int i = 0; i < PUSHES; i++) {
+            scheduler.advanceTo(i * spacing);
+            aggregator.onMessage(push(i, scheduler.now));
+        }
+        scheduler.advanceTo(Long.MAX_VALUE);
+
+        // At most one update per conversation per redraw window
+        long windows = PUSHES * spacing / REDRAW_DELAY + 1;
+        assertTrue("updates: " + sink.updates, sink.updates <= CONVERSATIONS * windows);
+        assertEquals(sink.updates, sink.syncs);
+        assertEquals(sink.updates, scheduler.scheduled);
+        // The inbox stays bounded and the count covers every push
+        assertTrue(sink.maxLines <= NotificationAggregator.MAX_LINES);
+        int unread = 0;
+        for (int count : sink.lastUnread.values()) {
+            unread += count;
+        }
+        assertEquals(PUSHES, unread);
+    }
+
+    /**
+     * 1000 pushes at once give one update per conversation
+     */
+    @Test
+    public void instantBurstIsOneUpdatePerConversation() {
+        FakeScheduler scheduler = new FakeScheduler();
+        CountingSink sink = new CountingSink();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, sink, REDRAW_DELAY);
+        for (int i = 0; i < PUSHES; i++) {
+            aggregator.onMessage(push(i, 0));
+        }
+        scheduler.advanceTo(Long.MAX_VALUE);
+        assertEquals(CONVERSATIONS, sink.updates);
+        assertEquals(CONVERSATIONS, sink.syncs);
+    }
+
+    /**
+     * The open conversation is not notified, and opening one drops its inbox
+     */
+    @Test
+    public void activeConversationIsSkipped() {
+        FakeScheduler scheduler = new FakeScheduler();
+        CountingSink sink = new CountingSink();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, sink, REDRAW_DELAY);
+        aggregator.onMessage(push(1, 0));
+        aggregator.setActiveConversation("conversation1");
+        aggregator.onMessage(push(1, 0));
+        scheduler.advanceTo(Long.MAX_VALUE);
+        assertEquals(0, sink.updates);
+        assertEquals(new ArrayList<String>(), new ArrayList<>(sink.lastUnread.keySet()));
+    }
+
+    /**
+     * A dismissed notification starts again from the next message
+     */
+    @Test
+    public void dismissedConversationStartsOver() {
+        FakeScheduler scheduler = new FakeScheduler();
+        CountingSink sink = new CountingSink();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, sink, REDRAW_DELAY);
+        aggregator.onMessage(push(1, 0));
+        aggregator.onMessage(push(4, 0));
+        scheduler.advanceTo(REDRAW_DELAY);
+        assertEquals(Integer.valueOf(2), sink.lastUnread.get("conversation1"));
+
+        aggregator.onDismissed("conversation1");
+        aggregator.onMessage(push(7, REDRAW_DELAY));
+        scheduler.advanceTo(Long.MAX_VALUE);
+        assertEquals(Integer.valueOf(1), sink.lastUnread.get("conversation1"));
+    }
+
+    /**
+     * Reading a conversation drops its read lines and removes the
+     * notification once every line is read
+     */
+    @Test
+    public void readConversationIsCleared() {
+        FakeScheduler scheduler = new FakeScheduler();
+        CountingSink sink = new CountingSink();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, sink, REDRAW_DELAY);
+        for (int i = 0; i < 3; i++) {
+            aggregator.onMessage(push(1 + i * CONVERSATIONS, i * 100));
+        }
+        scheduler.advanceTo(Long.MAX_VALUE);
+        assertEquals(Integer.valueOf(3), sink.lastUnread.get("conversation1"));
+
+        // Nothing read yet changes nothing
+        aggregator.onRead("conversation1", -1);
+        assertEquals(1, sink.updates);
+        // Reading the first two leaves the last one
+        aggregator.onRead("conversation1", 100);
+        assertEquals(Integer.valueOf(1), sink.lastUnread.get("conversation1"));
+        aggregator.onRead("conversation1", 200);
+        assertEquals(1, sink.cancels);
+        assertFalse(sink.lastUnread.containsKey("conversation1"));
+    }
+
+    /**
+     * A new process carries on from the saved inboxes
+     */
+    @Test
+    public void inboxesSurviveTheProcess() {
+        FakeScheduler scheduler = new FakeScheduler();
+        MapStore store = new MapStore();
+        NotificationAggregator aggregator = new NotificationAggregator(scheduler, new CountingSink(),
+                REDRAW_DELAY, store);
+        aggregator.onMessage(push(1, 0));
+        aggregator.onMessage(push(2, 0));
+        scheduler.advanceTo(Long.MAX_VALUE);
+
+        CountingSink sink = new CountingSink();
+        NotificationAggregator restarted = new NotificationAggregator(scheduler, sink, REDRAW_DELAY, store);
+        restarted.onMessage(push(4, scheduler.now));
+        scheduler.advanceTo(Long.MAX_VALUE);
+        assertEquals(Integer.valueOf(2), sink.lastUnread.get("conversation1"));
+        assertEquals(2, sink.maxLines);
+        // Opening a conversation drops its saved inbox too
+        restarted.setActiveConversation("conversation2");
+        assertFalse(store.saved.containsKey("conversation2"));
+        assertTrue(store.saved.containsKey("conversation1"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.chatapp.models;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ChatMessage
+ */
+public class ChatMessageTest {
+    // Number of message IDs to check
+    private static final int MESSAGES = 1_000_000;
+    // These are the characters of a database ID
+    private static final String ID_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /**
+     * Stable IDs follow the message ID and do not collide
+     */
+    @Test
+    public void stableIDsAreUnique() {
+        Random random = new Random(42);
+        Set<Long> stableIDs = new HashSet<>();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < MESSAGES; i++) {
+            builder.setLength(0);
+            for (int j = 0; j < 20; j++) {
+                builder.append(ID_CHARACTERS.charAt(random.nextInt(ID_CHARACTERS.length())));
+            }
+            assertTrue(stableIDs.add(ChatMessage.getStableID(builder.toString())));
+        }
+        // Similar IDs, like the ones of a test chat, are apart too
+        for (int i = 0; i < MESSAGES; i++) {
+            assertTrue(stableIDs.add(ChatMessage.getStableID("m" + i)));
+        }
+        assertEquals(ChatMessage.getStableID("abc"), ChatMessage.getStableID(new String("abc")));
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Conversation;
+import com.example.chatapp.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the InMemoryChatRepository
+ */
+public class InMemoryChatRepositoryTest {
+    // Number of messages in the large conversation
+    private static final int MESSAGES = 1_000_000;
+    // Number of messages in a page
+    private static final int PAGE_SIZE = 50;
+    // Start of the history and the gap between messages
+    private static final long START = 1_700_000_000_000L;
+    private static final long GAP = 1_000L;
+
+    /**
+     * This runs everything straight away
+     */
+    private static final InMemoryRepository.Scheduler DIRECT = (task, delayMillis) -> task.run();
+
+    /**
+     * Callback that keeps the last result
+     */
+    private static class Result<T> implements ResultCallback<T> {
+        T result;
+        Exception exception;
+        int calls;
+
+        @Override
+        public void onComplete(T result, Exception exception) {
+            this.result = result;
+            this.exception = exception;
+            calls++;
+        }
+    }
+
+    /**
+     * Listener that applies every change to a list, one after the other
+     */
+    private static class Mirror<T> implements ChangeListener<T> {
+        final List<T> items = new ArrayList<>();
+        final List<Change<T>> changes = new ArrayList<>();
+        int snapshots;
+
+        @Override
+        public void onChanges(List<Change<T>> changes, Exception exception) {
+            snapshots++;
+            for (Change<T> change : changes) {
+                this.changes.add(change);
+                if (change.type == Change.Type.ADDED) {
+                    items.add(change.newIndex, change.item);
+                }
+                else if (change.type == Change.Type.MODIFIED) {
+                    items.remove(change.oldIndex);
+                    items.add(change.newIndex, change.item);
+                }
+                else {
+                    items.remove(change.oldIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build a message between two users
+     */
+    private static ChatMessage message(String messageID, String senderID, String receiverID, long timestamp) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageID = messageID;
+        chatMessage.senderID = senderID;
+        chatMessage.receiverID = receiverID;
+        chatMessage.message = "message";
+        chatMessage.timestamp = timestamp;
+        return chatMessage;
+    }
+
+    /**
+     * Build a user
+     */
+    private static User user(String userID) {
+        User user = new User();
+        user.userid = userID;
+        user.firstName = userID;
+        user.lastName = "Test";
+        return user;
+    }
+
+    /**
+     * Pages walk a million message conversation without gaps or repeats
+     */
+    @Test
+    public void pagesMillionMessages() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        for (int i = 0; i < MESSAGES; i++) {
+            // Every second pair shares a timestamp so the ID breaks the tie
+            repository.putMessage(message(String.format("m%07d", i), "alice", "bob", START + (i / 2) * GAP));
+        }
+        String conversationID = ChatRepository.getConversationID("alice", "bob");
+        assertEquals(MESSAGES, repository.getMessageCount(conversationID));
+
+        Result<List<ChatMessage>> page = new Result<>();
+        repository.loadLatestMessages(conversationID, PAGE_SIZE, page);
+        assertEquals(PAGE_SIZE, page.result.size());
+        assertEquals(String.format("m%07d", MESSAGES - 1), page.result.get(PAGE_SIZE - 1).messageID);
+        // Walk back twenty pages
+        int expected = MESSAGES - PAGE_SIZE;
+        for (int i = 0; i < 20; i++) {
+            ChatMessage oldest = page.result.get(0);
+            assertEquals(String.format("m%07d", expected), oldest.messageID);
+            repository.loadMessagesBefore(conversationID, oldest, PAGE_SIZE, page);
+            expected -= PAGE_SIZE;
+        }
+        // And forward again from the middle of a timestamp pair
+        ChatMessage middle = message("m0500000", "alice", "bob", START + 250_000 * GAP);
+        repository.loadMessagesAfter(conversationID, middle, PAGE_SIZE, page);
+        assertEquals("m0500001", page.result.get(0).messageID);
+        assertEquals("m0500050", page.result.get(PAGE_SIZE - 1).messageID);
+    }
+
+    /**
+     * A listener on a million message conversation gets the right
+     * positions for rewritten and new messages in the middle of its window
+     */
+    @Test
+    public void listenerFollowsMillionMessages() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        for (int i = 0; i < MESSAGES; i++) {
+            repository.putMessage(message(String.format("m%07d", i), "alice", "bob", START + i * GAP));
+        }
+        String conversationID = ChatRepository.getConversationID("alice", "bob");
+        Mirror<ChatMessage> mirror = new Mirror<>();
+        repository.listenMessages(conversationID, START + (MESSAGES / 2) * GAP, mirror);
+        assertEquals(MESSAGES / 2, mirror.items.size());
+
+        // Move messages later and put new ones between the old ones
+        for (int i = 0; i < 1_000; i++) {
+            int moved = MESSAGES / 2 + i * 400;
+            repository.putMessage(message(String.format("m%07d", moved), "alice", "bob",
+                    START + (moved + 250) * GAP + 1));
+            repository.putMessage(message(String.format("n%07d", i), "bob", "alice",
+                    START + (MESSAGES / 2 + i * 300) * GAP + 1));
+        }
+        assertEquals(MESSAGES / 2 + 1_000, mirror.items.size());
+        Result<List<ChatMessage>> window = new Result<>();
+        repository.loadMessagesAfter(conversationID,
+                message("", "alice", "bob", START + (MESSAGES / 2) * GAP - 1), MESSAGES, window);
+        assertEquals(window.result.size(), mirror.items.size());
+        for (int i = 0; i < window.result.size(); i++) {
+            assertEquals(window.result.get(i).messageID, mirror.items.get(i).messageID);
+        }
+    }
+
+    /**
+     * A listener sees its window, new messages and rewritten messages
+     */
+    @Test
+    public void listenerFollowsWrites() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        for (int i = 0; i < 100; i++) {
+            repository.putMessage(message("old" + i, "alice", "bob", START + i * GAP));
+        }
+        String conversationID = ChatRepository.getConversationID("bob", "alice");
+        Mirror<ChatMessage> mirror = new Mirror<>();
+        Registration registration = repository.listenMessages(conversationID, START + 50 * GAP, mirror);
+        assertEquals(50, mirror.items.size());
+
+        // A message before the window is not reported
+        repository.putMessage(message("older", "bob", "alice", START - GAP));
+        assertEquals(1, mirror.snapshots);
+        // A sent batch is one snapshot, stamped with the server time
+        repository.sendMessages(Arrays.asList(message("new1", "bob", "alice", 0),
+                message("new2", "alice", "bob", 0)), null);
+        assertEquals(2, mirror.snapshots);
+        assertEquals(52, mirror.items.size());
+        assertEquals("new2", mirror.items.get(51).messageID);
+        assertTrue(mirror.items.get(51).timestamp > START + 100 * GAP);
+        // Sending a message again rewrites it instead of duplicating it
+        repository.putMessage(message("old60", "alice", "bob", START + 60 * GAP));
+        assertEquals(52, mirror.items.size());
+        assertEquals(Change.Type.MODIFIED, mirror.changes.get(mirror.changes.size() - 1).type);
+        // Nothing arrives after the listener is removed
+        registration.remove();
+        repository.putMessage(message("late", "bob", "alice", START + 200 * GAP));
+        assertEquals(52, mirror.items.size());
+    }
+
+    /**
+     * The recent conversations stay newest first within the limit
+     */
+    @Test
+    public void conversationsFollowNewestMessage() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        List<String> partners = Arrays.asList("bob", "carol", "dave");
+        for (String partner : partners) {
+            repository.openConversation(user("alice"), user(partner), null);
+            repository.sendMessages(Collections.singletonList(message(repository.newMessageID(),
+                    partner, "alice", 0)), null);
+        }
+        Mirror<Conversation> mirror = new Mirror<>();
+        repository.listenConversations("alice", 2, mirror);
+        assertEquals(2, mirror.items.size());
+
+        // The oldest conversation comes back to the top and pushes another out
+        for (String partner : Arrays.asList("bob", "carol", "bob", "dave")) {
+            repository.sendMessages(Collections.singletonList(message(repository.newMessageID(),
+                    partner, "alice", 0)), null);
+            assertEquals(partner, mirror.items.get(0).partnerID);
+            assertEquals(2, mirror.items.size());
+            assertNotEquals(mirror.items.get(0).conversationID, mirror.items.get(1).conversationID);
+        }
+        // Unread counts add up and reading clears them
+        assertEquals(2, mirror.items.get(0).unreadCount);
+        assertEquals("dave", mirror.items.get(0).partnerFirstName);
+        repository.markConversationRead("alice", mirror.items.get(0).conversationID, null);
+        assertEquals(0, mirror.items.get(0).unreadCount);
+    }
+
+    /**
+     * A resent message keeps its first time and is not counted twice
+     */
+    @Test
+    public void resendKeepsFirstWrite() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        String conversationID = ChatRepository.getConversationID("alice", "bob");
+        Mirror<ChatMessage> messages = new Mirror<>();
+        repository.listenMessages(conversationID, 0, messages);
+        Mirror<Conversation> conversations = new Mirror<>();
+        repository.listenConversations("alice", PAGE_SIZE, conversations);
+        repository.sendMessages(Collections.singletonList(message("m1", "bob", "alice", 0)), null);
+        long firstTime = messages.items.get(0).timestamp;
+
+        // The first attempt landed, so only the new message is written
+        repository.resendMessages(Arrays.asList(message("m1", "bob", "alice", 0),
+                message("m2", "bob", "alice", 0)), null);
+        assertEquals(2, messages.items.size());
+        assertEquals("m1", messages.items.get(0).messageID);
+        assertEquals(firstTime, messages.items.get(0).timestamp);
+        assertTrue(messages.items.get(1).timestamp > firstTime);
+        assertEquals(2, conversations.items.get(0).unreadCount);
+    }
+
+    /**
+     * Sending a stored message again or reading a read chat changes no entry
+     */
+    @Test
+    public void entriesAreWrittenOnce() {
+        InMemoryChatRepository repository = new InMemoryChatRepository(DIRECT);
+        repository.openConversation(user("alice"), user("bob"), null);
+        Mirror<Conversation> conversations = new Mirror<>();
+        repository.listenConversations("alice", PAGE_SIZE, conversations);
+        repository.sendMessages(Collections.singletonList(message("m1", "bob", "alice", 0)), null);
+        repository.sendMessages(Collections.singletonList(message("m1", "bob", "alice", 0)), null);
+        assertEquals(1, conversations.items.get(0).unreadCount);
+        int snapshots = conversations.snapshots;
+
+        repository.markConversationRead("alice", conversations.items.get(0).conversationID, null);
+        assertEquals(0, conversations.items.get(0).unreadCount);
+        assertEquals(snapshots + 1, conversations.snapshots);
+        // Neither a second read nor opening the current chat writes anything
+        repository.markConversationRead("alice", conversations.items.get(0).conversationID, null);
+        repository.openConversation(user("alice"), user("bob"), null);
+        assertEquals(snapshots + 1, conversations.snapshots);
+    }
+
+    /**
+     * Results wait for the latency and fail while a failure is set
+     */
+    @Test
+    public void latencyAndFailures() {
+        List<Runnable> waiting = new ArrayList<>();
+        List<Long> delays = new ArrayList<>();
+        InMemoryChatRepository repository = new InMemoryChatRepository((task, delayMillis) -> {
+            waiting.add(task);
+            delays.add(delayMillis);
+        });
+        repository.setLatency(300);
+        Result<Void> sent = new Result<>();
+        repository.sendMessages(Collections.singletonList(message("m", "alice", "bob", 0)), sent);
+        assertEquals(0, sent.calls);
+        assertEquals(Long.valueOf(300), delays.get(0));
+        waiting.remove(0).run();
+        assertEquals(1, sent.calls);
+        assertNull(sent.exception);
+
+        repository.setFailure(new IllegalStateException("offline"));
+        Result<List<ChatMessage>> page = new Result<>();
+        repository.loadLatestMessages(ChatRepository.getConversationID("alice", "bob"), PAGE_SIZE, page);
+        waiting.remove(0).run();
+        assertNull(page.result);
+        assertTrue(page.exception instanceof IllegalStateException);
+    }
+}
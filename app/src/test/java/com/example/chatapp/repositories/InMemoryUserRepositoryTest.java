@@ -0,0 +1,230 @@
+package com.example.chatapp.repositories;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.UserTrie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the InMemoryUserRepository
+ */
+public class InMemoryUserRepositoryTest {
+    // Number of users in the directory
+    private static final int USERS = 100_000;
+    // Number of users in a page
+    private static final int PAGE_SIZE = 100;
+    // These are the names the users are made from
+    private static final String[] FIRST_NAMES = {"Josh", "José", "Anna", "Ben", "Chloé"};
+
+    /**
+     * Callback that keeps the last result
+     */
+    private static class Result<T> implements ResultCallback<T> {
+        T result;
+        Exception exception;
+
+        @Override
+        public void onComplete(T result, Exception exception) {
+            this.result = result;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Build a directory of users
+     */
+    private static InMemoryUserRepository directory() {
+        InMemoryUserRepository repository = new InMemoryUserRepository((task, delayMillis) -> task.run());
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.userid = "user" + i;
+            user.firstName = FIRST_NAMES[i % FIRST_NAMES.length];
+            user.lastName = "Smith" + (i % 1_000);
+            user.email = "user" + i + "@example.com";
+            repository.putUser(user);
+        }
+        return repository;
+    }
+
+    /**
+     * Paging reads every user once, in name order
+     */
+    @Test
+    public void pagesWholeDirectory() {
+        InMemoryUserRepository repository = directory();
+        assertEquals(USERS, repository.getUserCount());
+        Set<String> seen = new HashSet<>();
+        Result<List<User>> page = new Result<>();
+        User last = null;
+        String lastKey = "";
+        do {
+            repository.loadUsers(last, PAGE_SIZE, page);
+            for (User user : page.result) {
+                assertTrue(seen.add(user.userid));
+                String key = UserTrie.getNameKey(user);
+                assertTrue(key.compareTo(lastKey) >= 0);
+                lastKey = key;
+            }
+            if (!page.result.isEmpty()) {
+                last = page.result.get(page.result.size() - 1);
+            }
+        }
+        while (page.result.size() == PAGE_SIZE);
+        assertEquals(USERS, seen.size());
+    }
+
+    /**
+     * Search matches name and email word prefixes, ignoring accents
+     */
+    @Test
+    public void searchesByPrefix() {
+        InMemoryUserRepository repository = directory();
+        Result<List<User>> result = new Result<>();
+        repository.searchUsers("JOSE SMITH12", PAGE_SIZE, result);
+        assertFalse(result.result.isEmpty());
+        for (User user : result.result) {
+            assertEquals("José", user.firstName);
+            assertTrue(user.lastName.startsWith("Smith12"));
+        }
+        // Each word matches the start of any word, in any order, like the trie
+        Set<String> matched = new HashSet<>();
+        for (User user : result.result) {
+            matched.add(user.userid);
+        }
+        repository.searchUsers("smith12 josé", PAGE_SIZE, result);
+        assertEquals(matched.size(), result.result.size());
+        for (User user : result.result) {
+            assertTrue(matched.contains(user.userid));
+            assertTrue(UserTrie.matches(user, UserTrie.normalize("smith12 jose")));
+        }
+        repository.searchUsers("mith12", PAGE_SIZE, result);
+        assertTrue(result.result.isEmpty());
+        repository.searchUsers("user9999", PAGE_SIZE, result);
+        assertEquals(11, result.result.size());
+        // A changed user is found under the new name only
+        User user = result.result.get(0);
+        user.firstName = "Zed";
+        repository.putUser(user);
+        repository.searchUsers("zed", PAGE_SIZE, result);
+        assertEquals(1, result.result.size());
+        assertEquals(USERS, repository.getUserCount());
+    }
+
+    /**
+     * The search keys are the same in every locale, a Turkish device
+     * folds a capital I like every other device
+     */
+    @Test
+    public void searchKeysIgnoreLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals("ibrahim idil", UserTrie.normalize("IBRAHIM İdil"));
+            User user = new User();
+            user.firstName = "IVAN";
+            user.lastName = "Ito";
+            user.email = "IVAN@EXAMPLE.COM";
+            assertEquals(Arrays.asList("ivan", "ito", "ivan@example.com"), UserTrie.getWords(user));
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /**
+     * An email has one account whatever its case, and only its password signs in
+     */
+    @Test
+    public void accountsAreKeyedByEmail() {
+        InMemoryUserRepository repository = new InMemoryUserRepository((task, delayMillis) -> task.run());
+        User user = new User();
+        user.firstName = "Josh";
+        user.lastName = "Smith";
+        user.email = "Josh@Example.com";
+        Result<User> created = new Result<>();
+        repository.signUp(user, "secret", created);
+        assertNotNull(created.result.userid);
+        assertEquals(1, repository.getUserCount());
+
+        // The same email typed differently is taken
+        Result<User> duplicate = new Result<>();
+        user.email = " josh@example.COM";
+        repository.signUp(user, "other", duplicate);
+        assertNull(duplicate.result);
+        assertEquals(AccountException.Reason.EMAIL_TAKEN, ((AccountException) duplicate.exception).reason);
+        assertEquals(1, repository.getUserCount());
+
+        Result<User> signedIn = new Result<>();
+        repository.signIn("JOSH@example.com", "secret", signedIn);
+        assertEquals(created.result.userid, signedIn.result.userid);
+        assertEquals("Smith", signedIn.result.lastName);
+        repository.signIn("josh@example.com", "wrong", signedIn);
+        assertNull(signedIn.result);
+        assertEquals(AccountException.Reason.INVALID_CREDENTIALS, ((AccountException) signedIn.exception).reason);
+        repository.signIn("nobody@example.com", "secret", signedIn);
+        assertTrue(signedIn.exception instanceof AccountException);
+    }
+
+    /**
+     * Only the users updated after a time are sent, oldest first
+     */
+    @Test
+    public void sendsUsersUpdatedSince() {
+        InMemoryUserRepository repository = new InMemoryUserRepository((task, delayMillis) -> task.run());
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.userid = "user" + i;
+            user.firstName = "Josh";
+            user.lastName = "Smith" + i;
+            repository.putUser(user);
+        }
+        Result<Long> last = new Result<>();
+        repository.loadLastUpdatedAt(last);
+        long since = last.result;
+
+        // A renamed user is the only change after the sync time
+        User renamed = new User();
+        renamed.userid = "user1";
+        renamed.firstName = "Joshua";
+        renamed.lastName = "Smith1";
+        repository.putUser(renamed);
+        Result<List<User>> changed = new Result<>();
+        repository.loadUsersUpdatedSince(since, null, PAGE_SIZE, changed);
+        assertEquals(1, changed.result.size());
+        assertEquals("Joshua", changed.result.get(0).firstName);
+        assertTrue(changed.result.get(0).updatedAt > since);
+
+        repository.loadLastUpdatedAt(last);
+        repository.loadUsersUpdatedSince(last.result, null, PAGE_SIZE, changed);
+        assertTrue(changed.result.isEmpty());
+
+        // Pages continue after their last user until every change is read
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.userid = "user" + i;
+            user.firstName = "Anna";
+            user.lastName = "Smith" + i;
+            repository.putUser(user);
+        }
+        List<String> paged = new ArrayList<>();
+        User after = null;
+        do {
+            repository.loadUsersUpdatedSince(since, after, 1, changed);
+            for (User user : changed.result) {
+                paged.add(user.userid);
+                after = user;
+            }
+        }
+        while (changed.result.size() == 1);
+        assertEquals(Arrays.asList("user0", "user1", "user2"), paged);
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.chatapp.repositories;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the SubscriptionManager
+ */
+public class SubscriptionManagerTest {
+    // This is how long a listener lingers
+    private static final long LINGER = 10_000;
+
+    /**
+     * This is a scheduler that only runs tasks when told to
+     */
+    private static class FakeScheduler implements SubscriptionManager.Scheduler {
+        private final List<long[]> due = new ArrayList<>();
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            due.add(new long[] {now + delayMillis, tasks.size() - 1});
+        }
+
+        /**
+         * Move the clock on, running the tasks that fall due on the way
+         * @param millis this is how far to move
+         */
+        void advance(long millis) {
+            now += millis;
+            List<long[]> ready = new ArrayList<>();
+            for (long[] entry : due) {
+                if (entry[0] <= now) {
+                    ready.add(entry);
+                }
+            }
+            due.removeAll(ready);
+            for (long[] entry : ready) {
+                tasks.get((int) entry[1]).run();
+            }
+        }
+    }
+
+    /**
+     * This is a database query that counts how often it is opened
+     */
+    private static class FakeQuery implements SubscriptionManager.Source<ChangeListener<String>> {
+        ChangeListener<String> listener;
+        int opened, removed;
+
+        @Override
+        public Registration open(ChangeListener<String> listener) {
+            this.listener = listener;
+            opened++;
+            return () -> removed++;
+        }
+
+        void send(List<Change<String>> changes) {
+            listener.onChanges(changes, null);
+        }
+    }
+
+    /**
+     * Listener that applies every change to a list, one after the other
+     */
+    private static class Mirror implements ChangeListener<String> {
+        final List<String> items = new ArrayList<>();
+        Exception exception;
+        int snapshots;
+
+        @Override
+        public void onChanges(List<Change<String>> changes, Exception exception) {
+            snapshots++;
+            this.exception = exception;
+            if (changes == null) {
+                return;
+            }
+            for (Change<String> change : changes) {
+                if (change.oldIndex >= 0) {
+                    items.remove(change.oldIndex);
+                }
+                if (change.newIndex >= 0) {
+                    items.add(change.newIndex, change.item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Two screens on the same query share one database listener
+     */
+    @Test
+    public void identicalQueriesShareOneListener() {
+        FakeScheduler scheduler = new FakeScheduler();
+        SubscriptionManager manager = new SubscriptionManager(LINGER, scheduler);
+        FakeQuery query = new FakeQuery();
+        Mirror first = new Mirror();
+        Mirror second = new Mirror();
+
+        manager.subscribeChanges("messages/a", query, first);
+        query.send(Arrays.asList(new Change<>(Change.Type.ADDED, "hi", -1, 0),
+                new Change<>(Change.Type.ADDED, "there", -1, 1)));
+        manager.subscribeChanges("messages/a", query, second);
+
+        assertEquals(1, query.opened);
+        assertEquals(1, manager.getActiveCount());
+        // The late screen is sent the current results first
+        assertEquals(Arrays.asList("hi", "there"), second.items);
+
+        query.send(Arrays.asList(new Change<>(Change.Type.MODIFIED, "hey", 0, 0),
+                new Change<>(Change.Type.REMOVED, "there", 1, -1)));
+        assertEquals(Arrays.asList("hey"), first.items);
+        assertEquals(Arrays.asList("hey"), second.items);
+    }
+
+    /**
+     * A late screen is sent the current results without the lock held,
+     * so it can use the manager, and a change that arrives meanwhile
+     * reaches it after them. Every screen gets its own list of changes
+     */
+    @Test
+    public void lateSubscriberCatchesUpOutsideTheLock() {
+        FakeScheduler scheduler = new FakeScheduler();
+        SubscriptionManager manager = new SubscriptionManager(LINGER, scheduler);
+        FakeQuery query = new FakeQuery();
+        // The first screen empties every list it is given
+        Mirror first = new Mirror() {
+            @Override
+            public void onChanges(List<Change<String>> changes, Exception exception) {
+                super.onChanges(changes, exception);
+                changes.clear();
+            }
+        };
+        manager.subscribeChanges("messages/a", query, first);
+        query.send(new ArrayList<>(Arrays.asList(new Change<>(Change.Type.ADDED, "hi", -1, 0))));
+
+        // The late screen is sent a change while it catches up
+        Mirror second = new Mirror() {
+            @Override
+            public void onChanges(List<Change<String>> changes, Exception exception) {
+                super.onChanges(changes, exception);
+                if (snapshots == 1) {
+                    assertEquals(1, manager.getActiveCount());
+                    query.send(new ArrayList<>(Arrays.asList(new Change<>(Change.Type.ADDED, "there", -1, 1))));
+                    assertEquals(Arrays.asList("hi"), items);
+                }
+            }
+        };
+        manager.subscribeChanges("messages/a", query, second);
+        assertEquals(2, second.snapshots);
+        assertEquals(Arrays.asList("hi", "there"), second.items);
+        assertEquals(Arrays.asList("hi", "there"), first.items);
+    }
+
+    /**
+     * The listener lingers after the last screen leaves, and a screen
+     * that comes back in time reuses it
+     */
+    @Test
+    public void listenerLingersAfterTheLastSubscriber() {
+        FakeScheduler scheduler = new FakeScheduler();
+        SubscriptionManager manager = new SubscriptionManager(LINGER, scheduler);
+        FakeQuery query = new FakeQuery();
+        Mirror mirror = new Mirror();
+
+        Registration registration = manager.subscribeChanges("messages/a", query, mirror);
+        query.send(Arrays.asList(new Change<>(Change.Type.ADDED, "hi", -1, 0)));
+        registration.remove();
+        scheduler.advance(LINGER / 2);
+        assertEquals(0, query.removed);
+
+        Mirror back = new Mirror();
+        registration = manager.subscribeChanges("messages/a", query, back);
+        assertEquals(Arrays.asList("hi"), back.items);
+        // The close of the first linger no longer applies
+        scheduler.advance(LINGER);
+        assertEquals(0, query.removed);
+        assertEquals(1, query.opened);
+
+        registration.remove();
+        scheduler.advance(LINGER);
+        assertEquals(1, query.removed);
+        assertEquals(0, manager.getActiveCount());
+    }
+
+    /**
+     * A removed subscriber is sent nothing more
+     */
+    @Test
+    public void removedSubscriberGetsNothing() {
+        SubscriptionManager manager = new SubscriptionManager(LINGER, new FakeScheduler());
+        FakeQuery query = new FakeQuery();
+        Mirror mirror = new Mirror();
+
+        Registration registration = manager.subscribeChanges("messages/a", query, mirror);
+        Mirror other = new Mirror();
+        manager.subscribeChanges("messages/a", query, other);
+        registration.remove();
+        // Removing twice does not remove the other subscriber
+        registration.remove();
+        query.send(Arrays.asList(new Change<>(Change.Type.ADDED, "hi", -1, 0)));
+        assertEquals(0, mirror.snapshots);
+        assertEquals(Arrays.asList("hi"), other.items);
+    }
+
+    /**
+     * A failed query is closed, the next screen opens it again
+     */
+    @Test
+    public void failedQueryIsOpenedAgain() {
+        SubscriptionManager manager = new SubscriptionManager(LINGER, new FakeScheduler());
+        FakeQuery query = new FakeQuery();
+        Mirror mirror = new Mirror();
+
+        manager.subscribeChanges("messages/a", query, mirror);
+        query.listener.onChanges(null, new Exception("denied"));
+        assertNotNull(mirror.exception);
+        assertEquals(1, query.removed);
+        assertEquals(0, manager.getActiveCount());
+
+        manager.subscribeChanges("messages/a", query, new Mirror());
+        assertEquals(2, query.opened);
+    }
+
+    /**
+     * Value queries send the last value to late subscribers, and the
+     * count of open listeners is reported as it changes
+     */
+    @Test
+    public void valuesAreSharedAndCounted() {
+        FakeScheduler scheduler = new FakeScheduler();
+        SubscriptionManager manager = new SubscriptionManager(LINGER, scheduler);
+        List<Integer> counts = new ArrayList<>();
+        manager.setCountListener(counts::add);
+        List<ResultCallback<Long>> opened = new ArrayList<>();
+        SubscriptionManager.Source<ResultCallback<Long>> source = listener -> {
+            opened.add(listener);
+            return () -> { };
+        };
+        List<Long> first = new ArrayList<>();
+        List<Long> second = new ArrayList<>();
+
+        Registration a = manager.subscribeValues("presence/b", source, (value, exception) -> first.add(value));
+        opened.get(0).onComplete(42L, null);
+        Registration b = manager.subscribeValues("presence/b", source, (value, exception) -> second.add(value));
+
+        assertEquals(1, opened.size());
+        assertEquals(Arrays.asList(42L), second);
+        a.remove();
+        b.remove();
+        scheduler.advance(LINGER);
+        assertEquals(Arrays.asList(0, 1, 0), counts);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the retry Backoff
+ */
+public class BackoffTest {
+
+    /**
+     * Delays double per failure and stay between half and all of the ceiling
+     */
+    @Test
+    public void delaysDoubleWithJitter() {
+        Backoff backoff = new Backoff(1_000, 60_000, new Random(42));
+        assertEquals(0, backoff.getDelay(0));
+        long ceiling = 1_000;
+        for (int failures = 1; failures <= 6; failures++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = backoff.getDelay(failures);
+                assertTrue(delay >= ceiling / 2);
+                assertTrue(delay <= ceiling);
+            }
+            ceiling *= 2;
+        }
+    }
+
+    /**
+     * Many failures are capped and never overflow
+     */
+    @Test
+    public void delaysAreCapped() {
+        Backoff backoff = new Backoff(1_000, 60_000, new Random(7));
+        for (int failures = 7; failures < 1_000; failures++) {
+            long delay = backoff.getDelay(failures);
+            assertTrue(delay >= 30_000);
+            assertTrue(delay <= 60_000);
+        }
+    }
+}
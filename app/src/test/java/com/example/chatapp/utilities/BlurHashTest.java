@@ -0,0 +1,84 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the BlurHash
+ */
+public class BlurHashTest {
+    /**
+     * The hash is short enough to travel inside a message
+     */
+    @Test
+    public void hashIsShort() {
+        int[] pixels = gradient(32, 24);
+        String hash = BlurHash.encode(pixels, 32, 24, 4, 3);
+        assertEquals(4 + 2 * 4 * 3, hash.length());
+        assertTrue(BlurHash.isValid(hash));
+    }
+
+    /**
+     * The average colour comes back as the same colour
+     */
+    @Test
+    public void averageColourRoundTrips() {
+        int[] pixels = new int[16 * 16];
+        Arrays.fill(pixels, 0xFF3366CC);
+        String hash = BlurHash.encode(pixels, 16, 16, 1, 1);
+        for (int pixel : BlurHash.decode(hash, 8, 8, 1)) {
+            assertEquals(0x33, (pixel >> 16) & 0xFF, 1);
+            assertEquals(0x66, (pixel >> 8) & 0xFF, 1);
+            assertEquals(0xCC, pixel & 0xFF, 1);
+        }
+    }
+
+    /**
+     * The placeholder keeps the shape of the image
+     */
+    @Test
+    public void gradientKeepsItsDirection() {
+        String hash = BlurHash.encode(gradient(32, 24), 32, 24, 4, 3);
+        int[] decoded = BlurHash.decode(hash, 20, 10, 1);
+        int left = decoded[5 * 20] & 0xFF;
+        int right = decoded[5 * 20 + 19] & 0xFF;
+        assertTrue(right > left + 100);
+    }
+
+    /**
+     * Malformed hashes are refused
+     */
+    @Test
+    public void malformedHashIsRefused() {
+        assertFalse(BlurHash.isValid(null));
+        assertFalse(BlurHash.isValid("LEHV6n"));
+        assertFalse(BlurHash.isValid("00\"\"\"\""));
+        try {
+            BlurHash.decode("LEHV6nWB2yk8", 4, 4, 1);
+            fail();
+        }
+        catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * This will make a grey image that gets lighter to the right
+     * @param width this is the width
+     * @param height this is the height
+     * @return the pixels
+     */
+    private static int[] gradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = x * 255 / (width - 1);
+                pixels[y * width + x] = 0xFF000000 | (value << 16) | (value << 8) | value;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.repositories.FileBlobStore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ChunkedUploader and the FileBlobStore
+ */
+public class ChunkedUploaderTest {
+    // This is a small chunk size so files have many chunks
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * An upload that is cut off carries on where it stopped
+     */
+    @Test
+    public void uploadResumes() throws IOException {
+        File folder = Files.createTempDirectory("blobs").toFile();
+        byte[] content = randomBytes(10_500);
+        File file = write(folder, content);
+        FileBlobStore store = new FileBlobStore(new File(folder, "store"));
+
+        // The first attempt dies after four chunks
+        FileBlobStore failing = new FileBlobStore(new File(folder, "store")) {
+            @Override
+            public void putChunk(String blobID, int index, byte[] data, int length) throws IOException {
+                if (index == 4) {
+                    throw new IOException("Connection lost");
+                }
+                super.putChunk(blobID, index, data, length);
+            }
+        };
+        try {
+            new ChunkedUploader(failing, CHUNK_SIZE).upload("blob", file, null);
+            fail();
+        }
+        catch (IOException expected) {
+            assertEquals(4, store.getStoredChunks("blob"));
+        }
+        // Nothing can be read until the upload is committed
+        try {
+            store.open("blob");
+            fail();
+        }
+        catch (FileNotFoundException expected) {
+            // Expected
+        }
+
+        // The next attempt only sends the rest
+        long[] progress = new long[1];
+        int uploaded = new ChunkedUploader(store, CHUNK_SIZE).upload("blob", file,
+                (uploadedBytes, totalBytes) -> progress[0] = uploadedBytes);
+        assertEquals(7, uploaded);
+        assertEquals(content.length, progress[0]);
+        assertArrayEquals(content, read(store.open("blob")));
+
+        // A finished upload sends nothing again
+        assertEquals(0, new ChunkedUploader(store, CHUNK_SIZE).upload("blob", file, null));
+    }
+
+    /**
+     * Empty files and files of whole chunks are read back exactly
+     */
+    @Test
+    public void edgeSizesRoundTrip() throws IOException {
+        File folder = Files.createTempDirectory("blobs").toFile();
+        FileBlobStore store = new FileBlobStore(new File(folder, "store"));
+        for (int size : new int[] {0, 1, CHUNK_SIZE, CHUNK_SIZE * 3}) {
+            byte[] content = randomBytes(size);
+            String blobID = "blob" + size;
+            new ChunkedUploader(store, CHUNK_SIZE).upload(blobID, write(folder, content), null);
+            assertArrayEquals(content, read(store.open(blobID)));
+        }
+    }
+
+    /**
+     * Chunks cannot skip ahead, so the stored count is always the resume point
+     */
+    @Test(expected = IOException.class)
+    public void chunksAreInOrder() throws IOException {
+        File folder = Files.createTempDirectory("blobs").toFile();
+        new FileBlobStore(folder).putChunk("blob", 1, new byte[10], 10);
+    }
+
+    /**
+     * This will make random bytes
+     * @param size this is the number of bytes
+     * @return the bytes
+     */
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * This will write bytes to a new file
+     * @param folder this is the folder of the file
+     * @param content this is the bytes
+     * @return the file
+     */
+    private static File write(File folder, byte[] content) throws IOException {
+        File file = File.createTempFile("upload", ".bin", folder);
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return file;
+    }
+
+    /**
+     * This will read a stream to the end in small reads
+     * @param input this is the stream
+     * @return the bytes
+     */
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        try (InputStream stream = input) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        return output.toByteArray();
+    }
+}
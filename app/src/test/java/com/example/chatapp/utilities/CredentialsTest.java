@@ -0,0 +1,84 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the Credentials
+ */
+public class CredentialsTest {
+    /**
+     * Only the right password matches its hash
+     */
+    @Test
+    public void verifiesPassword() {
+        Credentials credentials = Credentials.create("correct horse");
+        assertTrue(credentials.verify("correct horse"));
+        assertFalse(credentials.verify("correct horse "));
+        assertFalse(credentials.verify(""));
+        // A stored copy checks the same way
+        Credentials stored = new Credentials(credentials.algorithm, credentials.salt, credentials.hash,
+                credentials.iterations);
+        assertTrue(stored.verify("correct horse"));
+        assertFalse(stored.needsRehash());
+        // Missing fields never match
+        assertFalse(new Credentials(null, null, null, 0).verify("correct horse"));
+    }
+
+    /**
+     * A hash made before the algorithm was stored still verifies, and is
+     * weaker than the hashes made now
+     */
+    @Test
+    public void verifiesOlderHashes() {
+        // This is "password" hashed with PBKDF2 HMAC-SHA1 and 20,000 iterations
+        Credentials older = new Credentials(null, "000102030405060708090a0b0c0d0e0f",
+                "2a7d4526e0101bf478e0586e51fd16a59f5b8c78bf84207bb20ba7bb93a35131", 20_000);
+        assertEquals(Credentials.ALGORITHM_SHA1, older.algorithm);
+        assertTrue(older.verify("password"));
+        assertFalse(older.verify("Password"));
+        assertTrue(older.needsRehash());
+    }
+
+    /**
+     * A new hash is made with the algorithm every device has, whatever
+     * device made it, so it verifies as a HMAC-SHA1 hash
+     */
+    @Test
+    public void verifiesWithFallbackAlgorithm() {
+        Credentials credentials = Credentials.create("correct horse");
+        assertEquals(Credentials.ALGORITHM_SHA1, credentials.algorithm);
+        assertEquals(Credentials.ITERATIONS, credentials.iterations);
+        Credentials fallback = new Credentials(Credentials.ALGORITHM_SHA1, credentials.salt, credentials.hash,
+                credentials.iterations);
+        assertTrue(fallback.verify("correct horse"));
+        assertFalse(fallback.verify("correct horse "));
+        // A hash made with HMAC-SHA256 is made again as HMAC-SHA1
+        assertTrue(new Credentials(Credentials.ALGORITHM_SHA256, credentials.salt, credentials.hash,
+                Credentials.ITERATIONS).needsRehash());
+    }
+
+    /**
+     * The same password gets a different salt and hash every time
+     */
+    @Test
+    public void saltsEveryHash() {
+        Credentials first = Credentials.create("password");
+        Credentials second = Credentials.create("password");
+        assertNotEquals(first.salt, second.salt);
+        assertNotEquals(first.hash, second.hash);
+        assertFalse(first.hash.contains("password"));
+    }
+
+    /**
+     * Every way of typing an email gets one key that is a valid document ID
+     */
+    @Test
+    public void normalizesEmailKeys() {
+        assertEquals("josh@example.com", Credentials.getEmailKey(" Josh@Example.COM "));
+        assertEquals(Credentials.getEmailKey("a@b.co"), Credentials.getEmailKey("A@B.CO"));
+        assertEquals("a%2Fb%25c@example.com", Credentials.getEmailKey("a/b%c@example.com"));
+        assertFalse(Credentials.getEmailKey("a/b@example.com").contains("/"));
+    }
+}
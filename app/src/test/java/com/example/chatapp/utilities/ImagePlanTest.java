@@ -0,0 +1,73 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ImagePlan
+ */
+public class ImagePlanTest {
+    // A 12MP camera photo
+    private static final int PHOTO_WIDTH = 4000;
+    private static final int PHOTO_HEIGHT = 3000;
+    // The most bitmap memory ingesting a photo may hold at once
+    private static final long PEAK_BUDGET_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * A 12MP photo is sampled down and stays inside the memory budget
+     */
+    @Test
+    public void largePhotoStaysInBudget() {
+        ImagePlan plan = new ImagePlan(PHOTO_WIDTH, PHOTO_HEIGHT, ImagePlan.ORIENTATION_ROTATE_90);
+        long fullDecode = (long) PHOTO_WIDTH * PHOTO_HEIGHT * ImagePlan.BYTES_PER_PIXEL;
+        assertEquals(4, plan.inSampleSize);
+        assertEquals(1000, plan.decodedWidth);
+        assertEquals(750, plan.decodedHeight);
+        assertTrue(plan.getPeakBytes() <= PEAK_BUDGET_BYTES);
+        assertTrue(plan.getPeakBytes() * 10 < fullDecode);
+        // The decode is still big enough for every variant
+        for (ImagePlan.Variant variant : ImagePlan.Variant.values()) {
+            assertEquals(variant.size, plan.getVariantSize(variant));
+        }
+    }
+
+    /**
+     * Every size of photo stays inside the budget and is never scaled up
+     */
+    @Test
+    public void everySizeStaysInBudget() {
+        for (int width = 1; width <= 16_000; width = width * 3 / 2 + 1) {
+            for (int height = 1; height <= 16_000; height = height * 3 / 2 + 1) {
+                ImagePlan plan = new ImagePlan(width, height, ImagePlan.ORIENTATION_NORMAL);
+                assertTrue(width + "x" + height, plan.getPeakBytes() <= PEAK_BUDGET_BYTES);
+                assertTrue(plan.cropX + plan.cropSize <= plan.decodedWidth);
+                assertTrue(plan.cropY + plan.cropSize <= plan.decodedHeight);
+                for (ImagePlan.Variant variant : ImagePlan.Variant.values()) {
+                    assertTrue(plan.getVariantScale(variant) <= 1f);
+                }
+            }
+        }
+    }
+
+    /**
+     * The EXIF orientations turn into a flip and a clockwise turn
+     */
+    @Test
+    public void exifOrientations() {
+        assertEquals(0, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_NORMAL));
+        assertEquals(90, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_ROTATE_90));
+        assertEquals(180, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_ROTATE_180));
+        assertEquals(270, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_ROTATE_270));
+        // Missing or unknown orientations leave the image alone
+        assertEquals(0, ImagePlan.getRotationDegrees(0));
+        assertFalse(ImagePlan.isFlipped(0));
+        // A transpose swaps x and y, which is a flip then three quarter turns
+        assertTrue(ImagePlan.isFlipped(ImagePlan.ORIENTATION_TRANSPOSE));
+        assertEquals(270, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_TRANSPOSE));
+        assertTrue(ImagePlan.isFlipped(ImagePlan.ORIENTATION_TRANSVERSE));
+        assertEquals(90, ImagePlan.getRotationDegrees(ImagePlan.ORIENTATION_TRANSVERSE));
+        assertTrue(ImagePlan.isFlipped(ImagePlan.ORIENTATION_FLIP_VERTICAL));
+        assertFalse(ImagePlan.isFlipped(ImagePlan.ORIENTATION_ROTATE_90));
+    }
+}
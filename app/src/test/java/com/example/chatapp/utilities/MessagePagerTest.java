@@ -0,0 +1,184 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.listeners.MessageListener;
+import com.example.chatapp.models.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the bounded MessagePager window
+ */
+public class MessagePagerTest {
+    // Size of the synthetic conversation
+    private static final int CONVERSATION_SIZE = 100_000;
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_MESSAGES = 200;
+
+    /**
+     * Synthetic conversation that builds its messages on demand
+     */
+    private static class SyntheticSource implements MessagePager.PageSource {
+        int loads;
+
+        static ChatMessage message(int index) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.messageID = String.format("m%06d", index);
+            chatMessage.senderID = index % 2 == 0 ? "a" : "b";
+            chatMessage.receiverID = index % 2 == 0 ? "b" : "a";
+            char[] text = new char[200];
+            Arrays.fill(text, (char) ('a' + index % 26));
+            chatMessage.message = new String(text);
+            chatMessage.timestamp = index * 1000L;
+            return chatMessage;
+        }
+
+        static List<ChatMessage> range(int from, int to) {
+            List<ChatMessage> page = new ArrayList<>();
+            for (int i = Math.max(from, 0); i < Math.min(to, CONVERSATION_SIZE); i++) {
+                page.add(message(i));
+            }
+            return page;
+        }
+
+        static int index(ChatMessage chatMessage) {
+            return Integer.parseInt(chatMessage.messageID.substring(1));
+        }
+
+        @Override
+        public void loadOlder(ChatMessage oldest, int limit, MessagePager.PageCallback callback) {
+            loads++;
+            int end = index(oldest);
+            callback.onPageLoaded(range(end - limit, end));
+        }
+
+        @Override
+        public void loadNewer(ChatMessage newest, int limit, MessagePager.PageCallback callback) {
+            loads++;
+            int start = index(newest) + 1;
+            callback.onPageLoaded(range(start, start + limit));
+        }
+    }
+
+    /**
+     * Listener that counts the messages put in and evicted from the store
+     */
+    private static class CountingListener implements MessageListener {
+        int inserted, removed;
+
+        @Override
+        public void onMessageInserted(int position) {
+            inserted++;
+        }
+
+        @Override
+        public void onMessageChanged(int position) {
+        }
+
+        @Override
+        public void onMessageMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onMessageRemoved(int position) {
+            removed++;
+        }
+
+        @Override
+        public void onMessageRangeRemoved(int position, int count) {
+            removed += count;
+        }
+    }
+
+    @Test
+    public void scrollingWholeHistory_keepsWindowBounded() {
+        MessageStore store = new MessageStore();
+        CountingListener listener = new CountingListener();
+        store.setMessageListener(listener);
+        SyntheticSource source = new SyntheticSource();
+        MessagePager pager = new MessagePager(store, source, PAGE_SIZE, MAX_MESSAGES);
+        pager.onFirstPage(SyntheticSource.range(CONVERSATION_SIZE - PAGE_SIZE, CONVERSATION_SIZE));
+        int maxSize = 0;
+        // Scroll all the way up to the first message
+        while (SyntheticSource.index(store.get(0)) > 0) {
+            pager.onScrolled(0, PAGE_SIZE, 5);
+            maxSize = Math.max(maxSize, store.size());
+        }
+        assertTrue(pager.hasNewer());
+        int evictedGoingUp = listener.removed;
+        // Then all the way back down to the newest message
+        while (pager.hasNewer()) {
+            pager.onScrolled(store.size() - PAGE_SIZE, store.size() - 1, 5);
+            maxSize = Math.max(maxSize, store.size());
+        }
+        assertEquals(String.format("m%06d", CONVERSATION_SIZE - 1), store.get(store.size() - 1).messageID);
+        assertTrue("window grew to " + maxSize, maxSize <= MAX_MESSAGES + PAGE_SIZE);
+        // Everything loaded but the final window was evicted again
+        assertEquals(listener.inserted - store.size(), listener.removed);
+        // Both directions walk the whole history, so both evict nearly all of it
+        assertTrue(evictedGoingUp >= CONVERSATION_SIZE - MAX_MESSAGES - PAGE_SIZE);
+        assertTrue(listener.removed - evictedGoingUp >= CONVERSATION_SIZE - MAX_MESSAGES - PAGE_SIZE);
+    }
+
+    @Test
+    public void liveMessages_areHeldBackWhileWindowIsAwayFromTheEnd() {
+        MessageStore store = new MessageStore();
+        SyntheticSource source = new SyntheticSource();
+        MessagePager pager = new MessagePager(store, source, PAGE_SIZE, MAX_MESSAGES);
+        pager.onFirstPage(SyntheticSource.range(CONVERSATION_SIZE - PAGE_SIZE, CONVERSATION_SIZE));
+        assertTrue(pager.acceptsLive(SyntheticSource.message(CONVERSATION_SIZE)));
+        // Scroll up until the newest messages are dropped
+        for (int i = 0; i < 10; i++) {
+            pager.onScrolled(0, PAGE_SIZE, 5);
+        }
+        assertFalse(pager.acceptsLive(SyntheticSource.message(CONVERSATION_SIZE)));
+        assertFalse(pager.acceptsLive(SyntheticSource.message(0)));
+    }
+
+    @Test
+    public void jumpTo_opensTheWindowAroundAnOldMessage() {
+        MessageStore store = new MessageStore();
+        SyntheticSource source = new SyntheticSource();
+        MessagePager pager = new MessagePager(store, source, PAGE_SIZE, MAX_MESSAGES);
+        pager.onFirstPage(SyntheticSource.range(CONVERSATION_SIZE - PAGE_SIZE, CONVERSATION_SIZE));
+        // Only the ID and timestamp of the result are known
+        ChatMessage anchor = new ChatMessage();
+        anchor.messageID = SyntheticSource.message(40_000).messageID;
+        anchor.timestamp = SyntheticSource.message(40_000).timestamp;
+        boolean[] done = new boolean[1];
+        pager.jumpTo(anchor, () -> done[0] = true);
+        assertTrue(done[0]);
+        assertTrue(store.contains(anchor.messageID));
+        // Half a page before it and a page from it
+        assertEquals(PAGE_SIZE / 2 + PAGE_SIZE, store.size());
+        assertEquals(40_000 - PAGE_SIZE / 2, SyntheticSource.index(store.get(0)));
+        // The anchor row is the one loaded from the source, not the bare one
+        assertEquals(anchor.messageID, store.get(PAGE_SIZE / 2).messageID);
+        assertNotNull(store.get(PAGE_SIZE / 2).message);
+        assertTrue(pager.hasNewer());
+        assertFalse(pager.acceptsLive(SyntheticSource.message(CONVERSATION_SIZE)));
+        // Paging carries on from the new window in both directions
+        pager.onScrolled(0, 5, 5);
+        assertEquals(40_000 - PAGE_SIZE / 2 - PAGE_SIZE, SyntheticSource.index(store.get(0)));
+    }
+
+    @Test
+    public void jumpTo_theFirstMessageKeepsTheAnchor() {
+        MessageStore store = new MessageStore();
+        SyntheticSource source = new SyntheticSource();
+        MessagePager pager = new MessagePager(store, source, PAGE_SIZE, MAX_MESSAGES);
+        pager.onFirstPage(SyntheticSource.range(CONVERSATION_SIZE - PAGE_SIZE, CONVERSATION_SIZE));
+        pager.jumpTo(SyntheticSource.message(0), () -> { });
+        assertEquals("m000000", store.get(0).messageID);
+        assertEquals(PAGE_SIZE + 1, store.size());
+        // There is nothing older to page
+        int loads = source.loads;
+        pager.onScrolled(0, 5, 5);
+        assertEquals(loads, source.loads);
+    }
+}
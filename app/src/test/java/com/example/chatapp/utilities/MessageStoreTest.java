@@ -0,0 +1,166 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.listeners.MessageListener;
+import com.example.chatapp.models.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ordered, incremental MessageStore
+ */
+public class MessageStoreTest {
+    // Number of changes replayed into the store
+    private static final int CHANGES = 10_000;
+
+    /**
+     * Build a message with an ID and timestamp
+     */
+    private static ChatMessage message(String id, long time) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageID = id;
+        chatMessage.senderID = "a";
+        chatMessage.receiverID = "b";
+        chatMessage.message = "message " + id;
+        chatMessage.timestamp = time;
+        return chatMessage;
+    }
+
+    /**
+     * Listener that mirrors the store by replaying the notified positions
+     */
+    private static class MirrorListener implements MessageListener {
+        final List<String> mirror = new ArrayList<>();
+        final MessageStore store;
+        int notifications;
+
+        MirrorListener(MessageStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void onMessageInserted(int position) {
+            notifications++;
+            mirror.add(position, store.get(position).messageID);
+        }
+
+        @Override
+        public void onMessageChanged(int position) {
+            notifications++;
+            assertEquals(store.get(position).messageID, mirror.get(position));
+        }
+
+        @Override
+        public void onMessageMoved(int fromPosition, int toPosition) {
+            notifications++;
+            mirror.add(toPosition, mirror.remove(fromPosition));
+        }
+
+        @Override
+        public void onMessageRemoved(int position) {
+            notifications++;
+            mirror.remove(position);
+        }
+
+        @Override
+        public void onMessageRangeRemoved(int position, int count) {
+            notifications++;
+            mirror.subList(position, position + count).clear();
+        }
+    }
+
+    @Test
+    public void outOfOrderAdds_areKeptSorted() {
+        MessageStore store = new MessageStore();
+        store.add(message("c", 30));
+        store.add(message("a", 10));
+        store.add(message("b", 20));
+        store.add(message("b2", 20));
+        assertEquals("a", store.get(0).messageID);
+        assertEquals("b", store.get(1).messageID);
+        assertEquals("b2", store.get(2).messageID);
+        assertEquals("c", store.get(3).messageID);
+    }
+
+    @Test
+    public void duplicateAdd_isTreatedAsUpdate() {
+        MessageStore store = new MessageStore();
+        store.add(message("a", 10));
+        store.add(message("a", 10));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void modifiedTimestamp_movesMessage() {
+        MessageStore store = new MessageStore();
+        MirrorListener listener = new MirrorListener(store);
+        store.setMessageListener(listener);
+        store.add(message("a", 10));
+        store.add(message("b", 20));
+        store.add(message("c", 30));
+        store.update(message("a", 40));
+        assertEquals("a", store.get(2).messageID);
+        assertEquals(listener.mirror.get(2), "a");
+    }
+
+    @Test
+    public void clear_notifiesListener() {
+        MessageStore store = new MessageStore();
+        MirrorListener listener = new MirrorListener(store);
+        store.setMessageListener(listener);
+        store.add(message("a", 10));
+        store.add(message("b", 20));
+        store.clear();
+        assertEquals(0, store.size());
+        assertTrue(listener.mirror.isEmpty());
+        assertFalse(store.contains("a"));
+    }
+
+    @Test
+    public void replayedChanges_matchNotifications_oneEach() {
+        MessageStore store = new MessageStore();
+        MirrorListener listener = new MirrorListener(store);
+        store.setMessageListener(listener);
+        Random random = new Random(42);
+        List<String> live = new ArrayList<>();
+        // Replay a mix of adds, late adds, edits and removals
+        for (int i = 0; i < CHANGES; i++) {
+            int before = listener.notifications;
+            int kind = random.nextInt(20);
+            if (kind == 0 && !live.isEmpty()) {
+                store.remove(live.remove(random.nextInt(live.size())));
+            }
+            else if (kind == 1 && !live.isEmpty()) {
+                String id = live.get(random.nextInt(live.size()));
+                store.update(message(id, random.nextInt(CHANGES)));
+            }
+            else if (kind == 2) {
+                String id = "late" + i;
+                store.add(message(id, random.nextInt(i + 1)));
+                live.add(id);
+            }
+            else {
+                String id = "m" + i;
+                store.add(message(id, i));
+                live.add(id);
+            }
+            // Every change is one positional notification, or a move and a change
+            int notified = listener.notifications - before;
+            assertTrue("change " + i + " sent " + notified + " notifications",
+                    notified == 1 || (kind == 1 && notified == 2));
+        }
+        // The notified positions rebuild exactly the same ordering
+        assertEquals(store.size(), listener.mirror.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.get(i).messageID, listener.mirror.get(i));
+            if (i > 0) {
+                assertTrue(store.get(i - 1).timestamp <= store.get(i).timestamp);
+            }
+        }
+    }
+}
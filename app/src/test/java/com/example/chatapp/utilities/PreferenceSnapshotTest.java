@@ -0,0 +1,90 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the PreferenceSnapshot
+ */
+public class PreferenceSnapshotTest {
+    /**
+     * A batch is one write and one change report
+     */
+    @Test
+    public void batchWritesOnce() {
+        MemoryPreferenceStore store = new MemoryPreferenceStore();
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(store);
+        List<Set<String>> reports = new ArrayList<>();
+        snapshot.addListener(reports::add);
+
+        snapshot.edit(batch -> batch
+                .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                .putString(Constants.KEY_USERID, "alice")
+                .putString(Constants.KEY_FIRSTNAME, "Alice")
+                .putString(Constants.KEY_LASTNAME, "Smith")
+                .putString(Constants.KEY_IMAGE_REF, "ref"));
+        assertEquals(1, store.getSaveCount());
+        assertEquals(1, reports.size());
+        assertEquals(5, reports.get(0).size());
+        assertEquals(5, store.load().size());
+        assertEquals("alice", snapshot.getString(Constants.KEY_USERID));
+        assertEquals("alice", store.load().get(Constants.KEY_USERID));
+
+        // Writing the same values again changes nothing
+        snapshot.edit(batch -> batch.putString(Constants.KEY_USERID, "alice"));
+        assertEquals(1, store.getSaveCount());
+        assertEquals(1, reports.size());
+
+        // Removing and clearing are written and reported too
+        snapshot.edit(batch -> batch.remove(Constants.KEY_IMAGE_REF));
+        assertEquals(2, store.getSaveCount());
+        assertEquals(new HashSet<>(Arrays.asList(Constants.KEY_IMAGE_REF)), reports.get(1));
+        assertNull(store.load().get(Constants.KEY_IMAGE_REF));
+        snapshot.edit(PreferenceSnapshot.Batch::clear);
+        assertEquals(3, store.getSaveCount());
+        assertEquals(4, reports.get(2).size());
+        assertTrue(store.load().isEmpty());
+        assertFalse(snapshot.getBoolean(Constants.KEY_IS_SIGNED_IN));
+    }
+
+    /**
+     * The session is read from the store once and rebuilt only after a change
+     */
+    @Test
+    public void sessionFollowsChanges() {
+        MemoryPreferenceStore store = new MemoryPreferenceStore();
+        Map<String, Object> stored = new HashMap<>();
+        stored.put(Constants.KEY_IS_SIGNED_IN, true);
+        stored.put(Constants.KEY_USERID, "bob");
+        stored.put(Constants.KEY_FIRSTNAME, "Bob");
+        stored.put(Constants.KEY_LASTNAME, "Jones");
+        store.save(stored, false);
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(store);
+
+        PreferenceSnapshot.Session session = snapshot.getSession();
+        assertTrue(session.signedIn);
+        assertEquals("bob", session.userID);
+        assertEquals("Bob Jones", session.getName());
+        assertSame(session, snapshot.getSession());
+
+        // Other preferences keep the session
+        snapshot.edit(batch -> batch.putString(Constants.KEY_EMAIL, "bob@example.com"));
+        assertSame(session, snapshot.getSession());
+        snapshot.edit(batch -> batch.putString(Constants.KEY_FIRSTNAME, "Robert"));
+        assertNotSame(session, snapshot.getSession());
+        assertEquals("Robert Jones", snapshot.getSession().getName());
+        // The snapshot does not read the store again
+        store.save(Collections.<String, Object>singletonMap(Constants.KEY_USERID, "carol"), false);
+        assertEquals("bob", snapshot.getSession().userID);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.ConversationState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ReceiptTracker
+ */
+public class ReceiptTrackerTest {
+    /**
+     * This is a clock and scheduler that only move when told to
+     */
+    private static class FakeTime implements Throttler.Clock, Throttler.Scheduler {
+        // These are the scheduled tasks by due time
+        private final PriorityQueue<long[]> due = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            due.add(new long[] {now + delayMillis, tasks.size() - 1});
+        }
+
+        /**
+         * Move the clock on, running the tasks that fall due on the way
+         * @param millis this is how far to move
+         */
+        void advance(long millis) {
+            long end = now + millis;
+            while (!due.isEmpty() && due.peek()[0] <= end) {
+                long[] next = due.poll();
+                now = next[0];
+                tasks.get((int) next[1]).run();
+            }
+            now = end;
+        }
+    }
+
+    /**
+     * A minute of messages arriving and being read while the user scrolls
+     * is a bounded number of receipt writes
+     */
+    @Test
+    public void receiptWritesAreBounded() {
+        FakeTime time = new FakeTime();
+        List<long[]> writes = new ArrayList<>();
+        ReceiptTracker tracker = new ReceiptTracker(time, time,
+                (deliveredUpTo, readUpTo) -> writes.add(new long[] {time.now(), deliveredUpTo, readUpTo}));
+
+        // A message every 200 ms, each delivered and then read
+        for (int i = 1; i <= 300; i++) {
+            tracker.onDelivered(i * 200L);
+            tracker.onRead(i * 200L - 100);
+            time.advance(200);
+        }
+        assertTrue(writes.size() <= 60_000 / ReceiptTracker.MIN_INTERVAL_MILLIS + 1);
+        for (int i = 1; i < writes.size(); i++) {
+            assertTrue(writes.get(i)[0] - writes.get(i - 1)[0] >= ReceiptTracker.MIN_INTERVAL_MILLIS);
+        }
+        // Closing the chat writes the newest watermarks
+        tracker.flush();
+        long[] last = writes.get(writes.size() - 1);
+        assertEquals(60_000, last[1]);
+        assertEquals(59_900, last[2]);
+    }
+
+    /**
+     * The write waits until scrolling settles
+     */
+    @Test
+    public void writeWaitsForQuiet() {
+        FakeTime time = new FakeTime();
+        List<Long> reads = new ArrayList<>();
+        ReceiptTracker tracker = new ReceiptTracker(time, time,
+                (deliveredUpTo, readUpTo) -> reads.add(readUpTo));
+
+        tracker.onRead(100);
+        time.advance(500);
+        tracker.onRead(200);
+        time.advance(ReceiptTracker.QUIET_MILLIS - 1);
+        assertTrue(reads.isEmpty());
+        time.advance(1);
+        assertEquals(1, reads.size());
+        assertEquals(Long.valueOf(200), reads.get(0));
+    }
+
+    /**
+     * Watermarks only go up and are not written again
+     */
+    @Test
+    public void watermarksOnlyRise() {
+        FakeTime time = new FakeTime();
+        List<long[]> writes = new ArrayList<>();
+        ReceiptTracker tracker = new ReceiptTracker(time, time,
+                (deliveredUpTo, readUpTo) -> writes.add(new long[] {deliveredUpTo, readUpTo}));
+
+        tracker.onRead(500);
+        time.advance(ReceiptTracker.MIN_INTERVAL_MILLIS);
+        assertEquals(1, writes.size());
+        // Reading means it was delivered too
+        assertEquals(500, writes.get(0)[0]);
+
+        tracker.onRead(400);
+        tracker.onDelivered(300);
+        time.advance(ReceiptTracker.MIN_INTERVAL_MILLIS);
+        tracker.flush();
+        assertEquals(1, writes.size());
+    }
+
+    /**
+     * Watermarks stored by another device are not written again
+     */
+    @Test
+    public void seededWatermarksAreNotWritten() {
+        FakeTime time = new FakeTime();
+        List<long[]> writes = new ArrayList<>();
+        ReceiptTracker tracker = new ReceiptTracker(time, time,
+                (deliveredUpTo, readUpTo) -> writes.add(new long[] {deliveredUpTo, readUpTo}));
+
+        tracker.onRead(500);
+        tracker.seed(800, 600);
+        time.advance(ReceiptTracker.MIN_INTERVAL_MILLIS);
+        tracker.flush();
+        assertTrue(writes.isEmpty());
+
+        tracker.onRead(700);
+        tracker.flush();
+        assertEquals(1, writes.size());
+        assertEquals(800, writes.get(0)[0]);
+        assertEquals(700, writes.get(0)[1]);
+    }
+
+    /**
+     * A read watermark also counts as delivered
+     */
+    @Test
+    public void readCountsAsDelivered() {
+        ConversationState state = new ConversationState();
+        state.delivered.put("bob", 100L);
+        state.read.put("bob", 300L);
+        assertEquals(300, state.getDeliveredUpTo("bob"));
+        assertEquals(300, state.getReadUpTo("bob"));
+        assertEquals(0, state.getReadUpTo("alice"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the SearchQuery
+ */
+public class SearchQueryTest {
+
+    /**
+     * Words are lower cased and split on anything that is not a letter or digit
+     */
+    @Test
+    public void getTerms_splitsOnPunctuation() {
+        assertEquals(Arrays.asList("see", "you", "at", "5pm", "café"),
+                SearchQuery.getTerms("See you at 5pm, Café!"));
+    }
+
+    /**
+     * The last word is a prefix while it is still being typed
+     */
+    @Test
+    public void toMatchExpression_prefixesTheLastWord() {
+        assertEquals("\"dinner\" \"tom*\"", SearchQuery.toMatchExpression("Dinner tom"));
+        assertEquals("\"dinner\" \"tomorrow\"", SearchQuery.toMatchExpression("dinner tomorrow "));
+    }
+
+    /**
+     * Operators and quotes in the input are searched for as words
+     */
+    @Test
+    public void toMatchExpression_treatsOperatorsAsWords() {
+        assertEquals("\"cats\" \"or\" \"dogs\"", SearchQuery.toMatchExpression("cats OR dogs\""));
+        assertEquals("\"near\" \"x\"", SearchQuery.toMatchExpression("NEAR(\"x\")"));
+        assertNull(SearchQuery.toMatchExpression(" \"*-() "));
+    }
+
+    /**
+     * Long inputs are cut down to the most words a query is made of
+     */
+    @Test
+    public void toMatchExpression_limitsTheWords() {
+        String expression = SearchQuery.toMatchExpression("a b c d e f g h i j");
+        assertEquals(SearchQuery.MAX_TERMS, expression.split(" ").length);
+        assertFalse(expression.contains("*"));
+    }
+
+    /**
+     * The markers are removed and the matches are where they were
+     */
+    @Test
+    public void stripMarkers_findsTheMatches() {
+        List<int[]> highlights = new ArrayList<>();
+        String snippet = "…see you " + SearchQuery.MATCH_START + "tomorrow" + SearchQuery.MATCH_END
+                + " at " + SearchQuery.MATCH_START + "dinner" + SearchQuery.MATCH_END;
+        String text = SearchQuery.stripMarkers(snippet, highlights);
+
+        assertEquals("…see you tomorrow at dinner", text);
+        assertEquals(2, highlights.size());
+        assertEquals("tomorrow", text.substring(highlights.get(0)[0], highlights.get(0)[1]));
+        assertEquals("dinner", text.substring(highlights.get(1)[0], highlights.get(1)[1]));
+    }
+}
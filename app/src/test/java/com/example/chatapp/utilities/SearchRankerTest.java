@@ -0,0 +1,105 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.SearchResult;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the SearchRanker
+ */
+public class SearchRankerTest {
+    // Only the one column is scored
+    private static final double[] WEIGHTS = {1};
+
+    /**
+     * Build the pcnalx matchinfo of a one phrase, one column query
+     * @param rows this is the number of rows in the index
+     * @param averageLength this is the average number of words in a row
+     * @param length this is the number of words in this row
+     * @param rowHits this is how often the phrase is in this row
+     * @param rowsWithHits this is the number of rows the phrase is in
+     * @return the matchinfo
+     */
+    private static int[] matchinfo(int rows, int averageLength, int length, int rowHits, int rowsWithHits) {
+        return new int[] {1, 1, rows, averageLength, length, rowHits, rowHits * rowsWithHits, rowsWithHits};
+    }
+
+    /**
+     * Build a scored result
+     * @param messageID this is the message ID
+     * @param timestamp this is the time of the message
+     * @param score this is the score
+     * @return the result
+     */
+    private static SearchResult result(String messageID, long timestamp, double score) {
+        SearchResult searchResult = new SearchResult();
+        searchResult.messageID = messageID;
+        searchResult.timestamp = timestamp;
+        searchResult.score = score;
+        return searchResult;
+    }
+
+    /**
+     * A word in few messages counts for more than a word in many
+     */
+    @Test
+    public void score_rareWordsScoreHigher() {
+        double rare = SearchRanker.score(matchinfo(10_000, 8, 8, 1, 3), WEIGHTS);
+        double common = SearchRanker.score(matchinfo(10_000, 8, 8, 1, 3_000), WEIGHTS);
+        assertTrue(rare > common);
+        assertTrue(common > 0);
+    }
+
+    /**
+     * The same match counts for more in a short message
+     */
+    @Test
+    public void score_shortMessagesScoreHigher() {
+        double shorter = SearchRanker.score(matchinfo(10_000, 8, 3, 1, 30), WEIGHTS);
+        double longer = SearchRanker.score(matchinfo(10_000, 8, 40, 1, 30), WEIGHTS);
+        assertTrue(shorter > longer);
+    }
+
+    /**
+     * Columns that weigh nothing are not scored
+     */
+    @Test
+    public void score_ignoresUnweightedColumns() {
+        assertEquals(0, SearchRanker.score(matchinfo(100, 8, 8, 1, 3), new double[] {0}), 0);
+    }
+
+    /**
+     * The blob is read in the byte order of the device
+     */
+    @Test
+    public void readMatchinfo_readsNativeOrder() {
+        int[] values = matchinfo(100, 8, 5, 2, 7);
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+        buffer.asIntBuffer().put(values);
+        assertArrayEquals(values, SearchRanker.readMatchinfo(buffer.array()));
+    }
+
+    /**
+     * Results are best first, newer first when they tie, and limited
+     */
+    @Test
+    public void rank_ordersByScoreThenTime() {
+        List<SearchResult> ranked = SearchRanker.rank(Arrays.asList(
+                result("a", 1_000, 1.0),
+                result("b", 3_000, 2.0),
+                result("c", 2_000, 1.0),
+                result("d", 4_000, 0.5)), 3);
+
+        assertEquals(3, ranked.size());
+        assertEquals("b", ranked.get(0).messageID);
+        assertEquals("c", ranked.get(1).messageID);
+        assertEquals("a", ranked.get(2).messageID);
+    }
+}
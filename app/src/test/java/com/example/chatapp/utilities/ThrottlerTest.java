@@ -0,0 +1,145 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.ConversationState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the Throttler
+ */
+public class ThrottlerTest {
+    // This is the typing interval the chat uses
+    private static final long INTERVAL = 3_000;
+
+    /**
+     * This is a clock and scheduler that only move when told to
+     */
+    private static class FakeTime implements Throttler.Clock, Throttler.Scheduler {
+        // These are the scheduled tasks by due time
+        private final PriorityQueue<long[]> due = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            due.add(new long[] {now + delayMillis, tasks.size() - 1});
+        }
+
+        /**
+         * Move the clock on, running the tasks that fall due on the way
+         * @param millis this is how far to move
+         */
+        void advance(long millis) {
+            long end = now + millis;
+            while (!due.isEmpty() && due.peek()[0] <= end) {
+                long[] next = due.poll();
+                now = next[0];
+                tasks.get((int) next[1]).run();
+            }
+            now = end;
+        }
+    }
+
+    /**
+     * The first value is written straight away
+     */
+    @Test
+    public void leadingWriteIsImmediate() {
+        FakeTime time = new FakeTime();
+        List<Boolean> writes = new ArrayList<>();
+        Throttler<Boolean> throttler = new Throttler<>(INTERVAL, time, time, writes::add);
+
+        throttler.offer(true);
+        assertEquals(1, writes.size());
+    }
+
+    /**
+     * A minute of keystrokes every 100 ms is a bounded number of typing writes
+     */
+    @Test
+    public void typingWritesAreBounded() {
+        FakeTime time = new FakeTime();
+        List<Long> writeTimes = new ArrayList<>();
+        Throttler<Boolean> throttler = new Throttler<>(INTERVAL, time, time,
+                value -> writeTimes.add(time.now()));
+
+        for (int i = 0; i < 600; i++) {
+            throttler.offer(true);
+            time.advance(100);
+        }
+        time.advance(INTERVAL);
+        assertTrue(writeTimes.size() <= 60_000 / INTERVAL + 2);
+        // Yet the typing state never grows old enough for the reader to drop it
+        for (int i = 1; i < writeTimes.size(); i++) {
+            assertTrue(writeTimes.get(i) - writeTimes.get(i - 1) >= INTERVAL);
+            assertTrue(writeTimes.get(i) - writeTimes.get(i - 1) < ConversationState.TYPING_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * The trailing write carries the latest value
+     */
+    @Test
+    public void trailingWriteIsLatest() {
+        FakeTime time = new FakeTime();
+        List<Integer> writes = new ArrayList<>();
+        Throttler<Integer> throttler = new Throttler<>(INTERVAL, time, time, writes::add);
+
+        throttler.offer(1);
+        throttler.offer(2);
+        throttler.offer(3);
+        assertEquals(1, writes.size());
+        time.advance(INTERVAL);
+        assertEquals(2, writes.size());
+        assertEquals(Integer.valueOf(3), writes.get(1));
+        // Nothing is left to write
+        time.advance(INTERVAL * 2);
+        assertEquals(2, writes.size());
+    }
+
+    /**
+     * A flush writes the waiting value now and only once
+     */
+    @Test
+    public void flushWritesWaitingValue() {
+        FakeTime time = new FakeTime();
+        List<Boolean> writes = new ArrayList<>();
+        Throttler<Boolean> throttler = new Throttler<>(INTERVAL, time, time, writes::add);
+
+        throttler.offer(true);
+        time.advance(500);
+        throttler.offer(false);
+        throttler.flush();
+        assertEquals(2, writes.size());
+        assertEquals(Boolean.FALSE, writes.get(1));
+        time.advance(INTERVAL);
+        assertEquals(2, writes.size());
+        // Nothing waiting means nothing to flush
+        throttler.flush();
+        assertEquals(2, writes.size());
+    }
+
+    /**
+     * A typing state expires on the reading side
+     */
+    @Test
+    public void typingStateExpires() {
+        ConversationState state = new ConversationState();
+        state.typing.put("bob", 1_000L);
+        assertTrue(state.isTyping("bob", 1_000L + INTERVAL));
+        assertFalse(state.isTyping("bob", 1_000L + ConversationState.TYPING_TIMEOUT_MILLIS));
+        assertFalse(state.isTyping("alice", 1_000L));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the cached TimestampFormatter
+ */
+public class TimestampFormatterTest {
+    // Number of messages in the synthetic history
+    private static final int MESSAGES = 50_000;
+    // Start of the history and the gap between messages
+    private static final long START = 1_700_000_000_000L;
+    private static final long GAP = 20_000L;
+
+    /**
+     * The cached result matches a fresh formatter
+     */
+    @Test
+    public void formatsLikeSimpleDateFormat() {
+        SimpleDateFormat time = new SimpleDateFormat("hh:mm a", Locale.getDefault());
+        SimpleDateFormat day = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        for (int i = 0; i < 1_000; i++) {
+            long millis = START + i * 7_919_000L;
+            assertEquals(time.format(new Date(millis)), TimestampFormatter.formatTime(millis));
+            assertEquals(day.format(new Date(millis)), TimestampFormatter.formatDay(millis));
+            // Formatting twice hits the cache and gives the same String
+            assertSame(TimestampFormatter.formatTime(millis), TimestampFormatter.formatTime(millis));
+        }
+    }
+
+    /**
+     * Day keys only change at local midnight
+     */
+    @Test
+    public void dayKeysFollowFormattedDays() {
+        long previous = START;
+        for (int i = 1; i < MESSAGES; i++) {
+            long millis = START + i * GAP;
+            boolean sameKey = TimestampFormatter.getDayKey(previous) == TimestampFormatter.getDayKey(millis);
+            boolean sameDay = TimestampFormatter.formatDay(previous).equals(TimestampFormatter.formatDay(millis));
+            assertEquals(sameDay, sameKey);
+            previous = millis;
+        }
+    }
+
+    /**
+     * Formatting a 50k message history at bind time allocates far less
+     * than building a formatter and a String for every parsed message
+     */
+    @Test
+    public void allocatesLessThanPerMessageFormatter() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationCounting(threads);
+        long threadID = Thread.currentThread().getId();
+        String[] rows = new String[MESSAGES];
+        // Warm both paths up first
+        runOldPath(rows);
+        runNewPath(rows);
+
+        long before = threads.getThreadAllocatedBytes(threadID);
+        runOldPath(rows);
+        long oldBytes = threads.getThreadAllocatedBytes(threadID) - before;
+
+        before = threads.getThreadAllocatedBytes(threadID);
+        runNewPath(rows);
+        long newBytes = threads.getThreadAllocatedBytes(threadID) - before;
+
+        assertTrue("cached formatting allocated " + newBytes + " vs " + oldBytes,
+                newBytes * 5 < oldBytes);
+    }
+
+    /**
+     * The old way, a new formatter and a kept String per message
+     */
+    private static void runOldPath(String[] rows) {
+        for (int i = 0; i < MESSAGES; i++) {
+            rows[i] = new SimpleDateFormat("MMM dd, yyyy - hh:mm a", Locale.getDefault())
+                    .format(new Date(START + i * GAP));
+        }
+    }
+
+    /**
+     * The new way, formatted at bind with the cached formatter
+     */
+    private static void runNewPath(String[] rows) {
+        for (int i = 0; i < MESSAGES; i++) {
+            long millis = START + i * GAP;
+            rows[i] = TimestampFormatter.formatTime(millis);
+            if (i == 0 || TimestampFormatter.getDayKey(millis - GAP) != TimestampFormatter.getDayKey(millis)) {
+                TimestampFormatter.formatDay(millis);
+            }
+        }
+    }
+
+    /**
+     * Skip the comparison where the JVM cannot count allocations
+     */
+    private static void assumeAllocationCounting(com.sun.management.ThreadMXBean threads) {
+        org.junit.Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the UserDirectory
+ */
+public class UserDirectoryTest {
+
+    /**
+     * Build a user
+     */
+    private static User user(String userID, String firstName) {
+        User user = new User();
+        user.userid = userID;
+        user.firstName = firstName;
+        user.lastName = "Smith";
+        return user;
+    }
+
+    /**
+     * Get the first names of the loaded users in order
+     */
+    private static List<String> names(UserDirectory directory) {
+        List<String> names = new ArrayList<>();
+        for (User user : directory.getUsers()) {
+            names.add(user.firstName);
+        }
+        return names;
+    }
+
+    /**
+     * Pages are kept in name order, and a user sent again is replaced
+     */
+    @Test
+    public void pagesAreMerged() {
+        UserDirectory directory = new UserDirectory();
+        directory.addPage(Arrays.asList(user("a", "Anna"), user("b", "Ben")));
+        directory.addPage(Arrays.asList(user("b", "Ben"), user("c", "Chloé")));
+        assertEquals(Arrays.asList("Anna", "Ben", "Chloé"), names(directory));
+        assertEquals("c", directory.getLast().userid);
+    }
+
+    /**
+     * A change inside the loaded part is moved to its new place
+     */
+    @Test
+    public void changeBeforeTheCursorIsApplied() {
+        UserDirectory directory = new UserDirectory();
+        directory.addPage(Arrays.asList(user("a", "Anna"), user("b", "Ben"), user("d", "Dan")));
+
+        List<String> dropped = directory.applyChanges(Arrays.asList(user("d", "Alex"), user("e", "Cara")));
+        assertTrue(dropped.isEmpty());
+        assertEquals(Arrays.asList("Alex", "Anna", "Ben", "Cara"), names(directory));
+        assertTrue(directory.contains("e"));
+    }
+
+    /**
+     * A change past the cursor is left for its page, and a loaded user
+     * that moved past it is dropped
+     */
+    @Test
+    public void changePastTheCursorIsDropped() {
+        UserDirectory directory = new UserDirectory();
+        directory.addPage(Arrays.asList(user("a", "Anna"), user("b", "Ben"), user("c", "Chloé")));
+
+        List<String> dropped = directory.applyChanges(Arrays.asList(user("a", "Zoe"), user("f", "Fred")));
+        assertEquals(Collections.singletonList("a"), dropped);
+        assertEquals(Arrays.asList("Ben", "Chloé"), names(directory));
+        assertFalse(directory.contains("f"));
+    }
+
+    /**
+     * Once every page is loaded every change is kept
+     */
+    @Test
+    public void everyChangeIsKeptWhenComplete() {
+        UserDirectory directory = new UserDirectory();
+        directory.addPage(Arrays.asList(user("a", "Anna"), user("b", "Ben")));
+        directory.setComplete(true);
+
+        List<String> dropped = directory.applyChanges(Arrays.asList(user("a", "Zoe"), user("f", "Fred")));
+        assertTrue(dropped.isEmpty());
+        assertEquals(Arrays.asList("Ben", "Fred", "Zoe"), names(directory));
+    }
+}
@@ -0,0 +1,50 @@
+// JVM only benchmarks of the pure Java data path of the app.
+// Run them with: ./gradlew :benchmark:jmh
+// and compare build/results/jmh/results.json with baseline/results.json
+plugins {
+    id("java")
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// The sources are UTF-8 like the app's
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// The benchmarks measure the app's own classes, so only the ones
+// without Android dependencies are compiled from the app sources
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include(
+                "com/example/chatapp/models/ChatMessage.java",
+                "com/example/chatapp/models/SearchResult.java",
+                "com/example/chatapp/models/User.java",
+                "com/example/chatapp/listeners/MessageListener.java",
+                "com/example/chatapp/utilities/Constants.java",
+                "com/example/chatapp/utilities/MessageStore.java",
+                "com/example/chatapp/utilities/SearchRanker.java",
+                "com/example/chatapp/utilities/TimestampFormatter.java",
+                "com/example/chatapp/utilities/UserTrie.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    fork.set(1)
+    // gc.alloc.rate.norm is the bytes allocated per operation
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,76 @@
+package com.example.chatapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the benchmark of the Base64 avatar payload. encodeImage
+ * turns the compressed JPEG into the String stored in the user document
+ * and getUserImage turns it back into bytes for the decoder. The Android
+ * Base64.DEFAULT flags are a MIME encoding with a line break every 76
+ * characters, which is what the JVM encoder below is set up to match
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvatarPayloadBenchmark {
+    // This is the line length of Base64.DEFAULT
+    private static final int LINE_LENGTH = 76;
+
+    // This is the size of the compressed image in bytes, a 150 pixel
+    // preview is a few kilobytes and a full photo is far larger
+    @Param({"8192", "131072"})
+    public int imageBytes;
+
+    // These are the private variables
+    private final Base64.Encoder encoder =
+            Base64.getMimeEncoder(LINE_LENGTH, "\n".getBytes(StandardCharsets.US_ASCII));
+    private final Base64.Decoder decoder = Base64.getMimeDecoder();
+    private byte[] image;
+    private String encodedImage;
+
+    /**
+     * This will build a random payload, JPEG data does not compress further
+     */
+    @Setup
+    public void setup() {
+        image = new byte[imageBytes];
+        new Random(42).nextBytes(image);
+        encodedImage = encoder.encodeToString(image);
+    }
+
+    /**
+     * This is the encoding done by encodeImage
+     */
+    @Benchmark
+    public String encode() {
+        return encoder.encodeToString(image);
+    }
+
+    /**
+     * This is the decoding done by getUserImage
+     */
+    @Benchmark
+    public byte[] decode() {
+        return decoder.decode(encodedImage);
+    }
+
+    /**
+     * This is the size the payload adds to every user document read
+     */
+    @Benchmark
+    public int encodedBytes() {
+        return encodedImage.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
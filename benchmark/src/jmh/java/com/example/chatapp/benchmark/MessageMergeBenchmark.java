@@ -0,0 +1,105 @@
+package com.example.chatapp.benchmark;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.MessageStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the benchmark of applying a chat snapshot to the loaded
+ * messages. The old path of ChatActivity appended the new messages and
+ * sorted the whole list on every snapshot, the MessageStore places
+ * each message at its position. Both remove the batch again afterwards
+ * so every operation starts from the same history
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageMergeBenchmark {
+    // Start of the history and the gap between messages
+    private static final long START = 1_700_000_000_000L;
+    private static final long GAP = 20_000L;
+
+    // This is the number of messages already loaded
+    @Param({"100", "1000", "10000"})
+    public int history;
+    // This is the number of messages in one snapshot
+    @Param({"1", "20"})
+    public int batch;
+
+    // These are the private variables
+    private List<ChatMessage> sortedList;
+    private MessageStore messageStore;
+    private List<ChatMessage> snapshot;
+
+    /**
+     * This will build the loaded history and the snapshot
+     */
+    @Setup
+    public void setup() {
+        sortedList = new ArrayList<>();
+        messageStore = new MessageStore();
+        for (int i = 0; i < history; i++) {
+            ChatMessage chatMessage = message(i);
+            sortedList.add(chatMessage);
+            messageStore.add(chatMessage);
+        }
+        // New messages arrive at the end of the conversation
+        snapshot = new ArrayList<>();
+        for (int i = 0; i < batch; i++) {
+            snapshot.add(message(history + i));
+        }
+    }
+
+    /**
+     * This is the old path, append the snapshot and sort everything
+     */
+    @Benchmark
+    public List<ChatMessage> appendAndSort() {
+        sortedList.addAll(snapshot);
+        Collections.sort(sortedList, (first, second) -> Long.compare(first.timestamp, second.timestamp));
+        sortedList.subList(history, sortedList.size()).clear();
+        return sortedList;
+    }
+
+    /**
+     * This is the MessageStore path, insert each message in place
+     */
+    @Benchmark
+    public MessageStore storeInsert() {
+        for (ChatMessage chatMessage : snapshot) {
+            messageStore.add(chatMessage);
+        }
+        for (ChatMessage chatMessage : snapshot) {
+            messageStore.remove(chatMessage.messageID);
+        }
+        return messageStore;
+    }
+
+    /**
+     * This will build a message of the synthetic history
+     * @param index this is the position of the message
+     * @return the message
+     */
+    private static ChatMessage message(int index) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageID = "message" + index;
+        chatMessage.senderID = index % 2 == 0 ? "first" : "second";
+        chatMessage.receiverID = index % 2 == 0 ? "second" : "first";
+        chatMessage.message = "message " + index;
+        chatMessage.timestamp = START + index * GAP;
+        return chatMessage;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.chatapp.benchmark;
+
+import com.example.chatapp.models.SearchResult;
+import com.example.chatapp.utilities.SearchRanker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the benchmark of ranking the matches of a message search in a
+ * million message index. SearchIndex reads at most 500 of the newest
+ * matches, the larger counts are what a common word would cost if every
+ * match were read and ranked. The SQL runs in the Android SQLite, so
+ * the matchinfo blobs it returns are made up here
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchRankBenchmark {
+    // This is the number of messages in the index
+    private static final int MESSAGES = 1_000_000;
+    // These are the columns of the index, only the text is scored
+    private static final double[] COLUMN_WEIGHTS = {1, 0, 0, 0, 0, 0};
+    // This is the number of results the search screen shows
+    private static final int LIMIT = 50;
+    // Start of the history and the gap between messages
+    private static final long START = 1_700_000_000_000L;
+    private static final long GAP = 20_000L;
+
+    // This is the number of matches that are ranked
+    @Param({"500", "10000", "100000"})
+    public int candidates;
+
+    // These are the private variables
+    private final List<byte[]> blobs = new ArrayList<>();
+    private final List<SearchResult> results = new ArrayList<>();
+
+    /**
+     * This will build the matchinfo of every match, one phrase with
+     * between one and three hits in messages of different lengths
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int columns = COLUMN_WEIGHTS.length;
+        for (int i = 0; i < candidates; i++) {
+            // The pcnalx format, phrases, columns, rows, average lengths,
+            // lengths and the hits of every phrase in every column
+            int[] matchinfo = new int[3 + 2 * columns + 3 * columns];
+            matchinfo[0] = 1;
+            matchinfo[1] = columns;
+            matchinfo[2] = MESSAGES;
+            matchinfo[3] = 12;
+            matchinfo[3 + columns] = 4 + random.nextInt(40);
+            int hits = 3 + 2 * columns;
+            matchinfo[hits] = 1 + random.nextInt(3);
+            matchinfo[hits + 1] = candidates * 2;
+            matchinfo[hits + 2] = candidates;
+            blobs.add(toBlob(matchinfo));
+            SearchResult result = new SearchResult();
+            result.messageID = "message" + i;
+            result.timestamp = START + (candidates - i) * GAP;
+            results.add(result);
+        }
+    }
+
+    /**
+     * This reads and scores every match, then keeps the best ones,
+     * the work SearchIndex does after the query
+     * @return the best results
+     */
+    @Benchmark
+    public List<SearchResult> scoreAndRank() {
+        for (int i = 0; i < candidates; i++) {
+            results.get(i).score = SearchRanker.score(SearchRanker.readMatchinfo(blobs.get(i)), COLUMN_WEIGHTS);
+        }
+        return SearchRanker.rank(results, LIMIT);
+    }
+
+    /**
+     * This will encode matchinfo the way SQLite returns it
+     * @param matchinfo this is the matchinfo
+     * @return the blob, in the byte order of the device
+     */
+    private static byte[] toBlob(int[] matchinfo) {
+        ByteBuffer buffer = ByteBuffer.allocate(matchinfo.length * 4).order(ByteOrder.nativeOrder());
+        buffer.asIntBuffer().put(matchinfo);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.chatapp.benchmark;
+
+import com.example.chatapp.utilities.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the benchmark of formatting message timestamps. The old
+ * getReadableDateTime built a SimpleDateFormat for every parsed message,
+ * the TimestampFormatter formats at bind time with a cached formatter.
+ * Each operation formats the next message of a synthetic history
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimestampFormatBenchmark {
+    // Number of messages in the synthetic history, a power of two
+    private static final int MESSAGES = 1024;
+    // Start of the history and the gap between messages
+    private static final long START = 1_700_000_000_000L;
+    private static final long GAP = 20_000L;
+
+    // These are the private variables
+    private final long[] timestamps = new long[MESSAGES];
+    private int next;
+
+    /**
+     * This will build the timestamps of the history
+     */
+    @Setup
+    public void setup() {
+        for (int i = 0; i < MESSAGES; i++) {
+            timestamps[i] = START + i * GAP;
+        }
+    }
+
+    /**
+     * This is the old path of ChatActivity.getReadableDateTime
+     */
+    @Benchmark
+    public String readableDateTime() {
+        return new SimpleDateFormat("MMM dd, yyyy - hh:mm a", Locale.getDefault())
+                .format(new Date(nextTimestamp()));
+    }
+
+    /**
+     * This is the time shown on every message row
+     */
+    @Benchmark
+    public String formatTime() {
+        return TimestampFormatter.formatTime(nextTimestamp());
+    }
+
+    /**
+     * This is the day shown on the first message of a day
+     */
+    @Benchmark
+    public String formatDay() {
+        return TimestampFormatter.formatDay(nextTimestamp());
+    }
+
+    /**
+     * This is the check for a day header done on every bind
+     */
+    @Benchmark
+    public boolean compareDayKeys() {
+        long timestamp = nextTimestamp();
+        return TimestampFormatter.getDayKey(timestamp) == TimestampFormatter.getDayKey(timestamp - GAP);
+    }
+
+    /**
+     * This will step to the next message of the history
+     * @return its timestamp
+     */
+    private long nextTimestamp() {
+        next = (next + 1) & (MESSAGES - 1);
+        return timestamps[next];
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.chatapp.benchmark;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.UserTrie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the benchmark of building the user list of UserActivity.
+ * The documents are stood in for by maps of their fields, the same
+ * lookups getUsers does on every QueryDocumentSnapshot
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserListBenchmark {
+    // These are the names the synthetic users are made from
+    private static final String[] FIRST_NAMES = {"Josh", "José", "Anna", "Ben", "Chloé", "Dmitri", "Eve", "Farah"};
+    private static final String[] LAST_NAMES = {"Smith", "Müller", "Nguyen", "O'Brien", "Garcia", "Kowalski"};
+
+    // This is the number of users in the directory
+    @Param({"100", "1000", "10000"})
+    public int users;
+
+    // These are the private variables
+    private final List<Map<String, String>> documents = new ArrayList<>();
+    private List<User> userList;
+    private UserTrie userTrie;
+
+    /**
+     * This will build the documents, and the list and trie that are searched
+     */
+    @Setup
+    public void setup() {
+        for (int i = 0; i < users; i++) {
+            Map<String, String> document = new HashMap<>();
+            document.put("userid", "user" + i);
+            document.put("firstName", FIRST_NAMES[i % FIRST_NAMES.length]);
+            document.put("lastName", LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length] + i);
+            document.put("email", "user" + i + "@example.com");
+            document.put("token", "token" + i);
+            documents.add(document);
+        }
+        userList = buildList();
+        userTrie = buildTrie();
+    }
+
+    /**
+     * This is the old path, one User per document into a list
+     */
+    @Benchmark
+    public List<User> buildList() {
+        List<User> result = new ArrayList<>();
+        for (Map<String, String> document : documents) {
+            result.add(toUser(document));
+        }
+        return result;
+    }
+
+    /**
+     * This is the current path, which also indexes every user for search
+     */
+    @Benchmark
+    public UserTrie buildTrie() {
+        UserTrie result = new UserTrie();
+        for (Map<String, String> document : documents) {
+            result.insert(toUser(document));
+        }
+        return result;
+    }
+
+    /**
+     * This is a search that scans the whole list
+     */
+    @Benchmark
+    public List<User> searchList() {
+        List<User> result = new ArrayList<>();
+        for (User user : userList) {
+            if (UserTrie.getNameKey(user).startsWith("jose")) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This is the same search through the trie
+     */
+    @Benchmark
+    public List<User> searchTrie() {
+        return userTrie.search("jose");
+    }
+
+    /**
+     * This will read a document into a User like getUsers does
+     * @param document this is the document fields
+     * @return the user
+     */
+    private static User toUser(Map<String, String> document) {
+        User user = new User();
+        user.firstName = document.get("firstName");
+        user.lastName = document.get("lastName");
+        user.email = document.get("email");
+        user.token = document.get("token");
+        user.userid = document.get("userid");
+        return user;
+    }
+}
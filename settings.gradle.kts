@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "ChatApp"
 include(":app")
+include(":benchmark")
+include(":admin")